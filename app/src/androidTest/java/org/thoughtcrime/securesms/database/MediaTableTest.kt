@@ -0,0 +1,247 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.app.Application
+import androidx.core.content.contentValuesOf
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.signal.core.util.SqlUtil
+import org.signal.core.util.readToSingleLong
+import org.thoughtcrime.securesms.database.helpers.migration.V201_MediaIndex
+import org.thoughtcrime.securesms.recipients.Recipient
+import org.thoughtcrime.securesms.testing.SignalDatabaseRule
+import org.whispersystems.signalservice.api.push.ServiceId
+import java.util.UUID
+
+@RunWith(AndroidJUnit4::class)
+class MediaTableTest {
+
+  @get:Rule
+  val harness = SignalDatabaseRule()
+
+  private lateinit var recipient: Recipient
+  private var threadId: Long = 0
+  private var messageId: Long = 0
+  private var uniqueId: Long = 1
+
+  @Before
+  fun setUp() {
+    SignalDatabase.rawDatabase.delete(AttachmentTable.TABLE_NAME, null, null)
+    MediaTable.rebuild(SignalDatabase.rawDatabase)
+
+    recipient = Recipient.resolved(SignalDatabase.recipients.getOrInsertFromServiceId(ServiceId.from(UUID.randomUUID())))
+    threadId = SignalDatabase.threads.getOrCreateThreadIdFor(recipient)
+    messageId = MmsHelper.insert(recipient = recipient, threadId = threadId)
+  }
+
+  @Test
+  fun givenAnImage_whenIInsertIt_thenIExpectItIndexedAndCounted() {
+    // WHEN
+    insertAttachment(contentType = "image/jpeg", data = "/image", size = 100)
+
+    // THEN
+    assertEquals(1, countGallery())
+    assertEquals(0, countAudio())
+    assertEquals(100, SignalDatabase.media.getStorageBreakdown().photoSize)
+  }
+
+  @Test
+  fun givenTwoAttachmentsSharingAFile_whenIInsertThem_thenIExpectTheFileCountedOnce() {
+    // WHEN
+    insertAttachment(contentType = "image/jpeg", data = "/shared", size = 100)
+    insertAttachment(contentType = "image/jpeg", data = "/shared", size = 150)
+
+    // THEN
+    assertEquals(2, countGallery())
+    assertEquals(150, SignalDatabase.media.getStorageBreakdown().photoSize)
+  }
+
+  @Test
+  fun givenAnImage_whenIDeleteIt_thenIExpectItRemovedFromIndexAndTotals() {
+    // GIVEN
+    val id = insertAttachment(contentType = "image/jpeg", data = "/image", size = 100)
+
+    // WHEN
+    SignalDatabase.rawDatabase.delete(AttachmentTable.TABLE_NAME, "${AttachmentTable.ROW_ID} = ?", SqlUtil.buildArgs(id))
+
+    // THEN
+    assertEquals(0, countGallery())
+    assertEquals(0, SignalDatabase.media.getStorageBreakdown().photoSize)
+  }
+
+  @Test
+  fun givenOneOfTwoAttachmentsSharingAFile_whenIDeleteIt_thenIExpectTheOtherStillCounted() {
+    // GIVEN
+    val id = insertAttachment(contentType = "image/jpeg", data = "/shared", size = 150)
+    insertAttachment(contentType = "image/jpeg", data = "/shared", size = 100)
+
+    // WHEN
+    SignalDatabase.rawDatabase.delete(AttachmentTable.TABLE_NAME, "${AttachmentTable.ROW_ID} = ?", SqlUtil.buildArgs(id))
+
+    // THEN
+    assertEquals(1, countGallery())
+    assertEquals(100, SignalDatabase.media.getStorageBreakdown().photoSize)
+  }
+
+  @Test
+  fun givenAnImage_whenIChangeItsType_thenIExpectIndexAndTotalsToFollow() {
+    // GIVEN
+    val id = insertAttachment(contentType = "image/jpeg", data = "/file", size = 100)
+
+    // WHEN
+    SignalDatabase.rawDatabase.update(
+      AttachmentTable.TABLE_NAME,
+      contentValuesOf(AttachmentTable.CONTENT_TYPE to "audio/aac"),
+      "${AttachmentTable.ROW_ID} = ?",
+      SqlUtil.buildArgs(id)
+    )
+
+    // THEN
+    assertEquals(0, countGallery())
+    assertEquals(1, countAudio())
+
+    val breakdown = SignalDatabase.media.getStorageBreakdown()
+    assertEquals(0, breakdown.photoSize)
+    assertEquals(100, breakdown.audioSize)
+  }
+
+  @Test
+  fun givenAPendingAttachment_whenItCompletes_thenIExpectItCounted() {
+    // GIVEN
+    val id = insertAttachment(contentType = "video/mp4", data = "/video", size = 300, transferState = AttachmentTable.TRANSFER_PROGRESS_STARTED)
+    assertEquals(0, SignalDatabase.media.getStorageBreakdown().videoSize)
+
+    // WHEN
+    SignalDatabase.rawDatabase.update(
+      AttachmentTable.TABLE_NAME,
+      contentValuesOf(AttachmentTable.TRANSFER_STATE to AttachmentTable.TRANSFER_PROGRESS_DONE),
+      "${AttachmentTable.ROW_ID} = ?",
+      SqlUtil.buildArgs(id)
+    )
+
+    // THEN
+    assertEquals(300, SignalDatabase.media.getStorageBreakdown().videoSize)
+  }
+
+  @Test
+  fun givenAnImage_whenIDeleteItsMessage_thenIExpectItRemovedFromIndex() {
+    // GIVEN
+    insertAttachment(contentType = "image/jpeg", data = "/image", size = 100)
+
+    // WHEN
+    SignalDatabase.rawDatabase.delete(MessageTable.TABLE_NAME, "${MessageTable.ID} = ?", SqlUtil.buildArgs(messageId))
+
+    // THEN
+    assertEquals(0, countGallery())
+    assertEquals(0, countIndexRows())
+  }
+
+  @Test
+  fun givenExistingAttachments_whenIRunTheV201Migration_thenIExpectIndexAndTotalsBackfilled() {
+    // GIVEN
+    insertAttachment(contentType = "image/jpeg", data = "/image", size = 100)
+    insertAttachment(contentType = "image/jpeg", data = "/image", size = 120)
+    insertAttachment(contentType = "audio/aac", data = "/audio", size = 50)
+    insertAttachment(contentType = "application/pdf", data = "/document", size = 70)
+    dropMediaIndex()
+
+    // WHEN
+    V201_MediaIndex.migrate(
+      InstrumentationRegistry.getInstrumentation().targetContext.applicationContext as Application,
+      SignalDatabase.rawDatabase,
+      200,
+      201
+    )
+
+    // THEN
+    assertEquals(4, countIndexRows())
+    assertEquals(2, countGallery())
+    assertEquals(1, countAudio())
+    assertEquals(breakdown(photo = 120, audio = 50, document = 70), SignalDatabase.media.getStorageBreakdown())
+
+    // Triggers are back in place
+    insertAttachment(contentType = "video/mp4", data = "/video", size = 10)
+    assertEquals(10, SignalDatabase.media.getStorageBreakdown().videoSize)
+  }
+
+  @Test
+  fun givenARestoredBackup_whenIRebuild_thenIExpectIndexAndTotalsRestored() {
+    // GIVEN
+    insertAttachment(contentType = "image/jpeg", data = "/image", size = 100)
+    insertAttachment(contentType = "audio/aac", data = "/audio", size = 50)
+
+    // Backups leave out the derived tables' contents
+    SignalDatabase.rawDatabase.delete(MediaTable.INDEX_TABLE_NAME, null, null)
+    SignalDatabase.rawDatabase.delete(MediaTable.STORAGE_FILE_TABLE_NAME, null, null)
+    SignalDatabase.rawDatabase.delete(MediaTable.STORAGE_TOTAL_TABLE_NAME, null, null)
+    assertEquals(0, countIndexRows())
+
+    // WHEN
+    MediaTable.rebuild(SignalDatabase.rawDatabase)
+
+    // THEN
+    assertEquals(2, countIndexRows())
+    assertEquals(breakdown(photo = 100, audio = 50), SignalDatabase.media.getStorageBreakdown())
+  }
+
+  private fun insertAttachment(contentType: String, data: String, size: Long, transferState: Int = AttachmentTable.TRANSFER_PROGRESS_DONE): Long {
+    return SignalDatabase.rawDatabase.insert(
+      AttachmentTable.TABLE_NAME,
+      null,
+      contentValuesOf(
+        AttachmentTable.MMS_ID to messageId,
+        AttachmentTable.CONTENT_TYPE to contentType,
+        AttachmentTable.DATA to data,
+        AttachmentTable.SIZE to size,
+        AttachmentTable.TRANSFER_STATE to transferState,
+        AttachmentTable.UNIQUE_ID to uniqueId++
+      )
+    )
+  }
+
+  private fun countGallery(): Int {
+    return SignalDatabase.media.getGalleryMediaForThread(threadId, MediaTable.Sorting.Newest).use { it.count }
+  }
+
+  private fun countAudio(): Int {
+    return SignalDatabase.media.getAudioMediaForThread(threadId, MediaTable.Sorting.Newest).use { it.count }
+  }
+
+  private fun countIndexRows(): Long {
+    return SignalDatabase.rawDatabase.rawQuery("SELECT COUNT(*) FROM ${MediaTable.INDEX_TABLE_NAME}").readToSingleLong()
+  }
+
+  private fun dropMediaIndex() {
+    val db = SignalDatabase.rawDatabase
+
+    listOf(
+      "media_index_attachment_insert",
+      "media_index_attachment_update",
+      "media_index_attachment_delete",
+      "media_index_message_update",
+      "media_index_message_delete",
+      "media_storage_attachment_insert",
+      "media_storage_attachment_update",
+      "media_storage_attachment_delete",
+      "media_storage_file_insert",
+      "media_storage_file_delete"
+    ).forEach { db.execSQL("DROP TRIGGER IF EXISTS $it") }
+
+    db.execSQL("DROP TABLE ${MediaTable.INDEX_TABLE_NAME}")
+    db.execSQL("DROP TABLE ${MediaTable.STORAGE_FILE_TABLE_NAME}")
+    db.execSQL("DROP TABLE ${MediaTable.STORAGE_TOTAL_TABLE_NAME}")
+  }
+
+  private fun breakdown(photo: Long = 0, video: Long = 0, audio: Long = 0, document: Long = 0): MediaTable.StorageBreakdown {
+    return MediaTable.StorageBreakdown(photoSize = photo, videoSize = video, audioSize = audio, documentSize = document)
+  }
+}
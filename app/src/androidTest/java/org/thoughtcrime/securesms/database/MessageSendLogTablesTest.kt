@@ -0,0 +1,131 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.signal.core.util.readToSingleInt
+import org.thoughtcrime.securesms.database.model.MessageId
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.whispersystems.signalservice.api.crypto.ContentHint
+import org.whispersystems.signalservice.api.messages.SendMessageResult
+import org.whispersystems.signalservice.api.push.ServiceId
+import org.whispersystems.signalservice.api.push.SignalServiceAddress
+import org.whispersystems.signalservice.internal.push.SignalServiceProtos.Content
+import org.whispersystems.signalservice.internal.push.SignalServiceProtos.DataMessage
+import java.util.Optional
+import java.util.UUID
+
+@RunWith(AndroidJUnit4::class)
+class MessageSendLogTablesTest {
+
+  private lateinit var messageLog: MessageSendLogTables
+  private lateinit var serviceId: ServiceId
+  private lateinit var recipientId: RecipientId
+
+  private val content = Content.newBuilder()
+    .setDataMessage(DataMessage.newBuilder().setBody("Hello"))
+    .build()
+
+  @Before
+  fun setUp() {
+    messageLog = SignalDatabase.messageLog
+    messageLog.deleteAll()
+
+    serviceId = ServiceId.from(UUID.randomUUID())
+    recipientId = SignalDatabase.recipients.getOrInsertFromServiceId(serviceId)
+  }
+
+  @Test
+  fun givenDevice1_whenIInsertAndDelete_thenIExpectLookupToFollow() {
+    assertInsertLookupDelete(1)
+  }
+
+  @Test
+  fun givenDevice62_whenIInsertAndDelete_thenIExpectLookupToFollow() {
+    assertInsertLookupDelete(62)
+  }
+
+  @Test
+  fun givenDevice63_whenIInsertAndDelete_thenIExpectLookupToFollow() {
+    assertInsertLookupDelete(63)
+  }
+
+  @Test
+  fun givenDevice127_whenIInsertAndDelete_thenIExpectLookupToFollow() {
+    assertInsertLookupDelete(127)
+  }
+
+  @Test
+  fun givenDevicesInBothMasks_whenIDeleteOne_thenIExpectTheOthersToRemain() {
+    // GIVEN
+    val sentTimestamp = System.currentTimeMillis()
+    insert(sentTimestamp, listOf(1, 62, 63, 127))
+
+    // WHEN
+    messageLog.deleteEntryForRecipient(sentTimestamp, recipientId, 63)
+
+    // THEN
+    assertNull(messageLog.getLogEntry(recipientId, 63, sentTimestamp))
+    assertNotNull(messageLog.getLogEntry(recipientId, 1, sentTimestamp))
+    assertNotNull(messageLog.getLogEntry(recipientId, 62, sentTimestamp))
+    assertNotNull(messageLog.getLogEntry(recipientId, 127, sentTimestamp))
+  }
+
+  @Test
+  fun givenDevicesInBothMasks_whenIDeleteAll_thenIExpectThePayloadToBeRemoved() {
+    // GIVEN
+    val sentTimestamp = System.currentTimeMillis()
+    insert(sentTimestamp, listOf(1, 127))
+
+    // WHEN
+    messageLog.deleteEntryForRecipient(sentTimestamp, recipientId, 1)
+    messageLog.deleteEntryForRecipient(sentTimestamp, recipientId, 127)
+
+    // THEN
+    assertEquals(0, SignalDatabase.rawDatabase.rawQuery("SELECT COUNT(*) FROM msl_payload").readToSingleInt(-1))
+  }
+
+  @Test
+  fun givenAnUnknownDevice_whenILookItUp_thenIExpectNoEntry() {
+    // GIVEN
+    val sentTimestamp = System.currentTimeMillis()
+    insert(sentTimestamp, listOf(127))
+
+    // THEN
+    assertNull(messageLog.getLogEntry(recipientId, 126, sentTimestamp))
+    assertNull(messageLog.getLogEntry(recipientId, 63, sentTimestamp))
+  }
+
+  private fun assertInsertLookupDelete(device: Int) {
+    // GIVEN
+    val sentTimestamp = System.currentTimeMillis()
+    insert(sentTimestamp, listOf(device))
+
+    // WHEN
+    val entry = messageLog.getLogEntry(recipientId, device, sentTimestamp)
+
+    // THEN
+    assertNotNull(entry)
+    assertEquals(content, entry!!.content)
+
+    // WHEN
+    messageLog.deleteEntryForRecipient(sentTimestamp, recipientId, device)
+
+    // THEN
+    assertNull(messageLog.getLogEntry(recipientId, device, sentTimestamp))
+  }
+
+  private fun insert(sentTimestamp: Long, devices: List<Int>) {
+    val result = SendMessageResult.success(SignalServiceAddress(serviceId), devices, false, false, 0, Optional.of(content))
+    messageLog.insertIfPossible(recipientId, sentTimestamp, result, ContentHint.DEFAULT, MessageId(1), true)
+  }
+}
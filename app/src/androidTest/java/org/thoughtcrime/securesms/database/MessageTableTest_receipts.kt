@@ -0,0 +1,70 @@
+package org.thoughtcrime.securesms.database
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.thoughtcrime.securesms.keyvalue.SignalStore
+import org.thoughtcrime.securesms.recipients.Recipient
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.whispersystems.signalservice.api.push.ACI
+import org.whispersystems.signalservice.api.push.PNI
+import org.whispersystems.signalservice.api.push.ServiceId
+import java.util.UUID
+
+@Suppress("ClassName")
+@RunWith(AndroidJUnit4::class)
+class MessageTableTest_receipts {
+  private lateinit var mms: MessageTable
+
+  private val localAci = ACI.from(UUID.randomUUID())
+  private val localPni = PNI.from(UUID.randomUUID())
+
+  private lateinit var recipients: List<RecipientId>
+
+  @Before
+  fun setUp() {
+    mms = SignalDatabase.messages
+
+    mms.deleteAllThreads()
+
+    SignalStore.account().setAci(localAci)
+    SignalStore.account().setPni(localPni)
+
+    recipients = (0 until 2).map { SignalDatabase.recipients.getOrInsertFromServiceId(ServiceId.from(UUID.randomUUID())) }
+  }
+
+  @Test
+  fun givenSentMessages_whenIIncrementDeliveryReceiptCounts_thenIExpectEveryMessageToBeDelivered() {
+    val first = MmsHelper.insert(recipient = Recipient.resolved(recipients[0]), sentTimeMillis = 1)
+    val second = MmsHelper.insert(recipient = Recipient.resolved(recipients[0]), sentTimeMillis = 2)
+
+    val missing = mms.incrementDeliveryReceiptCounts(listOf(1, 2), recipients[0], 100)
+
+    assertTrue(missing.isEmpty())
+    assertEquals(1, mms.getMessageRecord(first).deliveryReceiptCount)
+    assertEquals(1, mms.getMessageRecord(second).deliveryReceiptCount)
+  }
+
+  @Test
+  fun givenSentMessages_whenIIncrementReadReceiptCountsWithUnknownTimestamps_thenIExpectThemToBeReturned() {
+    val messageId = MmsHelper.insert(recipient = Recipient.resolved(recipients[0]), sentTimeMillis = 1)
+
+    val missing = mms.incrementReadReceiptCounts(listOf(1, 2, 3), recipients[0], 100)
+
+    assertEquals(setOf(2L, 3L), missing)
+    assertEquals(1, mms.getMessageRecord(messageId).readReceiptCount)
+  }
+
+  @Test
+  fun givenAMessageSentToSomeoneElse_whenIIncrementDeliveryReceiptCounts_thenIExpectItToBeUnchanged() {
+    val messageId = MmsHelper.insert(recipient = Recipient.resolved(recipients[1]), sentTimeMillis = 1)
+
+    val missing = mms.incrementDeliveryReceiptCounts(listOf(1), recipients[0], 100)
+
+    assertEquals(setOf(1L), missing)
+    assertEquals(0, mms.getMessageRecord(messageId).deliveryReceiptCount)
+  }
+}
@@ -15,7 +15,7 @@ import org.junit.Test
 import org.junit.runner.RunWith
 import org.signal.core.util.SqlUtil
 import org.signal.core.util.requireLong
-import org.signal.core.util.requireNonNullString
+import org.signal.core.util.requireNonNullBlob
 import org.signal.core.util.select
 import org.signal.libsignal.protocol.IdentityKey
 import org.signal.libsignal.protocol.SignalProtocolAddress
@@ -38,7 +38,6 @@ import org.thoughtcrime.securesms.recipients.Recipient
 import org.thoughtcrime.securesms.recipients.RecipientId
 import org.thoughtcrime.securesms.sms.IncomingEncryptedMessage
 import org.thoughtcrime.securesms.sms.IncomingTextMessage
-import org.thoughtcrime.securesms.util.Base64
 import org.thoughtcrime.securesms.util.FeatureFlags
 import org.thoughtcrime.securesms.util.FeatureFlagsAccessor
 import org.whispersystems.signalservice.api.push.ACI
@@ -1035,7 +1034,7 @@ class RecipientTableTest_getAndPossiblyMerge {
 
   private fun getLatestThreadMergeEvent(recipientId: RecipientId): ThreadMergeEvent? {
     return SignalDatabase.rawDatabase
-      .select(MessageTable.BODY)
+      .select(MessageTable.UPDATE_PAYLOAD)
       .from(MessageTable.TABLE_NAME)
       .where("${MessageTable.FROM_RECIPIENT_ID} = ? AND ${MessageTable.TYPE} = ?", recipientId, MessageTypes.THREAD_MERGE_TYPE)
       .orderBy("${MessageTable.DATE_RECEIVED} DESC")
@@ -1043,7 +1042,7 @@ class RecipientTableTest_getAndPossiblyMerge {
       .run()
       .use { cursor: Cursor ->
         if (cursor.moveToFirst()) {
-          val bytes = Base64.decode(cursor.requireNonNullString(MessageTable.BODY))
+          val bytes = cursor.requireNonNullBlob(MessageTable.UPDATE_PAYLOAD)
           ThreadMergeEvent.parseFrom(bytes)
         } else {
           null
@@ -1053,7 +1052,7 @@ class RecipientTableTest_getAndPossiblyMerge {
 
   private fun getLatestSessionSwitchoverEvent(recipientId: RecipientId): SessionSwitchoverEvent? {
     return SignalDatabase.rawDatabase
-      .select(MessageTable.BODY)
+      .select(MessageTable.UPDATE_PAYLOAD)
       .from(MessageTable.TABLE_NAME)
       .where("${MessageTable.FROM_RECIPIENT_ID} = ? AND ${MessageTable.TYPE} = ?", recipientId, MessageTypes.SESSION_SWITCHOVER_TYPE)
       .orderBy("${MessageTable.DATE_RECEIVED} DESC")
@@ -1061,7 +1060,7 @@ class RecipientTableTest_getAndPossiblyMerge {
       .run()
       .use { cursor: Cursor ->
         if (cursor.moveToFirst()) {
-          val bytes = Base64.decode(cursor.requireNonNullString(MessageTable.BODY))
+          val bytes = cursor.requireNonNullBlob(MessageTable.UPDATE_PAYLOAD)
           SessionSwitchoverEvent.parseFrom(bytes)
         } else {
           null
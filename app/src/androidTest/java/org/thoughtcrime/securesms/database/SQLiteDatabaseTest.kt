@@ -221,4 +221,45 @@ class SQLiteDatabaseTest {
     assertTrue(hasRun1.get())
     assertTrue(hasRun2.get())
   }
+
+  @Test
+  fun runPostFailedTransaction_doesNotRunIfNotInTransaction() {
+    val hasRun = AtomicBoolean(false)
+    db.runPostFailedTransaction { hasRun.set(true) }
+    assertFalse(hasRun.get())
+  }
+
+  @Test
+  fun runPostFailedTransaction_runsAfterFailedTransaction() {
+    val hasRun = AtomicBoolean(false)
+
+    db.beginTransaction()
+
+    db.runPostFailedTransaction { hasRun.set(true) }
+    assertFalse(hasRun.get())
+
+    db.endTransaction()
+
+    assertTrue(hasRun.get())
+  }
+
+  @Test
+  fun runPostFailedTransaction_doesNotRunAfterSuccessfulTransaction() {
+    val hasRun = AtomicBoolean(false)
+
+    db.beginTransaction()
+
+    db.runPostFailedTransaction { hasRun.set(true) }
+
+    db.setTransactionSuccessful()
+    db.endTransaction()
+
+    assertFalse(hasRun.get())
+
+    // Verifying we still don't run it even after a subsequent failure
+    db.beginTransaction()
+    db.endTransaction()
+
+    assertFalse(hasRun.get())
+  }
 }
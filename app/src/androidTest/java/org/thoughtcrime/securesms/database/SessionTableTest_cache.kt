@@ -0,0 +1,129 @@
+package org.thoughtcrime.securesms.database
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.signal.libsignal.protocol.SignalProtocolAddress
+import org.signal.libsignal.protocol.state.SessionRecord
+import org.thoughtcrime.securesms.testing.SignalDatabaseRule
+import org.whispersystems.signalservice.api.push.ACI
+import java.util.UUID
+
+@Suppress("ClassName")
+class SessionTableTest_cache {
+
+  @Rule
+  @JvmField
+  val databaseRule = SignalDatabaseRule()
+
+  private lateinit var db: SQLiteDatabase
+  private lateinit var accountId: ACI
+  private lateinit var address: SignalProtocolAddress
+
+  @Before
+  fun setUp() {
+    db = SignalDatabase.instance!!.signalWritableDatabase
+    accountId = ACI.from(UUID.randomUUID())
+    address = SignalProtocolAddress(UUID.randomUUID().toString(), 1)
+  }
+
+  @Test
+  fun givenAStoredSession_whenILoadIt_thenIExpectTheCachedRecord() {
+    val record = SessionRecord()
+    SignalDatabase.sessions.store(accountId, address, record)
+
+    assertSame(record, SignalDatabase.sessions.load(accountId, address))
+    assertSame(record, SignalDatabase.sessions.load(accountId, listOf(address))[0])
+  }
+
+  @Test
+  fun givenAStoreInACommittedTransaction_whenILoadIt_thenIExpectTheNewRecord() {
+    val original = SessionRecord()
+    val updated = SessionRecord()
+    SignalDatabase.sessions.store(accountId, address, original)
+
+    db.beginTransaction()
+    try {
+      SignalDatabase.sessions.store(accountId, address, updated)
+      assertSame(updated, SignalDatabase.sessions.load(accountId, address))
+      db.setTransactionSuccessful()
+    } finally {
+      db.endTransaction()
+    }
+
+    assertSame(updated, SignalDatabase.sessions.load(accountId, address))
+  }
+
+  @Test
+  fun givenAStoreInARolledBackTransaction_whenILoadIt_thenIExpectTheOriginalRecord() {
+    val original = SessionRecord()
+    val updated = SessionRecord()
+    SignalDatabase.sessions.store(accountId, address, original)
+
+    db.beginTransaction()
+    try {
+      SignalDatabase.sessions.store(accountId, address, updated)
+      assertSame(updated, SignalDatabase.sessions.load(accountId, address))
+    } finally {
+      db.endTransaction()
+    }
+
+    assertSame(original, SignalDatabase.sessions.load(accountId, address))
+  }
+
+  @Test
+  fun givenARecordReadInARolledBackTransaction_whenILoadIt_thenIExpectAFreshCopyFromDisk() {
+    val original = SessionRecord()
+    SignalDatabase.sessions.store(accountId, address, original)
+
+    db.beginTransaction()
+    try {
+      assertSame(original, SignalDatabase.sessions.load(accountId, address))
+    } finally {
+      db.endTransaction()
+    }
+
+    val reloaded = SignalDatabase.sessions.load(accountId, address)
+    assertNotNull(reloaded)
+    assertNotSame(original, reloaded)
+    assertArrayEquals(original.serialize(), reloaded!!.serialize())
+  }
+
+  @Test
+  fun givenADeleteInARolledBackTransaction_whenILoadIt_thenIExpectTheRecordToStillExist() {
+    SignalDatabase.sessions.store(accountId, address, SessionRecord())
+
+    db.beginTransaction()
+    try {
+      SignalDatabase.sessions.delete(accountId, address)
+      assertNull(SignalDatabase.sessions.load(accountId, address))
+    } finally {
+      db.endTransaction()
+    }
+
+    assertNotNull(SignalDatabase.sessions.load(accountId, address))
+  }
+
+  @Test
+  fun givenADeleteAllInACommittedTransaction_whenILoadIt_thenIExpectNothing() {
+    val otherDevice = SignalProtocolAddress(address.name, 2)
+    SignalDatabase.sessions.store(accountId, address, SessionRecord())
+    SignalDatabase.sessions.store(accountId, otherDevice, SessionRecord())
+
+    db.beginTransaction()
+    try {
+      SignalDatabase.sessions.deleteAllFor(accountId, address.name)
+      db.setTransactionSuccessful()
+    } finally {
+      db.endTransaction()
+    }
+
+    assertNull(SignalDatabase.sessions.load(accountId, address))
+    assertNull(SignalDatabase.sessions.load(accountId, otherDevice))
+  }
+}
@@ -0,0 +1,155 @@
+package org.thoughtcrime.securesms.util
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.thoughtcrime.securesms.database.EarlyMessageTable
+import org.thoughtcrime.securesms.database.SignalDatabase
+import org.thoughtcrime.securesms.database.model.ServiceMessageId
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.whispersystems.signalservice.api.crypto.EnvelopeMetadata
+import org.whispersystems.signalservice.api.push.ServiceId
+import org.whispersystems.signalservice.internal.push.SignalServiceProtos.Content
+import org.whispersystems.signalservice.internal.push.SignalServiceProtos.DataMessage
+import org.whispersystems.signalservice.internal.push.SignalServiceProtos.Envelope
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+
+@RunWith(AndroidJUnit4::class)
+class EarlyMessageCacheTest {
+
+  private var now = 1_000_000_000L
+
+  private lateinit var cache: EarlyMessageCache
+  private lateinit var sender: RecipientId
+  private lateinit var senderServiceId: ServiceId
+
+  @Before
+  fun setUp() {
+    SignalDatabase.rawDatabase.delete(EarlyMessageTable.TABLE_NAME, null, null)
+
+    senderServiceId = ServiceId.from(UUID.randomUUID())
+    sender = SignalDatabase.recipients.getOrInsertFromServiceId(senderServiceId)
+    cache = EarlyMessageCache { now }
+  }
+
+  @Test
+  fun givenAStoredEntry_whenIRetrieveIt_thenIGetItOnce() {
+    // GIVEN
+    cache.store(sender, 1, entry(1))
+
+    // WHEN
+    val first = cache.retrieveV2(sender, 1)
+    val second = cache.retrieveV2(sender, 1)
+
+    // THEN
+    assertEquals(listOf(1L), first.get().map { it.envelope.timestamp })
+    assertFalse(second.isPresent)
+  }
+
+  @Test
+  fun givenMoreEntriesThanFitInMemory_whenIRetrieveTheEldest_thenItComesFromDisk() {
+    // GIVEN
+    for (i in 1..MEMORY_CACHE_SIZE + 1) {
+      cache.store(sender, i.toLong(), entry(i.toLong()))
+      now++
+    }
+
+    // THEN
+    assertEquals(1, cache.stats.spilled)
+    assertTrue(cache.allReferencedIds.contains(ServiceMessageId(sender, 1)))
+
+    // WHEN
+    val results = cache.retrieveAllV2(listOf(ServiceMessageId(sender, 1), ServiceMessageId(sender, MEMORY_CACHE_SIZE + 1L)))
+
+    // THEN
+    assertEquals(listOf(1L), results[ServiceMessageId(sender, 1)]!!.map { it.envelope.timestamp })
+    assertEquals(listOf(MEMORY_CACHE_SIZE + 1L), results[ServiceMessageId(sender, MEMORY_CACHE_SIZE + 1L)]!!.map { it.envelope.timestamp })
+    assertFalse(cache.allReferencedIds.contains(ServiceMessageId(sender, 1)))
+  }
+
+  @Test
+  fun givenASpilledEntry_whenANewCacheIsCreated_thenItIsStillRetrievable() {
+    // GIVEN
+    for (i in 1..MEMORY_CACHE_SIZE + 1) {
+      cache.store(sender, i.toLong(), entry(i.toLong()))
+    }
+
+    // WHEN
+    val restarted = EarlyMessageCache { now }
+
+    // THEN
+    assertEquals(setOf(ServiceMessageId(sender, 1)), restarted.allReferencedIds.toSet())
+    assertEquals(listOf(1L), restarted.retrieveV2(sender, 1).get().map { it.envelope.timestamp })
+  }
+
+  @Test
+  fun givenAnExpiredEntryInMemory_whenIRetrieveIt_thenItIsDropped() {
+    // GIVEN
+    cache.store(sender, 1, entry(1))
+    now += MAX_AGE + 1
+
+    // WHEN
+    val result = cache.retrieveV2(sender, 1)
+
+    // THEN
+    assertFalse(result.isPresent)
+    assertEquals(1, cache.stats.drops)
+  }
+
+  @Test
+  fun givenAnExpiredEntryOnDisk_whenIRetrieveIt_thenItIsDroppedAndDeleted() {
+    // GIVEN
+    for (i in 1..MEMORY_CACHE_SIZE + 1) {
+      cache.store(sender, i.toLong(), entry(i.toLong()))
+    }
+    now += MAX_AGE + 1
+
+    // WHEN
+    val result = cache.retrieveV2(sender, 1)
+
+    // THEN
+    assertFalse(result.isPresent)
+    assertTrue(SignalDatabase.earlyMessages.getAllReferencedIds(0).isEmpty())
+  }
+
+  @Test
+  fun givenAnExpiredEntryOnDisk_whenANewCacheIsCreated_thenItIsNotReferenced() {
+    // GIVEN
+    for (i in 1..MEMORY_CACHE_SIZE + 1) {
+      cache.store(sender, i.toLong(), entry(i.toLong()))
+    }
+    now += MAX_AGE + 1
+
+    // WHEN
+    val restarted = EarlyMessageCache { now }
+
+    // THEN
+    assertTrue(restarted.allReferencedIds.isEmpty())
+  }
+
+  private fun entry(timestamp: Long): EarlyMessageCacheEntry {
+    return EarlyMessageCacheEntry(
+      envelope = Envelope.newBuilder().setTimestamp(timestamp).build(),
+      content = Content.newBuilder().setDataMessage(DataMessage.newBuilder().setTimestamp(timestamp)).build(),
+      metadata = EnvelopeMetadata(
+        sourceServiceId = senderServiceId,
+        sourceE164 = null,
+        sourceDeviceId = 1,
+        sealedSender = false,
+        groupId = null,
+        destinationServiceId = senderServiceId
+      ),
+      serverDeliveredTimestamp = timestamp
+    )
+  }
+
+  companion object {
+    private const val MEMORY_CACHE_SIZE = 100
+    private val MAX_AGE = TimeUnit.DAYS.toMillis(1)
+  }
+}
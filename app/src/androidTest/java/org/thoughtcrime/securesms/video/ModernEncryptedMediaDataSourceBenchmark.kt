@@ -0,0 +1,121 @@
+package org.thoughtcrime.securesms.video
+
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.thoughtcrime.securesms.crypto.AttachmentSecretProvider
+import org.thoughtcrime.securesms.crypto.ModernDecryptingPartInputStream
+import org.thoughtcrime.securesms.crypto.ModernEncryptingPartOutputStream
+import java.io.File
+import kotlin.random.Random
+
+/**
+ * Replays the kind of read pattern a media extractor makes against an encrypted mp4 (header probing, a jump to the moov
+ * atom at the end, then interleaved audio/video sample reads) through [ModernEncryptedMediaDataSource], and compares it
+ * against opening a new decrypting stream for every read, which is what the data source used to do.
+ */
+@RunWith(AndroidJUnit4::class)
+class ModernEncryptedMediaDataSourceBenchmark {
+
+  companion object {
+    private val TAG = ModernEncryptedMediaDataSourceBenchmark::class.java.simpleName
+
+    private const val FILE_SIZE = 8 * 1024 * 1024
+  }
+
+  private val context = InstrumentationRegistry.getInstrumentation().targetContext
+  private val attachmentSecret = AttachmentSecretProvider.getInstance(context).getOrCreateAttachmentSecret()
+
+  private lateinit var file: File
+  private lateinit var random: ByteArray
+
+  @Before
+  fun setUp() {
+    file = File.createTempFile("benchmark", ".mms", context.cacheDir)
+
+    val output = ModernEncryptingPartOutputStream.createFor(attachmentSecret, file, false)
+    random = output.first
+    output.second.use { it.write(Random(1337).nextBytes(FILE_SIZE)) }
+  }
+
+  @After
+  fun tearDown() {
+    file.delete()
+  }
+
+  @Test
+  fun replayExtractorReadPattern() {
+    val reads = buildReadPattern()
+
+    val legacyStart = System.nanoTime()
+    val legacyResults = reads.map { (position, length) -> readWithNewStream(position, length) }
+    val legacyMs = (System.nanoTime() - legacyStart) / 1_000_000
+
+    val dataSource = ModernEncryptedMediaDataSource(attachmentSecret, file, random, FILE_SIZE.toLong())
+    val currentStart = System.nanoTime()
+    val currentResults = reads.map { (position, length) ->
+      ByteArray(length).also { dataSource.readAt(position, it, 0, length) }
+    }
+    val currentMs = (System.nanoTime() - currentStart) / 1_000_000
+    dataSource.close()
+
+    Log.i(TAG, "${reads.size} reads. Stream per read: $legacyMs ms, random access reader: $currentMs ms")
+
+    for (i in reads.indices) {
+      assertArrayEquals(legacyResults[i], currentResults[i])
+    }
+  }
+
+  private fun buildReadPattern(): List<Pair<Long, Int>> {
+    val reads = mutableListOf<Pair<Long, Int>>()
+    val pattern = Random(42)
+
+    // Probe the atom headers at the front
+    var position = 0L
+    repeat(8) {
+      reads += position to 8
+      position += pattern.nextInt(16, 4096)
+    }
+
+    // The moov atom is often at the end
+    val moovStart = FILE_SIZE - 64 * 1024L
+    var moovPosition = moovStart
+    while (moovPosition < FILE_SIZE - 4096) {
+      reads += moovPosition to 4096
+      moovPosition += 4096
+    }
+
+    // Interleaved video and audio samples
+    var video = 32 * 1024L
+    var audio = FILE_SIZE / 2L
+    while (video < moovStart - 64 * 1024 && audio < moovStart - 2048) {
+      val videoLength = pattern.nextInt(2 * 1024, 48 * 1024)
+      reads += video to videoLength
+      video += videoLength
+
+      val audioLength = pattern.nextInt(200, 2048)
+      reads += audio to audioLength
+      audio += audioLength
+    }
+
+    return reads
+  }
+
+  private fun readWithNewStream(position: Long, length: Int): ByteArray {
+    val result = ByteArray(length)
+    ModernDecryptingPartInputStream.createFor(attachmentSecret, random, file, position).use { stream ->
+      var read = 0
+      while (read < length) {
+        val count = stream.read(result, read, length - read)
+        if (count == -1) break
+        read += count
+      }
+    }
+    return result
+  }
+}
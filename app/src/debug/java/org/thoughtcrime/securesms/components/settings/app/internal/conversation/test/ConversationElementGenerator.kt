@@ -89,6 +89,7 @@ class ConversationElementGenerator {
       1,
       1,
       testMessage,
+      null,
       SlideDeck(),
       if (isIncoming) getIncomingType() else getPendingOutgoingType(),
       emptySet(),
@@ -41,6 +41,7 @@ import org.signal.ringrtc.CallManager;
 import org.thoughtcrime.securesms.avatar.AvatarPickerStorage;
 import org.thoughtcrime.securesms.crypto.AttachmentSecretProvider;
 import org.thoughtcrime.securesms.crypto.DatabaseSecretProvider;
+import org.thoughtcrime.securesms.database.DatabaseMonitor;
 import org.thoughtcrime.securesms.database.LogDatabase;
 import org.thoughtcrime.securesms.database.SignalDatabase;
 import org.thoughtcrime.securesms.database.SqlCipherLibraryLoader;
@@ -64,6 +65,7 @@ import org.thoughtcrime.securesms.jobs.PushNotificationReceiveJob;
 import org.thoughtcrime.securesms.jobs.RefreshSvrCredentialsJob;
 import org.thoughtcrime.securesms.jobs.RetrieveProfileJob;
 import org.thoughtcrime.securesms.jobs.RetrieveRemoteAnnouncementsJob;
+import org.thoughtcrime.securesms.jobs.SendDeliveryReceiptJob;
 import org.thoughtcrime.securesms.jobs.StoryOnboardingDownloadJob;
 import org.thoughtcrime.securesms.jobs.SubscriptionKeepAliveJob;
 import org.thoughtcrime.securesms.keyvalue.KeepMessagesDuration;
@@ -102,6 +104,8 @@ import org.thoughtcrime.securesms.util.dynamiclanguage.DynamicLanguageContextWra
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.security.Security;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -155,27 +159,27 @@ public class ApplicationContext extends MultiDexApplication implements AppForegr
                               initializeLogging();
                               Log.i(TAG, "onCreate()");
                             })
-                            .addBlocking("security-provider", this::initializeSecurityProvider)
-                            .addBlocking("crash-handling", this::initializeCrashHandling)
-                            .addBlocking("rx-init", this::initializeRx)
-                            .addBlocking("event-bus", () -> EventBus.builder().logNoSubscriberMessages(false).installDefaultEventBus())
-                            .addBlocking("app-dependencies", this::initializeAppDependencies)
-                            .addBlocking("first-launch", this::initializeFirstEverAppLaunch)
-                            .addBlocking("app-migrations", this::initializeApplicationMigrations)
-                            .addBlocking("mark-registration", () -> RegistrationUtil.maybeMarkRegistrationComplete())
-                            .addBlocking("lifecycle-observer", () -> ApplicationDependencies.getAppForegroundObserver().addListener(this))
-                            .addBlocking("message-retriever", this::initializeMessageRetrieval)
-                            .addBlocking("dynamic-theme", () -> DynamicTheme.setDefaultDayNightMode(this))
-                            .addBlocking("proxy-init", () -> {
+                            .addBlockingInBackground("security-provider", Collections.singletonList("logging"), this::initializeSecurityProvider)
+                            .addBlocking("crash-handling", Collections.singletonList("logging"), this::initializeCrashHandling)
+                            .addBlocking("rx-init", Collections.singletonList("crash-handling"), this::initializeRx)
+                            .addBlocking("event-bus", Collections.singletonList("rx-init"), () -> EventBus.builder().logNoSubscriberMessages(false).installDefaultEventBus())
+                            .addBlocking("app-dependencies", Collections.singletonList("event-bus"), this::initializeAppDependencies)
+                            .addBlocking("first-launch", Arrays.asList("app-dependencies", "security-provider"), this::initializeFirstEverAppLaunch)
+                            .addBlocking("app-migrations", Collections.singletonList("first-launch"), this::initializeApplicationMigrations)
+                            .addBlocking("mark-registration", Collections.singletonList("app-migrations"), () -> RegistrationUtil.maybeMarkRegistrationComplete())
+                            .addBlocking("lifecycle-observer", Collections.singletonList("mark-registration"), () -> ApplicationDependencies.getAppForegroundObserver().addListener(this))
+                            .addBlocking("message-retriever", Collections.singletonList("lifecycle-observer"), this::initializeMessageRetrieval)
+                            .addBlocking("dynamic-theme", Collections.singletonList("message-retriever"), () -> DynamicTheme.setDefaultDayNightMode(this))
+                            .addBlocking("proxy-init", Collections.singletonList("dynamic-theme"), () -> {
                               if (SignalStore.proxy().isProxyEnabled()) {
                                 Log.w(TAG, "Proxy detected. Enabling Conscrypt.setUseEngineSocketByDefault()");
                                 Conscrypt.setUseEngineSocketByDefault(true);
                               }
                             })
-                            .addBlocking("blob-provider", this::initializeBlobProvider)
-                            .addBlocking("feature-flags", FeatureFlags::init)
-                            .addBlocking("ring-rtc", this::initializeRingRtc)
-                            .addBlocking("glide", () -> SignalGlideModule.setRegisterGlideComponents(new SignalGlideComponents()))
+                            .addBlocking("blob-provider", Collections.singletonList("proxy-init"), this::initializeBlobProvider)
+                            .addBlocking("feature-flags", Collections.singletonList("blob-provider"), FeatureFlags::init)
+                            .addBlockingInBackground("ring-rtc", Collections.singletonList("feature-flags"), this::initializeRingRtc)
+                            .addBlocking("glide", Collections.singletonList("feature-flags"), () -> SignalGlideModule.setRegisterGlideComponents(new SignalGlideComponents()))
                             .addNonBlocking(() -> GlideApp.get(this))
                             .addNonBlocking(this::cleanAvatarStorage)
                             .addNonBlocking(this::initializeRevealableMessageManager)
@@ -190,6 +194,8 @@ public class ApplicationContext extends MultiDexApplication implements AppForegr
                             .addNonBlocking(this::initializeGlideCodecs)
                             .addNonBlocking(StorageSyncHelper::scheduleRoutineSync)
                             .addNonBlocking(() -> ApplicationDependencies.getJobManager().beginJobLoop())
+                            .addNonBlocking(SendDeliveryReceiptJob::restorePendingReceipts)
+                            .addNonBlocking(() -> DatabaseMonitor.setRecordQueryLatency(SignalStore.internalValues().recordQueryLatency()))
                             .addNonBlocking(EmojiSource::refresh)
                             .addNonBlocking(() -> ApplicationDependencies.getGiphyMp4Cache().onAppStart(this))
                             .addNonBlocking(this::ensureProfileUploaded)
@@ -15,20 +15,26 @@ import org.thoughtcrime.securesms.attachments.AttachmentId;
 import org.thoughtcrime.securesms.backup.proto.Attachment;
 import org.thoughtcrime.securesms.backup.proto.Avatar;
 import org.thoughtcrime.securesms.backup.proto.BackupFrame;
+import org.thoughtcrime.securesms.backup.proto.CompressedSqlStatements;
 import org.thoughtcrime.securesms.backup.proto.DatabaseVersion;
 import org.thoughtcrime.securesms.backup.proto.Header;
 import org.thoughtcrime.securesms.backup.proto.KeyValue;
 import org.thoughtcrime.securesms.backup.proto.SharedPreference;
 import org.thoughtcrime.securesms.backup.proto.SqlStatement;
+import org.thoughtcrime.securesms.backup.proto.SqlStatementBatch;
 import org.thoughtcrime.securesms.backup.proto.Sticker;
 import org.thoughtcrime.securesms.util.Util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -42,6 +48,9 @@ class BackupFrameOutputStream extends FullBackupBase.BackupStream {
 
   private static final String TAG = Log.tag(BackupFrameOutputStream.class);
 
+  /** In transfer mode, statements are buffered until they reach roughly this size, and then written as a single compressed frame. */
+  private static final int STATEMENT_BATCH_SIZE = 64 * 1024;
+
   private final OutputStream outputStream;
   private final Cipher       cipher;
   private final Mac          mac;
@@ -49,10 +58,21 @@ class BackupFrameOutputStream extends FullBackupBase.BackupStream {
   private final byte[] cipherKey;
   private final byte[] iv;
   private       int    counter;
+  private final int    version;
+
+  /** Whether the receiver can read transfer frames. See {@link BackupVersions#TRANSFER_FRAMES_DATABASE_VERSION}. */
+  private final boolean transferFrames;
+
+  private final List<SqlStatement> pendingStatements = new ArrayList<>();
+  private       int                pendingStatementsSize;
 
   private int frames;
 
   BackupFrameOutputStream(@NonNull OutputStream output, @NonNull String passphrase) throws IOException {
+    this(output, passphrase, false);
+  }
+
+  BackupFrameOutputStream(@NonNull OutputStream output, @NonNull String passphrase, boolean transferFrames) throws IOException {
     try {
       byte[]   salt    = Util.getSecretBytes(32);
       byte[]   key     = getBackupKey(passphrase, salt);
@@ -62,18 +82,20 @@ class BackupFrameOutputStream extends FullBackupBase.BackupStream {
       this.cipherKey = split[0];
       byte[] macKey = split[1];
 
-      this.cipher       = Cipher.getInstance("AES/CTR/NoPadding");
-      this.mac          = Mac.getInstance("HmacSHA256");
-      this.outputStream = output;
-      this.iv           = Util.getSecretBytes(16);
-      this.counter      = Conversions.byteArrayToInt(iv);
+      this.cipher         = Cipher.getInstance("AES/CTR/NoPadding");
+      this.mac            = Mac.getInstance("HmacSHA256");
+      this.outputStream   = output;
+      this.iv             = Util.getSecretBytes(16);
+      this.counter        = Conversions.byteArrayToInt(iv);
+      this.version        = BackupVersions.CURRENT_VERSION;
+      this.transferFrames = transferFrames;
 
       mac.init(new SecretKeySpec(macKey, "HmacSHA256"));
 
       byte[] header = new BackupFrame.Builder().header_(new Header.Builder()
                                                             .iv(new okio.ByteString(iv))
                                                             .salt(new okio.ByteString(salt))
-                                                            .version(BackupVersions.CURRENT_VERSION)
+                                                            .version(version)
                                                             .build())
                                                .build()
                                                .encode();
@@ -94,7 +116,73 @@ class BackupFrameOutputStream extends FullBackupBase.BackupStream {
   }
 
   public void write(SqlStatement statement) throws IOException {
-    write(outputStream, new BackupFrame.Builder().statement(statement).build());
+    if (!transferFrames) {
+      write(outputStream, new BackupFrame.Builder().statement(statement).build());
+      return;
+    }
+
+    pendingStatements.add(statement);
+    pendingStatementsSize += SqlStatement.ADAPTER.encodedSize(statement);
+
+    if (pendingStatementsSize >= STATEMENT_BATCH_SIZE) {
+      flushStatements();
+    }
+  }
+
+  /**
+   * Only valid in transfer mode. Indicates that the attachment shares its data with one that has already been written, so the data itself is skipped.
+   */
+  public void writeDuplicate(@NonNull AttachmentId attachmentId, @NonNull AttachmentId duplicateOf) throws IOException {
+    if (!transferFrames) {
+      throw new IllegalStateException("Duplicate attachments are only supported in transfers!");
+    }
+
+    write(outputStream, new BackupFrame.Builder()
+        .attachment(new Attachment.Builder()
+                        .rowId(attachmentId.getRowId())
+                        .attachmentId(attachmentId.getUniqueId())
+                        .length(0)
+                        .duplicateOfRowId(duplicateOf.getRowId())
+                        .duplicateOfAttachmentId(duplicateOf.getUniqueId())
+                        .build())
+        .build());
+  }
+
+  private void flushStatements() throws IOException {
+    if (pendingStatements.isEmpty()) {
+      return;
+    }
+
+    byte[] batch = new SqlStatementBatch.Builder().statements(pendingStatements).build().encode();
+
+    pendingStatements.clear();
+    pendingStatementsSize = 0;
+
+    write(outputStream, new BackupFrame.Builder()
+        .compressedStatements(new CompressedSqlStatements.Builder()
+                                  .deflatedBatch(new okio.ByteString(deflate(batch)))
+                                  .build())
+        .build());
+  }
+
+  private static byte[] deflate(@NonNull byte[] data) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+
+      ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2);
+      byte[]                buffer = new byte[8192];
+
+      while (!deflater.finished()) {
+        int written = deflater.deflate(buffer);
+        output.write(buffer, 0, written);
+      }
+
+      return output.toByteArray();
+    } finally {
+      deflater.end();
+    }
   }
 
   public void write(@NonNull String avatarName, @NonNull InputStream in, long size) throws IOException {
@@ -201,6 +289,11 @@ class BackupFrameOutputStream extends FullBackupBase.BackupStream {
   }
 
   private void write(@NonNull OutputStream out, @NonNull BackupFrame frame) throws IOException {
+    if (frame.compressedStatements == null) {
+      // Anything that follows a statement may depend on it (e.g. attachments on their rows), so statements must be written first
+      flushStatements();
+    }
+
     try {
       Conversions.intToByteArray(iv, 0, counter++);
       cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(cipherKey, "AES"), new IvParameterSpec(iv));
@@ -209,7 +302,7 @@ class BackupFrameOutputStream extends FullBackupBase.BackupStream {
 
       // this assumes a stream cipher
       byte[] length = Conversions.intToByteArray(encodedFrame.length + 10);
-      if (BackupVersions.isFrameLengthEncrypted(BackupVersions.CURRENT_VERSION)) {
+      if (BackupVersions.isFrameLengthEncrypted(version)) {
         byte[] encryptedLength = cipher.update(length);
         if (encryptedLength.length != length.length) {
           throw new IOException("Stream cipher assumption has been violated!");
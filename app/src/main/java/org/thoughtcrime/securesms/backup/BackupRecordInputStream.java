@@ -67,7 +67,9 @@ class BackupRecordInputStream extends FullBackupBase.BackupStream {
       }
 
       this.version = header.version != null ? header.version : 0;
-      if (!BackupVersions.isCompatible(version)) {
+      if (version > BackupVersions.CURRENT_VERSION) {
+        throw new FullBackupImporter.DatabaseDowngradeException("Tried to import a backup with format version " + version + ", but we only support up to " + BackupVersions.CURRENT_VERSION);
+      } else if (!BackupVersions.isCompatible(version)) {
         throw new IOException("Invalid backup version: " + version);
       }
 
@@ -9,6 +9,15 @@ object BackupVersions {
   const val CURRENT_VERSION = 1
   const val MINIMUM_VERSION = 0
 
+  /**
+   * The first database version whose importer understands transfer frames (batched statements and duplicate attachments).
+   *
+   * Transfers still use [CURRENT_VERSION] in their header, so that an older receiver gets as far as the database version frame, which is
+   * always written first, and fails there with a [FullBackupImporter.DatabaseDowngradeException]. Receivers never import a backup from a
+   * newer database, so a sender at or above this version knows that any receiver that gets past that frame can read transfer frames.
+   */
+  const val TRANSFER_FRAMES_DATABASE_VERSION = 200
+
   @JvmStatic
   fun isCompatible(version: Int): Boolean {
     return version in MINIMUM_VERSION..CURRENT_VERSION
@@ -18,4 +27,9 @@ object BackupVersions {
   fun isFrameLengthEncrypted(version: Int): Boolean {
     return version >= 1
   }
+
+  @JvmStatic
+  fun supportsTransferFrames(databaseVersion: Int): Boolean {
+    return databaseVersion >= TRANSFER_FRAMES_DATABASE_VERSION
+  }
 }
@@ -29,9 +29,11 @@ import org.thoughtcrime.securesms.crypto.AttachmentSecret;
 import org.thoughtcrime.securesms.crypto.ClassicDecryptingPartInputStream;
 import org.thoughtcrime.securesms.crypto.ModernDecryptingPartInputStream;
 import org.thoughtcrime.securesms.database.AttachmentTable;
+import org.thoughtcrime.securesms.database.EarlyMessageTable;
 import org.thoughtcrime.securesms.database.EmojiSearchTable;
 import org.thoughtcrime.securesms.database.GroupReceiptTable;
 import org.thoughtcrime.securesms.database.KeyValueDatabase;
+import org.thoughtcrime.securesms.database.MediaTable;
 import org.thoughtcrime.securesms.database.MentionTable;
 import org.thoughtcrime.securesms.database.MessageTable;
 import org.thoughtcrime.securesms.database.OneTimePreKeyTable;
@@ -91,7 +93,11 @@ public class FullBackupExporter extends FullBackupBase {
       SenderKeyTable.TABLE_NAME,
       SenderKeySharedTable.TABLE_NAME,
       PendingRetryReceiptTable.TABLE_NAME,
-      AvatarPickerDatabase.TABLE_NAME
+      AvatarPickerDatabase.TABLE_NAME,
+      MediaTable.INDEX_TABLE_NAME,
+      MediaTable.STORAGE_FILE_TABLE_NAME,
+      MediaTable.STORAGE_TOTAL_TABLE_NAME,
+      EarlyMessageTable.TABLE_NAME
   );
 
   public static BackupEvent export(@NonNull Context context,
@@ -103,7 +109,7 @@ public class FullBackupExporter extends FullBackupBase {
       throws IOException
   {
     try (OutputStream outputStream = new FileOutputStream(output)) {
-      return internalExport(context, attachmentSecret, input, outputStream, passphrase, true, cancellationSignal);
+      return internalExport(context, attachmentSecret, input, outputStream, passphrase, true, false, cancellationSignal);
     }
   }
 
@@ -117,10 +123,14 @@ public class FullBackupExporter extends FullBackupBase {
       throws IOException
   {
     try (OutputStream outputStream = Objects.requireNonNull(context.getContentResolver().openOutputStream(output.getUri()))) {
-      return internalExport(context, attachmentSecret, input, outputStream, passphrase, true, cancellationSignal);
+      return internalExport(context, attachmentSecret, input, outputStream, passphrase, true, false, cancellationSignal);
     }
   }
 
+  /**
+   * Writes the backup stream for a device transfer. This uses the transfer-only version of the format, which compresses
+   * statements and skips sending the same attachment data more than once.
+   */
   public static void transfer(@NonNull Context context,
                               @NonNull AttachmentSecret attachmentSecret,
                               @NonNull SQLiteDatabase input,
@@ -128,7 +138,7 @@ public class FullBackupExporter extends FullBackupBase {
                               @NonNull String passphrase)
       throws IOException
   {
-    EventBus.getDefault().post(internalExport(context, attachmentSecret, input, outputStream, passphrase, false, () -> false));
+    EventBus.getDefault().post(internalExport(context, attachmentSecret, input, outputStream, passphrase, false, true, () -> false));
   }
 
   private static BackupEvent internalExport(@NonNull Context context,
@@ -137,12 +147,15 @@ public class FullBackupExporter extends FullBackupBase {
                                             @NonNull OutputStream fileOutputStream,
                                             @NonNull String passphrase,
                                             boolean closeOutputStream,
+                                            boolean transfer,
                                             @NonNull BackupCancellationSignal cancellationSignal)
       throws IOException
   {
-    BackupFrameOutputStream outputStream          = new BackupFrameOutputStream(fileOutputStream, passphrase);
-    int                     count                 = 0;
-    long                    estimatedCountOutside;
+    boolean                   transferFrames        = transfer && BackupVersions.supportsTransferFrames(input.getVersion());
+    BackupFrameOutputStream   outputStream          = new BackupFrameOutputStream(fileOutputStream, passphrase, transferFrames);
+    Map<String, AttachmentId> sentAttachmentData    = transferFrames ? new HashMap<>() : null;
+    int                       count                 = 0;
+    long                      estimatedCountOutside;
 
     try {
       outputStream.writeDatabaseVersion(input.getVersion());
@@ -167,7 +180,7 @@ public class FullBackupExporter extends FullBackupBase {
         } else if (table.equals(GroupReceiptTable.TABLE_NAME)) {
           count = exportTable(table, input, outputStream, cursor -> isForNonExpiringMmsMessage(input, cursor.getLong(cursor.getColumnIndexOrThrow(GroupReceiptTable.MMS_ID))), null, count, estimatedCount, cancellationSignal);
         } else if (table.equals(AttachmentTable.TABLE_NAME)) {
-          count = exportTable(table, input, outputStream, cursor -> isForNonExpiringMmsMessage(input, cursor.getLong(cursor.getColumnIndexOrThrow(AttachmentTable.MMS_ID))), (cursor, innerCount) -> exportAttachment(attachmentSecret, cursor, outputStream, innerCount, estimatedCount), count, estimatedCount, cancellationSignal);
+          count = exportTable(table, input, outputStream, cursor -> isForNonExpiringMmsMessage(input, cursor.getLong(cursor.getColumnIndexOrThrow(AttachmentTable.MMS_ID))), (cursor, innerCount) -> exportAttachment(attachmentSecret, cursor, outputStream, sentAttachmentData, innerCount, estimatedCount), count, estimatedCount, cancellationSignal);
         } else if (table.equals(StickerTable.TABLE_NAME)) {
           count = exportTable(table, input, outputStream, cursor -> true, (cursor, innerCount) -> exportSticker(attachmentSecret, cursor, outputStream, innerCount, estimatedCount), count, estimatedCount, cancellationSignal);
         } else if (!TABLE_CONTENT_BLOCKLIST.contains(table)) {
@@ -437,9 +450,13 @@ public class FullBackupExporter extends FullBackupBase {
     return count;
   }
 
+  /**
+   * @param sentAttachmentData If present, tracks which attachment first sent each data file, so that rows sharing a file only send it once.
+   */
   private static int exportAttachment(@NonNull AttachmentSecret attachmentSecret,
                                       @NonNull Cursor cursor,
                                       @NonNull BackupFrameOutputStream outputStream,
+                                      @Nullable Map<String, AttachmentId> sentAttachmentData,
                                       int count,
                                       long estimatedCount)
       throws IOException
@@ -463,8 +480,20 @@ public class FullBackupExporter extends FullBackupBase {
 
     EventBus.getDefault().post(new BackupEvent(BackupEvent.Type.PROGRESS, ++count, estimatedCount));
     if (!TextUtils.isEmpty(data) && size > 0) {
+      AttachmentId attachmentId = new AttachmentId(rowId, uniqueId);
+      AttachmentId duplicateOf  = sentAttachmentData != null ? sentAttachmentData.get(data) : null;
+
+      if (duplicateOf != null) {
+        outputStream.writeDuplicate(attachmentId, duplicateOf);
+        return count;
+      }
+
       try (InputStream inputStream = openAttachmentStream(attachmentSecret, random, data)) {
-        outputStream.write(new AttachmentId(rowId, uniqueId), inputStream, size);
+        outputStream.write(attachmentId, inputStream, size);
+
+        if (sentAttachmentData != null) {
+          sentAttachmentData.put(data, attachmentId);
+        }
       } catch (FileNotFoundException e) {
         Log.w(TAG, "Missing attachment", e);
       }
@@ -19,16 +19,19 @@ import org.signal.core.util.logging.Log;
 import org.thoughtcrime.securesms.backup.proto.Attachment;
 import org.thoughtcrime.securesms.backup.proto.Avatar;
 import org.thoughtcrime.securesms.backup.proto.BackupFrame;
+import org.thoughtcrime.securesms.backup.proto.CompressedSqlStatements;
 import org.thoughtcrime.securesms.backup.proto.DatabaseVersion;
 import org.thoughtcrime.securesms.backup.proto.KeyValue;
 import org.thoughtcrime.securesms.backup.proto.SharedPreference;
 import org.thoughtcrime.securesms.backup.proto.SqlStatement;
+import org.thoughtcrime.securesms.backup.proto.SqlStatementBatch;
 import org.thoughtcrime.securesms.backup.proto.Sticker;
 import org.thoughtcrime.securesms.crypto.AttachmentSecret;
 import org.thoughtcrime.securesms.crypto.ModernEncryptingPartOutputStream;
 import org.thoughtcrime.securesms.database.AttachmentTable;
 import org.thoughtcrime.securesms.database.EmojiSearchTable;
 import org.thoughtcrime.securesms.database.KeyValueDatabase;
+import org.thoughtcrime.securesms.database.MediaTable;
 import org.thoughtcrime.securesms.database.SearchTable;
 import org.thoughtcrime.securesms.database.StickerTable;
 import org.thoughtcrime.securesms.dependencies.ApplicationDependencies;
@@ -57,6 +60,8 @@ import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 public class FullBackupImporter extends FullBackupBase {
 
@@ -84,7 +89,8 @@ public class FullBackupImporter extends FullBackupBase {
     db.beginTransaction();
     keyValueDatabase.beginTransaction();
     try {
-      BackupRecordInputStream inputStream = new BackupRecordInputStream(is, passphrase);
+      BackupRecordInputStream inputStream      = new BackupRecordInputStream(is, passphrase);
+      List<String>            deferredTriggers = new LinkedList<>();
 
       dropAllTables(db);
 
@@ -94,14 +100,25 @@ public class FullBackupImporter extends FullBackupBase {
         if (count % 100 == 0) EventBus.getDefault().post(new BackupEvent(BackupEvent.Type.PROGRESS, count, 0));
         count++;
 
-        if      (frame.version != null)    processVersion(db, frame.version);
-        else if (frame.statement != null)  processStatement(db, frame.statement);
-        else if (frame.preference != null) processPreference(context, frame.preference);
-        else if (frame.attachment != null) processAttachment(context, attachmentSecret, db, frame.attachment, inputStream);
-        else if (frame.sticker != null)    processSticker(context, attachmentSecret, db, frame.sticker, inputStream);
-        else if (frame.avatar != null)     processAvatar(context, db, frame.avatar, inputStream);
-        else if (frame.keyValue != null)   processKeyValue(frame.keyValue);
-        else                            count--;
+        if      (frame.version != null)              processVersion(db, frame.version);
+        else if (frame.statement != null)            processStatement(db, frame.statement, deferredTriggers);
+        else if (frame.compressedStatements != null) processCompressedStatements(db, frame.compressedStatements, deferredTriggers);
+        else if (frame.preference != null)           processPreference(context, frame.preference);
+        else if (frame.attachment != null)           processAttachment(context, attachmentSecret, db, frame.attachment, inputStream);
+        else if (frame.sticker != null)              processSticker(context, attachmentSecret, db, frame.sticker, inputStream);
+        else if (frame.avatar != null)               processAvatar(context, db, frame.avatar, inputStream);
+        else if (frame.keyValue != null)             processKeyValue(frame.keyValue);
+        else                                         count--;
+      }
+
+      // The media triggers would otherwise fire for every restored attachment and message, only for the rebuild to redo it all in one go
+      for (String trigger : deferredTriggers) {
+        db.execSQL(trigger);
+      }
+
+      // Backups from before the media index don't have its tables yet. The migration will build it instead.
+      if (SqlUtil.tableExists(db, MediaTable.INDEX_TABLE_NAME)) {
+        MediaTable.rebuild(db);
       }
 
       db.setTransactionSuccessful();
@@ -142,12 +159,17 @@ public class FullBackupImporter extends FullBackupBase {
     db.setVersion(version.version);
   }
 
-  private static void processStatement(@NonNull SQLiteDatabase db, SqlStatement statement) {
+  private static void processStatement(@NonNull SQLiteDatabase db, SqlStatement statement, @NonNull List<String> deferredTriggers) {
     if (statement.statement == null) {
       Log.w(TAG, "Null statement!");
       return;
     }
 
+    if (isMediaTrigger(statement.statement)) {
+      deferredTriggers.add(statement.statement);
+      return;
+    }
+
     boolean isForMmsFtsSecretTable = statement.statement.contains(SearchTable.FTS_TABLE_NAME + "_");
     boolean isForEmojiSecretTable  = statement.statement.contains(EmojiSearchTable.TABLE_NAME + "_");
     boolean isForSqliteSecretTable = statement.statement.toLowerCase().startsWith("create table sqlite_");
@@ -171,9 +193,62 @@ public class FullBackupImporter extends FullBackupBase {
     else                       db.execSQL(statement.statement);
   }
 
+  private static void processCompressedStatements(@NonNull SQLiteDatabase db, @NonNull CompressedSqlStatements compressedStatements, @NonNull List<String> deferredTriggers)
+      throws IOException
+  {
+    if (compressedStatements.deflatedBatch == null) {
+      Log.w(TAG, "Null statement batch!");
+      return;
+    }
+
+    SqlStatementBatch batch = SqlStatementBatch.ADAPTER.decode(inflate(compressedStatements.deflatedBatch.toByteArray()));
+
+    for (SqlStatement statement : batch.statements) {
+      processStatement(db, statement, deferredTriggers);
+    }
+  }
+
+  /**
+   * Whether this creates one of the triggers that keep the media index and storage totals current. Those are only created once the data
+   * has been restored, since {@link MediaTable#rebuild} recomputes everything they'd do.
+   */
+  private static boolean isMediaTrigger(@NonNull String statement) {
+    String lower = statement.trim().toLowerCase();
+    return lower.startsWith("create trigger media_index_") || lower.startsWith("create trigger media_storage_");
+  }
+
+  private static @NonNull byte[] inflate(@NonNull byte[] data) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(data);
+
+      ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 2);
+      byte[]                buffer = new byte[8192];
+
+      while (!inflater.finished()) {
+        int read = inflater.inflate(buffer);
+        if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Truncated statement batch!");
+        }
+        output.write(buffer, 0, read);
+      }
+
+      return output.toByteArray();
+    } catch (DataFormatException e) {
+      throw new IOException(e);
+    } finally {
+      inflater.end();
+    }
+  }
+
   private static void processAttachment(@NonNull Context context, @NonNull AttachmentSecret attachmentSecret, @NonNull SQLiteDatabase db, @NonNull Attachment attachment, BackupRecordInputStream inputStream)
       throws IOException
   {
+    if (attachment.duplicateOfRowId != null && attachment.duplicateOfAttachmentId != null) {
+      processDuplicateAttachment(db, attachment);
+      return;
+    }
+
     File                       dataFile = AttachmentTable.newFile(context);
     Pair<byte[], OutputStream> output   = ModernEncryptingPartOutputStream.createFor(attachmentSecret, dataFile, false);
 
@@ -196,6 +271,21 @@ public class FullBackupImporter extends FullBackupBase {
               new String[] {String.valueOf(attachment.rowId), String.valueOf(attachment.attachmentId)});
   }
 
+  /**
+   * The data for this attachment was already sent for an earlier one, so we point at the same file rather than reading anything from the stream.
+   */
+  private static void processDuplicateAttachment(@NonNull SQLiteDatabase db, @NonNull Attachment attachment) {
+    String source = "(SELECT %s FROM " + AttachmentTable.TABLE_NAME + " WHERE " + AttachmentTable.ROW_ID + " = ? AND " + AttachmentTable.UNIQUE_ID + " = ?)";
+
+    db.execSQL("UPDATE " + AttachmentTable.TABLE_NAME + " SET " +
+               AttachmentTable.DATA + " = " + String.format(source, AttachmentTable.DATA) + ", " +
+               AttachmentTable.DATA_RANDOM + " = " + String.format(source, AttachmentTable.DATA_RANDOM) + " " +
+               "WHERE " + AttachmentTable.ROW_ID + " = ? AND " + AttachmentTable.UNIQUE_ID + " = ?",
+               new Object[] { attachment.duplicateOfRowId, attachment.duplicateOfAttachmentId,
+                              attachment.duplicateOfRowId, attachment.duplicateOfAttachmentId,
+                              attachment.rowId, attachment.attachmentId });
+  }
+
   private static void processSticker(@NonNull Context context, @NonNull AttachmentSecret attachmentSecret, @NonNull SQLiteDatabase db, @NonNull Sticker sticker, BackupRecordInputStream inputStream)
       throws IOException
   {
@@ -358,7 +448,11 @@ public class FullBackupImporter extends FullBackupBase {
 
   public static class DatabaseDowngradeException extends IOException {
     DatabaseDowngradeException(int currentVersion, int backupVersion) {
-      super("Tried to import a backup with version " + backupVersion + " into a database with version " + currentVersion);
+      this("Tried to import a backup with version " + backupVersion + " into a database with version " + currentVersion);
+    }
+
+    DatabaseDowngradeException(@NonNull String message) {
+      super(message);
     }
   }
 
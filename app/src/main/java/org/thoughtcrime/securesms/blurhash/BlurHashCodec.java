@@ -0,0 +1,282 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.blurhash;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.thoughtcrime.securesms.util.LRUCache;
+
+import static org.thoughtcrime.securesms.blurhash.BlurHashUtil.linearTosRGB;
+import static org.thoughtcrime.securesms.blurhash.BlurHashUtil.sRGBToLinear;
+import static org.thoughtcrime.securesms.blurhash.BlurHashUtil.signPow;
+
+/**
+ * The math behind {@link BlurHashDecoder} and {@link BlurHashEncoder}, kept free of Android classes so that it
+ * can be tested and benchmarked on the JVM.
+ *
+ * The blur hash basis is separable, i.e. cos(PI * x * i / w) * cos(PI * y * j / h), so rather than evaluating it for every
+ * pixel and component, we look up a cosine table for each axis and fold one axis at a time. Tables are cached
+ * per (size, component count), sRGB conversions go through lookup tables, and per-thread scratch buffers
+ * mean a decode into a caller-provided pixel array doesn't allocate.
+ */
+final class BlurHashCodec {
+
+  private static final int MAX_COMPONENTS   = 9;
+  private static final int MAX_BASIS_TABLES = 64;
+
+  /** Fine enough that a lookup is never more than one sRGB step away from the exact conversion. */
+  private static final int LINEAR_TO_SRGB_STEPS = 1 << 14;
+
+  private static final float[]                 SRGB_TO_LINEAR = new float[256];
+  private static final byte[]                  LINEAR_TO_SRGB = new byte[LINEAR_TO_SRGB_STEPS + 1];
+  private static final LRUCache<Long, float[]> BASIS_TABLES   = new LRUCache<>(MAX_BASIS_TABLES);
+  private static final ThreadLocal<Scratch>    SCRATCH        = new ThreadLocal<Scratch>() {
+    @Override
+    protected Scratch initialValue() {
+      return new Scratch();
+    }
+  };
+
+  static {
+    for (int i = 0; i < SRGB_TO_LINEAR.length; i++) {
+      SRGB_TO_LINEAR[i] = (float) sRGBToLinear(i);
+    }
+
+    for (int i = 0; i < LINEAR_TO_SRGB.length; i++) {
+      LINEAR_TO_SRGB[i] = (byte) linearTosRGB(i / (double) LINEAR_TO_SRGB_STEPS);
+    }
+  }
+
+  private BlurHashCodec() {}
+
+  /**
+   * Decodes the hash into the provided ARGB pixel array, which must hold at least width * height pixels.
+   *
+   * @return False if the hash is invalid, in which case the pixel array is left untouched.
+   */
+  static boolean decode(@Nullable String blurHash, int width, int height, float punch, @NonNull int[] pixels) {
+    if (!isValid(blurHash)) {
+      return false;
+    }
+
+    if (pixels.length < width * height) {
+      throw new IllegalArgumentException("Pixel array is too small");
+    }
+
+    int numCompEnc = Base83.decode(blurHash, 0, 1);
+    int numCompX   = (numCompEnc % 9) + 1;
+    int numCompY   = (numCompEnc / 9) + 1;
+    int maxAcEnc   = Base83.decode(blurHash, 1, 2);
+    float maxAc    = (maxAcEnc + 1) / 166f * punch;
+
+    Scratch scratch = SCRATCH.get();
+    float[] colors  = scratch.colors;
+
+    int dc = Base83.decode(blurHash, 2, 6);
+    colors[0] = SRGB_TO_LINEAR[(dc >> 16) & 255];
+    colors[1] = SRGB_TO_LINEAR[(dc >> 8) & 255];
+    colors[2] = SRGB_TO_LINEAR[dc & 255];
+
+    for (int i = 1; i < numCompX * numCompY; i++) {
+      int from = 4 + i * 2;
+      int ac   = Base83.decode(blurHash, from, from + 2);
+
+      colors[i * 3]     = (float) signPow(((ac / (19 * 19)) - 9) / 9.0f, 2f) * maxAc;
+      colors[i * 3 + 1] = (float) signPow((((ac / 19) % 19) - 9) / 9.0f, 2f) * maxAc;
+      colors[i * 3 + 2] = (float) signPow(((ac % 19) - 9) / 9.0f, 2f) * maxAc;
+    }
+
+    float[] basisX    = getBasis(width, numCompX);
+    float[] basisY    = getBasis(height, numCompY);
+    float[] rowColors = scratch.rowColors;
+
+    for (int y = 0; y < height; y++) {
+      for (int i = 0; i < numCompX; i++) {
+        float r = 0, g = 0, b = 0;
+        for (int j = 0; j < numCompY; j++) {
+          float basis = basisY[j * height + y];
+          int   c     = (j * numCompX + i) * 3;
+          r += colors[c]     * basis;
+          g += colors[c + 1] * basis;
+          b += colors[c + 2] * basis;
+        }
+        rowColors[i * 3]     = r;
+        rowColors[i * 3 + 1] = g;
+        rowColors[i * 3 + 2] = b;
+      }
+
+      int rowOffset = y * width;
+
+      for (int x = 0; x < width; x++) {
+        float r = 0, g = 0, b = 0;
+        for (int i = 0; i < numCompX; i++) {
+          float basis = basisX[i * width + x];
+          r += rowColors[i * 3]     * basis;
+          g += rowColors[i * 3 + 1] * basis;
+          b += rowColors[i * 3 + 2] * basis;
+        }
+        pixels[rowOffset + x] = 0xff000000 | (toSRGB(r) << 16) | (toSRGB(g) << 8) | toSRGB(b);
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Encodes the ARGB pixels (alpha is ignored) into a blur hash with the given number of components on each axis.
+   * Sums are accumulated in double so that the quantized output matches the original implementation.
+   */
+  static @NonNull String encode(@NonNull int[] pixels, int width, int height, int componentX, int componentY) {
+    if (componentX < 1 || componentX > MAX_COMPONENTS || componentY < 1 || componentY > MAX_COMPONENTS) {
+      throw new IllegalArgumentException("Blur hash must have between 1 and 9 components");
+    }
+    if (width * height != pixels.length) {
+      throw new IllegalArgumentException("Width and height must match the pixels array");
+    }
+
+    Scratch  scratch = SCRATCH.get();
+    double[] factors = scratch.factors;
+    double[] rowSums = scratch.rowSums;
+    float[]  basisX  = getBasis(width, componentX);
+    float[]  basisY  = getBasis(height, componentY);
+
+    int componentCount = componentX * componentY;
+
+    for (int k = 0; k < componentCount * 3; k++) {
+      factors[k] = 0;
+    }
+
+    for (int y = 0; y < height; y++) {
+      for (int k = 0; k < componentX * 3; k++) {
+        rowSums[k] = 0;
+      }
+
+      int rowOffset = y * width;
+
+      for (int x = 0; x < width; x++) {
+        int   pixel = pixels[rowOffset + x];
+        float r     = SRGB_TO_LINEAR[(pixel >> 16) & 0xff];
+        float g     = SRGB_TO_LINEAR[(pixel >> 8) & 0xff];
+        float b     = SRGB_TO_LINEAR[pixel & 0xff];
+
+        for (int i = 0; i < componentX; i++) {
+          double basis = basisX[i * width + x];
+          rowSums[i * 3]     += basis * r;
+          rowSums[i * 3 + 1] += basis * g;
+          rowSums[i * 3 + 2] += basis * b;
+        }
+      }
+
+      for (int j = 0; j < componentY; j++) {
+        double basis = basisY[j * height + y];
+        for (int i = 0; i < componentX; i++) {
+          int f = (j * componentX + i) * 3;
+          factors[f]     += basis * rowSums[i * 3];
+          factors[f + 1] += basis * rowSums[i * 3 + 1];
+          factors[f + 2] += basis * rowSums[i * 3 + 2];
+        }
+      }
+    }
+
+    double scale = 1.0 / (width * height);
+    for (int k = 0; k < componentCount * 3; k++) {
+      double normalisation = k < 3 ? 1 : 2;
+      factors[k] *= normalisation * scale;
+    }
+
+    char[] hash = new char[1 + 1 + 4 + 2 * (componentCount - 1)];
+
+    Base83.encode(componentX - 1 + (componentY - 1) * 9, 1, hash, 0);
+
+    double maximumValue;
+    if (componentCount > 1) {
+      double actualMaximumValue = Double.NEGATIVE_INFINITY;
+      for (int k = 3; k < componentCount * 3; k++) {
+        actualMaximumValue = Math.max(actualMaximumValue, factors[k]);
+      }
+
+      double quantisedMaximumValue = Math.floor(Math.max(0, Math.min(82, Math.floor(actualMaximumValue * 166 - 0.5))));
+      maximumValue = (quantisedMaximumValue + 1) / 166;
+      Base83.encode(Math.round(quantisedMaximumValue), 1, hash, 1);
+    } else {
+      maximumValue = 1;
+      Base83.encode(0, 1, hash, 1);
+    }
+
+    long dc = (linearTosRGB(factors[0]) << 16) + (linearTosRGB(factors[1]) << 8) + linearTosRGB(factors[2]);
+    Base83.encode(dc, 4, hash, 2);
+
+    for (int i = 1; i < componentCount; i++) {
+      long quantR = quantiseAc(factors[i * 3], maximumValue);
+      long quantG = quantiseAc(factors[i * 3 + 1], maximumValue);
+      long quantB = quantiseAc(factors[i * 3 + 2], maximumValue);
+      Base83.encode(quantR * 19 * 19 + quantG * 19 + quantB, 2, hash, 6 + 2 * (i - 1));
+    }
+
+    return new String(hash);
+  }
+
+  static boolean isValid(@Nullable String blurHash) {
+    if (blurHash == null || blurHash.length() < 6 || !Base83.isValid(blurHash)) {
+      return false;
+    }
+
+    int numCompEnc = Base83.decode(blurHash, 0, 1);
+    int numCompX   = (numCompEnc % 9) + 1;
+    int numCompY   = (numCompEnc / 9) + 1;
+
+    return numCompY <= MAX_COMPONENTS && blurHash.length() == 4 + 2 * numCompX * numCompY;
+  }
+
+  private static int toSRGB(float linear) {
+    if (linear <= 0) {
+      return 0;
+    } else if (linear >= 1) {
+      return 255;
+    } else {
+      return LINEAR_TO_SRGB[(int) (linear * LINEAR_TO_SRGB_STEPS + 0.5f)] & 0xff;
+    }
+  }
+
+  private static long quantiseAc(double value, double maximumValue) {
+    return (long) Math.floor(Math.max(0, Math.min(18, Math.floor(signPow(value / maximumValue, 0.5) * 9 + 9.5))));
+  }
+
+  /**
+   * @return A table where entry [i * size + x] is cos(PI * x * i / size), for each component i.
+   */
+  static @NonNull float[] getBasis(int size, int components) {
+    long key = ((long) size << 8) | components;
+
+    synchronized (BASIS_TABLES) {
+      float[] table = BASIS_TABLES.get(key);
+      if (table != null) {
+        return table;
+      }
+    }
+
+    float[] table = new float[size * components];
+    for (int i = 0; i < components; i++) {
+      for (int x = 0; x < size; x++) {
+        table[i * size + x] = (float) Math.cos(Math.PI * x * i / size);
+      }
+    }
+
+    synchronized (BASIS_TABLES) {
+      BASIS_TABLES.put(key, table);
+    }
+
+    return table;
+  }
+
+  private static final class Scratch {
+    private final float[]  colors    = new float[MAX_COMPONENTS * MAX_COMPONENTS * 3];
+    private final float[]  rowColors = new float[MAX_COMPONENTS * 3];
+    private final double[] factors   = new double[MAX_COMPONENTS * MAX_COMPONENTS * 3];
+    private final double[] rowSums   = new double[MAX_COMPONENTS * 3];
+  }
+}
@@ -6,7 +6,6 @@ import android.graphics.Canvas;
 import android.graphics.ColorFilter;
 import android.graphics.Paint;
 import android.graphics.PixelFormat;
-import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.text.Spannable;
 import android.text.SpannableStringBuilder;
@@ -15,17 +14,22 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
 import org.signal.core.util.ThreadUtil;
 import org.signal.core.util.logging.Log;
 import org.thoughtcrime.securesms.components.emoji.parsing.EmojiDrawInfo;
 import org.thoughtcrime.securesms.components.emoji.parsing.EmojiParser;
-import org.thoughtcrime.securesms.emoji.EmojiPageCache;
+import org.thoughtcrime.securesms.emoji.EmojiGlyphCache;
 import org.thoughtcrime.securesms.emoji.EmojiSource;
 import org.thoughtcrime.securesms.emoji.JumboEmoji;
 import org.thoughtcrime.securesms.util.DeviceProperties;
 import org.thoughtcrime.securesms.util.FutureTaskListener;
+import org.thoughtcrime.securesms.util.concurrent.ListenableFuture;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -96,6 +100,30 @@ public class EmojiProvider {
     return builder;
   }
 
+  /**
+   * Starts decoding the glyphs for every emoji in the given texts ahead of time, so they're ready by the time the texts are shown.
+   */
+  @WorkerThread
+  public static void prefetch(@NonNull Context context, @NonNull Collection<? extends CharSequence> texts) {
+    EmojiSource         source    = EmojiSource.getLatest();
+    EmojiParser         parser    = new EmojiParser(source.getEmojiTree());
+    List<EmojiDrawInfo> drawInfos = new ArrayList<>();
+
+    for (CharSequence text : texts) {
+      if (TextUtils.isEmpty(text)) {
+        continue;
+      }
+
+      for (EmojiParser.Candidate candidate : parser.findCandidates(text)) {
+        drawInfos.add(candidate.getDrawInfo());
+      }
+    }
+
+    if (!drawInfos.isEmpty()) {
+      EmojiGlyphCache.INSTANCE.prefetch(context, source, drawInfos, getLowMemoryDecodeScale(context));
+    }
+  }
+
   static @Nullable Drawable getEmojiDrawable(@NonNull Context context, @Nullable CharSequence emoji) {
     return getEmojiDrawable(context, emoji, false);
   }
@@ -110,7 +138,7 @@ public class EmojiProvider {
   }
 
   /**
-   * Gets an EmojiDrawable from the Page Cache
+   * Gets an EmojiDrawable from the Glyph Cache
    *
    * @param context         Context object used in reading and writing from disk
    * @param drawInfo        Information about the emoji being displayed
@@ -121,17 +149,17 @@ public class EmojiProvider {
       return null;
     }
 
-    final int           lowMemoryDecodeScale = DeviceProperties.isLowMemoryDevice(context) ? 2 : 1;
+    final int           lowMemoryDecodeScale = getLowMemoryDecodeScale(context);
     final EmojiSource   source               = EmojiSource.getLatest();
-    final EmojiDrawable drawable             = new EmojiDrawable(source, drawInfo, lowMemoryDecodeScale);
+    final EmojiDrawable drawable             = new EmojiDrawable(source, lowMemoryDecodeScale);
     final AtomicBoolean jumboLoaded          = new AtomicBoolean(false);
 
-    EmojiPageCache.LoadResult loadResult = EmojiPageCache.INSTANCE.load(context, drawInfo.getPage(), lowMemoryDecodeScale);
+    EmojiGlyphCache.LoadResult loadResult = EmojiGlyphCache.INSTANCE.load(context, source, drawInfo, lowMemoryDecodeScale);
 
-    if (loadResult instanceof EmojiPageCache.LoadResult.Immediate) {
-      ThreadUtil.runOnMain(() -> drawable.setBitmap(((EmojiPageCache.LoadResult.Immediate) loadResult).getBitmap()));
-    } else if (loadResult instanceof EmojiPageCache.LoadResult.Async) {
-      ((EmojiPageCache.LoadResult.Async) loadResult).getTask().addListener(new FutureTaskListener<Bitmap>() {
+    if (loadResult instanceof EmojiGlyphCache.LoadResult.Immediate) {
+      ThreadUtil.runOnMain(() -> drawable.setBitmap(((EmojiGlyphCache.LoadResult.Immediate) loadResult).getBitmap()));
+    } else if (loadResult instanceof EmojiGlyphCache.LoadResult.Async) {
+      ((EmojiGlyphCache.LoadResult.Async) loadResult).getTask().addListener(new ListenableFuture.Listener<Bitmap>() {
         @Override
         public void onSuccess(Bitmap result) {
           ThreadUtil.runOnMain(() -> {
@@ -158,7 +186,7 @@ public class EmojiProvider {
       if (result instanceof JumboEmoji.LoadResult.Immediate) {
         ThreadUtil.runOnMain(() -> {
           jumboLoaded.set(true);
-          drawable.setSingleBitmap(((JumboEmoji.LoadResult.Immediate) result).getBitmap());
+          drawable.setBitmap(((JumboEmoji.LoadResult.Immediate) result).getBitmap());
         });
       } else if (result instanceof JumboEmoji.LoadResult.Async) {
         ((JumboEmoji.LoadResult.Async) result).getTask().addListener(new FutureTaskListener<Bitmap>() {
@@ -166,7 +194,7 @@ public class EmojiProvider {
           public void onSuccess(Bitmap result) {
             ThreadUtil.runOnMain(() -> {
               jumboLoaded.set(true);
-              drawable.setSingleBitmap(result);
+              drawable.setBitmap(result);
               if (onEmojiLoaded != null) {
                 onEmojiLoaded.run();
               }
@@ -191,7 +219,7 @@ public class EmojiProvider {
   }
 
   /**
-   * Gets an EmojiDrawable from the Page Cache synchronously
+   * Gets an EmojiDrawable from the Glyph Cache synchronously
    *
    * @param context         Context object used in reading and writing from disk
    * @param drawInfo        Information about the emoji being displayed
@@ -202,9 +230,9 @@ public class EmojiProvider {
       return null;
     }
 
-    final int           lowMemoryDecodeScale = DeviceProperties.isLowMemoryDevice(context) ? 2 : 1;
+    final int           lowMemoryDecodeScale = getLowMemoryDecodeScale(context);
     final EmojiSource   source               = EmojiSource.getLatest();
-    final EmojiDrawable drawable             = new EmojiDrawable(source, drawInfo, lowMemoryDecodeScale);
+    final EmojiDrawable drawable             = new EmojiDrawable(source, lowMemoryDecodeScale);
 
     Bitmap bitmap = null;
 
@@ -225,20 +253,20 @@ public class EmojiProvider {
       }
 
       if (bitmap != null) {
-        drawable.setSingleBitmap(bitmap);
+        drawable.setBitmap(bitmap);
       }
     }
 
     if (!jumboEmoji || bitmap == null) {
-      EmojiPageCache.LoadResult loadResult = EmojiPageCache.INSTANCE.load(context, drawInfo.getPage(), lowMemoryDecodeScale);
+      EmojiGlyphCache.LoadResult loadResult = EmojiGlyphCache.INSTANCE.load(context, source, drawInfo, lowMemoryDecodeScale);
 
-      if (loadResult instanceof EmojiPageCache.LoadResult.Immediate) {
-        Log.d(TAG, "Cached emoji page: " + drawInfo.getPage().getUri().toString());
-        bitmap = ((EmojiPageCache.LoadResult.Immediate) loadResult).getBitmap();
-      } else if (loadResult instanceof EmojiPageCache.LoadResult.Async) {
-        Log.d(TAG, "Loading emoji page: " + drawInfo.getPage().getUri().toString());
+      if (loadResult instanceof EmojiGlyphCache.LoadResult.Immediate) {
+        Log.d(TAG, "Cached emoji glyph: " + drawInfo.getPage().getUri().toString());
+        bitmap = ((EmojiGlyphCache.LoadResult.Immediate) loadResult).getBitmap();
+      } else if (loadResult instanceof EmojiGlyphCache.LoadResult.Async) {
+        Log.d(TAG, "Loading emoji glyph: " + drawInfo.getPage().getUri().toString());
         try {
-          bitmap = ((EmojiPageCache.LoadResult.Async) loadResult).getTask().get(2, TimeUnit.SECONDS);
+          bitmap = ((EmojiGlyphCache.LoadResult.Async) loadResult).getTask().get(2, TimeUnit.SECONDS);
         } catch (InterruptedException | ExecutionException | TimeoutException exception) {
           Log.d(TAG, "Failed to load emoji bitmap resource", exception);
         }
@@ -252,13 +280,15 @@ public class EmojiProvider {
     return drawable;
   }
 
+  private static int getLowMemoryDecodeScale(@NonNull Context context) {
+    return DeviceProperties.isLowMemoryDevice(context) ? 2 : 1;
+  }
+
   static final class EmojiDrawable extends Drawable {
     private final float intrinsicWidth;
     private final float intrinsicHeight;
-    private final Rect  emojiBounds;
 
-    private Bitmap  bmp;
-    private boolean isSingleBitmap;
+    private Bitmap bmp;
 
     @Override
     public int getIntrinsicWidth() {
@@ -270,21 +300,9 @@ public class EmojiProvider {
       return (int) intrinsicHeight;
     }
 
-    EmojiDrawable(@NonNull EmojiSource source, @NonNull EmojiDrawInfo info, int lowMemoryDecodeScale) {
+    EmojiDrawable(@NonNull EmojiSource source, int lowMemoryDecodeScale) {
       this.intrinsicWidth  = (source.getMetrics().getRawWidth() * source.getDecodeScale()) / lowMemoryDecodeScale;
       this.intrinsicHeight = (source.getMetrics().getRawHeight() * source.getDecodeScale()) / lowMemoryDecodeScale;
-
-      final int glyphWidth  = (int) (intrinsicWidth);
-      final int glyphHeight = (int) (intrinsicHeight);
-      final int index       = info.getIndex();
-      final int emojiPerRow = source.getMetrics().getPerRow();
-      final int xStart      = (index % emojiPerRow) * glyphWidth;
-      final int yStart      = (index / emojiPerRow) * glyphHeight;
-
-      this.emojiBounds = new Rect(xStart + 1,
-                                  yStart + 1,
-                                  xStart + glyphWidth - 1,
-                                  yStart + glyphHeight - 1);
     }
 
     @Override
@@ -293,22 +311,13 @@ public class EmojiProvider {
         return;
       }
 
-      canvas.drawBitmap(bmp,
-                        isSingleBitmap ? null : emojiBounds,
-                        getBounds(),
-                        PAINT);
+      canvas.drawBitmap(bmp, null, getBounds(), PAINT);
     }
 
+    /**
+     * Sets either a single glyph from the page, or a jumbo emoji. Either way, the bitmap is the whole emoji.
+     */
     public void setBitmap(Bitmap bitmap) {
-      setBitmap(bitmap, false);
-    }
-
-    public void setSingleBitmap(Bitmap bitmap) {
-      setBitmap(bitmap, true);
-    }
-
-    private void setBitmap(Bitmap bitmap, boolean isSingleBitmap) {
-      this.isSingleBitmap = isSingleBitmap;
       if (bmp == null || !bmp.sameAs(bitmap)) {
         bmp = bitmap;
         invalidateSelf();
@@ -369,6 +369,15 @@ class InternalSettingsFragment : DSLSettingsFragment(R.string.preferences__inter
         }
       )
 
+      switchPref(
+        title = DSLSettingsText.from("Record query latencies"),
+        summary = DSLSettingsText.from("Time every database query and include the slowest in debug logs. Adds a little work to each query."),
+        isChecked = state.recordQueryLatency,
+        onClick = {
+          viewModel.setRecordQueryLatency(!state.recordQueryLatency)
+        }
+      )
+
       dividerPref()
 
       sectionHeaderPref(DSLSettingsText.from("Group call server"))
@@ -23,5 +23,6 @@ data class InternalSettingsState(
   val canClearOnboardingState: Boolean,
   val pnpInitialized: Boolean,
   val useConversationFragmentV2: Boolean,
-  val useConversationItemV2: Boolean
+  val useConversationItemV2: Boolean,
+  val recordQueryLatency: Boolean
 )
@@ -4,6 +4,7 @@ import androidx.lifecycle.LiveData
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.ViewModelProvider
 import org.signal.ringrtc.CallManager
+import org.thoughtcrime.securesms.database.DatabaseMonitor
 import org.thoughtcrime.securesms.jobs.StoryOnboardingDownloadJob
 import org.thoughtcrime.securesms.keyvalue.InternalValues
 import org.thoughtcrime.securesms.keyvalue.SignalStore
@@ -34,6 +35,12 @@ class InternalSettingsViewModel(private val repository: InternalSettingsReposito
     refresh()
   }
 
+  fun setRecordQueryLatency(enabled: Boolean) {
+    preferenceDataStore.putBoolean(InternalValues.RECORD_QUERY_LATENCY, enabled)
+    DatabaseMonitor.setRecordQueryLatency(enabled)
+    refresh()
+  }
+
   fun setDisableStorageService(enabled: Boolean) {
     preferenceDataStore.putBoolean(InternalValues.DISABLE_STORAGE_SERVICE, enabled)
     refresh()
@@ -142,7 +149,8 @@ class InternalSettingsViewModel(private val repository: InternalSettingsReposito
     canClearOnboardingState = SignalStore.storyValues().hasDownloadedOnboardingStory && Stories.isFeatureEnabled(),
     pnpInitialized = SignalStore.misc().hasPniInitializedDevices(),
     useConversationFragmentV2 = SignalStore.internalValues().useConversationFragmentV2(),
-    useConversationItemV2 = SignalStore.internalValues().useConversationItemV2()
+    useConversationItemV2 = SignalStore.internalValues().useConversationItemV2(),
+    recordQueryLatency = SignalStore.internalValues().recordQueryLatency()
   )
 
   fun onClearOnboardingState() {
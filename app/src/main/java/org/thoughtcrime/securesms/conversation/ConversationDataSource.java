@@ -15,6 +15,7 @@ import org.thoughtcrime.securesms.conversation.ConversationData.MessageRequestDa
 import org.thoughtcrime.securesms.conversation.ConversationMessage.ConversationMessageFactory;
 import org.thoughtcrime.securesms.conversation.v2.data.AttachmentHelper;
 import org.thoughtcrime.securesms.conversation.v2.data.CallHelper;
+import org.thoughtcrime.securesms.conversation.v2.data.EmojiHelper;
 import org.thoughtcrime.securesms.conversation.v2.data.MentionHelper;
 import org.thoughtcrime.securesms.conversation.v2.data.PaymentHelper;
 import org.thoughtcrime.securesms.conversation.v2.data.QuotedHelper;
@@ -107,6 +108,7 @@ public class ConversationDataSource implements PagedDataSource<MessageId, Conver
     ReactionHelper      reactionHelper   = new ReactionHelper();
     PaymentHelper       paymentHelper    = new PaymentHelper();
     CallHelper          callHelper       = new CallHelper();
+    EmojiHelper         emojiHelper      = new EmojiHelper();
     Set<ServiceId>      referencedIds    = new HashSet<>();
 
     try (MessageTable.Reader reader = MessageTable.mmsReaderFor(SignalDatabase.messages().getConversation(threadId, start, length))) {
@@ -119,6 +121,7 @@ public class ConversationDataSource implements PagedDataSource<MessageId, Conver
         attachmentHelper.add(record);
         paymentHelper.add(record);
         callHelper.add(record);
+        emojiHelper.add(record);
 
         UpdateDescription description = record.getUpdateDisplayBody(context, null);
         if (description != null) {
@@ -141,6 +144,9 @@ public class ConversationDataSource implements PagedDataSource<MessageId, Conver
 
     stopwatch.split("messages");
 
+    emojiHelper.prefetchEmoji(context);
+    stopwatch.split("emoji");
+
     mentionHelper.fetchMentions(context);
     stopwatch.split("mentions");
 
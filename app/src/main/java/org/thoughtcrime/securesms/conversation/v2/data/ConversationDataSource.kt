@@ -105,6 +105,7 @@ class ConversationDataSource(
     val reactionHelper = ReactionHelper()
     val paymentHelper = PaymentHelper()
     val callHelper = CallHelper()
+    val emojiHelper = EmojiHelper()
     val referencedIds = hashSetOf<ServiceId>()
 
     MessageTable.mmsReaderFor(SignalDatabase.messages.getConversation(threadId, start.toLong(), length.toLong())).forEach { record ->
@@ -119,6 +120,7 @@ class ConversationDataSource(
       attachmentHelper.add(record)
       paymentHelper.add(record)
       callHelper.add(record)
+      emojiHelper.add(record)
 
       val updateDescription = record.getUpdateDisplayBody(context, null)
       if (updateDescription != null) {
@@ -140,6 +142,9 @@ class ConversationDataSource(
 
     stopwatch.split("messages")
 
+    emojiHelper.prefetchEmoji(context)
+    stopwatch.split("emoji")
+
     mentionHelper.fetchMentions(context)
     stopwatch.split("mentions")
 
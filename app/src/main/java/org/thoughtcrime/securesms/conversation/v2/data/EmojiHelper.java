@@ -0,0 +1,39 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.conversation.v2.data;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import org.thoughtcrime.securesms.components.emoji.EmojiProvider;
+import org.thoughtcrime.securesms.database.model.MessageRecord;
+import org.thoughtcrime.securesms.keyvalue.SignalStore;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Collects the message bodies in a page of the conversation, so the emoji in them can start decoding before the page is bound.
+ */
+public class EmojiHelper {
+
+  private final List<CharSequence> bodies = new LinkedList<>();
+
+  public void add(@NonNull MessageRecord record) {
+    if (!record.isUpdate()) {
+      bodies.add(record.getBody());
+    }
+  }
+
+  public void prefetchEmoji(@NonNull Context context) {
+    if (bodies.isEmpty() || SignalStore.settings().isPreferSystemEmoji()) {
+      return;
+    }
+
+    EmojiProvider.prefetch(context, bodies);
+  }
+}
@@ -8,6 +8,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
+import org.signal.core.util.CursorUtil;
 import org.signal.core.util.Stopwatch;
 import org.signal.core.util.logging.Log;
 import org.signal.paging.PagedDataSource;
@@ -27,9 +28,11 @@ import org.thoughtcrime.securesms.util.SignalTrace;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -67,6 +70,12 @@ abstract class ConversationListDataSource implements PagedDataSource<Long, Conve
 
   @Override
   public @NonNull List<Conversation> load(int start, int length, int totalSize, @NonNull CancellationSignal cancellationSignal) {
+    List<Conversation> prefetched = takePrefetched(start, length);
+    if (prefetched != null) {
+      Log.d(TAG, "load(" + start + ", " + length + "), " + getClass().getSimpleName() + ", " + conversationFilter + ": Using prefetched page.");
+      return prefetched;
+    }
+
     SignalTrace.beginSection("ConversationListDataSource#load");
     Stopwatch stopwatch = new Stopwatch("load(" + start + ", " + length + "), " + getClass().getSimpleName() + ", " + conversationFilter);
 
@@ -124,6 +133,13 @@ abstract class ConversationListDataSource implements PagedDataSource<Long, Conve
     return conversation.getThreadRecord().getThreadId();
   }
 
+  /**
+   * @return The already-loaded conversations for this range, if there are any.
+   */
+  protected @Nullable List<Conversation> takePrefetched(int start, int length) {
+    return null;
+  }
+
   protected abstract int getTotalCount();
   protected abstract Cursor getCursor(long offset, long limit);
 
@@ -160,17 +176,42 @@ abstract class ConversationListDataSource implements PagedDataSource<Long, Conve
   @VisibleForTesting
   static class UnarchivedConversationListDataSource extends ConversationListDataSource {
 
+    /**
+     * The (date, id) of the last unpinned thread read so far, keyed by the unpinned offset that comes right after it. Paging reads
+     * mostly walk forward from the top, so most pages can seek from the previous page's last row instead of skipping over an offset.
+     */
+    private final Map<Long, long[]> unpinnedAnchors = Collections.synchronizedMap(new HashMap<>());
+
     private int totalCount;
     private int pinnedCount;
     private int archivedCount;
     private int unpinnedCount;
 
+    private volatile ConversationListPrefetch.Page prefetchedPage;
+
     UnarchivedConversationListDataSource(@NonNull ConversationFilter conversationFilter, boolean showConversationFooterTip) {
       super(conversationFilter, showConversationFooterTip);
     }
 
     @Override
     protected int getTotalCount() {
+      unpinnedAnchors.clear();
+
+      ConversationListPrefetch.Page page = conversationFilter == ConversationFilter.OFF ? ConversationListPrefetch.take() : null;
+      prefetchedPage = page;
+
+      if (page != null) {
+        UnarchivedConversationListDataSource source = page.getSource();
+
+        pinnedCount   = source.pinnedCount;
+        archivedCount = source.archivedCount;
+        unpinnedCount = source.unpinnedCount;
+        totalCount    = source.totalCount;
+        unpinnedAnchors.putAll(source.unpinnedAnchors);
+
+        return totalCount;
+      }
+
       int unarchivedCount = threadTable.getUnarchivedConversationListCount(conversationFilter);
 
       pinnedCount   = threadTable.getPinnedConversationListCount(conversationFilter);
@@ -193,6 +234,19 @@ abstract class ConversationListDataSource implements PagedDataSource<Long, Conve
       return totalCount;
     }
 
+    @Override
+    protected @Nullable List<Conversation> takePrefetched(int start, int length) {
+      ConversationListPrefetch.Page page = prefetchedPage;
+      prefetchedPage = null;
+
+      if (page == null || start != 0 || length > page.getLength()) {
+        return null;
+      }
+
+      List<Conversation> conversations = page.getConversations();
+      return new ArrayList<>(conversations.subList(0, Math.min(length, conversations.size())));
+    }
+
     @Override
     protected Cursor getCursor(long offset, long limit) {
       List<Cursor> cursors       = new ArrayList<>(5);
@@ -217,9 +271,19 @@ abstract class ConversationListDataSource implements PagedDataSource<Long, Conve
       }
 
       long   unpinnedOffset = Math.max(0, offset - pinnedCount - getHeaderOffset());
-      Cursor unpinnedCursor = threadTable.getUnarchivedConversationList(conversationFilter, false, unpinnedOffset, limit);
+      long[] anchor         = unpinnedOffset > 0 ? unpinnedAnchors.get(unpinnedOffset) : null;
+      Cursor unpinnedCursor = anchor != null ? threadTable.getUnarchivedConversationListAfter(conversationFilter, anchor[0], anchor[1], limit)
+                                             : threadTable.getUnarchivedConversationList(conversationFilter, false, unpinnedOffset, limit);
       cursors.add(unpinnedCursor);
 
+      if (unpinnedCursor.moveToLast()) {
+        long date     = CursorUtil.requireLong(unpinnedCursor, ThreadTable.DATE);
+        long threadId = CursorUtil.requireLong(unpinnedCursor, ThreadTable.ID);
+
+        unpinnedAnchors.put(unpinnedOffset + unpinnedCursor.getCount(), new long[] { date, threadId });
+        unpinnedCursor.moveToPosition(-1);
+      }
+
       boolean shouldInsertConversationFilterFooter = offset + originalLimit >= totalCount && hasConversationFilterFooter();
       boolean shouldInsertArchivedFooter = offset + originalLimit >= totalCount - (shouldInsertConversationFilterFooter ? 1 : 0) && hasArchivedFooter();
       if (shouldInsertArchivedFooter) {
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.conversationlist;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.signal.core.util.ThreadUtil;
+import org.signal.core.util.concurrent.SignalExecutors;
+import org.signal.core.util.logging.Log;
+import org.thoughtcrime.securesms.conversationlist.model.Conversation;
+import org.thoughtcrime.securesms.conversationlist.model.ConversationFilter;
+import org.thoughtcrime.securesms.database.DatabaseObserver;
+import org.thoughtcrime.securesms.dependencies.ApplicationDependencies;
+import org.thoughtcrime.securesms.keyvalue.SignalStore;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the first screenful of the inbox when the UI is launched, so the conversation list has something to show as soon as it's created
+ * rather than waiting on the database. The page is handed to the first unfiltered inbox data source that asks for it, and is dropped
+ * as soon as anything in the conversation list changes, or if nobody asks for it within {@link #PAGE_TIMEOUT_MS}. The conversation list
+ * observer is only registered while there's a page in flight or waiting to be taken.
+ */
+public final class ConversationListPrefetch {
+
+  private static final String TAG = Log.tag(ConversationListPrefetch.class);
+
+  /** The size of the conversation list's first load: one page of 15, plus two pages of buffer. */
+  static final int FIRST_LOAD_SIZE = 45;
+
+  /** How long a prefetched page is kept for the conversation list before it's dropped. */
+  private static final long PAGE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+
+  /** How long the conversation list will wait on a prefetch that's already underway, rather than loading the same page itself. */
+  private static final long IN_FLIGHT_WAIT_MS = 500;
+
+  private static final Object                    LOCK        = new Object();
+  private static final DatabaseObserver.Observer INVALIDATOR = ConversationListPrefetch::invalidate;
+  private static final Runnable                  EXPIRE      = ConversationListPrefetch::expire;
+
+  private static Page    page;
+  private static long    generation;
+  private static boolean started;
+  private static boolean inFlight;
+  private static boolean observing;
+
+  private ConversationListPrefetch() {}
+
+  /**
+   * Starts prefetching in the background. Only the first launch of the UI in a process benefits, since after that the conversation
+   * list's own data is already in memory, so later calls do nothing.
+   */
+  @MainThread
+  public static void prefetchAsync() {
+    synchronized (LOCK) {
+      if (started) {
+        return;
+      }
+      started = true;
+    }
+
+    SignalExecutors.BOUNDED.execute(ConversationListPrefetch::prefetch);
+  }
+
+  @WorkerThread
+  private static void prefetch() {
+    if (!SignalStore.account().isRegistered()) {
+      return;
+    }
+
+    long startTime = System.currentTimeMillis();
+    long prefetchGeneration;
+
+    synchronized (LOCK) {
+      prefetchGeneration = ++generation;
+      inFlight           = true;
+
+      if (!observing) {
+        ApplicationDependencies.getDatabaseObserver().registerConversationListObserver(INVALIDATOR);
+        observing = true;
+      }
+    }
+
+    Page prefetched = null;
+
+    try {
+      ConversationListDataSource.UnarchivedConversationListDataSource source = new ConversationListDataSource.UnarchivedConversationListDataSource(ConversationFilter.OFF, false);
+
+      int                size          = source.size();
+      int                length        = Math.min(FIRST_LOAD_SIZE, size);
+      List<Conversation> conversations = source.load(0, length, size, () -> isStale(prefetchGeneration));
+
+      prefetched = new Page(source, conversations, length);
+    } finally {
+      synchronized (LOCK) {
+        inFlight = false;
+
+        if (prefetched != null && prefetchGeneration == generation) {
+          page = prefetched;
+        } else {
+          Log.d(TAG, "Conversation list changed while prefetching. Dropping the page.");
+          prefetched = null;
+          clear();
+        }
+
+        LOCK.notifyAll();
+      }
+    }
+
+    if (prefetched != null) {
+      ThreadUtil.runOnMainDelayed(EXPIRE, PAGE_TIMEOUT_MS);
+      Log.d(TAG, "Prefetched " + prefetched.getConversations().size() + " conversations in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+  }
+
+  /**
+   * @return The prefetched page, if there is one that's still current. Each page is only ever handed out once. If a prefetch is still
+   *         underway, this briefly waits for it.
+   */
+  @WorkerThread
+  static @Nullable Page take() {
+    synchronized (LOCK) {
+      long deadline = System.currentTimeMillis() + IN_FLIGHT_WAIT_MS;
+      long remaining;
+
+      while (inFlight && (remaining = deadline - System.currentTimeMillis()) > 0) {
+        try {
+          LOCK.wait(remaining);
+        } catch (InterruptedException e) {
+          Log.w(TAG, "Interrupted while waiting on the prefetch.");
+          break;
+        }
+      }
+
+      Page taken = page;
+      clear();
+      return taken;
+    }
+  }
+
+  private static boolean isStale(long prefetchGeneration) {
+    synchronized (LOCK) {
+      return prefetchGeneration != generation;
+    }
+  }
+
+  private static void invalidate() {
+    synchronized (LOCK) {
+      generation++;
+      clear();
+    }
+  }
+
+  private static void expire() {
+    synchronized (LOCK) {
+      if (page != null) {
+        Log.d(TAG, "Prefetched page was never used. Dropping it.");
+      }
+      clear();
+    }
+  }
+
+  /**
+   * Drops the page and, unless a prefetch is still using it, the observer along with it. Must be called while holding {@link #LOCK}.
+   */
+  private static void clear() {
+    page = null;
+
+    if (observing && !inFlight) {
+      ApplicationDependencies.getDatabaseObserver().unregisterObserver(INVALIDATOR);
+      observing = false;
+    }
+  }
+
+  static final class Page {
+    private final ConversationListDataSource.UnarchivedConversationListDataSource source;
+    private final List<Conversation>                                             conversations;
+    private final int                                                            length;
+
+    private Page(@NonNull ConversationListDataSource.UnarchivedConversationListDataSource source, @NonNull List<Conversation> conversations, int length) {
+      this.source        = source;
+      this.conversations = conversations;
+      this.length        = length;
+    }
+
+    /** The data source the page was loaded with, which holds the counts and paging state that go along with it. */
+    @NonNull ConversationListDataSource.UnarchivedConversationListDataSource getSource() {
+      return source;
+    }
+
+    @NonNull List<Conversation> getConversations() {
+      return conversations;
+    }
+
+    /** The number of items that were requested, which may be more than were available. */
+    int getLength() {
+      return length;
+    }
+  }
+}
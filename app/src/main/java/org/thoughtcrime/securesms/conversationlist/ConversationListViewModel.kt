@@ -44,6 +44,7 @@ class ConversationListViewModel(
 
   private val store = RxStore(ConversationListState()).addTo(disposables)
   private val conversationListDataSource: Flowable<ConversationListDataSource>
+  // The first load of this config is what ConversationListPrefetch loads during startup, so keep them in sync.
   private val pagingConfig = PagingConfig.Builder()
     .setPageSize(15)
     .setBufferPages(2)
@@ -0,0 +1,241 @@
+package org.thoughtcrime.securesms.crypto;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Random-access counterpart to {@link ModernDecryptingPartInputStream}, for callers that make many small reads at arbitrary
+ * positions (like a media extractor).
+ *
+ * The key is derived once, the file is kept open, and reads are served from a handful of decrypted blocks. Because the
+ * file is encrypted with AES/CTR starting from a zero counter, any block can be decrypted on its own by initializing the
+ * cipher with that block's counter.
+ *
+ * Not thread-safe on its own; callers must synchronize access.
+ */
+public final class ModernDecryptingPartRandomAccessReader implements Closeable {
+
+  private static final int AES_BLOCK_SIZE     = 16;
+  private static final int DEFAULT_BLOCK_SIZE = 16 * 1024;
+  private static final int DEFAULT_BLOCKS     = 4;
+
+  private final FileInputStream inputStream;
+  private final FileChannel     channel;
+  private final long            dataOffset;
+  private final long            dataLength;
+  private final SecretKeySpec   key;
+  private final Cipher          cipher;
+  private final byte[]          iv;
+  private final byte[]          cipherText;
+  private final Block[]         blocks;
+  private final int             blockSize;
+
+  private long useCounter;
+  private long hits;
+  private long misses;
+
+  /**
+   * @param random The random used to derive the key, or null if it's stored inline at the start of the file.
+   */
+  public ModernDecryptingPartRandomAccessReader(@NonNull AttachmentSecret attachmentSecret, @Nullable byte[] random, @NonNull File file) throws IOException {
+    this(attachmentSecret, random, file, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCKS);
+  }
+
+  ModernDecryptingPartRandomAccessReader(@NonNull AttachmentSecret attachmentSecret, @Nullable byte[] random, @NonNull File file, int blockSize, int blockCount) throws IOException {
+    if (blockSize % AES_BLOCK_SIZE != 0) {
+      throw new IllegalArgumentException("Block size must be a multiple of " + AES_BLOCK_SIZE);
+    }
+
+    this.inputStream = new FileInputStream(file);
+    this.channel     = inputStream.getChannel();
+
+    try {
+      if (random == null) {
+        random = new byte[32];
+        if (readFully(ByteBuffer.wrap(random), 0) != random.length) {
+          throw new IOException(ModernDecryptingPartInputStream.PREMATURE_END_ERROR_MESSAGE);
+        }
+        this.dataOffset = random.length;
+      } else {
+        this.dataOffset = 0;
+      }
+
+      this.dataLength = Math.max(0, channel.size() - dataOffset);
+
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(attachmentSecret.getModernKey(), "HmacSHA256"));
+
+      this.key    = new SecretKeySpec(mac.doFinal(random), "AES");
+      this.cipher = Cipher.getInstance("AES/CTR/NoPadding");
+    } catch (NoSuchAlgorithmException | InvalidKeyException | NoSuchPaddingException e) {
+      inputStream.close();
+      throw new AssertionError(e);
+    } catch (IOException e) {
+      inputStream.close();
+      throw e;
+    }
+
+    this.iv         = new byte[AES_BLOCK_SIZE];
+    this.blockSize  = blockSize;
+    this.cipherText = new byte[blockSize];
+    this.blocks     = new Block[blockCount];
+
+    for (int i = 0; i < blockCount; i++) {
+      blocks[i] = new Block(blockSize);
+    }
+  }
+
+  /**
+   * @return The length of the decrypted data.
+   */
+  public long getLength() {
+    return dataLength;
+  }
+
+  /**
+   * Reads up to {@code length} decrypted bytes starting at {@code position}.
+   *
+   * @return The number of bytes read, or -1 if {@code position} is at or beyond the end of the data.
+   */
+  public int read(long position, @NonNull byte[] buffer, int offset, int length) throws IOException {
+    if (position >= dataLength) {
+      return -1;
+    }
+
+    int totalRead = 0;
+
+    while (length > 0 && position < dataLength) {
+      Block block       = getBlock(position - (position % blockSize));
+      int   blockOffset = (int) (position - block.start);
+      int   toCopy      = Math.min(length, block.length - blockOffset);
+
+      if (toCopy <= 0) {
+        break;
+      }
+
+      System.arraycopy(block.data, blockOffset, buffer, offset, toCopy);
+
+      position  += toCopy;
+      offset    += toCopy;
+      length    -= toCopy;
+      totalRead += toCopy;
+    }
+
+    return totalRead > 0 ? totalRead : -1;
+  }
+
+  public long getCacheHits() {
+    return hits;
+  }
+
+  public long getCacheMisses() {
+    return misses;
+  }
+
+  @Override
+  public void close() throws IOException {
+    inputStream.close();
+  }
+
+  private @NonNull Block getBlock(long start) throws IOException {
+    Block leastRecentlyUsed = blocks[0];
+
+    for (Block block : blocks) {
+      if (block.start == start && block.length > 0) {
+        block.lastUsed = ++useCounter;
+        hits++;
+        return block;
+      }
+
+      if (block.lastUsed < leastRecentlyUsed.lastUsed) {
+        leastRecentlyUsed = block;
+      }
+    }
+
+    misses++;
+    fill(leastRecentlyUsed, start);
+    leastRecentlyUsed.lastUsed = ++useCounter;
+
+    return leastRecentlyUsed;
+  }
+
+  private void fill(@NonNull Block block, long start) throws IOException {
+    int length = (int) Math.min(blockSize, dataLength - start);
+    int read   = readFully(ByteBuffer.wrap(cipherText, 0, length), dataOffset + start);
+
+    if (read == 0) {
+      throw new IOException(ModernDecryptingPartInputStream.PREMATURE_END_ERROR_MESSAGE);
+    }
+
+    setCounter(start / AES_BLOCK_SIZE);
+
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+      cipher.doFinal(cipherText, 0, read, block.data, 0);
+    } catch (InvalidKeyException | InvalidAlgorithmParameterException | ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+      throw new AssertionError(e);
+    }
+
+    block.start  = start;
+    block.length = read;
+  }
+
+  /**
+   * Sets the IV to the CTR counter for the given AES block. Writing all 8 bytes matches how the cipher increments the
+   * counter while streaming, for any file size.
+   */
+  private void setCounter(long aesBlock) {
+    for (int i = 0; i < 8; i++) {
+      iv[i] = 0;
+    }
+
+    for (int i = 15; i >= 8; i--) {
+      iv[i]      = (byte) aesBlock;
+      aesBlock >>>= 8;
+    }
+  }
+
+  private int readFully(@NonNull ByteBuffer buffer, long position) throws IOException {
+    int total = 0;
+
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + total);
+      if (read == -1) {
+        break;
+      }
+      total += read;
+    }
+
+    return total;
+  }
+
+  private static final class Block {
+    private final byte[] data;
+    private       long   start = -1;
+    private       int    length;
+    private       long   lastUsed;
+
+    private Block(int size) {
+      this.data = new byte[size];
+    }
+  }
+}
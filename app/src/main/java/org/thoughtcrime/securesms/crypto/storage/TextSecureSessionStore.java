@@ -75,9 +75,7 @@ public class TextSecureSessionStore implements SignalServiceSessionStore {
   @Override
   public boolean containsSession(SignalProtocolAddress address) {
     try (SignalSessionLock.Lock unused = ReentrantSessionLock.INSTANCE.acquire()) {
-      SessionRecord sessionRecord = SignalDatabase.sessions().load(accountId, address);
-
-      return sessionRecord != null && sessionRecord.hasSenderChain();
+      return SignalDatabase.sessions().hasSenderChain(accountId, address);
     }
   }
 
@@ -383,6 +383,36 @@ public class AttachmentTable extends DatabaseTable {
     }
   }
 
+  /**
+   * Same as {@link #deleteAttachmentsForMessage(long)}, but for many messages at once, with a single notification at the end.
+   */
+  public void deleteAttachmentsForMessages(@NonNull Collection<Long> mmsIds) {
+    Log.d(TAG, "[deleteAttachmentsForMessages] count: " + mmsIds.size());
+
+    SQLiteDatabase db = databaseHelper.getSignalWritableDatabase();
+
+    db.beginTransaction();
+    try {
+      for (SqlUtil.Query query : SqlUtil.buildCollectionQuery(MMS_ID, mmsIds)) {
+        try (Cursor cursor = db.query(TABLE_NAME, new String[] { DATA, CONTENT_TYPE, ROW_ID, UNIQUE_ID }, query.getWhere(), query.getWhereArgs(), null, null, null)) {
+          while (cursor.moveToNext()) {
+            deleteAttachmentOnDisk(CursorUtil.requireString(cursor, DATA),
+                                   CursorUtil.requireString(cursor, CONTENT_TYPE),
+                                   new AttachmentId(CursorUtil.requireLong(cursor, ROW_ID),
+                                                    CursorUtil.requireLong(cursor, UNIQUE_ID)));
+          }
+        }
+
+        db.delete(TABLE_NAME, query.getWhere(), query.getWhereArgs());
+      }
+
+      notifyAttachmentListeners();
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
   /**
    * Deletes all attachments with an ID of {@link #PREUPLOAD_MESSAGE_ID}. These represent
    * attachments that were pre-uploaded and haven't been assigned to a message. This should only be
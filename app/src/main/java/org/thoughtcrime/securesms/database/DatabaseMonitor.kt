@@ -1,14 +1,30 @@
 package org.thoughtcrime.securesms.database
 
 import android.content.ContentValues
+import org.signal.core.util.LatencyHistogram
 
 object DatabaseMonitor {
   private var queryMonitor: QueryMonitor? = null
 
+  @Volatile
+  private var queryLatencies: QueryLatencyStats? = null
+
   fun initialize(queryMonitor: QueryMonitor?) {
     DatabaseMonitor.queryMonitor = queryMonitor
   }
 
+  /**
+   * Starts or stops recording how long each query takes. See [QueryLatencyStats].
+   */
+  @JvmStatic
+  fun setRecordQueryLatency(enabled: Boolean) {
+    queryLatencies = if (enabled) queryLatencies ?: QueryLatencyStats() else null
+  }
+
+  @JvmStatic
+  val isRecordingQueryLatency: Boolean
+    get() = queryLatencies != null
+
   @JvmStatic
   fun onSql(sql: String, args: Array<Any>?) {
     queryMonitor?.onSql(sql, args)
@@ -28,4 +44,17 @@ object DatabaseMonitor {
   fun onUpdate(table: String, values: ContentValues, selection: String?, args: Array<Any>?) {
     queryMonitor?.onUpdate(table, values, selection, args)
   }
+
+  @JvmStatic
+  fun onQueryComplete(query: String, durationNanos: Long) {
+    queryLatencies?.record(query, durationNanos)
+  }
+
+  /**
+   * @return The [limit] queries that have taken the most total time since latency recording was enabled.
+   */
+  @JvmStatic
+  fun getSlowestQueries(limit: Int): List<Pair<String, LatencyHistogram.Snapshot>> {
+    return queryLatencies?.getSlowest(limit) ?: emptyList()
+  }
 }
@@ -0,0 +1,198 @@
+package org.thoughtcrime.securesms.database
+
+import android.content.Context
+import android.database.Cursor
+import org.signal.core.util.SqlUtil
+import org.signal.core.util.count
+import org.signal.core.util.delete
+import org.signal.core.util.insertInto
+import org.signal.core.util.logging.Log
+import org.signal.core.util.readToList
+import org.signal.core.util.readToSingleLong
+import org.signal.core.util.readToSet
+import org.signal.core.util.requireBlob
+import org.signal.core.util.requireBoolean
+import org.signal.core.util.requireInt
+import org.signal.core.util.requireLong
+import org.signal.core.util.requireNonNullBlob
+import org.signal.core.util.requireNonNullString
+import org.signal.core.util.requireString
+import org.signal.core.util.select
+import org.signal.core.util.toInt
+import org.signal.core.util.withinTransaction
+import org.thoughtcrime.securesms.database.model.ServiceMessageId
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.thoughtcrime.securesms.util.EarlyMessageCacheEntry
+import org.whispersystems.signalservice.api.crypto.EnvelopeMetadata
+import org.whispersystems.signalservice.api.push.ServiceId
+import org.whispersystems.signalservice.internal.push.SignalServiceProtos.Content
+import org.whispersystems.signalservice.internal.push.SignalServiceProtos.Envelope
+
+/**
+ * The persisted back of the [org.thoughtcrime.securesms.util.EarlyMessageCache]. Entries that no longer fit in the in-memory
+ * front are spilled here so that they survive until the message they reference arrives (or until they expire).
+ */
+class EarlyMessageTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTable(context, databaseHelper) {
+
+  companion object {
+    private val TAG = Log.tag(EarlyMessageTable::class.java)
+
+    const val TABLE_NAME = "early_message"
+
+    private const val ID = "_id"
+    private const val TARGET_SENDER_ID = "target_sender_id"
+    private const val TARGET_SENT_TIMESTAMP = "target_sent_timestamp"
+    private const val DATE_INSERTED = "date_inserted"
+    private const val ENVELOPE = "envelope"
+    private const val CONTENT = "content"
+    private const val SOURCE_SERVICE_ID = "source_service_id"
+    private const val SOURCE_E164 = "source_e164"
+    private const val SOURCE_DEVICE_ID = "source_device_id"
+    private const val SEALED_SENDER = "sealed_sender"
+    private const val GROUP_ID = "group_id"
+    private const val DESTINATION_SERVICE_ID = "destination_service_id"
+    private const val SERVER_DELIVERED_TIMESTAMP = "server_delivered_timestamp"
+
+    const val CREATE_TABLE = """
+      CREATE TABLE $TABLE_NAME (
+        $ID INTEGER PRIMARY KEY,
+        $TARGET_SENDER_ID INTEGER NOT NULL REFERENCES ${RecipientTable.TABLE_NAME} (${RecipientTable.ID}) ON DELETE CASCADE,
+        $TARGET_SENT_TIMESTAMP INTEGER NOT NULL,
+        $DATE_INSERTED INTEGER NOT NULL,
+        $ENVELOPE BLOB NOT NULL,
+        $CONTENT BLOB NOT NULL,
+        $SOURCE_SERVICE_ID TEXT NOT NULL,
+        $SOURCE_E164 TEXT DEFAULT NULL,
+        $SOURCE_DEVICE_ID INTEGER NOT NULL,
+        $SEALED_SENDER INTEGER NOT NULL,
+        $GROUP_ID BLOB DEFAULT NULL,
+        $DESTINATION_SERVICE_ID TEXT NOT NULL,
+        $SERVER_DELIVERED_TIMESTAMP INTEGER NOT NULL
+      )
+    """
+
+    val CREATE_INDEXES = arrayOf(
+      "CREATE INDEX early_message_target_index ON $TABLE_NAME ($TARGET_SENDER_ID, $TARGET_SENT_TIMESTAMP)",
+      "CREATE INDEX early_message_date_inserted_index ON $TABLE_NAME ($DATE_INSERTED)"
+    )
+  }
+
+  /**
+   * Inserts the provided entries, each paired with the time it was originally stored, in a single transaction.
+   */
+  fun insert(id: ServiceMessageId, entries: List<Pair<EarlyMessageCacheEntry, Long>>) {
+    writableDatabase.withinTransaction { db ->
+      for ((entry, dateInserted) in entries) {
+        db.insertInto(TABLE_NAME)
+          .values(
+            TARGET_SENDER_ID to id.sender.serialize(),
+            TARGET_SENT_TIMESTAMP to id.sentTimestamp,
+            DATE_INSERTED to dateInserted,
+            ENVELOPE to entry.envelope.toByteArray(),
+            CONTENT to entry.content.toByteArray(),
+            SOURCE_SERVICE_ID to entry.metadata.sourceServiceId.toString(),
+            SOURCE_E164 to entry.metadata.sourceE164,
+            SOURCE_DEVICE_ID to entry.metadata.sourceDeviceId,
+            SEALED_SENDER to entry.metadata.sealedSender.toInt(),
+            GROUP_ID to entry.metadata.groupId,
+            DESTINATION_SERVICE_ID to entry.metadata.destinationServiceId.toString(),
+            SERVER_DELIVERED_TIMESTAMP to entry.serverDeliveredTimestamp
+          )
+          .run()
+      }
+    }
+  }
+
+  /**
+   * All of the distinct ids referenced by persisted entries inserted at or after [cutoff].
+   */
+  fun getAllReferencedIds(cutoff: Long): Set<ServiceMessageId> {
+    return readableDatabase
+      .select("DISTINCT $TARGET_SENDER_ID, $TARGET_SENT_TIMESTAMP")
+      .from(TABLE_NAME)
+      .where("$DATE_INSERTED >= ?", cutoff)
+      .run()
+      .readToSet { cursor ->
+        ServiceMessageId(RecipientId.from(cursor.requireLong(TARGET_SENDER_ID)), cursor.requireLong(TARGET_SENT_TIMESTAMP))
+      }
+  }
+
+  /**
+   * Removes all persisted entries for the provided ids, and returns the ones inserted at or after [cutoff] in insertion order, along
+   * with the time each was inserted. Older entries have expired and are dropped.
+   */
+  fun removeAll(ids: Collection<ServiceMessageId>, cutoff: Long): Map<ServiceMessageId, List<Pair<Long, EarlyMessageCacheEntry>>> {
+    if (ids.isEmpty()) {
+      return emptyMap()
+    }
+
+    val args: List<Array<String>> = ids.map { SqlUtil.buildArgs(it.sender, it.sentTimestamp) }
+    val queries: List<SqlUtil.Query> = SqlUtil.buildCustomCollectionQuery("$TARGET_SENDER_ID = ? AND $TARGET_SENT_TIMESTAMP = ?", args)
+    val results: MutableMap<ServiceMessageId, MutableList<Pair<Long, EarlyMessageCacheEntry>>> = mutableMapOf()
+
+    writableDatabase.withinTransaction { db ->
+      for (query in queries) {
+        db.select()
+          .from(TABLE_NAME)
+          .where("(${query.where}) AND $DATE_INSERTED >= ?", SqlUtil.appendArg(query.whereArgs, cutoff.toString()))
+          .orderBy("$ID ASC")
+          .run()
+          .readToList { cursor ->
+            val id = ServiceMessageId(RecipientId.from(cursor.requireLong(TARGET_SENDER_ID)), cursor.requireLong(TARGET_SENT_TIMESTAMP))
+            id to (cursor.requireLong(DATE_INSERTED) to readEntry(cursor))
+          }
+          .forEach { (id, entry) -> results.getOrPut(id) { mutableListOf() } += entry }
+
+        db.delete(TABLE_NAME)
+          .where(query.where, query.whereArgs)
+          .run()
+      }
+    }
+
+    return results
+  }
+
+  /**
+   * Deletes entries inserted before [cutoff], as well as the oldest entries beyond [maxCount].
+   *
+   * @return The number of entries that were dropped.
+   */
+  fun trim(cutoff: Long, maxCount: Int): Int {
+    return writableDatabase.withinTransaction { db ->
+      var deleted = db
+        .delete(TABLE_NAME)
+        .where("$DATE_INSERTED < ?", cutoff)
+        .run()
+
+      val count = db.count().from(TABLE_NAME).run().readToSingleLong()
+      if (count > maxCount) {
+        deleted += db
+          .delete(TABLE_NAME)
+          .where("$ID IN (SELECT $ID FROM $TABLE_NAME ORDER BY $ID ASC LIMIT ?)", count - maxCount)
+          .run()
+      }
+
+      if (deleted > 0) {
+        Log.i(TAG, "Dropped $deleted early message(s).")
+      }
+
+      deleted
+    }
+  }
+
+  private fun readEntry(cursor: Cursor): EarlyMessageCacheEntry {
+    return EarlyMessageCacheEntry(
+      envelope = Envelope.parseFrom(cursor.requireNonNullBlob(ENVELOPE)),
+      content = Content.parseFrom(cursor.requireNonNullBlob(CONTENT)),
+      metadata = EnvelopeMetadata(
+        sourceServiceId = ServiceId.parseOrThrow(cursor.requireNonNullString(SOURCE_SERVICE_ID)),
+        sourceE164 = cursor.requireString(SOURCE_E164),
+        sourceDeviceId = cursor.requireInt(SOURCE_DEVICE_ID),
+        sealedSender = cursor.requireBoolean(SEALED_SENDER),
+        groupId = cursor.requireBlob(GROUP_ID),
+        destinationServiceId = ServiceId.parseOrThrow(cursor.requireNonNullString(DESTINATION_SERVICE_ID))
+      ),
+      serverDeliveredTimestamp = cursor.requireLong(SERVER_DELIVERED_TIMESTAMP)
+    )
+  }
+}
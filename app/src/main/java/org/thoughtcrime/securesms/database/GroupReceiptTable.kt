@@ -75,6 +75,30 @@ class GroupReceiptTable(context: Context?, databaseHelper: SignalDatabase?) : Da
       .run()
   }
 
+  /**
+   * Same as [update], but for every message in [mmsIds] at once.
+   */
+  fun update(recipientId: RecipientId, mmsIds: Collection<Long>, status: Int, timestamp: Long) {
+    if (mmsIds.isEmpty()) {
+      return
+    }
+
+    val recipientQuery = SqlUtil.Query("$RECIPIENT_ID = ? AND $STATUS < ?", SqlUtil.buildArgs(recipientId, status))
+
+    for (query in SqlUtil.buildCollectionQuery(MMS_ID, mmsIds)) {
+      val combined = query and recipientQuery
+
+      writableDatabase
+        .update(TABLE_NAME)
+        .values(
+          STATUS to status,
+          TIMESTAMP to timestamp
+        )
+        .where(combined.where, combined.whereArgs)
+        .run()
+    }
+  }
+
   fun setUnidentified(results: Collection<Pair<RecipientId, Boolean>>, mmsId: Long) {
     writableDatabase.withinTransaction { db ->
       for (result in results) {
@@ -120,6 +144,15 @@ class GroupReceiptTable(context: Context?, databaseHelper: SignalDatabase?) : Da
       .run()
   }
 
+  fun deleteRowsForMessages(mmsIds: Collection<Long>) {
+    for (query in SqlUtil.buildCollectionQuery(MMS_ID, mmsIds)) {
+      writableDatabase
+        .delete(TABLE_NAME)
+        .where(query.where, query.whereArgs)
+        .run()
+    }
+  }
+
   fun deleteAbandonedRows() {
     writableDatabase
       .delete(TABLE_NAME)
@@ -16,13 +16,17 @@ import org.signal.core.util.concurrent.SignalExecutors;
 import org.signal.core.util.logging.Log;
 import org.thoughtcrime.securesms.crypto.DatabaseSecret;
 import org.thoughtcrime.securesms.crypto.DatabaseSecretProvider;
+import org.thoughtcrime.securesms.database.model.MessageId;
 import org.thoughtcrime.securesms.jobmanager.persistence.ConstraintSpec;
 import org.thoughtcrime.securesms.jobmanager.persistence.DependencySpec;
 import org.thoughtcrime.securesms.jobmanager.persistence.FullSpec;
 import org.thoughtcrime.securesms.jobmanager.persistence.JobSpec;
+import org.thoughtcrime.securesms.recipients.RecipientId;
 import org.signal.core.util.CursorUtil;
+import org.signal.core.util.SqlUtil;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -30,7 +34,7 @@ public class JobDatabase extends SQLiteOpenHelper implements SignalDatabaseOpenH
 
   private static final String TAG = Log.tag(JobDatabase.class);
 
-  private static final int    DATABASE_VERSION = 1;
+  private static final int    DATABASE_VERSION = 2;
   private static final String DATABASE_NAME    = "signal-jobmanager.db";
 
   private static final class Jobs {
@@ -86,6 +90,22 @@ public class JobDatabase extends SQLiteOpenHelper implements SignalDatabaseOpenH
                                                                                     "UNIQUE(" + JOB_SPEC_ID + ", " + DEPENDS_ON_JOB_SPEC_ID + "))";
   }
 
+  /**
+   * Delivery receipts that have been accepted but not yet batched into a job. Rows are removed once the job carrying them is persisted.
+   */
+  private static final class PendingDeliveryReceipts {
+    private static final String TABLE_NAME             = "pending_delivery_receipt";
+    private static final String ID                     = "_id";
+    private static final String RECIPIENT_ID           = "recipient_id";
+    private static final String MESSAGE_SENT_TIMESTAMP = "message_sent_timestamp";
+    private static final String MESSAGE_ID             = "message_id";
+
+    private static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + "(" + ID                     + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                                                                                    RECIPIENT_ID           + " TEXT NOT NULL, " +
+                                                                                    MESSAGE_SENT_TIMESTAMP + " INTEGER NOT NULL, " +
+                                                                                    MESSAGE_ID             + " TEXT NOT NULL)";
+  }
+
 
   private static volatile JobDatabase instance;
 
@@ -116,6 +136,7 @@ public class JobDatabase extends SQLiteOpenHelper implements SignalDatabaseOpenH
     db.execSQL(Jobs.CREATE_TABLE);
     db.execSQL(Constraints.CREATE_TABLE);
     db.execSQL(Dependencies.CREATE_TABLE);
+    db.execSQL(PendingDeliveryReceipts.CREATE_TABLE);
 
     if (SignalDatabase.hasTable("job_spec")) {
       Log.i(TAG, "Found old job_spec table. Migrating data.");
@@ -136,6 +157,10 @@ public class JobDatabase extends SQLiteOpenHelper implements SignalDatabaseOpenH
   @Override
   public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
     Log.i(TAG, "onUpgrade(" + oldVersion + ", " + newVersion + ")");
+
+    if (oldVersion < 2) {
+      db.execSQL(PendingDeliveryReceipts.CREATE_TABLE);
+    }
   }
 
   @Override
@@ -298,6 +323,41 @@ public class JobDatabase extends SQLiteOpenHelper implements SignalDatabaseOpenH
     return dependencies;
   }
 
+  /**
+   * @return The id of the new row, to be passed to {@link #deletePendingDeliveryReceipts(Collection)} once the receipt is in a job.
+   */
+  public synchronized long insertPendingDeliveryReceipt(@NonNull RecipientId recipientId, long messageSentTimestamp, @NonNull MessageId messageId) {
+    ContentValues contentValues = new ContentValues();
+    contentValues.put(PendingDeliveryReceipts.RECIPIENT_ID, recipientId.serialize());
+    contentValues.put(PendingDeliveryReceipts.MESSAGE_SENT_TIMESTAMP, messageSentTimestamp);
+    contentValues.put(PendingDeliveryReceipts.MESSAGE_ID, messageId.serialize());
+
+    return getWritableDatabase().insert(PendingDeliveryReceipts.TABLE_NAME, null, contentValues);
+  }
+
+  public synchronized @NonNull List<PendingDeliveryReceipt> getPendingDeliveryReceipts() {
+    List<PendingDeliveryReceipt> receipts = new LinkedList<>();
+
+    try (Cursor cursor = getReadableDatabase().query(PendingDeliveryReceipts.TABLE_NAME, null, null, null, null, null, PendingDeliveryReceipts.ID + " ASC")) {
+      while (cursor != null && cursor.moveToNext()) {
+        receipts.add(new PendingDeliveryReceipt(CursorUtil.requireLong(cursor, PendingDeliveryReceipts.ID),
+                                                RecipientId.from(CursorUtil.requireString(cursor, PendingDeliveryReceipts.RECIPIENT_ID)),
+                                                CursorUtil.requireLong(cursor, PendingDeliveryReceipts.MESSAGE_SENT_TIMESTAMP),
+                                                MessageId.deserialize(CursorUtil.requireString(cursor, PendingDeliveryReceipts.MESSAGE_ID))));
+      }
+    }
+
+    return receipts;
+  }
+
+  public synchronized void deletePendingDeliveryReceipts(@NonNull Collection<Long> ids) {
+    SQLiteDatabase db = getWritableDatabase();
+
+    for (SqlUtil.Query query : SqlUtil.buildCollectionQuery(PendingDeliveryReceipts.ID, ids)) {
+      db.delete(PendingDeliveryReceipts.TABLE_NAME, query.getWhere(), query.getWhereArgs());
+    }
+  }
+
   private void insertJobSpec(@NonNull SQLiteDatabase db, @NonNull JobSpec job) {
     if (job.isMemoryOnly()) {
       return;
@@ -427,4 +487,34 @@ public class JobDatabase extends SQLiteOpenHelper implements SignalDatabaseOpenH
       }
     }
   }
+
+  public static final class PendingDeliveryReceipt {
+    private final long        id;
+    private final RecipientId recipientId;
+    private final long        messageSentTimestamp;
+    private final MessageId   messageId;
+
+    private PendingDeliveryReceipt(long id, @NonNull RecipientId recipientId, long messageSentTimestamp, @NonNull MessageId messageId) {
+      this.id                   = id;
+      this.recipientId          = recipientId;
+      this.messageSentTimestamp = messageSentTimestamp;
+      this.messageId            = messageId;
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    public @NonNull RecipientId getRecipientId() {
+      return recipientId;
+    }
+
+    public long getMessageSentTimestamp() {
+      return messageSentTimestamp;
+    }
+
+    public @NonNull MessageId getMessageId() {
+      return messageId;
+    }
+  }
 }
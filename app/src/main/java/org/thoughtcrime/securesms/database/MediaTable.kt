@@ -3,20 +3,252 @@ package org.thoughtcrime.securesms.database
 import android.annotation.SuppressLint
 import android.content.Context
 import android.database.Cursor
-import org.signal.core.util.requireInt
+import net.zetetic.database.sqlcipher.SQLiteDatabase
 import org.signal.core.util.requireLong
 import org.signal.core.util.requireNonNullString
+import org.signal.core.util.select
 import org.thoughtcrime.securesms.attachments.DatabaseAttachment
 import org.thoughtcrime.securesms.recipients.RecipientId
 import org.thoughtcrime.securesms.util.MediaUtil
 import org.thoughtcrime.securesms.util.MediaUtil.SlideType
 
-@SuppressLint("RecipientIdDatabaseReferenceUsage", "ThreadIdDatabaseReferenceUsage") // Not a real table, just a view
+/**
+ * Queries over the media in conversations, for the media overview and storage screens.
+ *
+ * Rather than filtering the whole attachment table on every query, attachments that show up in the media overview are kept in
+ * [INDEX_TABLE_NAME], along with their thread, media type and sort keys, and the distinct attachment files and their size per content type
+ * are kept in [STORAGE_FILE_TABLE_NAME] and [STORAGE_TOTAL_TABLE_NAME]. All three are maintained by triggers on the attachment and message
+ * tables, so they never need to be updated explicitly.
+ */
+@SuppressLint("RecipientIdDatabaseReferenceUsage", "ThreadIdDatabaseReferenceUsage") // Derived from the attachment and message tables by triggers
 class MediaTable internal constructor(context: Context?, databaseHelper: SignalDatabase?) : DatabaseTable(context, databaseHelper) {
 
   companion object {
     const val ALL_THREADS = -1
     private const val THREAD_RECIPIENT_ID = "THREAD_RECIPIENT_ID"
+
+    const val INDEX_TABLE_NAME = "media_index"
+    private const val INDEX_ATTACHMENT_ID = "attachment_id"
+    private const val INDEX_MESSAGE_ID = "message_id"
+    private const val INDEX_THREAD_ID = "thread_id"
+    private const val INDEX_MEDIA_TYPE = "media_type"
+    private const val INDEX_SIZE = "size"
+    private const val INDEX_DISPLAY_ORDER = "display_order"
+
+    const val STORAGE_FILE_TABLE_NAME = "media_storage_file"
+    private const val STORAGE_FILE_DATA = "_data"
+    private const val STORAGE_FILE_CONTENT_TYPE = "content_type"
+    private const val STORAGE_FILE_SIZE = "size"
+
+    const val STORAGE_TOTAL_TABLE_NAME = "media_storage_total"
+    private const val STORAGE_TOTAL_CONTENT_TYPE = "content_type"
+    private const val STORAGE_TOTAL_SIZE = "size"
+
+    private const val MEDIA_TYPE_GALLERY = 1
+    private const val MEDIA_TYPE_AUDIO = 2
+    private const val MEDIA_TYPE_DOCUMENT = 3
+
+    @JvmField
+    val CREATE_TABLE = arrayOf(
+      """
+        CREATE TABLE $INDEX_TABLE_NAME (
+          $INDEX_ATTACHMENT_ID INTEGER PRIMARY KEY,
+          $INDEX_MESSAGE_ID INTEGER NOT NULL,
+          $INDEX_THREAD_ID INTEGER NOT NULL,
+          $INDEX_MEDIA_TYPE INTEGER NOT NULL,
+          $INDEX_SIZE INTEGER,
+          $INDEX_DISPLAY_ORDER INTEGER
+        )
+      """,
+      """
+        CREATE TABLE $STORAGE_FILE_TABLE_NAME (
+          $STORAGE_FILE_DATA TEXT PRIMARY KEY,
+          $STORAGE_FILE_CONTENT_TYPE TEXT NOT NULL,
+          $STORAGE_FILE_SIZE INTEGER NOT NULL
+        )
+      """,
+      """
+        CREATE TABLE $STORAGE_TOTAL_TABLE_NAME (
+          $STORAGE_TOTAL_CONTENT_TYPE TEXT PRIMARY KEY,
+          $STORAGE_TOTAL_SIZE INTEGER NOT NULL
+        )
+      """
+    )
+
+    /** One index per [Sorting], both within a thread and across all threads. */
+    @JvmField
+    val CREATE_INDEXES = arrayOf(
+      "CREATE INDEX media_index_thread_type_date_index ON $INDEX_TABLE_NAME ($INDEX_THREAD_ID, $INDEX_MEDIA_TYPE, $INDEX_MESSAGE_ID, $INDEX_DISPLAY_ORDER)",
+      "CREATE INDEX media_index_thread_type_size_index ON $INDEX_TABLE_NAME ($INDEX_THREAD_ID, $INDEX_MEDIA_TYPE, $INDEX_SIZE)",
+      "CREATE INDEX media_index_thread_date_index ON $INDEX_TABLE_NAME ($INDEX_THREAD_ID, $INDEX_MESSAGE_ID, $INDEX_DISPLAY_ORDER)",
+      "CREATE INDEX media_index_message_index ON $INDEX_TABLE_NAME ($INDEX_MESSAGE_ID, $INDEX_DISPLAY_ORDER)",
+      "CREATE INDEX media_index_type_size_index ON $INDEX_TABLE_NAME ($INDEX_MEDIA_TYPE, $INDEX_SIZE)"
+    )
+
+    /**
+     * Adds every attachment matching [where] that belongs in the media overview to the index. This is the same filter the media queries
+     * used to apply to the whole attachment table, minus the thread recipient check, which is still done at query time.
+     */
+    private fun insertIntoIndexWhere(where: String): String {
+      return """
+        INSERT INTO $INDEX_TABLE_NAME ($INDEX_ATTACHMENT_ID, $INDEX_MESSAGE_ID, $INDEX_THREAD_ID, $INDEX_MEDIA_TYPE, $INDEX_SIZE, $INDEX_DISPLAY_ORDER) 
+        SELECT 
+          ${AttachmentTable.TABLE_NAME}.${AttachmentTable.ROW_ID}, 
+          ${AttachmentTable.TABLE_NAME}.${AttachmentTable.MMS_ID}, 
+          ${MessageTable.TABLE_NAME}.${MessageTable.THREAD_ID}, 
+          CASE 
+            WHEN ${AttachmentTable.CONTENT_TYPE} NOT LIKE 'image/svg%' AND (${AttachmentTable.CONTENT_TYPE} LIKE 'image/%' OR ${AttachmentTable.CONTENT_TYPE} LIKE 'video/%') THEN $MEDIA_TYPE_GALLERY 
+            WHEN ${AttachmentTable.CONTENT_TYPE} LIKE 'audio/%' THEN $MEDIA_TYPE_AUDIO 
+            ELSE $MEDIA_TYPE_DOCUMENT 
+          END, 
+          ${AttachmentTable.TABLE_NAME}.${AttachmentTable.SIZE}, 
+          ${AttachmentTable.TABLE_NAME}.${AttachmentTable.DISPLAY_ORDER} 
+        FROM 
+          ${AttachmentTable.TABLE_NAME} 
+          INNER JOIN ${MessageTable.TABLE_NAME} ON ${AttachmentTable.TABLE_NAME}.${AttachmentTable.MMS_ID} = ${MessageTable.TABLE_NAME}.${MessageTable.ID} 
+        WHERE 
+          $where AND 
+          ${AttachmentTable.CONTENT_TYPE} IS NOT NULL AND 
+          ${AttachmentTable.CONTENT_TYPE} NOT LIKE 'text/x-signal-plain' AND 
+          ${MessageTable.VIEW_ONCE} = 0 AND 
+          ${MessageTable.STORY_TYPE} = 0 AND 
+          ${AttachmentTable.DATA} IS NOT NULL AND 
+          (
+            ${AttachmentTable.QUOTE} = 0 OR 
+            (
+              ${AttachmentTable.QUOTE} = 1 AND 
+              ${AttachmentTable.DATA_HASH} IS NULL
+            )
+          ) AND 
+          ${AttachmentTable.STICKER_PACK_ID} IS NULL AND 
+          ${MessageTable.TABLE_NAME}.${MessageTable.FROM_RECIPIENT_ID} > 0;
+      """
+    }
+
+    /**
+     * Re-reads the storage entry for the attachment file at [data], which is the largest completed, non-sticker attachment stored there.
+     * Files are shared between attachments with the same content, so each file is only counted once.
+     */
+    private fun refreshStorageFile(data: String): String {
+      return """
+        DELETE FROM $STORAGE_FILE_TABLE_NAME WHERE $STORAGE_FILE_DATA = $data;
+        INSERT INTO $STORAGE_FILE_TABLE_NAME ($STORAGE_FILE_DATA, $STORAGE_FILE_CONTENT_TYPE, $STORAGE_FILE_SIZE) 
+        SELECT 
+          ${AttachmentTable.DATA}, 
+          ${AttachmentTable.CONTENT_TYPE}, 
+          MAX(IFNULL(${AttachmentTable.SIZE}, 0)) 
+        FROM 
+          ${AttachmentTable.TABLE_NAME} 
+        WHERE 
+          ${AttachmentTable.DATA} = $data AND 
+          ${AttachmentTable.CONTENT_TYPE} IS NOT NULL AND 
+          ${AttachmentTable.STICKER_PACK_ID} IS NULL AND 
+          ${AttachmentTable.TRANSFER_STATE} = ${AttachmentTable.TRANSFER_PROGRESS_DONE} 
+        GROUP BY ${AttachmentTable.DATA};
+      """
+    }
+
+    @JvmField
+    val CREATE_TRIGGERS = arrayOf(
+      """
+        CREATE TRIGGER media_index_attachment_insert AFTER INSERT ON ${AttachmentTable.TABLE_NAME} 
+        BEGIN 
+          ${insertIntoIndexWhere("${AttachmentTable.TABLE_NAME}.${AttachmentTable.ROW_ID} = new.${AttachmentTable.ROW_ID}")}
+        END
+      """,
+      """
+        CREATE TRIGGER media_index_attachment_update AFTER UPDATE OF ${AttachmentTable.MMS_ID}, ${AttachmentTable.CONTENT_TYPE}, ${AttachmentTable.DATA}, ${AttachmentTable.SIZE}, ${AttachmentTable.QUOTE}, ${AttachmentTable.DATA_HASH}, ${AttachmentTable.STICKER_PACK_ID}, ${AttachmentTable.DISPLAY_ORDER} ON ${AttachmentTable.TABLE_NAME} 
+        BEGIN 
+          DELETE FROM $INDEX_TABLE_NAME WHERE $INDEX_ATTACHMENT_ID = old.${AttachmentTable.ROW_ID};
+          ${insertIntoIndexWhere("${AttachmentTable.TABLE_NAME}.${AttachmentTable.ROW_ID} = new.${AttachmentTable.ROW_ID}")}
+        END
+      """,
+      """
+        CREATE TRIGGER media_index_attachment_delete AFTER DELETE ON ${AttachmentTable.TABLE_NAME} 
+        BEGIN 
+          DELETE FROM $INDEX_TABLE_NAME WHERE $INDEX_ATTACHMENT_ID = old.${AttachmentTable.ROW_ID};
+        END
+      """,
+      """
+        CREATE TRIGGER media_index_message_update AFTER UPDATE OF ${MessageTable.THREAD_ID}, ${MessageTable.VIEW_ONCE}, ${MessageTable.STORY_TYPE}, ${MessageTable.FROM_RECIPIENT_ID} ON ${MessageTable.TABLE_NAME} 
+        BEGIN 
+          DELETE FROM $INDEX_TABLE_NAME WHERE $INDEX_MESSAGE_ID = old.${MessageTable.ID};
+          ${insertIntoIndexWhere("${AttachmentTable.TABLE_NAME}.${AttachmentTable.MMS_ID} = new.${MessageTable.ID}")}
+        END
+      """,
+      """
+        CREATE TRIGGER media_index_message_delete AFTER DELETE ON ${MessageTable.TABLE_NAME} 
+        BEGIN 
+          DELETE FROM $INDEX_TABLE_NAME WHERE $INDEX_MESSAGE_ID = old.${MessageTable.ID};
+        END
+      """,
+      """
+        CREATE TRIGGER media_storage_attachment_insert AFTER INSERT ON ${AttachmentTable.TABLE_NAME} WHEN new.${AttachmentTable.DATA} IS NOT NULL 
+        BEGIN 
+          ${refreshStorageFile("new.${AttachmentTable.DATA}")}
+        END
+      """,
+      """
+        CREATE TRIGGER media_storage_attachment_update AFTER UPDATE OF ${AttachmentTable.DATA}, ${AttachmentTable.CONTENT_TYPE}, ${AttachmentTable.SIZE}, ${AttachmentTable.TRANSFER_STATE}, ${AttachmentTable.STICKER_PACK_ID} ON ${AttachmentTable.TABLE_NAME} 
+        BEGIN 
+          ${refreshStorageFile("old.${AttachmentTable.DATA}")}
+          ${refreshStorageFile("new.${AttachmentTable.DATA}")}
+        END
+      """,
+      """
+        CREATE TRIGGER media_storage_attachment_delete AFTER DELETE ON ${AttachmentTable.TABLE_NAME} WHEN old.${AttachmentTable.DATA} IS NOT NULL 
+        BEGIN 
+          ${refreshStorageFile("old.${AttachmentTable.DATA}")}
+        END
+      """,
+      """
+        CREATE TRIGGER media_storage_file_insert AFTER INSERT ON $STORAGE_FILE_TABLE_NAME 
+        BEGIN 
+          INSERT OR IGNORE INTO $STORAGE_TOTAL_TABLE_NAME ($STORAGE_TOTAL_CONTENT_TYPE, $STORAGE_TOTAL_SIZE) VALUES (new.$STORAGE_FILE_CONTENT_TYPE, 0);
+          UPDATE $STORAGE_TOTAL_TABLE_NAME SET $STORAGE_TOTAL_SIZE = $STORAGE_TOTAL_SIZE + new.$STORAGE_FILE_SIZE WHERE $STORAGE_TOTAL_CONTENT_TYPE = new.$STORAGE_FILE_CONTENT_TYPE;
+        END
+      """,
+      """
+        CREATE TRIGGER media_storage_file_delete AFTER DELETE ON $STORAGE_FILE_TABLE_NAME 
+        BEGIN 
+          UPDATE $STORAGE_TOTAL_TABLE_NAME SET $STORAGE_TOTAL_SIZE = $STORAGE_TOTAL_SIZE - old.$STORAGE_FILE_SIZE WHERE $STORAGE_TOTAL_CONTENT_TYPE = old.$STORAGE_FILE_CONTENT_TYPE;
+        END
+      """
+    )
+
+    /**
+     * Rebuilds the index and storage tables from scratch. The triggers keep them current from then on.
+     */
+    @JvmStatic
+    fun rebuild(db: SQLiteDatabase) {
+      db.execSQL("DELETE FROM $INDEX_TABLE_NAME")
+      db.execSQL("DELETE FROM $STORAGE_FILE_TABLE_NAME")
+      db.execSQL("DELETE FROM $STORAGE_TOTAL_TABLE_NAME")
+
+      db.execSQL(insertIntoIndexWhere("1"))
+      db.execSQL(
+        """
+          INSERT INTO $STORAGE_FILE_TABLE_NAME ($STORAGE_FILE_DATA, $STORAGE_FILE_CONTENT_TYPE, $STORAGE_FILE_SIZE) 
+          SELECT 
+            ${AttachmentTable.DATA}, 
+            ${AttachmentTable.CONTENT_TYPE}, 
+            MAX(IFNULL(${AttachmentTable.SIZE}, 0)) 
+          FROM 
+            ${AttachmentTable.TABLE_NAME} 
+          WHERE 
+            ${AttachmentTable.DATA} IS NOT NULL AND 
+            ${AttachmentTable.CONTENT_TYPE} IS NOT NULL AND 
+            ${AttachmentTable.STICKER_PACK_ID} IS NULL AND 
+            ${AttachmentTable.TRANSFER_STATE} = ${AttachmentTable.TRANSFER_PROGRESS_DONE} 
+          GROUP BY ${AttachmentTable.DATA}
+        """
+      )
+    }
+
+    /**
+     * Reads the indexed media, joining back to the attachment, message and thread for the full row. The CROSS JOINs make SQLite start
+     * from the index, so that filtering and ordering both come from one of [CREATE_INDEXES].
+     */
     private val BASE_MEDIA_QUERY = """
       SELECT 
         ${AttachmentTable.TABLE_NAME}.${AttachmentTable.ROW_ID} AS ${AttachmentTable.ROW_ID}, 
@@ -56,65 +288,21 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
         ${MessageTable.TABLE_NAME}.${MessageTable.THREAD_ID}, 
         ${MessageTable.TABLE_NAME}.${MessageTable.FROM_RECIPIENT_ID}, 
         ${ThreadTable.TABLE_NAME}.${ThreadTable.RECIPIENT_ID} as $THREAD_RECIPIENT_ID 
-   FROM 
-        ${AttachmentTable.TABLE_NAME} 
-        LEFT JOIN ${MessageTable.TABLE_NAME} ON ${AttachmentTable.TABLE_NAME}.${AttachmentTable.MMS_ID} = ${MessageTable.TABLE_NAME}.${MessageTable.ID} 
-        LEFT JOIN ${ThreadTable.TABLE_NAME} ON ${ThreadTable.TABLE_NAME}.${ThreadTable.ID} = ${MessageTable.TABLE_NAME}.${MessageTable.THREAD_ID} 
+      FROM 
+        $INDEX_TABLE_NAME 
+        CROSS JOIN ${AttachmentTable.TABLE_NAME} ON ${AttachmentTable.TABLE_NAME}.${AttachmentTable.ROW_ID} = $INDEX_TABLE_NAME.$INDEX_ATTACHMENT_ID 
+        CROSS JOIN ${MessageTable.TABLE_NAME} ON ${MessageTable.TABLE_NAME}.${MessageTable.ID} = $INDEX_TABLE_NAME.$INDEX_MESSAGE_ID 
+        CROSS JOIN ${ThreadTable.TABLE_NAME} ON ${ThreadTable.TABLE_NAME}.${ThreadTable.ID} = $INDEX_TABLE_NAME.$INDEX_THREAD_ID 
       WHERE 
-        ${AttachmentTable.MMS_ID} IN (
-          SELECT ${MessageTable.ID} 
-          FROM ${MessageTable.TABLE_NAME} 
-          WHERE ${MessageTable.THREAD_ID} __EQUALITY__ ?
-        ) AND 
+        $INDEX_TABLE_NAME.$INDEX_THREAD_ID __EQUALITY__ ? AND 
         (%s) AND 
-        ${MessageTable.VIEW_ONCE} = 0 AND 
-        ${MessageTable.STORY_TYPE} = 0 AND 
-        ${AttachmentTable.DATA} IS NOT NULL AND 
-        (
-          ${AttachmentTable.QUOTE} = 0 OR 
-          (
-            ${AttachmentTable.QUOTE} = 1 AND 
-            ${AttachmentTable.DATA_HASH} IS NULL
-          )
-        ) AND 
-        ${AttachmentTable.STICKER_PACK_ID} IS NULL AND 
-        ${MessageTable.TABLE_NAME}.${MessageTable.FROM_RECIPIENT_ID} > 0 AND 
         $THREAD_RECIPIENT_ID > 0
       """
 
-    private val UNIQUE_MEDIA_QUERY = """
-        SELECT 
-          MAX(${AttachmentTable.SIZE}) as ${AttachmentTable.SIZE}, 
-          ${AttachmentTable.CONTENT_TYPE} 
-        FROM 
-          ${AttachmentTable.TABLE_NAME} 
-        WHERE 
-          ${AttachmentTable.STICKER_PACK_ID} IS NULL AND 
-          ${AttachmentTable.TRANSFER_STATE} = ${AttachmentTable.TRANSFER_PROGRESS_DONE} 
-        GROUP BY ${AttachmentTable.DATA}
-      """
-
-    private val GALLERY_MEDIA_QUERY = String.format(
-      BASE_MEDIA_QUERY,
-      """
-        ${AttachmentTable.CONTENT_TYPE} NOT LIKE 'image/svg%' AND 
-        (${AttachmentTable.CONTENT_TYPE} LIKE 'image/%' OR ${AttachmentTable.CONTENT_TYPE} LIKE 'video/%')
-      """
-    )
-
-    private val AUDIO_MEDIA_QUERY = String.format(BASE_MEDIA_QUERY, "${AttachmentTable.CONTENT_TYPE} LIKE 'audio/%'")
-    private val ALL_MEDIA_QUERY = String.format(BASE_MEDIA_QUERY, "${AttachmentTable.CONTENT_TYPE} NOT LIKE 'text/x-signal-plain'")
-    private val DOCUMENT_MEDIA_QUERY = String.format(
-      BASE_MEDIA_QUERY,
-      """
-        ${AttachmentTable.CONTENT_TYPE} LIKE 'image/svg%' OR 
-        (
-          ${AttachmentTable.CONTENT_TYPE} NOT LIKE 'image/%' AND 
-          ${AttachmentTable.CONTENT_TYPE} NOT LIKE 'video/%' AND 
-          ${AttachmentTable.CONTENT_TYPE} NOT LIKE 'audio/%' AND 
-          ${AttachmentTable.CONTENT_TYPE} NOT LIKE 'text/x-signal-plain'
-        )"""
-    )
+    private val GALLERY_MEDIA_QUERY = String.format(BASE_MEDIA_QUERY, "$INDEX_TABLE_NAME.$INDEX_MEDIA_TYPE = $MEDIA_TYPE_GALLERY")
+    private val AUDIO_MEDIA_QUERY = String.format(BASE_MEDIA_QUERY, "$INDEX_TABLE_NAME.$INDEX_MEDIA_TYPE = $MEDIA_TYPE_AUDIO")
+    private val ALL_MEDIA_QUERY = String.format(BASE_MEDIA_QUERY, "1")
+    private val DOCUMENT_MEDIA_QUERY = String.format(BASE_MEDIA_QUERY, "$INDEX_TABLE_NAME.$INDEX_MEDIA_TYPE = $MEDIA_TYPE_DOCUMENT")
 
     private fun applyEqualityOperator(threadId: Long, query: String): String {
       return query.replace("__EQUALITY__", if (threadId == ALL_THREADS.toLong()) "!=" else "=")
@@ -151,31 +339,36 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
     var audioSize: Long = 0
     var documentSize: Long = 0
 
-    readableDatabase.rawQuery(UNIQUE_MEDIA_QUERY, null).use { cursor ->
-      while (cursor.moveToNext()) {
-        val size: Int = cursor.requireInt(AttachmentTable.SIZE)
-        val type: String = cursor.requireNonNullString(AttachmentTable.CONTENT_TYPE)
+    readableDatabase
+      .select(STORAGE_TOTAL_CONTENT_TYPE, STORAGE_TOTAL_SIZE)
+      .from(STORAGE_TOTAL_TABLE_NAME)
+      .where("$STORAGE_TOTAL_SIZE > 0")
+      .run()
+      .use { cursor ->
+        while (cursor.moveToNext()) {
+          val size: Long = cursor.requireLong(STORAGE_TOTAL_SIZE)
+          val type: String = cursor.requireNonNullString(STORAGE_TOTAL_CONTENT_TYPE)
 
-        when (MediaUtil.getSlideTypeFromContentType(type)) {
-          SlideType.GIF,
-          SlideType.IMAGE,
-          SlideType.MMS -> {
-            photoSize += size.toLong()
+          when (MediaUtil.getSlideTypeFromContentType(type)) {
+            SlideType.GIF,
+            SlideType.IMAGE,
+            SlideType.MMS -> {
+              photoSize += size
+            }
+            SlideType.VIDEO -> {
+              videoSize += size
+            }
+            SlideType.AUDIO -> {
+              audioSize += size
+            }
+            SlideType.LONG_TEXT,
+            SlideType.DOCUMENT -> {
+              documentSize += size
+            }
+            else -> {}
           }
-          SlideType.VIDEO -> {
-            videoSize += size.toLong()
-          }
-          SlideType.AUDIO -> {
-            audioSize += size.toLong()
-          }
-          SlideType.LONG_TEXT,
-          SlideType.DOCUMENT -> {
-            documentSize += size.toLong()
-          }
-          else -> {}
         }
       }
-    }
 
     return StorageBreakdown(
       photoSize = photoSize,
@@ -221,22 +414,22 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
   enum class Sorting(order: String) {
     Newest(
       """
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.MMS_ID} DESC, 
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.DISPLAY_ORDER} DESC, 
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.ROW_ID} DESC
+        $INDEX_TABLE_NAME.$INDEX_MESSAGE_ID DESC, 
+        $INDEX_TABLE_NAME.$INDEX_DISPLAY_ORDER DESC, 
+        $INDEX_TABLE_NAME.$INDEX_ATTACHMENT_ID DESC
       """
     ),
     Oldest(
       """
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.MMS_ID} ASC, 
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.DISPLAY_ORDER} DESC, 
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.ROW_ID} ASC
+        $INDEX_TABLE_NAME.$INDEX_MESSAGE_ID ASC, 
+        $INDEX_TABLE_NAME.$INDEX_DISPLAY_ORDER DESC, 
+        $INDEX_TABLE_NAME.$INDEX_ATTACHMENT_ID ASC
       """
     ),
     Largest(
       """
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.SIZE} DESC, 
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.DISPLAY_ORDER} DESC
+        $INDEX_TABLE_NAME.$INDEX_SIZE DESC, 
+        $INDEX_TABLE_NAME.$INDEX_DISPLAY_ORDER DESC
       """
     );
 
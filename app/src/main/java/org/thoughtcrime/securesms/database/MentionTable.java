@@ -129,6 +129,14 @@ public class MentionTable extends DatabaseTable implements RecipientIdDatabaseRe
     db.delete(TABLE_NAME, where, SqlUtil.buildArgs(messageId));
   }
 
+  void deleteMentionsForMessages(@NonNull Collection<Long> messageIds) {
+    SQLiteDatabase db = databaseHelper.getSignalWritableDatabase();
+
+    for (SqlUtil.Query query : SqlUtil.buildCollectionQuery(MESSAGE_ID, messageIds)) {
+      db.delete(TABLE_NAME, query.getWhere(), query.getWhereArgs());
+    }
+  }
+
   void deleteAbandonedMentions() {
     SQLiteDatabase db    = databaseHelper.getSignalWritableDatabase();
     String         where = MESSAGE_ID + " NOT IN (SELECT " + MessageTable.ID + " FROM " + MessageTable.TABLE_NAME + ") OR " + THREAD_ID + " NOT IN (SELECT " + ThreadTable.ID + " FROM " + ThreadTable.TABLE_NAME + ")";
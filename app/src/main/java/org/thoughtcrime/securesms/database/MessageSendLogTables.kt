@@ -19,22 +19,28 @@ import org.thoughtcrime.securesms.util.RecipientAccessList
 import org.whispersystems.signalservice.api.crypto.ContentHint
 import org.whispersystems.signalservice.api.messages.SendMessageResult
 import org.whispersystems.signalservice.internal.push.SignalServiceProtos
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.util.concurrent.TimeUnit
+import java.util.zip.Deflater
+import java.util.zip.InflaterInputStream
 
 /**
  * Stores a rolling buffer of all outgoing messages. Used for the retry logic required for sender key.
  *
  * General note: This class is actually three tables:
  * - one to store the entry
- * - one to store all the devices that were sent it, and
+ * - one to store all the recipients that were sent it (with their devices packed into a pair of bitmasks), and
  * - one to store the set of related messages.
  *
  * The general lifecycle of entries in the store goes something like this:
  * - Upon sending a message, put an entry in the 'payload table', an entry for each recipient you sent it to in the 'recipient table', and an entry for each
  *   related message in the 'message table'
- * - Whenever you get a delivery receipt, delete the entries in the 'recipient table'
+ * - Whenever you get a delivery receipt, clear the device from the entry in the 'recipient table', deleting it once no devices are left
  * - Whenever there's no more records in the 'recipient table' for a given message, delete the entry in the 'message table'
  * - Whenever you delete a message, delete the relevant entries from the 'payload table'
- * - Whenever you read an entry from the table, first trim off all the entries that are too old
+ * - Whenever you read an entry from the table, first trim off all the entries that are too old. Trimming happens in whole time buckets, so
+ *   repeated reads within the same bucket don't need to touch the table again
  *
  * Because of all of this, you can be sure that if an entry is in this store, it's safe to resend to someone upon request
  *
@@ -45,6 +51,8 @@ import org.whispersystems.signalservice.internal.push.SignalServiceProtos
  * - The most common operations by far are:
  *    - Inserting into the table
  *    - Deleting a recipient (in response to a delivery receipt)
+ * - Payload content is stored deflated, and a group send writes one recipient row per recipient rather than one per device, which keeps the write volume
+ *   down on busy accounts.
  * - We should also optimize for when we delete messages from the sms/mms tables, since you can delete a bunch at once
  * - We *don't* really need to optimize for retrieval, since that happens very infrequently. In particular, we don't want to slow down inserts in order to
  *   improve retrieval time. That means we shouldn't be adding indexes that optimize for retrieval.
@@ -62,13 +70,89 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
 
     @JvmField
     val CREATE_TRIGGERS: Array<String> = MslPayloadTable.CREATE_TRIGGERS
+
+    /** Entries are trimmed in buckets of this size. See [trimOldMessages]. */
+    private val TRIM_BUCKET_SIZE = TimeUnit.MINUTES.toMillis(1)
+
+    /** Device ids are stored across two 64-bit masks, [MslRecipientTable.DEVICES] for ids 0-63 and [MslRecipientTable.DEVICES_HIGH] for 64-127. */
+    private const val MAX_DEVICE_ID = 127
+
+    private fun isRepresentable(device: Int): Boolean {
+      return if (device in 0..MAX_DEVICE_ID) {
+        true
+      } else {
+        Log.w(TAG, "Device id $device can't be represented in the device mask!")
+        false
+      }
+    }
+
+    /** The column holding [device]'s bit. */
+    private fun deviceColumn(device: Int): String {
+      return if (device < 64) MslRecipientTable.DEVICES else MslRecipientTable.DEVICES_HIGH
+    }
+
+    /**
+     * [device]'s bit within its column, as a SQL expression. Bit 63 is the sign bit, and its decimal literal isn't a valid SQLite integer,
+     * so we let SQLite compute it.
+     */
+    private fun deviceBitSql(device: Int): String {
+      return "(1 << ${device % 64})"
+    }
+
+    private fun List<Int>.toDeviceMask(): DeviceMask {
+      var low = 0L
+      var high = 0L
+
+      for (device in this) {
+        if (!isRepresentable(device)) {
+          continue
+        }
+
+        if (device < 64) {
+          low = low or (1L shl device)
+        } else {
+          high = high or (1L shl (device - 64))
+        }
+      }
+
+      return DeviceMask(low, high)
+    }
+
+    private fun compress(data: ByteArray): ByteArray {
+      val deflater = Deflater(Deflater.BEST_SPEED)
+      try {
+        deflater.setInput(data)
+        deflater.finish()
+
+        val output = ByteArrayOutputStream(data.size)
+        val buffer = ByteArray(4096)
+
+        while (!deflater.finished()) {
+          val read = deflater.deflate(buffer)
+          output.write(buffer, 0, read)
+        }
+
+        return output.toByteArray()
+      } finally {
+        deflater.end()
+      }
+    }
+
+    private fun decompress(data: ByteArray): ByteArray {
+      return InflaterInputStream(ByteArrayInputStream(data)).use { it.readBytes() }
+    }
   }
 
+  @Volatile
+  private var lastTrimmedBucket: Long = -1
+
   private object MslPayloadTable {
     const val TABLE_NAME = "msl_payload"
 
     const val ID = "_id"
     const val DATE_SENT = "date_sent"
+
+    /** Deflated bytes of the [SignalServiceProtos.Content]. */
     const val CONTENT = "content"
     const val CONTENT_HINT = "content_hint"
     const val URGENT = "urgent"
@@ -110,21 +194,27 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
     const val ID = "_id"
     const val PAYLOAD_ID = "payload_id"
     const val RECIPIENT_ID = "recipient_id"
-    const val DEVICE = "device"
+
+    /** A bitmask of the device ids 0-63 that have yet to acknowledge the payload, where bit n represents device n. */
+    const val DEVICES = "devices"
+
+    /** Same as [DEVICES], for device ids 64-127, where bit n represents device n + 64. */
+    const val DEVICES_HIGH = "devices_high"
 
     const val CREATE_TABLE = """
       CREATE TABLE $TABLE_NAME (
         $ID INTEGER PRIMARY KEY,
         $PAYLOAD_ID INTEGER NOT NULL REFERENCES ${MslPayloadTable.TABLE_NAME} (${MslPayloadTable.ID}) ON DELETE CASCADE,
         $RECIPIENT_ID INTEGER NOT NULL, 
-        $DEVICE INTEGER NOT NULL
+        $DEVICES INTEGER NOT NULL,
+        $DEVICES_HIGH INTEGER NOT NULL DEFAULT 0
       )
     """
 
-    /** Created for [deleteEntriesForRecipient] */
+    /** Created for [deleteEntriesForRecipient] and [addRecipientToExistingEntryIfPossible] */
     val CREATE_INDEXES = arrayOf(
-      "CREATE INDEX msl_recipient_recipient_index ON $TABLE_NAME ($RECIPIENT_ID, $DEVICE, $PAYLOAD_ID)",
-      "CREATE INDEX msl_recipient_payload_index ON $TABLE_NAME ($PAYLOAD_ID)"
+      "CREATE INDEX msl_recipient_recipient_index ON $TABLE_NAME ($RECIPIENT_ID, $PAYLOAD_ID)",
+      "CREATE UNIQUE INDEX msl_recipient_payload_index ON $TABLE_NAME ($PAYLOAD_ID, $RECIPIENT_ID)"
     )
   }
 
@@ -204,15 +294,16 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
 
       db.beginTransaction()
       try {
-        sendMessageResult.success.devices.forEach { device ->
-          val recipientValues = ContentValues().apply {
-            put(MslRecipientTable.PAYLOAD_ID, payloadId)
-            put(MslRecipientTable.RECIPIENT_ID, recipientId.serialize())
-            put(MslRecipientTable.DEVICE, device)
-          }
+        val query = """
+          INSERT INTO ${MslRecipientTable.TABLE_NAME} (${MslRecipientTable.PAYLOAD_ID}, ${MslRecipientTable.RECIPIENT_ID}, ${MslRecipientTable.DEVICES}, ${MslRecipientTable.DEVICES_HIGH})
+          VALUES (?, ?, ?, ?)
+          ON CONFLICT (${MslRecipientTable.PAYLOAD_ID}, ${MslRecipientTable.RECIPIENT_ID}) DO UPDATE SET
+            ${MslRecipientTable.DEVICES} = ${MslRecipientTable.DEVICES} | excluded.${MslRecipientTable.DEVICES},
+            ${MslRecipientTable.DEVICES_HIGH} = ${MslRecipientTable.DEVICES_HIGH} | excluded.${MslRecipientTable.DEVICES_HIGH}
+        """
 
-          db.insert(MslRecipientTable.TABLE_NAME, null, recipientValues)
-        }
+        val mask = sendMessageResult.success.devices.toDeviceMask()
+        db.execSQL(query, SqlUtil.buildArgs(payloadId, recipientId, mask.low, mask.high))
 
         db.setTransactionSuccessful()
       } catch (e: SQLiteConstraintException) {
@@ -235,24 +326,26 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
     try {
       val payloadValues = ContentValues().apply {
         put(MslPayloadTable.DATE_SENT, dateSent)
-        put(MslPayloadTable.CONTENT, content.toByteArray())
+        put(MslPayloadTable.CONTENT, compress(content.toByteArray()))
         put(MslPayloadTable.CONTENT_HINT, contentHint.type)
         put(MslPayloadTable.URGENT, urgent.toInt())
       }
 
       val payloadId: Long = db.insert(MslPayloadTable.TABLE_NAME, null, payloadValues)
 
-      val recipientValues: MutableList<ContentValues> = mutableListOf()
-      recipients.forEach { recipientDevice ->
-        recipientDevice.devices.forEach { device ->
-          recipientValues += ContentValues().apply {
+      val recipientValues: List<ContentValues> = recipients
+        .groupBy { it.recipientId }
+        .map { (recipientId, recipientDevices) ->
+          val mask = recipientDevices.flatMap { it.devices }.toDeviceMask()
+
+          ContentValues().apply {
             put(MslRecipientTable.PAYLOAD_ID, payloadId)
-            put(MslRecipientTable.RECIPIENT_ID, recipientDevice.recipientId.serialize())
-            put(MslRecipientTable.DEVICE, device)
+            put(MslRecipientTable.RECIPIENT_ID, recipientId.serialize())
+            put(MslRecipientTable.DEVICES, mask.low)
+            put(MslRecipientTable.DEVICES_HIGH, mask.high)
           }
         }
-      }
-      SqlUtil.buildBulkInsert(MslRecipientTable.TABLE_NAME, arrayOf(MslRecipientTable.PAYLOAD_ID, MslRecipientTable.RECIPIENT_ID, MslRecipientTable.DEVICE), recipientValues)
+      SqlUtil.buildBulkInsert(MslRecipientTable.TABLE_NAME, arrayOf(MslRecipientTable.PAYLOAD_ID, MslRecipientTable.RECIPIENT_ID, MslRecipientTable.DEVICES, MslRecipientTable.DEVICES_HIGH), recipientValues)
         .forEach { query -> db.execSQL(query.where, query.whereArgs) }
 
       val messageValues: MutableList<ContentValues> = mutableListOf()
@@ -275,12 +368,19 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
   fun getLogEntry(recipientId: RecipientId, device: Int, dateSent: Long): MessageLogEntry? {
     if (!FeatureFlags.retryReceipts()) return null
 
-    trimOldMessages(System.currentTimeMillis(), FeatureFlags.retryRespondMaxAge())
+    val currentTime = System.currentTimeMillis()
+    val maxAge = FeatureFlags.retryRespondMaxAge()
+
+    trimOldMessages(currentTime, maxAge)
+
+    if (!isRepresentable(device)) {
+      return null
+    }
 
     val db = databaseHelper.signalReadableDatabase
-    val table = "${MslPayloadTable.TABLE_NAME} LEFT JOIN ${MslRecipientTable.TABLE_NAME} ON ${MslPayloadTable.TABLE_NAME}.${MslPayloadTable.ID} = ${MslRecipientTable.TABLE_NAME}.${MslRecipientTable.PAYLOAD_ID}"
-    val query = "${MslPayloadTable.DATE_SENT} = ? AND ${MslRecipientTable.RECIPIENT_ID} = ? AND ${MslRecipientTable.DEVICE} = ?"
-    val args = SqlUtil.buildArgs(dateSent, recipientId, device)
+    val table = "${MslPayloadTable.TABLE_NAME} INNER JOIN ${MslRecipientTable.TABLE_NAME} ON ${MslPayloadTable.TABLE_NAME}.${MslPayloadTable.ID} = ${MslRecipientTable.TABLE_NAME}.${MslRecipientTable.PAYLOAD_ID}"
+    val query = "${MslPayloadTable.DATE_SENT} = ? AND ${MslPayloadTable.DATE_SENT} >= ? AND ${MslRecipientTable.RECIPIENT_ID} = ? AND (${deviceColumn(device)} & ${deviceBitSql(device)}) != 0"
+    val args = SqlUtil.buildArgs(dateSent, currentTime - maxAge, recipientId)
 
     db.query(table, null, query, args, null, null, null).use { entryCursor ->
       if (entryCursor.moveToFirst()) {
@@ -300,7 +400,7 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
           return MessageLogEntry(
             recipientId = RecipientId.from(CursorUtil.requireLong(entryCursor, MslRecipientTable.RECIPIENT_ID)),
             dateSent = CursorUtil.requireLong(entryCursor, MslPayloadTable.DATE_SENT),
-            content = SignalServiceProtos.Content.parseFrom(CursorUtil.requireBlob(entryCursor, MslPayloadTable.CONTENT)),
+            content = SignalServiceProtos.Content.parseFrom(decompress(CursorUtil.requireBlob(entryCursor, MslPayloadTable.CONTENT))),
             contentHint = ContentHint.fromType(CursorUtil.requireInt(entryCursor, MslPayloadTable.CONTENT_HINT)),
             urgent = entryCursor.requireBoolean(MslPayloadTable.URGENT),
             relatedMessages = messageIds
@@ -331,27 +431,45 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
   fun deleteEntriesForRecipient(dateSent: List<Long>, recipientId: RecipientId, device: Int) {
     if (!FeatureFlags.retryReceipts()) return
 
+    if (!isRepresentable(device)) return
+
+    val column = deviceColumn(device)
+    val bit = deviceBitSql(device)
+
     val db = databaseHelper.signalWritableDatabase
     db.beginTransaction()
     try {
       val query = """
-        DELETE FROM ${MslRecipientTable.TABLE_NAME} WHERE
-        ${MslRecipientTable.RECIPIENT_ID} = ? AND
-        ${MslRecipientTable.DEVICE} = ? AND
-        ${MslRecipientTable.PAYLOAD_ID} IN (
-          SELECT ${MslPayloadTable.ID} 
-          FROM ${MslPayloadTable.TABLE_NAME} 
-          WHERE ${MslPayloadTable.DATE_SENT} IN (${dateSent.joinToString(",")}) 
-        )
-        RETURNING ${MslRecipientTable.PAYLOAD_ID}"""
-      val args = SqlUtil.buildArgs(recipientId, device)
+        UPDATE ${MslRecipientTable.TABLE_NAME} 
+        SET $column = $column & ~$bit
+        WHERE
+          ${MslRecipientTable.RECIPIENT_ID} = ? AND
+          ($column & $bit) != 0 AND
+          ${MslRecipientTable.PAYLOAD_ID} IN (
+            SELECT ${MslPayloadTable.ID} 
+            FROM ${MslPayloadTable.TABLE_NAME} 
+            WHERE ${MslPayloadTable.DATE_SENT} IN (${dateSent.joinToString(",")}) 
+          )
+        RETURNING ${MslRecipientTable.PAYLOAD_ID}, ${MslRecipientTable.DEVICES}, ${MslRecipientTable.DEVICES_HIGH}"""
+      val args = SqlUtil.buildArgs(recipientId)
 
-      val payloadIds = db.rawQuery(query, args).readToList {
-        it.requireLong(MslRecipientTable.PAYLOAD_ID)
+      val payloadIds = db.rawQuery(query, args)
+        .readToList { cursor ->
+          val remaining = DeviceMask(cursor.requireLong(MslRecipientTable.DEVICES), cursor.requireLong(MslRecipientTable.DEVICES_HIGH))
+          cursor.requireLong(MslRecipientTable.PAYLOAD_ID) to remaining
+        }
+        .filter { (_, remaining) -> remaining.isEmpty() }
+        .map { (payloadId, _) -> payloadId }
+
+      SqlUtil.buildCollectionQuery(MslRecipientTable.PAYLOAD_ID, payloadIds).forEach {
+        db.delete(
+          MslRecipientTable.TABLE_NAME,
+          "${it.where} AND ${MslRecipientTable.RECIPIENT_ID} = ? AND ${MslRecipientTable.DEVICES} = 0 AND ${MslRecipientTable.DEVICES_HIGH} = 0",
+          SqlUtil.appendArg(it.whereArgs, recipientId.serialize())
+        )
       }
 
-      val queries = SqlUtil.buildCollectionQuery(MslPayloadTable.ID, payloadIds)
-      queries.forEach {
+      SqlUtil.buildCollectionQuery(MslPayloadTable.ID, payloadIds).forEach {
         db.delete(MslPayloadTable.TABLE_NAME, "${it.where} AND ${MslPayloadTable.ID} NOT IN (SELECT ${MslRecipientTable.PAYLOAD_ID} FROM ${MslRecipientTable.TABLE_NAME})", it.whereArgs)
       }
       db.setTransactionSuccessful()
@@ -366,27 +484,46 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
     databaseHelper.signalWritableDatabase.delete(MslPayloadTable.TABLE_NAME, null, null)
   }
 
+  /**
+   * Deletes entries older than [maxAge]. Entries are dropped in whole buckets of [TRIM_BUCKET_SIZE], so this only touches the table once per bucket.
+   * Readers are expected to filter out entries that are past [maxAge] but still in the current bucket.
+   */
   fun trimOldMessages(currentTime: Long, maxAge: Long) {
     if (!FeatureFlags.retryReceipts()) return
 
+    val bucket = (currentTime - maxAge) / TRIM_BUCKET_SIZE
+    if (bucket == lastTrimmedBucket) {
+      return
+    }
+
     val db = databaseHelper.signalWritableDatabase
     val query = "${MslPayloadTable.DATE_SENT} < ?"
-    val args = SqlUtil.buildArgs(currentTime - maxAge)
+    val args = SqlUtil.buildArgs(bucket * TRIM_BUCKET_SIZE)
 
     db.delete(MslPayloadTable.TABLE_NAME, query, args)
+    lastTrimmedBucket = bucket
   }
 
   override fun remapRecipient(oldRecipientId: RecipientId, newRecipientId: RecipientId) {
-    val values = ContentValues().apply {
-      put(MslRecipientTable.RECIPIENT_ID, newRecipientId.serialize())
-    }
-
     val db = databaseHelper.signalWritableDatabase
-    val query = "${MslRecipientTable.RECIPIENT_ID} = ?"
-    val args = SqlUtil.buildArgs(oldRecipientId.serialize())
 
-    db.update(MslRecipientTable.TABLE_NAME, values, query, args)
+    db.beginTransaction()
+    try {
+      // If both recipients were sent the same payload, the unique index prevents the update. We just drop the old entry in that case.
+      db.execSQL(
+        "UPDATE OR IGNORE ${MslRecipientTable.TABLE_NAME} SET ${MslRecipientTable.RECIPIENT_ID} = ? WHERE ${MslRecipientTable.RECIPIENT_ID} = ?",
+        SqlUtil.buildArgs(newRecipientId, oldRecipientId)
+      )
+      db.delete(MslRecipientTable.TABLE_NAME, "${MslRecipientTable.RECIPIENT_ID} = ?", SqlUtil.buildArgs(oldRecipientId))
+      db.setTransactionSuccessful()
+    } finally {
+      db.endTransaction()
+    }
   }
 
   private data class RecipientDevice(val recipientId: RecipientId, val devices: List<Int>)
+
+  private data class DeviceMask(val low: Long, val high: Long) {
+    fun isEmpty(): Boolean = low == 0L && high == 0L
+  }
 }
@@ -99,11 +99,13 @@ import org.thoughtcrime.securesms.database.model.ParentStoryId
 import org.thoughtcrime.securesms.database.model.ParentStoryId.DirectReply
 import org.thoughtcrime.securesms.database.model.ParentStoryId.GroupReply
 import org.thoughtcrime.securesms.database.model.Quote
+import org.thoughtcrime.securesms.database.model.StoryIndexEntry
 import org.thoughtcrime.securesms.database.model.StoryResult
 import org.thoughtcrime.securesms.database.model.StoryType
 import org.thoughtcrime.securesms.database.model.StoryType.Companion.fromCode
 import org.thoughtcrime.securesms.database.model.StoryViewState
 import org.thoughtcrime.securesms.database.model.databaseprotos.BodyRangeList
+import org.thoughtcrime.securesms.database.model.databaseprotos.DecryptedGroupV2Context
 import org.thoughtcrime.securesms.database.model.databaseprotos.GiftBadge
 import org.thoughtcrime.securesms.database.model.databaseprotos.GroupCallUpdateDetails
 import org.thoughtcrime.securesms.database.model.databaseprotos.MessageExportState
@@ -209,6 +211,7 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
     const val LATEST_REVISION_ID = "latest_revision_id"
     const val ORIGINAL_MESSAGE_ID = "original_message_id"
     const val REVISION_NUMBER = "revision_number"
+    const val UPDATE_PAYLOAD = "update_payload"
 
     const val CREATE_TABLE = """
       CREATE TABLE $TABLE_NAME (
@@ -263,7 +266,8 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
         $SCHEDULED_DATE INTEGER DEFAULT -1,
         $LATEST_REVISION_ID INTEGER DEFAULT NULL REFERENCES $TABLE_NAME ($ID) ON DELETE CASCADE,
         $ORIGINAL_MESSAGE_ID INTEGER DEFAULT NULL REFERENCES $TABLE_NAME ($ID) ON DELETE CASCADE,
-        $REVISION_NUMBER INTEGER DEFAULT 0
+        $REVISION_NUMBER INTEGER DEFAULT 0,
+        $UPDATE_PAYLOAD BLOB DEFAULT NULL
       )
     """
 
@@ -341,7 +345,8 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
       SCHEDULED_DATE,
       LATEST_REVISION_ID,
       ORIGINAL_MESSAGE_ID,
-      REVISION_NUMBER
+      REVISION_NUMBER,
+      UPDATE_PAYLOAD
     )
 
     private val MMS_PROJECTION: Array<String> = MMS_PROJECTION_BASE + "NULL AS ${AttachmentTable.ATTACHMENT_JSON_ALIAS}"
@@ -385,6 +390,9 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
     private const val IS_STORY_CLAUSE = "$STORY_TYPE > 0 AND $REMOTE_DELETED = 0"
     private const val RAW_ID_WHERE = "$TABLE_NAME.$ID = ?"
 
+    /** How many target timestamps go into each receipt update, leaving room for the other arguments. */
+    private const val RECEIPT_TIMESTAMP_BATCH_SIZE = 500
+
     private val SNIPPET_QUERY =
       """
         SELECT 
@@ -572,6 +580,18 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
     return rawQueryWithAttachments(where, null)
   }
 
+  /**
+   * A lightweight version of [getExpirationStartedMessages] for scheduling. Each row only has the message's [ID] followed by the time it
+   * expires at.
+   */
+  fun getExpirationStartedMessageSchedule(): Cursor {
+    return readableDatabase
+      .select(ID, "$EXPIRE_STARTED + $EXPIRES_IN")
+      .from(TABLE_NAME)
+      .where("$EXPIRE_STARTED > 0")
+      .run()
+  }
+
   fun getMessageCursor(messageId: Long): Cursor {
     return internalGetMessage(messageId)
   }
@@ -1064,11 +1084,16 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
     values.put(SMS_SUBSCRIPTION_ID, message.subscriptionId)
     values.put(EXPIRES_IN, message.expiresIn)
     values.put(UNIDENTIFIED, message.isUnidentified)
-    values.put(BODY, message.messageBody)
     values.put(TYPE, type)
     values.put(THREAD_ID, threadId)
     values.put(SERVER_GUID, message.serverGuid)
 
+    if (MessageTypes.isGroupV2(type) && MessageTypes.isGroupUpdate(type)) {
+      values.put(UPDATE_PAYLOAD, (message as IncomingGroupUpdateMessage).groupContext.requireGroupV2Properties().decryptedGroupV2Context.toByteArray())
+    } else {
+      values.put(BODY, message.messageBody)
+    }
+
     if (editedMessage != null) {
       values.put(ORIGINAL_MESSAGE_ID, editedMessage.getOriginalOrOwnMessageId().id)
     } else {
@@ -1188,7 +1213,7 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
             READ to 1,
             TYPE to MessageTypes.PROFILE_CHANGE_TYPE,
             THREAD_ID to threadId,
-            BODY to Base64.encodeBytes(profileChangeDetails)
+            UPDATE_PAYLOAD to profileChangeDetails
           )
           db.insert(TABLE_NAME, null, values)
           notifyConversationListeners(threadId)
@@ -1295,7 +1320,7 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
         READ to 1,
         TYPE to MessageTypes.THREAD_MERGE_TYPE,
         THREAD_ID to threadId,
-        BODY to Base64.encodeBytes(event.toByteArray())
+        UPDATE_PAYLOAD to event.toByteArray()
       )
       .run()
     ApplicationDependencies.getDatabaseObserver().notifyConversationListeners(threadId)
@@ -1314,7 +1339,7 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
         READ to 1,
         TYPE to MessageTypes.SESSION_SWITCHOVER_TYPE,
         THREAD_ID to threadId,
-        BODY to Base64.encodeBytes(event.toByteArray())
+        UPDATE_PAYLOAD to event.toByteArray()
       )
       .run()
     ApplicationDependencies.getDatabaseObserver().notifyConversationListeners(threadId)
@@ -1596,6 +1621,60 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
       }
   }
 
+  /**
+   * Returns a [StoryIndexEntry] for every story that hasn't been remotely deleted. Unlike [getOrderedStoryRecipientsAndIds], this also
+   * includes each story's sending, failure, read and receipt state, so callers can tell which stories changed without reading the full
+   * records.
+   */
+  fun getStoryIndex(): List<StoryIndexEntry> {
+    val baseType = "$TABLE_NAME.$TYPE & ${MessageTypes.BASE_TYPE_MASK}"
+    val identityBits = MessageTypes.KEY_EXCHANGE_IDENTITY_VERIFIED_BIT or MessageTypes.KEY_EXCHANGE_IDENTITY_DEFAULT_BIT
+
+    val query = """
+      SELECT
+        $TABLE_NAME.$ID,
+        $TABLE_NAME.$DATE_SENT,
+        $TABLE_NAME.$READ,
+        $TABLE_NAME.$DELIVERY_RECEIPT_COUNT,
+        $TABLE_NAME.$READ_RECEIPT_COUNT,
+        $TABLE_NAME.$VIEWED_RECEIPT_COUNT,
+        ${ThreadTable.TABLE_NAME}.${ThreadTable.RECIPIENT_ID},
+        ($outgoingTypeClause) AS is_outgoing,
+        (
+          (($baseType) IN (${MessageTypes.BASE_OUTBOX_TYPE}, ${MessageTypes.BASE_SENDING_TYPE}) AND ($TABLE_NAME.$TYPE & $identityBits) = 0) OR
+          EXISTS (
+            SELECT 1 FROM ${AttachmentTable.TABLE_NAME}
+            WHERE
+              ${AttachmentTable.TABLE_NAME}.${AttachmentTable.MMS_ID} = $TABLE_NAME.$ID AND
+              ${AttachmentTable.TABLE_NAME}.${AttachmentTable.TRANSFER_STATE} NOT IN (${AttachmentTable.TRANSFER_PROGRESS_DONE}, ${AttachmentTable.TRANSFER_PROGRESS_PERMANENT_FAILURE})
+          )
+        ) AS is_sending,
+        ($baseType) IN (${MessageTypes.BASE_SENT_FAILED_TYPE}, ${MessageTypes.BASE_PENDING_SECURE_SMS_FALLBACK}) AS is_failed
+      FROM $TABLE_NAME
+        JOIN ${ThreadTable.TABLE_NAME} ON $TABLE_NAME.$THREAD_ID = ${ThreadTable.TABLE_NAME}.${ThreadTable.ID}
+      WHERE
+        $STORY_TYPE > 0 AND
+        $REMOTE_DELETED = 0
+    """
+
+    return readableDatabase
+      .rawQuery(query, null)
+      .readToList { cursor ->
+        StoryIndexEntry(
+          recipientId = RecipientId.from(cursor.requireLong(ThreadTable.RECIPIENT_ID)),
+          messageId = cursor.requireLong(ID),
+          messageSentTimestamp = cursor.requireLong(DATE_SENT),
+          isOutgoing = cursor.requireBoolean("is_outgoing"),
+          isSending = cursor.requireBoolean("is_sending"),
+          isFailed = cursor.requireBoolean("is_failed"),
+          isRead = cursor.requireBoolean(READ),
+          deliveryReceiptCount = cursor.requireInt(DELIVERY_RECEIPT_COUNT),
+          readReceiptCount = cursor.requireInt(READ_RECEIPT_COUNT),
+          viewedReceiptCount = cursor.requireInt(VIEWED_RECEIPT_COUNT)
+        )
+      }
+  }
+
   fun getStoryReplies(parentStoryId: Long): Cursor {
     val where = "$PARENT_STORY_ID = ?"
     val whereArgs = buildArgs(parentStoryId)
@@ -2395,6 +2474,7 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
       val parentStoryId = ParentStoryId.deserialize(cursor.requireLong(PARENT_STORY_ID))
       val messageRangesData = cursor.requireBlob(MESSAGE_RANGES)
       val scheduledDate = cursor.requireLong(SCHEDULED_DATE)
+      val updatePayload = cursor.requireBlob(UPDATE_PAYLOAD)
 
       val quoteId = cursor.requireLong(QUOTE_ID)
       val quoteAuthor = cursor.requireLong(QUOTE_AUTHOR)
@@ -2444,10 +2524,18 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
         setOf()
       }
 
-      if (body != null && (MessageTypes.isGroupQuit(outboxType) || MessageTypes.isGroupUpdate(outboxType))) {
+      val groupContext: MessageGroupContext? = if (updatePayload != null && MessageTypes.isGroupV2(outboxType)) {
+        MessageGroupContext(DecryptedGroupV2Context.parseFrom(updatePayload))
+      } else if (body != null && (MessageTypes.isGroupQuit(outboxType) || MessageTypes.isGroupUpdate(outboxType))) {
+        MessageGroupContext(body, MessageTypes.isGroupV2(outboxType))
+      } else {
+        null
+      }
+
+      if (groupContext != null) {
         OutgoingMessage.groupUpdateMessage(
           threadRecipient = threadRecipient,
-          groupContext = MessageGroupContext(body, MessageTypes.isGroupV2(outboxType)),
+          groupContext = groupContext,
           avatar = attachments,
           sentTimeMillis = timestamp,
           expiresIn = 0,
@@ -3031,6 +3119,11 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
       contentValues.put(VIEWED_RECEIPT_COUNT, 1L)
     }
 
+    val hasUpdatePayload = MessageTypes.isGroupV2(type) && MessageTypes.isGroupUpdate(type)
+    if (hasUpdatePayload) {
+      contentValues.put(UPDATE_PAYLOAD, message.requireGroupV2Properties().decryptedGroupV2Context.toByteArray())
+    }
+
     val quoteAttachments: MutableList<Attachment> = mutableListOf()
 
     if (message.outgoingQuote != null) {
@@ -3067,7 +3160,7 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
     val bodyRanges = message.bodyRanges.adjustBodyRanges(updatedBodyAndMentions.bodyAdjustments)
     val (messageId, insertedAttachments) = insertMediaMessage(
       threadId = threadId,
-      body = updatedBodyAndMentions.bodyAsString,
+      body = if (hasUpdatePayload) null else updatedBodyAndMentions.bodyAsString,
       attachments = message.attachments,
       quoteAttachments = quoteAttachments,
       sharedContacts = message.sharedContacts,
@@ -3336,6 +3429,62 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
     return threadDeleted
   }
 
+  /**
+   * Deletes a batch of messages whose expiration timers have run out. Unlike calling [deleteMessage] for each of them, this does a
+   * single transaction, and only updates and notifies each affected thread once. Ids that no longer exist are skipped.
+   *
+   * @return The number of messages that were deleted.
+   */
+  fun deleteExpiredMessages(messageIds: Collection<Long>): Int {
+    val deletedIds: MutableList<Long> = ArrayList(messageIds.size)
+    val threadIds: MutableSet<Long> = HashSet()
+
+    writableDatabase.withinTransaction { db ->
+      for (query in SqlUtil.buildCollectionQuery(ID, messageIds)) {
+        db.select(ID, THREAD_ID)
+          .from(TABLE_NAME)
+          .where(query.where, query.whereArgs)
+          .run()
+          .forEach { cursor ->
+            deletedIds += cursor.requireLong(ID)
+            threadIds += cursor.requireLong(THREAD_ID)
+          }
+      }
+
+      if (deletedIds.isEmpty()) {
+        return@withinTransaction
+      }
+
+      attachments.deleteAttachmentsForMessages(deletedIds)
+      groupReceipts.deleteRowsForMessages(deletedIds)
+      mentions.deleteMentionsForMessages(deletedIds)
+
+      for (query in SqlUtil.buildCollectionQuery(ID, deletedIds)) {
+        db.delete(TABLE_NAME)
+          .where(query.where, query.whereArgs)
+          .run()
+      }
+
+      calls.updateCallEventDeletionTimestamps()
+
+      for (threadId in threadIds) {
+        threads.setLastScrolled(threadId, 0)
+        threads.update(threadId, false)
+      }
+    }
+
+    Log.d(TAG, "deleteExpiredMessages(${messageIds.size}): Deleted ${deletedIds.size} messages across ${threadIds.size} threads.")
+
+    if (deletedIds.isNotEmpty()) {
+      notifyConversationListeners(threadIds)
+      notifyStickerListeners()
+      notifyStickerPackListeners()
+      OptimizeMessageSearchIndexJob.enqueue()
+    }
+
+    return deletedIds.size
+  }
+
   fun deleteScheduledMessage(messageId: Long) {
     Log.d(TAG, "deleteScheduledMessage($messageId)")
 
@@ -3676,19 +3825,22 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
             val secondLatestMessage = reader.getNext()
 
             val id: Long
-            val encodedBody: String
+            val updatePayload: ByteArray
 
             if (secondLatestMessage != null && secondLatestMessage.isGroupV2JoinRequest(changeEditor.get())) {
               id = secondLatestMessage.id
-              encodedBody = MessageRecord.createNewContextWithAppendedDeleteJoinRequest(secondLatestMessage, message.changeRevision, changeEditor.get())
+              updatePayload = MessageRecord.createNewContextWithAppendedDeleteJoinRequest(secondLatestMessage, message.changeRevision, changeEditor.get())
               deleteMessage(latestMessage.id)
             } else {
               id = latestMessage.id
-              encodedBody = MessageRecord.createNewContextWithAppendedDeleteJoinRequest(latestMessage, message.changeRevision, changeEditor.get())
+              updatePayload = MessageRecord.createNewContextWithAppendedDeleteJoinRequest(latestMessage, message.changeRevision, changeEditor.get())
             }
 
             db.update(TABLE_NAME)
-              .values(BODY to encodedBody)
+              .values(
+                BODY to null,
+                UPDATE_PAYLOAD to updatePayload
+              )
               .where("$ID = ?", id)
               .run()
 
@@ -4270,6 +4422,28 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
     }
   }
 
+  /**
+   * Same as [updateMessageExportState], but for many messages in a single transaction.
+   */
+  fun updateMessageExportStates(messageIds: Collection<MessageId>, transform: Function<MessageExportState, MessageExportState>) {
+    writableDatabase.withinTransaction {
+      for (messageId in messageIds) {
+        setMessageExportState(messageId, transform.apply(getMessageExportState(messageId)))
+      }
+    }
+  }
+
+  fun markMessagesExported(messageIds: Collection<MessageId>) {
+    writableDatabase.withinTransaction { db ->
+      for (query in SqlUtil.buildCollectionQuery(ID, messageIds.map { it.id })) {
+        db.update(TABLE_NAME)
+          .values(EXPORTED to MessageExportStatus.EXPORTED.serialize())
+          .where(query.where, query.whereArgs)
+          .run()
+      }
+    }
+  }
+
   fun markMessageExported(messageId: MessageId) {
     writableDatabase
       .update(TABLE_NAME)
@@ -4329,31 +4503,20 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
   }
 
   fun incrementViewedStoryReceiptCounts(targetTimestamps: List<Long>, receiptAuthor: RecipientId, receiptSentTimestamp: Long): Set<Long> {
-    val messageUpdates: MutableSet<MessageReceiptUpdate> = HashSet()
-    val unhandled: MutableSet<Long> = HashSet()
-
-    writableDatabase.withinTransaction {
-      for (targetTimestamp in targetTimestamps) {
-        val updates = incrementReceiptCountInternal(targetTimestamp, receiptAuthor, receiptSentTimestamp, ReceiptType.VIEWED, MessageQualifier.STORY)
-
-        if (updates.isNotEmpty()) {
-          messageUpdates += updates
-        } else {
-          unhandled += targetTimestamp
-        }
-      }
+    val result: ReceiptCountResult = writableDatabase.withinTransaction {
+      incrementReceiptCountsInternal(targetTimestamps, receiptAuthor, receiptSentTimestamp, ReceiptType.VIEWED, MessageQualifier.STORY)
     }
 
-    for (update in messageUpdates) {
+    for (update in result.updates) {
       ApplicationDependencies.getDatabaseObserver().notifyMessageUpdateObservers(update.messageId)
       ApplicationDependencies.getDatabaseObserver().notifyVerboseConversationListeners(setOf(update.threadId))
     }
 
-    if (messageUpdates.isNotEmpty()) {
+    if (result.updates.isNotEmpty()) {
       notifyConversationListListeners()
     }
 
-    return unhandled
+    return result.missingTargetTimestamps
   }
 
   /**
@@ -4365,7 +4528,7 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
     var messageUpdates: Set<MessageReceiptUpdate> = HashSet()
 
     writableDatabase.withinTransaction {
-      messageUpdates = incrementReceiptCountInternal(targetTimestamp, receiptAuthor, receiptSentTimestamp, receiptType, messageQualifier)
+      messageUpdates = incrementReceiptCountsInternal(listOf(targetTimestamp), receiptAuthor, receiptSentTimestamp, receiptType, messageQualifier).updates
 
       for (messageUpdate in messageUpdates) {
         threads.update(messageUpdate.threadId, false)
@@ -4385,27 +4548,17 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
    * @return All of the target timestamps that couldn't be found in the table.
    */
   private fun incrementReceiptCounts(targetTimestamps: List<Long>, receiptAuthor: RecipientId, receiptSentTimestamp: Long, receiptType: ReceiptType, messageQualifier: MessageQualifier = MessageQualifier.ALL): Set<Long> {
-    val messageUpdates: MutableSet<MessageReceiptUpdate> = HashSet()
-    val missingTargetTimestamps: MutableSet<Long> = HashSet()
+    val result: ReceiptCountResult = writableDatabase.withinTransaction {
+      val batchResult = incrementReceiptCountsInternal(targetTimestamps, receiptAuthor, receiptSentTimestamp, receiptType, messageQualifier)
 
-    writableDatabase.withinTransaction {
-      for (targetTimestamp in targetTimestamps) {
-        val updates: Set<MessageReceiptUpdate> = incrementReceiptCountInternal(targetTimestamp, receiptAuthor, receiptSentTimestamp, receiptType, messageQualifier)
-        if (updates.isNotEmpty()) {
-          messageUpdates += updates
-        } else {
-          missingTargetTimestamps += targetTimestamp
-        }
+      for (threadId in batchResult.updates.filter { it.shouldUpdateSnippet }.map { it.threadId }.toSet()) {
+        threads.updateSilently(threadId, false)
       }
 
-      for (update in messageUpdates) {
-        if (update.shouldUpdateSnippet) {
-          threads.updateSilently(update.threadId, false)
-        }
-      }
+      batchResult
     }
 
-    for (update in messageUpdates) {
+    for (update in result.updates) {
       ApplicationDependencies.getDatabaseObserver().notifyMessageUpdateObservers(update.messageId)
       ApplicationDependencies.getDatabaseObserver().notifyVerboseConversationListeners(setOf(update.threadId))
 
@@ -4414,15 +4567,24 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
       }
     }
 
-    if (messageUpdates.isNotEmpty()) {
+    if (result.updates.isNotEmpty()) {
       notifyConversationListListeners()
     }
 
-    return missingTargetTimestamps
+    return result.missingTargetTimestamps
   }
 
-  private fun incrementReceiptCountInternal(targetTimestamp: Long, receiptAuthor: RecipientId, receiptSentTimestamp: Long, receiptType: ReceiptType, messageQualifier: MessageQualifier): Set<MessageReceiptUpdate> {
+  /**
+   * Applies a receipt from [receiptAuthor] to every message we sent at one of [targetTimestamps]. Rather than going message by message,
+   * this runs one update per chunk of timestamps, and updates the group receipts and story sends for every matched message at once.
+   *
+   * A timestamp that's listed more than once is only counted once. Must be called inside a transaction.
+   */
+  private fun incrementReceiptCountsInternal(targetTimestamps: Collection<Long>, receiptAuthor: RecipientId, receiptSentTimestamp: Long, receiptType: ReceiptType, messageQualifier: MessageQualifier): ReceiptCountResult {
     val messageUpdates: MutableSet<MessageReceiptUpdate> = HashSet()
+    val foundTimestamps: MutableSet<Long> = HashSet()
+    val storyTimestamps: MutableSet<Long> = HashSet()
+    val updatedMessageIds: MutableList<Long> = ArrayList()
 
     val qualifierWhere: String = when (messageQualifier) {
       MessageQualifier.NORMAL -> " AND NOT ($IS_STORY_CLAUSE)"
@@ -4430,59 +4592,66 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
       MessageQualifier.ALL -> ""
     }
 
-    var found = false
-    var hasStory = false
-    writableDatabase.rawQuery(
-      """
-        UPDATE $TABLE_NAME
-        SET
-          ${receiptType.columnName} = ${receiptType.columnName} + 1,
-          $RECEIPT_TIMESTAMP = CASE 
-            WHEN ${receiptType.columnName} = 0 THEN MAX($RECEIPT_TIMESTAMP, $receiptSentTimestamp) 
-            ELSE $RECEIPT_TIMESTAMP 
-          END 
-        WHERE
-          $DATE_SENT = $targetTimestamp AND
-          $FROM_RECIPIENT_ID = ? AND
-          (
-            $TO_RECIPIENT_ID = ? OR 
-            EXISTS (
-              SELECT 1 
-              FROM ${RecipientTable.TABLE_NAME} 
-              WHERE 
-                ${RecipientTable.TABLE_NAME}.${RecipientTable.ID} = $TO_RECIPIENT_ID AND 
-                ${RecipientTable.TABLE_NAME}.${RecipientTable.GROUP_TYPE} != ${RecipientTable.GroupType.NONE.id}
+    for (query in SqlUtil.buildCollectionQuery(DATE_SENT, targetTimestamps.toSet(), maxSize = RECEIPT_TIMESTAMP_BATCH_SIZE)) {
+      writableDatabase.rawQuery(
+        """
+          UPDATE $TABLE_NAME
+          SET
+            ${receiptType.columnName} = ${receiptType.columnName} + 1,
+            $RECEIPT_TIMESTAMP = CASE 
+              WHEN ${receiptType.columnName} = 0 THEN MAX($RECEIPT_TIMESTAMP, $receiptSentTimestamp) 
+              ELSE $RECEIPT_TIMESTAMP 
+            END 
+          WHERE
+            ${query.where} AND
+            $FROM_RECIPIENT_ID = ? AND
+            (
+              $TO_RECIPIENT_ID = ? OR 
+              $TO_RECIPIENT_ID IN (
+                SELECT ${RecipientTable.ID} 
+                FROM ${RecipientTable.TABLE_NAME} 
+                WHERE ${RecipientTable.GROUP_TYPE} != ${RecipientTable.GroupType.NONE.id}
+              )
             )
-          )
-          $qualifierWhere
-        RETURNING $ID, $THREAD_ID, $STORY_TYPE, ${receiptType.columnName}
-      """,
-      buildArgs(Recipient.self().id, receiptAuthor)
-    ).forEach { cursor ->
-      val messageId = cursor.requireLong(ID)
-      val threadId = cursor.requireLong(THREAD_ID)
-      val storyType = StoryType.fromCode(cursor.requireInt(STORY_TYPE))
-      val receiptCount = cursor.requireInt(receiptType.columnName)
+            $qualifierWhere
+          RETURNING $ID, $THREAD_ID, $DATE_SENT, $STORY_TYPE, ${receiptType.columnName}
+        """,
+        query.whereArgs + buildArgs(Recipient.self().id, receiptAuthor)
+      ).forEach { cursor ->
+        val messageId = cursor.requireLong(ID)
+        val threadId = cursor.requireLong(THREAD_ID)
+        val dateSent = cursor.requireLong(DATE_SENT)
+        val storyType = StoryType.fromCode(cursor.requireInt(STORY_TYPE))
+        val receiptCount = cursor.requireInt(receiptType.columnName)
 
-      groupReceipts.update(receiptAuthor, messageId, receiptType.groupStatus, receiptSentTimestamp)
-      messageUpdates += MessageReceiptUpdate(threadId, MessageId(messageId), receiptType != ReceiptType.VIEWED && receiptCount == 1)
+        updatedMessageIds += messageId
+        messageUpdates += MessageReceiptUpdate(threadId, MessageId(messageId), receiptType != ReceiptType.VIEWED && receiptCount == 1)
+        foundTimestamps += dateSent
 
-      found = true
-      hasStory = storyType != StoryType.NONE
+        if (storyType != StoryType.NONE) {
+          storyTimestamps += dateSent
+        }
+      }
     }
 
-    if (!found && receiptType == ReceiptType.DELIVERY) {
-      earlyDeliveryReceiptCache.increment(targetTimestamp, receiptAuthor, receiptSentTimestamp)
+    if (storyTimestamps.isNotEmpty()) {
+      for (messageId in storySends.getStoryMessagesFor(receiptAuthor, storyTimestamps)) {
+        updatedMessageIds += messageId.id
+        messageUpdates += MessageReceiptUpdate(-1, messageId, false)
+      }
     }
 
-    if (hasStory) {
-      for (messageId in storySends.getStoryMessagesFor(receiptAuthor, targetTimestamp)) {
-        groupReceipts.update(receiptAuthor, messageId.id, receiptType.groupStatus, receiptSentTimestamp)
-        messageUpdates += MessageReceiptUpdate(-1, messageId, false)
+    groupReceipts.update(receiptAuthor, updatedMessageIds, receiptType.groupStatus, receiptSentTimestamp)
+
+    val missingTargetTimestamps: Set<Long> = targetTimestamps.filterNot { foundTimestamps.contains(it) }.toSet()
+
+    if (receiptType == ReceiptType.DELIVERY) {
+      for (targetTimestamp in missingTargetTimestamps) {
+        earlyDeliveryReceiptCache.increment(targetTimestamp, receiptAuthor, receiptSentTimestamp)
       }
     }
 
-    return messageUpdates
+    return ReceiptCountResult(messageUpdates, missingTargetTimestamps)
   }
 
   /**
@@ -4982,6 +5151,11 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
     private val author: RecipientId
   )
 
+  private class ReceiptCountResult(
+    val updates: Set<MessageReceiptUpdate>,
+    val missingTargetTimestamps: Set<Long>
+  )
+
   private class TimestampReadResult(
     val expiring: List<Pair<Long, Long>>,
     val threads: List<Long>
@@ -5215,6 +5389,7 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
       val latestRevisionId: MessageId? = cursor.requireLong(LATEST_REVISION_ID).let { if (it == 0L) null else MessageId(it) }
       val originalMessageId: MessageId? = cursor.requireLong(ORIGINAL_MESSAGE_ID).let { if (it == 0L) null else MessageId(it) }
       val editCount = cursor.requireInt(REVISION_NUMBER)
+      val updatePayload = cursor.requireBlob(UPDATE_PAYLOAD)
 
       if (!TextSecurePreferences.isReadReceiptsEnabled(context)) {
         readReceiptCount = 0
@@ -5273,6 +5448,7 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
         deliveryReceiptCount,
         threadId,
         body,
+        updatePayload,
         slideDeck,
         box,
         mismatches,
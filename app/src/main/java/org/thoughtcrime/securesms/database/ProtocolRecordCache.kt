@@ -0,0 +1,274 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import org.thoughtcrime.securesms.util.LRUCache
+
+/**
+ * A size-bounded cache of deserialized protocol records (sessions, sender keys) that sits in front of their table. Since every store
+ * reads through the table, it's shared by the buffered store used while decrypting and the stores used while sending.
+ *
+ * Records are mutable and expensive to copy, so instead of copying them the cache hands them out in one of two ways:
+ * - [take] transfers ownership of the record to the caller, and the cache forgets about it until it's given back with [put]. The caller
+ *   is free to change it, and if it never stores it again (say, because decryption failed), the next read goes back to the table.
+ * - [borrow] and [borrowAll] lend out records that stay in the cache. The caller must not change them, and must be done with them before
+ *   releasing the session lock.
+ *
+ * [put] takes ownership of the record it's given, so callers must not change a record after storing it without taking it again.
+ *
+ * Writes made inside a transaction only go to a per-thread overlay, which only the writing thread can see, and are written back to
+ * the shared cache once the transaction commits. If the transaction rolls back, everything it cached is evicted instead, since those
+ * reads may have seen the transaction's own uncommitted writes. An overlay left behind by a transaction whose end failed is discarded
+ * the same way the next time this thread touches the cache.
+ *
+ * Callers are expected to hold the session lock around reads and writes, as they do for the underlying tables, so nothing can read the
+ * shared cache between a commit and the write-back that follows it.
+ */
+class ProtocolRecordCache<K : Any, V : Any>(private val maxSize: Int) {
+
+  private val committed: LRUCache<K, V> = LRUCache(maxSize)
+  private val overlays: ThreadLocal<Overlay<K, V>?> = ThreadLocal()
+
+  /** Bumped on every change to [committed] that didn't come from a read, so a read that raced with a write won't cache stale data. */
+  private var version: Long = 0
+  private var hits: Long = 0
+  private var misses: Long = 0
+
+  /**
+   * Returns the record for [key], reading it with [loader] if it isn't cached, and transfers ownership of it to the caller. It won't be
+   * cached again until it's [put] back.
+   */
+  fun take(db: SQLiteDatabase, key: K, loader: () -> V?): V? {
+    val overlay = getOverlay(db)
+
+    if (overlay != null && overlay.writes.containsKey(key)) {
+      synchronized(this) { hits++ }
+
+      val written = overlay.writes[key] ?: return null
+
+      overlay.writes.remove(key)
+      overlay.checkedOut += key
+      return written
+    }
+
+    if (overlay == null || key !in overlay.checkedOut) {
+      synchronized(this) {
+        val cached = committed.remove(key)
+        if (cached != null) {
+          hits++
+          return cached
+        }
+
+        misses++
+      }
+    } else {
+      synchronized(this) { misses++ }
+    }
+
+    return loader()
+  }
+
+  /**
+   * Returns the record for [key], reading and caching it with [loader] if it isn't cached. The record still belongs to the cache, so
+   * the caller must not change it.
+   */
+  fun borrow(db: SQLiteDatabase, key: K, loader: () -> V?): V? {
+    return borrowAll(db, listOf(key)) { missing -> missing.mapNotNull { k -> loader()?.let { k to it } }.toMap() }[key]
+  }
+
+  /**
+   * Same as [borrow], but for many keys at once. [loader] is called at most once, with all of the keys that weren't cached, and should
+   * leave out any that don't exist.
+   */
+  fun borrowAll(db: SQLiteDatabase, keys: Collection<K>, loader: (List<K>) -> Map<K, V>): Map<K, V> {
+    val overlay = getOverlay(db)
+    val found: MutableMap<K, V> = HashMap(keys.size)
+    val missing: MutableList<K> = ArrayList()
+    val readVersion: Long
+
+    synchronized(this) {
+      for (key in keys) {
+        if (overlay != null && overlay.writes.containsKey(key)) {
+          hits++
+          overlay.writes[key]?.let { found[key] = it }
+          continue
+        }
+
+        val cached = if (overlay != null && key in overlay.checkedOut) null else committed[key]
+        if (cached != null) {
+          hits++
+          found[key] = cached
+        } else {
+          misses++
+          missing += key
+        }
+      }
+
+      readVersion = version
+    }
+
+    if (missing.isEmpty()) {
+      return found
+    }
+
+    val loaded = loader(missing)
+    found.putAll(loaded)
+
+    if (overlay == null || overlay.invalidations.isEmpty()) {
+      synchronized(this) {
+        if (version == readVersion) {
+          loaded.forEach { (key, value) ->
+            if (overlay == null || key !in overlay.checkedOut) {
+              committed[key] = value
+              overlay?.reads?.add(key)
+            }
+          }
+        }
+      }
+    }
+
+    return found
+  }
+
+  /**
+   * Caches [value] for [key], taking ownership of it.
+   */
+  fun put(db: SQLiteDatabase, key: K, value: V) {
+    val overlay = getOverlay(db)
+
+    if (overlay != null) {
+      overlay.writes[key] = value
+      overlay.checkedOut -= key
+    } else {
+      synchronized(this) {
+        committed[key] = value
+        version++
+      }
+    }
+  }
+
+  fun remove(db: SQLiteDatabase, key: K) {
+    val overlay = getOverlay(db)
+
+    if (overlay != null) {
+      overlay.writes[key] = null
+      overlay.checkedOut -= key
+    } else {
+      synchronized(this) {
+        committed.remove(key)
+        version++
+      }
+    }
+  }
+
+  /**
+   * Evicts every record matching [predicate], for writes that affect more rows than we can name up front.
+   */
+  fun removeMatching(db: SQLiteDatabase, predicate: (K) -> Boolean) {
+    val overlay = getOverlay(db)
+
+    if (overlay != null) {
+      overlay.invalidations += predicate
+      overlay.writes.keys.filter(predicate).forEach { overlay.writes[it] = null }
+    }
+
+    synchronized(this) {
+      committed.keys.removeAll(predicate)
+      version++
+    }
+  }
+
+  fun getStats(): Stats {
+    synchronized(this) {
+      return Stats(size = committed.size, maxSize = maxSize, hits = hits, misses = misses)
+    }
+  }
+
+  private fun getOverlay(db: SQLiteDatabase): Overlay<K, V>? {
+    val existing = overlays.get()
+
+    if (existing != null && existing.transaction !== db.currentTransaction()) {
+      // The transaction this overlay belongs to ended without its callbacks running, so we can't know what it did
+      overlays.remove()
+      onRollback(existing)
+    } else if (existing != null) {
+      return existing
+    }
+
+    val transaction = db.currentTransaction() ?: return null
+
+    val overlay = Overlay<K, V>(transaction)
+    overlays.set(overlay)
+
+    db.runPostSuccessfulTransaction { onCommit(overlay) }
+    db.runPostFailedTransaction { onRollback(overlay) }
+
+    return overlay
+  }
+
+  private fun onCommit(overlay: Overlay<K, V>) {
+    try {
+      synchronized(this) {
+        for (predicate in overlay.invalidations) {
+          committed.keys.removeAll(predicate)
+        }
+
+        for (key in overlay.checkedOut) {
+          committed.remove(key)
+        }
+
+        for ((key, value) in overlay.writes) {
+          if (value != null) {
+            committed[key] = value
+          } else {
+            committed.remove(key)
+          }
+        }
+
+        version++
+      }
+    } finally {
+      clearOverlay(overlay)
+    }
+  }
+
+  private fun onRollback(overlay: Overlay<K, V>) {
+    try {
+      synchronized(this) {
+        overlay.reads.forEach { committed.remove(it) }
+        overlay.writes.keys.forEach { committed.remove(it) }
+        overlay.checkedOut.forEach { committed.remove(it) }
+        version++
+      }
+    } finally {
+      clearOverlay(overlay)
+    }
+  }
+
+  private fun clearOverlay(overlay: Overlay<K, V>) {
+    if (overlays.get() === overlay) {
+      overlays.remove()
+    }
+  }
+
+  private class Overlay<K, V>(val transaction: Any) {
+    /** Records written in this transaction. A null value means the record was deleted. */
+    val writes: MutableMap<K, V?> = HashMap()
+
+    /** Records written in this transaction that have since been taken, so the table is the only place that has them. */
+    val checkedOut: MutableSet<K> = HashSet()
+
+    /** Records loaded into the shared cache during this transaction, which may reflect its uncommitted writes. */
+    val reads: MutableSet<K> = HashSet()
+
+    val invalidations: MutableList<(K) -> Boolean> = ArrayList()
+  }
+
+  data class Stats(val size: Int, val maxSize: Int, val hits: Long, val misses: Long) {
+    val hitRate: Float
+      get() = if (hits + misses > 0) hits.toFloat() / (hits + misses) else 0f
+  }
+}
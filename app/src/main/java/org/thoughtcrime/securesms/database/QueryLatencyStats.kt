@@ -0,0 +1,71 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import androidx.annotation.VisibleForTesting
+import org.signal.core.util.LatencyHistogram
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Keeps a [LatencyHistogram] per distinct query. Queries are identified by their SQL, with any literals inlined into it
+ * replaced by placeholders (see [normalize]), so the number of distinct keys stays small and no message content or ids
+ * end up in the debug log. Past [maxQueries], anything new is lumped into a single bucket so that memory stays bounded.
+ *
+ * Note that for queries returning a cursor, this measures the time to prepare the query and not the time to fill the
+ * cursor window, which happens lazily.
+ */
+class QueryLatencyStats(private val maxQueries: Int = 500) {
+
+  companion object {
+    const val OTHER = "<other>"
+
+    private val STRING_LITERAL = Regex("""(?:\b[xX])?'(?:[^']|'')*'""")
+    private val NUMERIC_LITERAL = Regex("""\b\d+(?:\.\d+)?(?:[eE][+-]?\d+)?\b""")
+    private val PLACEHOLDER_LIST = Regex("""\(\s*\?(?:\s*,\s*\?)*\s*\)""")
+    private val WHITESPACE = Regex("""\s+""")
+
+    /**
+     * Replaces the string, blob and numeric literals in [query] with `?`, and collapses lists of placeholders (like those in
+     * `IN (...)`) into a single one, so that queries differing only in their values share a key.
+     */
+    @VisibleForTesting
+    fun normalize(query: String): String {
+      return query
+        .replace(STRING_LITERAL, "?")
+        .replace(NUMERIC_LITERAL, "?")
+        .replace(PLACEHOLDER_LIST, "(?)")
+        .replace(WHITESPACE, " ")
+        .trim()
+    }
+  }
+
+  private val histograms: MutableMap<String, LatencyHistogram> = ConcurrentHashMap()
+
+  fun record(query: String, durationNanos: Long) {
+    val key = normalize(query)
+    val histogram = histograms[key] ?: if (histograms.size < maxQueries) {
+      histograms.getOrPut(key) { LatencyHistogram() }
+    } else {
+      histograms.getOrPut(OTHER) { LatencyHistogram() }
+    }
+
+    histogram.record(durationNanos)
+  }
+
+  /**
+   * @return The [limit] queries that have taken the most total time, in descending order.
+   */
+  fun getSlowest(limit: Int): List<Pair<String, LatencyHistogram.Snapshot>> {
+    return histograms.entries
+      .map { it.key to it.value.snapshot() }
+      .sortedByDescending { it.second.totalNanos }
+      .take(limit)
+  }
+
+  fun clear() {
+    histograms.clear()
+  }
+}
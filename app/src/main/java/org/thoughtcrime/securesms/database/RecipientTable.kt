@@ -727,6 +727,25 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
     }
   }
 
+  /**
+   * Reads the records for all of the provided ids in a single query (or one per batch, for very large sets) rather than one per recipient.
+   * Ids that can't be found are left out, so callers should fall back to [getRecord] for those to pick up any remapping.
+   */
+  fun getRecords(ids: Collection<RecipientId>): Map<RecipientId, RecipientRecord> {
+    val records: MutableMap<RecipientId, RecipientRecord> = HashMap(ids.size)
+
+    for (query in SqlUtil.buildCollectionQuery(ID, ids.map { it.serialize() })) {
+      readableDatabase.query(TABLE_NAME, RECIPIENT_PROJECTION, query.where, query.whereArgs, null, null, null).use { cursor ->
+        while (cursor.moveToNext()) {
+          val record = getRecord(context, cursor)
+          records[record.id] = record
+        }
+      }
+    }
+
+    return records
+  }
+
   fun getRecordForSync(id: RecipientId): RecipientRecord? {
     val query = "$TABLE_NAME.$ID = ?"
     val args = arrayOf(id.serialize())
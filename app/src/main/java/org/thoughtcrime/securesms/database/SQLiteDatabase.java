@@ -8,6 +8,7 @@ import android.os.CancellationSignal;
 import android.util.Pair;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 import androidx.sqlite.db.SupportSQLiteQuery;
 
@@ -47,20 +48,32 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
 
   private final net.zetetic.database.sqlcipher.SQLiteDatabase wrapped;
   private final Tracer                                        tracer;
+  private final WalCheckpointScheduler                        checkpointScheduler;
 
   private static final ThreadLocal<Set<Runnable>> PENDING_POST_SUCCESSFUL_TRANSACTION_TASKS;
   private static final ThreadLocal<Set<Runnable>> POST_SUCCESSFUL_TRANSACTION_TASKS;
+  private static final ThreadLocal<Set<Runnable>> PENDING_POST_FAILED_TRANSACTION_TASKS;
+  private static final ThreadLocal<Set<Runnable>> POST_FAILED_TRANSACTION_TASKS;
+  private static final ThreadLocal<Object>        CURRENT_TRANSACTION;
 
   static {
     PENDING_POST_SUCCESSFUL_TRANSACTION_TASKS = new ThreadLocal<>();
     POST_SUCCESSFUL_TRANSACTION_TASKS         = new ThreadLocal<>();
+    PENDING_POST_FAILED_TRANSACTION_TASKS     = new ThreadLocal<>();
+    POST_FAILED_TRANSACTION_TASKS             = new ThreadLocal<>();
+    CURRENT_TRANSACTION                       = new ThreadLocal<>();
 
     PENDING_POST_SUCCESSFUL_TRANSACTION_TASKS.set(new LinkedHashSet<>());
   }
 
   public SQLiteDatabase(net.zetetic.database.sqlcipher.SQLiteDatabase wrapped) {
-    this.wrapped = wrapped;
-    this.tracer  = Tracer.getInstance();
+    this(wrapped, null);
+  }
+
+  public SQLiteDatabase(net.zetetic.database.sqlcipher.SQLiteDatabase wrapped, @Nullable WalCheckpointScheduler checkpointScheduler) {
+    this.wrapped             = wrapped;
+    this.tracer              = Tracer.getInstance();
+    this.checkpointScheduler = checkpointScheduler;
   }
 
   private void traceLockStart() {
@@ -82,10 +95,17 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
       traceLockStart();
     }
 
+    boolean recordLatency = DatabaseMonitor.isRecordingQueryLatency();
+    long    startTime     = recordLatency ? System.nanoTime() : 0;
+
     tracer.start(methodName, KEY_QUERY, query);
     returnable.run();
     tracer.end(methodName);
 
+    if (recordLatency && query != null) {
+      DatabaseMonitor.onQueryComplete(query, System.nanoTime() - startTime);
+    }
+
     if (locked) {
       traceLockEnd();
     }
@@ -108,10 +128,17 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
       params.put(KEY_TABLE, table);
     }
 
+    boolean recordLatency = DatabaseMonitor.isRecordingQueryLatency();
+    long    startTime     = recordLatency ? System.nanoTime() : 0;
+
     tracer.start(methodName, params);
     E result = returnable.run();
     tracer.end(methodName);
 
+    if (recordLatency) {
+      DatabaseMonitor.onQueryComplete(table != null ? table + ": " + query : String.valueOf(query), System.nanoTime() - startTime);
+    }
+
     if (locked) {
       traceLockEnd();
     }
@@ -148,6 +175,47 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
     }
   }
 
+  /**
+   * The opposite of {@link #runPostSuccessfulTransaction(Runnable)}: enqueues a task to be run after the active transaction is rolled back.
+   * If the transaction succeeds, the task is discarded. If there is no current transaction open, the task is discarded as well, since
+   * there's nothing to roll back.
+   */
+  public void runPostFailedTransaction(@NonNull Runnable task) {
+    if (wrapped.inTransaction()) {
+      getTasks(PENDING_POST_FAILED_TRANSACTION_TASKS).add(task);
+    }
+  }
+
+  /**
+   * @return An object identifying the outermost transaction open on this thread, or null if there isn't one. Every transaction gets a
+   *         new one, so it can be used to tell whether state tied to a transaction is left over from one that already ended.
+   */
+  public @Nullable Object currentTransaction() {
+    if (!wrapped.inTransaction()) {
+      return null;
+    }
+
+    Object transaction = CURRENT_TRANSACTION.get();
+
+    if (transaction == null) {
+      transaction = new Object();
+      CURRENT_TRANSACTION.set(transaction);
+    }
+
+    return transaction;
+  }
+
+  private static @NonNull Set<Runnable> getTasks(@NonNull ThreadLocal<Set<Runnable>> threadLocal) {
+    Set<Runnable> tasks = threadLocal.get();
+
+    if (tasks == null) {
+      tasks = new LinkedHashSet<>();
+      threadLocal.set(tasks);
+    }
+
+    return tasks;
+  }
+
   private @NonNull Set<Runnable> getPendingPostSuccessfulTransactionTasks() {
     Set<Runnable> tasks = PENDING_POST_SUCCESSFUL_TRANSACTION_TASKS.get();
 
@@ -287,6 +355,7 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
     if (wrapped.inTransaction()) {
       trace("beginTransaction()", wrapped::beginTransaction);
     } else {
+      CURRENT_TRANSACTION.remove();
       trace("beginTransaction()", () -> {
         wrapped.beginTransactionWithListener(new SQLiteTransactionListener() {
           @Override
@@ -299,11 +368,19 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
             tasks.clear();
             tasks.addAll(pendingTasks);
             pendingTasks.clear();
+
+            getTasks(PENDING_POST_FAILED_TRANSACTION_TASKS).clear();
           }
 
           @Override
           public void onRollback() {
             getPendingPostSuccessfulTransactionTasks().clear();
+
+            Set<Runnable> pendingFailedTasks = getTasks(PENDING_POST_FAILED_TRANSACTION_TASKS);
+            Set<Runnable> failedTasks        = getTasks(POST_FAILED_TRANSACTION_TASKS);
+            failedTasks.clear();
+            failedTasks.addAll(pendingFailedTasks);
+            pendingFailedTasks.clear();
           }
         });
       });
@@ -311,14 +388,43 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
   }
 
   public void endTransaction() {
-    trace("endTransaction()", wrapped::endTransaction);
-    traceLockEnd();
+    boolean ended = false;
+
+    try {
+      trace("endTransaction()", wrapped::endTransaction);
+      ended = true;
+    } finally {
+      traceLockEnd();
+
+      if (!wrapped.inTransaction()) {
+        CURRENT_TRANSACTION.remove();
+
+        if (!ended) {
+          // We don't know how the transaction ended, so none of its tasks can be trusted to run, and they mustn't leak into the next one
+          getPendingPostSuccessfulTransactionTasks().clear();
+          getPostSuccessfulTransactionTasks().clear();
+          getTasks(PENDING_POST_FAILED_TRANSACTION_TASKS).clear();
+          getTasks(POST_FAILED_TRANSACTION_TASKS).clear();
+        }
+      }
+    }
+
     if (!wrapped.inTransaction()) {
       Set<Runnable> tasks = getPostSuccessfulTransactionTasks();
       for (Runnable r : new HashSet<>(tasks)) {
         r.run();
       }
       tasks.clear();
+
+      Set<Runnable> failedTasks = getTasks(POST_FAILED_TRANSACTION_TASKS);
+      for (Runnable r : new HashSet<>(failedTasks)) {
+        r.run();
+      }
+      failedTasks.clear();
+
+      if (checkpointScheduler != null) {
+        checkpointScheduler.onTransactionEnd();
+      }
     }
   }
 
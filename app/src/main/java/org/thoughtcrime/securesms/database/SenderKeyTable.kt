@@ -44,8 +44,12 @@ class SenderKeyTable internal constructor(context: Context?, databaseHelper: Sig
         UNIQUE($ADDRESS,$DEVICE, $DISTRIBUTION_ID) ON CONFLICT REPLACE
       )
     """
+
+    private const val CACHE_SIZE = 250
   }
 
+  private val cache: ProtocolRecordCache<CacheKey, SenderKeyRecord> = ProtocolRecordCache(CACHE_SIZE)
+
   fun store(address: SignalProtocolAddress, distributionId: DistributionId, record: SenderKeyRecord) {
     writableDatabase.withinTransaction { db ->
       val updateCount = db.update(TABLE_NAME)
@@ -65,9 +69,18 @@ class SenderKeyTable internal constructor(context: Context?, databaseHelper: Sig
         db.insertWithOnConflict(TABLE_NAME, null, insertValues, SQLiteDatabase.CONFLICT_REPLACE)
       }
     }
+
+    cache.put(writableDatabase, CacheKey(address, distributionId), record)
   }
 
+  /**
+   * Loads a sender key for the caller to update. The caller owns the returned record, and should [store] it once it's changed.
+   */
   fun load(address: SignalProtocolAddress, distributionId: DistributionId): SenderKeyRecord? {
+    return cache.take(writableDatabase, CacheKey(address, distributionId)) { loadFromDisk(address, distributionId) }
+  }
+
+  private fun loadFromDisk(address: SignalProtocolAddress, distributionId: DistributionId): SenderKeyRecord? {
     return readableDatabase
       .select(RECORD)
       .from(TABLE_NAME)
@@ -105,6 +118,9 @@ class SenderKeyTable internal constructor(context: Context?, databaseHelper: Sig
       .delete(TABLE_NAME)
       .where("$ADDRESS = ? AND $DISTRIBUTION_ID = ?", addressName, distributionId)
       .run()
+
+    val distribution = distributionId.toString()
+    cache.removeMatching(writableDatabase) { it.address == addressName && it.distributionId == distribution }
   }
 
   /**
@@ -126,5 +142,15 @@ class SenderKeyTable internal constructor(context: Context?, databaseHelper: Sig
     writableDatabase
       .delete(TABLE_NAME)
       .run()
+
+    cache.removeMatching(writableDatabase) { true }
+  }
+
+  fun getCacheStats(): ProtocolRecordCache.Stats {
+    return cache.getStats()
+  }
+
+  private data class CacheKey(val address: String, val deviceId: Int, val distributionId: String) {
+    constructor(address: SignalProtocolAddress, distributionId: DistributionId) : this(address.name, address.deviceId, distributionId.toString())
   }
 }
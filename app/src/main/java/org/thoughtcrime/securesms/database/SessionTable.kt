@@ -35,8 +35,13 @@ class SessionTable(context: Context, databaseHelper: SignalDatabase) : DatabaseT
         UNIQUE($ACCOUNT_ID, $ADDRESS, $DEVICE)
       )
     """
+
+    /** Enough to cover the sessions of everyone we talk to regularly, at a few KiB each. */
+    private const val CACHE_SIZE = 500
   }
 
+  private val cache: ProtocolRecordCache<CacheKey, SessionRecord> = ProtocolRecordCache(CACHE_SIZE)
+
   fun store(serviceId: ServiceId, address: SignalProtocolAddress, record: SessionRecord) {
     require(address.name[0] != '+') { "Cannot insert an e164 into this table!" }
 
@@ -49,9 +54,25 @@ class SessionTable(context: Context, databaseHelper: SignalDatabase) : DatabaseT
         execute()
       }
     }
+
+    cache.put(writableDatabase, CacheKey(serviceId, address), record)
   }
 
+  /**
+   * Loads a session for the caller to update. The caller owns the returned record, and should [store] it once it's changed.
+   */
   fun load(serviceId: ServiceId, address: SignalProtocolAddress): SessionRecord? {
+    return cache.take(writableDatabase, CacheKey(serviceId, address)) { loadFromDisk(serviceId, address) }
+  }
+
+  /**
+   * @return True if there's a session with this address that can be used to send messages.
+   */
+  fun hasSenderChain(serviceId: ServiceId, address: SignalProtocolAddress): Boolean {
+    return cache.borrow(writableDatabase, CacheKey(serviceId, address)) { loadFromDisk(serviceId, address) }?.hasSenderChain() ?: false
+  }
+
+  private fun loadFromDisk(serviceId: ServiceId, address: SignalProtocolAddress): SessionRecord? {
     val projection = arrayOf(RECORD)
     val selection = "$ACCOUNT_ID = ? AND $ADDRESS = ? AND $DEVICE = ?"
     val args = SqlUtil.buildArgs(serviceId, address.name, address.deviceId)
@@ -69,7 +90,21 @@ class SessionTable(context: Context, databaseHelper: SignalDatabase) : DatabaseT
     return null
   }
 
+  /**
+   * Loads sessions to be read, but not changed. The returned records are shared, and must only be used while holding the session lock.
+   */
   fun load(serviceId: ServiceId, addresses: List<SignalProtocolAddress>): List<SessionRecord?> {
+    val keys: List<CacheKey> = addresses.map { CacheKey(serviceId, it) }
+    val found: Map<CacheKey, SessionRecord> = cache.borrowAll(writableDatabase, keys) { missing ->
+      loadFromDisk(serviceId, missing.map { it.toAddress() })
+        .mapNotNull { (address, record) -> record?.let { CacheKey(serviceId, address) to it } }
+        .toMap()
+    }
+
+    return keys.map { found[it] }
+  }
+
+  private fun loadFromDisk(serviceId: ServiceId, addresses: List<SignalProtocolAddress>): Map<SignalProtocolAddress, SessionRecord?> {
     val projection = arrayOf(ADDRESS, DEVICE, RECORD)
     val query = "$ACCOUNT_ID = ? AND $ADDRESS = ? AND $DEVICE = ?"
     val args: MutableList<Array<String>> = ArrayList(addresses.size)
@@ -95,7 +130,7 @@ class SessionTable(context: Context, databaseHelper: SignalDatabase) : DatabaseT
       }
     }
 
-    return sessions.values.toList()
+    return sessions
   }
 
   fun getAllFor(serviceId: ServiceId, addressName: String): List<SessionRow> {
@@ -182,10 +217,14 @@ class SessionTable(context: Context, databaseHelper: SignalDatabase) : DatabaseT
 
   fun delete(serviceId: ServiceId, address: SignalProtocolAddress) {
     writableDatabase.delete(TABLE_NAME, "$ACCOUNT_ID = ? AND $ADDRESS = ? AND $DEVICE = ?", SqlUtil.buildArgs(serviceId, address.name, address.deviceId))
+    cache.remove(writableDatabase, CacheKey(serviceId, address))
   }
 
   fun deleteAllFor(serviceId: ServiceId, addressName: String) {
     writableDatabase.delete(TABLE_NAME, "$ACCOUNT_ID = ? AND $ADDRESS = ?", SqlUtil.buildArgs(serviceId, addressName))
+
+    val accountId = serviceId.toString()
+    cache.removeMatching(writableDatabase) { it.accountId == accountId && it.address == addressName }
   }
 
   fun hasSessionFor(serviceId: ServiceId, addressName: String): Boolean {
@@ -210,5 +249,15 @@ class SessionTable(context: Context, databaseHelper: SignalDatabase) : DatabaseT
       }
   }
 
+  fun getCacheStats(): ProtocolRecordCache.Stats {
+    return cache.getStats()
+  }
+
   class SessionRow(val address: String, val deviceId: Int, val record: SessionRecord)
+
+  private data class CacheKey(val accountId: String, val address: String, val deviceId: Int) {
+    constructor(serviceId: ServiceId, address: SignalProtocolAddress) : this(serviceId.toString(), address.name, address.deviceId)
+
+    fun toAddress(): SignalProtocolAddress = SignalProtocolAddress(address, deviceId)
+  }
 }
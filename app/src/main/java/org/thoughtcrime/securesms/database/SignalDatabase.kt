@@ -24,7 +24,12 @@ import org.thoughtcrime.securesms.service.KeyCachingService
 import org.thoughtcrime.securesms.util.TextSecurePreferences
 import java.io.File
 
-open class SignalDatabase(private val context: Application, databaseSecret: DatabaseSecret, attachmentSecret: AttachmentSecret) :
+open class SignalDatabase(
+  private val context: Application,
+  databaseSecret: DatabaseSecret,
+  attachmentSecret: AttachmentSecret,
+  val config: SignalDatabaseConfig = SignalDatabaseConfig.DEFAULT
+) :
   SQLiteOpenHelper(
     context,
     DATABASE_NAME,
@@ -33,11 +38,13 @@ open class SignalDatabase(private val context: Application, databaseSecret: Data
     SignalDatabaseMigrations.DATABASE_VERSION,
     0,
     SqlCipherErrorHandler(DATABASE_NAME),
-    SqlCipherDatabaseHook(),
+    SqlCipherDatabaseHook(config),
     true
   ),
   SignalDatabaseOpenHelper {
 
+  val checkpointScheduler: WalCheckpointScheduler = WalCheckpointScheduler(config.checkpointIntervalMs) { rawWritableDatabase }
+
   val messageTable: MessageTable = MessageTable(context, this)
   val attachmentTable: AttachmentTable = AttachmentTable(context, this, attachmentSecret)
   val mediaTable: MediaTable = MediaTable(context, this)
@@ -75,9 +82,11 @@ open class SignalDatabase(private val context: Application, databaseSecret: Data
   val callTable: CallTable = CallTable(context, this)
   val kyberPreKeyTable: KyberPreKeyTable = KyberPreKeyTable(context, this)
   val callLinkTable: CallLinkTable = CallLinkTable(context, this)
+  val earlyMessageTable: EarlyMessageTable = EarlyMessageTable(context, this)
 
   override fun onOpen(db: net.zetetic.database.sqlcipher.SQLiteDatabase) {
     db.setForeignKeyConstraintsEnabled(true)
+    db.setMaxSqlCacheSize(config.statementCacheSize)
   }
 
   override fun onCreate(db: net.zetetic.database.sqlcipher.SQLiteDatabase) {
@@ -112,11 +121,13 @@ open class SignalDatabase(private val context: Application, databaseSecret: Data
     db.execSQL(CallLinkTable.CREATE_TABLE)
     db.execSQL(CallTable.CREATE_TABLE)
     db.execSQL(KyberPreKeyTable.CREATE_TABLE)
+    db.execSQL(EarlyMessageTable.CREATE_TABLE)
     executeStatements(db, SearchTable.CREATE_TABLE)
     executeStatements(db, RemappedRecordTables.CREATE_TABLE)
     executeStatements(db, MessageSendLogTables.CREATE_TABLE)
     executeStatements(db, NotificationProfileDatabase.CREATE_TABLE)
     executeStatements(db, DistributionListTables.CREATE_TABLE)
+    executeStatements(db, MediaTable.CREATE_TABLE)
 
     executeStatements(db, RecipientTable.CREATE_INDEXS)
     executeStatements(db, MessageTable.CREATE_INDEXS)
@@ -138,9 +149,12 @@ open class SignalDatabase(private val context: Application, databaseSecret: Data
     executeStatements(db, CallTable.CREATE_INDEXES)
     executeStatements(db, ReactionTable.CREATE_INDEXES)
     executeStatements(db, KyberPreKeyTable.CREATE_INDEXES)
+    executeStatements(db, EarlyMessageTable.CREATE_INDEXES)
+    executeStatements(db, MediaTable.CREATE_INDEXES)
 
     executeStatements(db, SearchTable.CREATE_TRIGGERS)
     executeStatements(db, MessageSendLogTables.CREATE_TRIGGERS)
+    executeStatements(db, MediaTable.CREATE_TRIGGERS)
 
     DistributionListTables.insertInitialDistributionListAtCreationTime(db)
 
@@ -198,10 +212,10 @@ open class SignalDatabase(private val context: Application, databaseSecret: Data
     get() = super.getWritableDatabase()
 
   open val signalReadableDatabase: SQLiteDatabase
-    get() = SQLiteDatabase(super.getReadableDatabase())
+    get() = SQLiteDatabase(super.getReadableDatabase(), checkpointScheduler)
 
   open val signalWritableDatabase: SQLiteDatabase
-    get() = SQLiteDatabase(super.getWritableDatabase())
+    get() = SQLiteDatabase(super.getWritableDatabase(), checkpointScheduler)
 
   override fun getSqlCipherDatabase(): net.zetetic.database.sqlcipher.SQLiteDatabase {
     return super.getWritableDatabase()
@@ -392,6 +406,11 @@ open class SignalDatabase(private val context: Application, databaseSecret: Data
     val drafts: DraftTable
       get() = instance!!.draftTable
 
+    @get:JvmStatic
+    @get:JvmName("earlyMessages")
+    val earlyMessages: EarlyMessageTable
+      get() = instance!!.earlyMessageTable
+
     @get:JvmStatic
     @get:JvmName("emojiSearch")
     val emojiSearch: EmojiSearchTable
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import kotlin.time.Duration.Companion.seconds
+
+/**
+ * The tunables for how connections to the main [SignalDatabase] are set up and maintained. The effect of changing any of
+ * these can be checked against the per-query latencies collected by [DatabaseMonitor].
+ *
+ * Note that memory-mapped I/O is intentionally absent: SQLCipher has to decrypt every page it reads, so `mmap_size` has
+ * no effect on an encrypted database.
+ */
+data class SignalDatabaseConfig(
+  /** The number of prepared statements cached per connection. The platform caps this at 100. */
+  val statementCacheSize: Int = 100,
+
+  /** The size of the page cache per connection, in KiB. */
+  val pageCacheSizeKb: Int = 4 * 1024,
+
+  /** The number of WAL pages after which a commit will checkpoint automatically. 0 disables automatic checkpoints. */
+  val walAutoCheckpointPages: Int = 1000,
+
+  /** The minimum time between the passive checkpoints we run in the background after a transaction. 0 disables them. */
+  val checkpointIntervalMs: Long = 30.seconds.inWholeMilliseconds
+) {
+  companion object {
+    @JvmField
+    val DEFAULT = SignalDatabaseConfig()
+  }
+}
@@ -1,13 +1,28 @@
 package org.thoughtcrime.securesms.database;
 
+import androidx.annotation.Nullable;
+
 import net.zetetic.database.sqlcipher.SQLiteConnection;
 import net.zetetic.database.sqlcipher.SQLiteDatabaseHook;
 
 /**
  * Standard hook for setting common SQLCipher PRAGMAs.
+ *
+ * If a {@link SignalDatabaseConfig} is provided, the per-connection settings from it are also applied, since they need to be
+ * set on every connection in the pool and not just the primary one.
  */
 public class SqlCipherDatabaseHook implements SQLiteDatabaseHook {
 
+  private final SignalDatabaseConfig config;
+
+  public SqlCipherDatabaseHook() {
+    this(null);
+  }
+
+  public SqlCipherDatabaseHook(@Nullable SignalDatabaseConfig config) {
+    this.config = config;
+  }
+
   @Override
   public void preKey(SQLiteConnection connection) {
     connection.execute("PRAGMA cipher_default_kdf_iter = 1;", null, null);
@@ -19,5 +34,10 @@ public class SqlCipherDatabaseHook implements SQLiteDatabaseHook {
     connection.execute("PRAGMA cipher_compatibility = 3;", null, null);
     connection.execute("PRAGMA kdf_iter = '1';", null, null);
     connection.execute("PRAGMA cipher_page_size = 4096;", null, null);
+
+    if (config != null) {
+      connection.execute("PRAGMA cache_size = -" + config.getPageCacheSizeKb() + ";", null, null);
+      connection.executeForLong("PRAGMA wal_autocheckpoint = " + config.getWalAutoCheckpointPages() + ";", null, null);
+    }
   }
 }
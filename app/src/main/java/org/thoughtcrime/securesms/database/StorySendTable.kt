@@ -191,6 +191,26 @@ class StorySendTable(context: Context, databaseHelper: SignalDatabase) : Databas
     return messageIds
   }
 
+  /**
+   * Same as [getStoryMessagesFor], but for every timestamp in [sentTimestamps] at once.
+   */
+  fun getStoryMessagesFor(recipientId: RecipientId, sentTimestamps: Collection<Long>): Set<MessageId> {
+    val messageIds = mutableSetOf<MessageId>()
+    val recipientQuery = SqlUtil.Query("$RECIPIENT_ID = ?", SqlUtil.buildArgs(recipientId))
+
+    for (query in SqlUtil.buildCollectionQuery(SENT_TIMESTAMP, sentTimestamps)) {
+      val combined = recipientQuery and query
+
+      readableDatabase.query(TABLE_NAME, arrayOf(MESSAGE_ID), combined.where, combined.whereArgs, null, null, null).use { cursor ->
+        while (cursor.moveToNext()) {
+          messageIds += MessageId(cursor.requireLong(MESSAGE_ID))
+        }
+      }
+    }
+
+    return messageIds
+  }
+
   fun getStoryMessageFor(recipientId: RecipientId, timestamp: Long): MessageId? {
     readableDatabase.query(
       TABLE_NAME,
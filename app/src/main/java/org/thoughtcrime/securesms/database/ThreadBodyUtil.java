@@ -16,6 +16,7 @@ import org.thoughtcrime.securesms.database.model.MmsMessageRecord;
 import org.thoughtcrime.securesms.mms.GifSlide;
 import org.thoughtcrime.securesms.mms.Slide;
 import org.thoughtcrime.securesms.mms.StickerSlide;
+import org.thoughtcrime.securesms.util.Base64;
 import org.thoughtcrime.securesms.util.MessageRecordUtil;
 import org.thoughtcrime.securesms.util.Util;
 
@@ -31,7 +32,10 @@ public final class ThreadBodyUtil {
   }
 
   public static @NonNull ThreadBody getFormattedBodyFor(@NonNull Context context, @NonNull MessageRecord record) {
-    if (record.isMms()) {
+    if (record.getUpdatePayload() != null) {
+      // The conversation list reads group changes back out of the snippet
+      return new ThreadBody(Base64.encodeBytes(record.getUpdatePayload()));
+    } else if (record.isMms()) {
       return getFormattedBodyForMms(context, (MmsMessageRecord) record);
     }
 
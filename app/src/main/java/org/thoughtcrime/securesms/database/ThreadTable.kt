@@ -177,6 +177,9 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
 
     private val COMBINED_THREAD_RECIPIENT_GROUP_PROJECTION: List<String> = TYPED_THREAD_PROJECTION + RecipientTable.TYPED_RECIPIENT_PROJECTION_NO_ID + GroupTable.TYPED_GROUP_PROJECTION
 
+    /** Breaks ties on [DATE] by [ID], so that a page boundary is a stable key for [getUnarchivedConversationListAfter]. */
+    private const val UNPINNED_ORDER = "$TABLE_NAME.$DATE DESC, $TABLE_NAME.$ID DESC"
+
     const val NO_TRIM_BEFORE_DATE_SET: Long = 0
     const val NO_TRIM_MESSAGE_COUNT_SET = Int.MAX_VALUE
   }
@@ -862,12 +865,27 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
     val query = if (pinned) {
       createQuery(where, PINNED + " ASC", offset, limit)
     } else {
-      createQuery(where, offset, limit, preferPinned = false)
+      createQuery(where, UNPINNED_ORDER, offset, limit)
     }
 
     return readableDatabase.rawQuery(query, null)
   }
 
+  /**
+   * Reads the unpinned conversations that come after the given thread in [getUnarchivedConversationList]'s ordering. Unlike an offset, this
+   * seeks straight to the right spot, so later pages cost as much as the first one.
+   *
+   * @param date The [DATE] of the last thread on the previous page.
+   * @param threadId The [ID] of the last thread on the previous page.
+   */
+  fun getUnarchivedConversationListAfter(conversationFilter: ConversationFilter, date: Long, threadId: Long, limit: Long): Cursor {
+    val filterQuery = conversationFilter.toQuery()
+    val where = "$ARCHIVED = 0 AND $PINNED = 0 AND $MEANINGFUL_MESSAGES != 0 $filterQuery AND ($TABLE_NAME.$DATE < $date OR ($TABLE_NAME.$DATE = $date AND $TABLE_NAME.$ID < $threadId))"
+    val query = createQuery(where, UNPINNED_ORDER, 0, limit)
+
+    return readableDatabase.rawQuery(query, null)
+  }
+
   fun getArchivedConversationListCount(conversationFilter: ConversationFilter): Int {
     val filterQuery = conversationFilter.toQuery()
     return readableDatabase
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import org.signal.core.util.concurrent.SignalExecutors
+import org.signal.core.util.logging.Log
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Runs passive WAL checkpoints in the background after transactions finish, at most once per [intervalMs]. This keeps the
+ * WAL from growing between automatic checkpoints, without making the committing thread pay for the checkpoint itself.
+ *
+ * A passive checkpoint never blocks readers or writers, and just does as much as it can without waiting on them.
+ */
+class WalCheckpointScheduler(
+  private val intervalMs: Long,
+  private val database: () -> net.zetetic.database.sqlcipher.SQLiteDatabase
+) {
+
+  companion object {
+    private val TAG = Log.tag(WalCheckpointScheduler::class.java)
+  }
+
+  private val scheduled = AtomicBoolean(false)
+  private val lastCheckpointTime = AtomicLong(0)
+
+  private val checkpoints = AtomicLong(0)
+  private val busyCheckpoints = AtomicLong(0)
+  private val totalCheckpointTimeMs = AtomicLong(0)
+
+  @Volatile
+  private var lastResult: Result? = null
+
+  fun onTransactionEnd() {
+    if (intervalMs <= 0 || System.currentTimeMillis() - lastCheckpointTime.get() < intervalMs) {
+      return
+    }
+
+    if (scheduled.compareAndSet(false, true)) {
+      SignalExecutors.BOUNDED.execute {
+        try {
+          checkpoint()
+        } finally {
+          lastCheckpointTime.set(System.currentTimeMillis())
+          scheduled.set(false)
+        }
+      }
+    }
+  }
+
+  fun getStats(): Stats {
+    return Stats(
+      checkpoints = checkpoints.get(),
+      busyCheckpoints = busyCheckpoints.get(),
+      totalCheckpointTimeMs = totalCheckpointTimeMs.get(),
+      lastResult = lastResult
+    )
+  }
+
+  private fun checkpoint() {
+    val startTime = System.currentTimeMillis()
+
+    val result: Result? = try {
+      database().rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null).use { cursor ->
+        if (cursor.moveToFirst()) {
+          Result(busy = cursor.getInt(0) != 0, logFrames = cursor.getInt(1), checkpointedFrames = cursor.getInt(2))
+        } else {
+          null
+        }
+      }
+    } catch (e: Exception) {
+      Log.w(TAG, "Failed to checkpoint.", e)
+      null
+    }
+
+    val duration = System.currentTimeMillis() - startTime
+
+    checkpoints.incrementAndGet()
+    totalCheckpointTimeMs.addAndGet(duration)
+
+    if (result != null) {
+      lastResult = result
+      if (result.busy) {
+        busyCheckpoints.incrementAndGet()
+      }
+    }
+
+    if (duration > 100) {
+      Log.i(TAG, "Slow checkpoint. Took $duration ms. $result")
+    }
+  }
+
+  data class Result(
+    val busy: Boolean,
+    val logFrames: Int,
+    val checkpointedFrames: Int
+  )
+
+  data class Stats(
+    val checkpoints: Long,
+    val busyCheckpoints: Long,
+    val totalCheckpointTimeMs: Long,
+    val lastResult: Result?
+  )
+}
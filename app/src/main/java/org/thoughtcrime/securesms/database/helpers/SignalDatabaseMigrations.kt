@@ -54,6 +54,10 @@ import org.thoughtcrime.securesms.database.helpers.migration.V195_GroupMemberFor
 import org.thoughtcrime.securesms.database.helpers.migration.V196_BackCallLinksWithRecipientV2
 import org.thoughtcrime.securesms.database.helpers.migration.V197_DropAvatarColorFromCallLinks
 import org.thoughtcrime.securesms.database.helpers.migration.V198_AddMacDigestColumn
+import org.thoughtcrime.securesms.database.helpers.migration.V199_EarlyMessageTable
+import org.thoughtcrime.securesms.database.helpers.migration.V200_CompactMessageSendLog
+import org.thoughtcrime.securesms.database.helpers.migration.V201_MediaIndex
+import org.thoughtcrime.securesms.database.helpers.migration.V202_MessageUpdatePayload
 
 /**
  * Contains all of the database migrations for [SignalDatabase]. Broken into a separate file for cleanliness.
@@ -62,7 +66,7 @@ object SignalDatabaseMigrations {
 
   val TAG: String = Log.tag(SignalDatabaseMigrations.javaClass)
 
-  const val DATABASE_VERSION = 198
+  const val DATABASE_VERSION = 202
 
   @JvmStatic
   fun migrate(context: Application, db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
@@ -265,6 +269,22 @@ object SignalDatabaseMigrations {
     if (oldVersion < 198) {
       V198_AddMacDigestColumn.migrate(context, db, oldVersion, newVersion)
     }
+
+    if (oldVersion < 199) {
+      V199_EarlyMessageTable.migrate(context, db, oldVersion, newVersion)
+    }
+
+    if (oldVersion < 200) {
+      V200_CompactMessageSendLog.migrate(context, db, oldVersion, newVersion)
+    }
+
+    if (oldVersion < 201) {
+      V201_MediaIndex.migrate(context, db, oldVersion, newVersion)
+    }
+
+    if (oldVersion < 202) {
+      V202_MessageUpdatePayload.migrate(context, db, oldVersion, newVersion)
+    }
   }
 
   @JvmStatic
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database.helpers.migration
+
+import android.app.Application
+import net.zetetic.database.sqlcipher.SQLiteDatabase
+
+/**
+ * Introduces [org.thoughtcrime.securesms.database.EarlyMessageTable], the persisted back of the early message cache.
+ */
+@Suppress("ClassName")
+object V199_EarlyMessageTable : SignalDatabaseMigration {
+  override fun migrate(context: Application, db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+    db.execSQL(
+      """
+      CREATE TABLE early_message (
+        _id INTEGER PRIMARY KEY,
+        target_sender_id INTEGER NOT NULL REFERENCES recipient (_id) ON DELETE CASCADE,
+        target_sent_timestamp INTEGER NOT NULL,
+        date_inserted INTEGER NOT NULL,
+        envelope BLOB NOT NULL,
+        content BLOB NOT NULL,
+        source_service_id TEXT NOT NULL,
+        source_e164 TEXT DEFAULT NULL,
+        source_device_id INTEGER NOT NULL,
+        sealed_sender INTEGER NOT NULL,
+        group_id BLOB DEFAULT NULL,
+        destination_service_id TEXT NOT NULL,
+        server_delivered_timestamp INTEGER NOT NULL
+      )
+      """
+    )
+
+    db.execSQL("CREATE INDEX early_message_target_index ON early_message (target_sender_id, target_sent_timestamp)")
+    db.execSQL("CREATE INDEX early_message_date_inserted_index ON early_message (date_inserted)")
+  }
+}
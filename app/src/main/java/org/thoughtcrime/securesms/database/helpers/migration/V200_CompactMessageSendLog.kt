@@ -0,0 +1,41 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database.helpers.migration
+
+import android.app.Application
+import net.zetetic.database.sqlcipher.SQLiteDatabase
+
+/**
+ * Switches the message send log to compressed payloads and one recipient row per recipient instead of one per device. Devices are kept in
+ * two bitmasks, one for ids 0-63 and one for 64-127. The log is a short-lived rolling buffer, so rather than converting existing rows we
+ * just clear it out.
+ */
+@Suppress("ClassName")
+object V200_CompactMessageSendLog : SignalDatabaseMigration {
+  override fun migrate(context: Application, db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+    db.execSQL("DROP INDEX IF EXISTS msl_recipient_recipient_index")
+    db.execSQL("DROP INDEX IF EXISTS msl_recipient_payload_index")
+    db.execSQL("DROP TABLE IF EXISTS msl_recipient")
+
+    db.execSQL("DELETE FROM msl_message")
+    db.execSQL("DELETE FROM msl_payload")
+
+    db.execSQL(
+      """
+      CREATE TABLE msl_recipient (
+        _id INTEGER PRIMARY KEY,
+        payload_id INTEGER NOT NULL REFERENCES msl_payload (_id) ON DELETE CASCADE,
+        recipient_id INTEGER NOT NULL,
+        devices INTEGER NOT NULL,
+        devices_high INTEGER NOT NULL DEFAULT 0
+      )
+      """
+    )
+
+    db.execSQL("CREATE INDEX msl_recipient_recipient_index ON msl_recipient (recipient_id, payload_id)")
+    db.execSQL("CREATE UNIQUE INDEX msl_recipient_payload_index ON msl_recipient (payload_id, recipient_id)")
+  }
+}
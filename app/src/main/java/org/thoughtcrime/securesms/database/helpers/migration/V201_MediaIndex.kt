@@ -0,0 +1,223 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database.helpers.migration
+
+import android.app.Application
+import net.zetetic.database.sqlcipher.SQLiteDatabase
+
+/**
+ * Adds the trigger-maintained media index and storage totals used by [org.thoughtcrime.securesms.database.MediaTable], and fills them in
+ * from the existing attachments.
+ */
+@Suppress("ClassName")
+object V201_MediaIndex : SignalDatabaseMigration {
+
+  private const val INSERT_INTO_INDEX = """
+    INSERT INTO media_index (attachment_id, message_id, thread_id, media_type, size, display_order) 
+    SELECT 
+      part._id, 
+      part.mid, 
+      message.thread_id, 
+      CASE 
+        WHEN ct NOT LIKE 'image/svg%' AND (ct LIKE 'image/%' OR ct LIKE 'video/%') THEN 1 
+        WHEN ct LIKE 'audio/%' THEN 2 
+        ELSE 3 
+      END, 
+      part.data_size, 
+      part.display_order 
+    FROM 
+      part 
+      INNER JOIN message ON part.mid = message._id 
+    WHERE 
+      __WHERE__ AND 
+      ct IS NOT NULL AND 
+      ct NOT LIKE 'text/x-signal-plain' AND 
+      view_once = 0 AND 
+      story_type = 0 AND 
+      _data IS NOT NULL AND 
+      (
+        quote = 0 OR 
+        (
+          quote = 1 AND 
+          data_hash IS NULL
+        )
+      ) AND 
+      sticker_pack_id IS NULL AND 
+      message.from_recipient_id > 0;
+  """
+
+  private const val REFRESH_STORAGE_FILE = """
+    DELETE FROM media_storage_file WHERE _data = __DATA__;
+    INSERT INTO media_storage_file (_data, content_type, size) 
+    SELECT 
+      _data, 
+      ct, 
+      MAX(IFNULL(data_size, 0)) 
+    FROM 
+      part 
+    WHERE 
+      _data = __DATA__ AND 
+      ct IS NOT NULL AND 
+      sticker_pack_id IS NULL AND 
+      pending_push = 0 
+    GROUP BY _data;
+  """
+
+  override fun migrate(context: Application, db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+    db.execSQL(
+      """
+      CREATE TABLE media_index (
+        attachment_id INTEGER PRIMARY KEY,
+        message_id INTEGER NOT NULL,
+        thread_id INTEGER NOT NULL,
+        media_type INTEGER NOT NULL,
+        size INTEGER,
+        display_order INTEGER
+      )
+      """
+    )
+
+    db.execSQL(
+      """
+      CREATE TABLE media_storage_file (
+        _data TEXT PRIMARY KEY,
+        content_type TEXT NOT NULL,
+        size INTEGER NOT NULL
+      )
+      """
+    )
+
+    db.execSQL(
+      """
+      CREATE TABLE media_storage_total (
+        content_type TEXT PRIMARY KEY,
+        size INTEGER NOT NULL
+      )
+      """
+    )
+
+    db.execSQL("CREATE INDEX media_index_thread_type_date_index ON media_index (thread_id, media_type, message_id, display_order)")
+    db.execSQL("CREATE INDEX media_index_thread_type_size_index ON media_index (thread_id, media_type, size)")
+    db.execSQL("CREATE INDEX media_index_thread_date_index ON media_index (thread_id, message_id, display_order)")
+    db.execSQL("CREATE INDEX media_index_message_index ON media_index (message_id, display_order)")
+    db.execSQL("CREATE INDEX media_index_type_size_index ON media_index (media_type, size)")
+
+    db.execSQL(
+      """
+      CREATE TRIGGER media_index_attachment_insert AFTER INSERT ON part 
+      BEGIN 
+        ${INSERT_INTO_INDEX.replace("__WHERE__", "part._id = new._id")}
+      END
+      """
+    )
+
+    db.execSQL(
+      """
+      CREATE TRIGGER media_index_attachment_update AFTER UPDATE OF mid, ct, _data, data_size, quote, data_hash, sticker_pack_id, display_order ON part 
+      BEGIN 
+        DELETE FROM media_index WHERE attachment_id = old._id;
+        ${INSERT_INTO_INDEX.replace("__WHERE__", "part._id = new._id")}
+      END
+      """
+    )
+
+    db.execSQL(
+      """
+      CREATE TRIGGER media_index_attachment_delete AFTER DELETE ON part 
+      BEGIN 
+        DELETE FROM media_index WHERE attachment_id = old._id;
+      END
+      """
+    )
+
+    db.execSQL(
+      """
+      CREATE TRIGGER media_index_message_update AFTER UPDATE OF thread_id, view_once, story_type, from_recipient_id ON message 
+      BEGIN 
+        DELETE FROM media_index WHERE message_id = old._id;
+        ${INSERT_INTO_INDEX.replace("__WHERE__", "part.mid = new._id")}
+      END
+      """
+    )
+
+    db.execSQL(
+      """
+      CREATE TRIGGER media_index_message_delete AFTER DELETE ON message 
+      BEGIN 
+        DELETE FROM media_index WHERE message_id = old._id;
+      END
+      """
+    )
+
+    db.execSQL(
+      """
+      CREATE TRIGGER media_storage_attachment_insert AFTER INSERT ON part WHEN new._data IS NOT NULL 
+      BEGIN 
+        ${REFRESH_STORAGE_FILE.replace("__DATA__", "new._data")}
+      END
+      """
+    )
+
+    db.execSQL(
+      """
+      CREATE TRIGGER media_storage_attachment_update AFTER UPDATE OF _data, ct, data_size, pending_push, sticker_pack_id ON part 
+      BEGIN 
+        ${REFRESH_STORAGE_FILE.replace("__DATA__", "old._data")}
+        ${REFRESH_STORAGE_FILE.replace("__DATA__", "new._data")}
+      END
+      """
+    )
+
+    db.execSQL(
+      """
+      CREATE TRIGGER media_storage_attachment_delete AFTER DELETE ON part WHEN old._data IS NOT NULL 
+      BEGIN 
+        ${REFRESH_STORAGE_FILE.replace("__DATA__", "old._data")}
+      END
+      """
+    )
+
+    db.execSQL(
+      """
+      CREATE TRIGGER media_storage_file_insert AFTER INSERT ON media_storage_file 
+      BEGIN 
+        INSERT OR IGNORE INTO media_storage_total (content_type, size) VALUES (new.content_type, 0);
+        UPDATE media_storage_total SET size = size + new.size WHERE content_type = new.content_type;
+      END
+      """
+    )
+
+    db.execSQL(
+      """
+      CREATE TRIGGER media_storage_file_delete AFTER DELETE ON media_storage_file 
+      BEGIN 
+        UPDATE media_storage_total SET size = size - old.size WHERE content_type = old.content_type;
+      END
+      """
+    )
+
+    db.execSQL(INSERT_INTO_INDEX.replace("__WHERE__", "1"))
+
+    // The file table's insert trigger fills in the totals as we go
+    db.execSQL(
+      """
+      INSERT INTO media_storage_file (_data, content_type, size) 
+      SELECT 
+        _data, 
+        ct, 
+        MAX(IFNULL(data_size, 0)) 
+      FROM 
+        part 
+      WHERE 
+        _data IS NOT NULL AND 
+        ct IS NOT NULL AND 
+        sticker_pack_id IS NULL AND 
+        pending_push = 0 
+      GROUP BY _data
+      """
+    )
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database.helpers.migration
+
+import android.app.Application
+import net.zetetic.database.sqlcipher.SQLiteDatabase
+import org.signal.core.util.SqlUtil
+import org.signal.core.util.logging.Log
+import org.signal.core.util.readToList
+import org.signal.core.util.requireLong
+import org.signal.core.util.requireString
+import org.thoughtcrime.securesms.util.Base64
+import java.io.IOException
+
+/**
+ * Adds a blob column for the protos behind group changes, profile changes, thread merges and session switchovers, and moves them there
+ * from the body, where they were stored Base64-encoded.
+ */
+@Suppress("ClassName")
+object V202_MessageUpdatePayload : SignalDatabaseMigration {
+
+  private val TAG = Log.tag(V202_MessageUpdatePayload::class.java)
+
+  /** Group changes have GROUP_V2_BIT and GROUP_UPDATE_BIT set. The others are a PROFILE_CHANGE_TYPE, THREAD_MERGE_TYPE or SESSION_SWITCHOVER_TYPE. */
+  private const val HAS_PAYLOAD = "(type & 589824 = 589824 OR type = 7 OR type & 31 IN (16, 18))"
+
+  /** Group changes can be large, so keep the batches small. */
+  private const val BATCH_SIZE = 50
+
+  override fun migrate(context: Application, db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+    db.execSQL("ALTER TABLE message ADD COLUMN update_payload BLOB DEFAULT NULL")
+
+    var lastId = 0L
+    var moved = 0
+    var unreadable = 0
+
+    while (true) {
+      val batch: List<Pair<Long, String?>> = db.rawQuery("SELECT _id, body FROM message WHERE _id > ? AND $HAS_PAYLOAD ORDER BY _id LIMIT $BATCH_SIZE", SqlUtil.buildArgs(lastId)).readToList { cursor ->
+        cursor.requireLong("_id") to cursor.requireString("body")
+      }
+
+      if (batch.isEmpty()) {
+        break
+      }
+
+      for ((id, body) in batch) {
+        val payload: ByteArray? = try {
+          body?.let { Base64.decode(it) }
+        } catch (e: IOException) {
+          null
+        }
+
+        if (payload != null) {
+          db.execSQL("UPDATE message SET update_payload = ?, body = NULL WHERE _id = ?", arrayOf(payload, id))
+          moved++
+        } else {
+          unreadable++
+        }
+      }
+
+      lastId = batch.last().first
+    }
+
+    Log.i(TAG, "Moved $moved update payloads, skipped $unreadable unreadable ones.")
+  }
+}
@@ -33,6 +33,7 @@ public class InMemoryMessageRecord extends MessageRecord {
   {
     super(id,
           body,
+          null,
           author,
           1,
           author,
@@ -62,20 +62,29 @@ import org.thoughtcrime.securesms.util.Base64;
 import org.thoughtcrime.securesms.util.DateUtils;
 import org.thoughtcrime.securesms.util.ExpirationUtil;
 import org.thoughtcrime.securesms.util.GroupUtil;
+import org.thoughtcrime.securesms.util.LRUCache;
 import org.thoughtcrime.securesms.util.Util;
 import org.whispersystems.signalservice.api.groupsv2.DecryptedGroupUtil;
+import org.whispersystems.signalservice.api.push.ACI;
+import org.whispersystems.signalservice.api.push.PNI;
 import org.whispersystems.signalservice.api.push.ServiceId;
+import org.whispersystems.signalservice.api.push.ServiceIds;
 import org.whispersystems.signalservice.api.util.UuidUtil;
 
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * The base class for message record models that are displayed in
@@ -89,6 +98,12 @@ public abstract class MessageRecord extends DisplayRecord {
 
   private static final String TAG = Log.tag(MessageRecord.class);
 
+  /**
+   * Group update descriptions keyed by a digest of the serialized change, since producing them means parsing the whole group state.
+   * They're shared across records because conversation pages are reloaded with fresh records whenever the thread changes.
+   */
+  private static final LRUCache<Gv2DescriptionKey, UpdateDescription> GV2_DESCRIPTION_CACHE = new LRUCache<>(500);
+
   private final long                     id;
   private final int                      authorDeviceId;
   private final Set<IdentityKeyMismatch> mismatches;
@@ -104,10 +119,15 @@ public abstract class MessageRecord extends DisplayRecord {
   private final long                     receiptTimestamp;
   private final MessageId                originalMessageId;
   private final int                      revisionNumber;
+  private final byte[]                   updatePayload;
 
   protected Boolean isJumboji = null;
 
-  MessageRecord(long id, String body, Recipient fromRecipient, int fromDeviceId, Recipient toRecipient,
+  private volatile MemoizedUpdateDescription memoizedUpdateDisplayBody;
+  private          DecryptedGroupV2Context   decryptedGroupV2Context;
+  private volatile boolean                   decryptedGroupV2ContextRead;
+
+  MessageRecord(long id, String body, @Nullable byte[] updatePayload, Recipient fromRecipient, int fromDeviceId, Recipient toRecipient,
                 long dateSent, long dateReceived, long dateServer, long threadId,
                 int deliveryStatus, int deliveryReceiptCount, long type,
                 Set<IdentityKeyMismatch> mismatches,
@@ -143,6 +163,7 @@ public abstract class MessageRecord extends DisplayRecord {
     this.receiptTimestamp    = receiptTimestamp;
     this.originalMessageId   = originalMessageId;
     this.revisionNumber      = revisionNumber;
+    this.updatePayload       = updatePayload;
   }
 
   public abstract boolean isMms();
@@ -174,9 +195,30 @@ public abstract class MessageRecord extends DisplayRecord {
     return new SpannableString(getBody());
   }
 
+  /**
+   * Descriptions without a click handler are memoized for the current locale, since a page load asks for them more than once per record.
+   * Click handlers end up in the spans, so descriptions with one are always rebuilt.
+   */
   public @Nullable UpdateDescription getUpdateDisplayBody(@NonNull Context context, @Nullable Consumer<RecipientId> recipientClickHandler) {
+    if (recipientClickHandler != null) {
+      return createUpdateDisplayBody(context, recipientClickHandler);
+    }
+
+    Locale                    locale   = Locale.getDefault();
+    MemoizedUpdateDescription memoized = memoizedUpdateDisplayBody;
+
+    if (memoized == null || !memoized.locale.equals(locale)) {
+      memoized                  = new MemoizedUpdateDescription(locale, createUpdateDisplayBody(context, null));
+      memoizedUpdateDisplayBody = memoized;
+    }
+
+    return memoized.description;
+  }
+
+  private @Nullable UpdateDescription createUpdateDisplayBody(@NonNull Context context, @Nullable Consumer<RecipientId> recipientClickHandler) {
     if (isGroupUpdate() && isGroupV2()) {
-      return getGv2ChangeDescription(context, getBody(), recipientClickHandler);
+      return recipientClickHandler == null ? getGv2ChangeDescription(context, updatePayload, this::getDecryptedGroupV2Context)
+                                           : describeGv2Change(context, getDecryptedGroupV2Context(), recipientClickHandler);
     } else if (isGroupUpdate() && isOutgoing()) {
       return staticUpdateDescription(context.getString(R.string.MessageRecord_you_updated_group), R.drawable.ic_update_group_16);
     } else if (isGroupUpdate()) {
@@ -235,7 +277,7 @@ public abstract class MessageRecord extends DisplayRecord {
       return fromRecipient(getFromRecipient(), r -> context.getString(R.string.MessageRecord_a_message_from_s_couldnt_be_delivered, r.getDisplayName(context)), R.drawable.ic_error_outline_14);
     } else if (isThreadMergeEventType()) {
       try {
-        ThreadMergeEvent event = ThreadMergeEvent.parseFrom(Base64.decodeOrThrow(getBody()));
+        ThreadMergeEvent event = ThreadMergeEvent.parseFrom(getUpdatePayloadOrEmpty());
 
         if (event.getPreviousE164().isEmpty()) {
           return fromRecipient(getFromRecipient(), r -> context.getString(R.string.MessageRecord_your_message_history_with_s_and_another_chat_has_been_merged, r.getDisplayName(context)), R.drawable.ic_thread_merge_16);
@@ -247,7 +289,7 @@ public abstract class MessageRecord extends DisplayRecord {
       }
     } else if (isSessionSwitchoverEventType()) {
       try {
-        SessionSwitchoverEvent event = SessionSwitchoverEvent.parseFrom(Base64.decodeOrThrow(getBody()));
+        SessionSwitchoverEvent event = SessionSwitchoverEvent.parseFrom(getUpdatePayloadOrEmpty());
 
         if (event.getE164().isEmpty()) {
           return fromRecipient(getFromRecipient(), r -> context.getString(R.string.MessageRecord_your_safety_number_with_s_has_changed, r.getDisplayName(context)), R.drawable.ic_update_safety_number_16);
@@ -292,16 +334,25 @@ public abstract class MessageRecord extends DisplayRecord {
       return null;
     }
 
-    DecryptedGroupV2Context decryptedGroupV2Context;
-    try {
-      byte[] decoded = Base64.decode(getBody());
-      decryptedGroupV2Context = DecryptedGroupV2Context.parseFrom(decoded);
+    if (!decryptedGroupV2ContextRead) {
+      decryptedGroupV2Context     = parseDecryptedGroupV2Context(updatePayload);
+      decryptedGroupV2ContextRead = true;
+    }
 
-    } catch (IOException e) {
+    return decryptedGroupV2Context;
+  }
+
+  private static @Nullable DecryptedGroupV2Context parseDecryptedGroupV2Context(@Nullable byte[] payload) {
+    if (payload == null) {
+      return null;
+    }
+
+    try {
+      return DecryptedGroupV2Context.parseFrom(payload);
+    } catch (InvalidProtocolBufferException e) {
       Log.w(TAG, "GV2 Message update detail could not be read", e);
-      decryptedGroupV2Context = null;
+      return null;
     }
-    return decryptedGroupV2Context;
   }
 
   private static boolean selfCreatedGroup(@NonNull DecryptedGroupChange change) {
@@ -309,11 +360,77 @@ public abstract class MessageRecord extends DisplayRecord {
            change.getEditor().equals(UuidUtil.toByteString(SignalStore.account().requireAci().uuid()));
   }
 
+  /**
+   * Describes the group change in a thread snippet, which holds the serialized change Base64-encoded.
+   */
   public static @NonNull UpdateDescription getGv2ChangeDescription(@NonNull Context context, @NonNull String body, @Nullable Consumer<RecipientId> recipientClickHandler) {
+    byte[] payload;
     try {
-      byte[]                         decoded                 = Base64.decode(body);
-      DecryptedGroupV2Context        decryptedGroupV2Context = DecryptedGroupV2Context.parseFrom(decoded);
-      GroupsV2UpdateMessageProducer  updateMessageProducer   = new GroupsV2UpdateMessageProducer(context, SignalStore.account().getServiceIds(), recipientClickHandler);
+      payload = Base64.decode(body);
+    } catch (IOException e) {
+      Log.w(TAG, "GV2 Message update detail could not be read", e);
+      return describeGv2Change(context, null, recipientClickHandler);
+    }
+
+    if (recipientClickHandler != null) {
+      return describeGv2Change(context, parseDecryptedGroupV2Context(payload), recipientClickHandler);
+    }
+
+    return getGv2ChangeDescription(context, payload, () -> parseDecryptedGroupV2Context(payload));
+  }
+
+  private static @NonNull UpdateDescription getGv2ChangeDescription(@NonNull Context context,
+                                                                    @Nullable byte[] payload,
+                                                                    @NonNull Supplier<DecryptedGroupV2Context> decryptedGroupV2Context)
+  {
+    if (payload == null) {
+      return describeGv2Change(context, null, null);
+    }
+
+    ServiceIds        selfIds = SignalStore.account().getServiceIds();
+    Gv2DescriptionKey key     = new Gv2DescriptionKey(sha256(payload), Locale.getDefault(), selfIds.getAci(), selfIds.getPni());
+
+    synchronized (GV2_DESCRIPTION_CACHE) {
+      UpdateDescription cached = GV2_DESCRIPTION_CACHE.get(key);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
+    UpdateDescription description = describeGv2Change(context.getApplicationContext(), decryptedGroupV2Context.get(), null);
+
+    synchronized (GV2_DESCRIPTION_CACHE) {
+      GV2_DESCRIPTION_CACHE.put(key, description);
+    }
+
+    return description;
+  }
+
+  private static @NonNull byte[] sha256(@NonNull byte[] payload) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(payload);
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @VisibleForTesting
+  static void clearGv2DescriptionCache() {
+    synchronized (GV2_DESCRIPTION_CACHE) {
+      GV2_DESCRIPTION_CACHE.clear();
+    }
+  }
+
+  private static @NonNull UpdateDescription describeGv2Change(@NonNull Context context,
+                                                              @Nullable DecryptedGroupV2Context decryptedGroupV2Context,
+                                                              @Nullable Consumer<RecipientId> recipientClickHandler)
+  {
+    if (decryptedGroupV2Context == null) {
+      return staticUpdateDescription(context.getString(R.string.MessageRecord_group_updated), R.drawable.ic_update_group_16);
+    }
+
+    try {
+      GroupsV2UpdateMessageProducer updateMessageProducer = new GroupsV2UpdateMessageProducer(context, SignalStore.account().getServiceIds(), recipientClickHandler);
 
       if (decryptedGroupV2Context.hasChange() && (decryptedGroupV2Context.getGroupState().getRevision() != 0 || decryptedGroupV2Context.hasPreviousGroupState())) {
         return UpdateDescription.concatWithNewLines(updateMessageProducer.describeChanges(decryptedGroupV2Context.getPreviousGroupState(), decryptedGroupV2Context.getChange()));
@@ -330,7 +447,7 @@ public abstract class MessageRecord extends DisplayRecord {
         }
         return UpdateDescription.concatWithNewLines(newGroupDescriptions);
       }
-    } catch (IOException | IllegalArgumentException e) {
+    } catch (IllegalArgumentException e) {
       Log.w(TAG, "GV2 Message update detail could not be read", e);
       return staticUpdateDescription(context.getString(R.string.MessageRecord_group_updated), R.drawable.ic_update_group_16);
     }
@@ -387,8 +504,7 @@ public abstract class MessageRecord extends DisplayRecord {
 
   private @NonNull String getProfileChangeDescription(@NonNull Context context) {
     try {
-      byte[]               decoded              = Base64.decode(getBody());
-      ProfileChangeDetails profileChangeDetails = ProfileChangeDetails.parseFrom(decoded);
+      ProfileChangeDetails profileChangeDetails = ProfileChangeDetails.parseFrom(getUpdatePayloadOrEmpty());
 
       if (profileChangeDetails.hasProfileNameChange()) {
         String displayName  = getFromRecipient().getDisplayName(context);
@@ -493,17 +609,18 @@ public abstract class MessageRecord extends DisplayRecord {
     return false;
   }
 
-  public static @NonNull String createNewContextWithAppendedDeleteJoinRequest(@NonNull MessageRecord messageRecord, int revision, @NonNull ByteString id) {
+  public static @NonNull byte[] createNewContextWithAppendedDeleteJoinRequest(@NonNull MessageRecord messageRecord, int revision, @NonNull ByteString id) {
     DecryptedGroupV2Context decryptedGroupV2Context = messageRecord.getDecryptedGroupV2Context();
 
     if (decryptedGroupV2Context != null && decryptedGroupV2Context.hasChange()) {
       DecryptedGroupChange change = decryptedGroupV2Context.getChange();
 
-      return Base64.encodeBytes(decryptedGroupV2Context.toBuilder()
-                                                       .setChange(change.toBuilder()
-                                                                        .setRevision(revision)
-                                                                        .addDeleteRequestingMembers(id))
-                                                       .build().toByteArray());
+      return decryptedGroupV2Context.toBuilder()
+                                    .setChange(change.toBuilder()
+                                                     .setRevision(revision)
+                                                     .addDeleteRequestingMembers(id))
+                                    .build()
+                                    .toByteArray();
     }
 
     throw new AssertionError("Attempting to modify a message with no change");
@@ -513,6 +630,17 @@ public abstract class MessageRecord extends DisplayRecord {
     return id;
   }
 
+  /**
+   * The serialized proto behind a group change, profile change, thread merge or session switchover, which is kept out of the body.
+   */
+  public @Nullable byte[] getUpdatePayload() {
+    return updatePayload;
+  }
+
+  private @NonNull byte[] getUpdatePayloadOrEmpty() {
+    return updatePayload != null ? updatePayload : new byte[0];
+  }
+
   public boolean isPush() {
     return MessageTypes.isPushType(type) && !MessageTypes.isForcedSms(type);
   }
@@ -762,4 +890,44 @@ public abstract class MessageRecord extends DisplayRecord {
       return invited;
     }
   }
+
+  private static final class MemoizedUpdateDescription {
+    private final Locale            locale;
+    private final UpdateDescription description;
+
+    private MemoizedUpdateDescription(@NonNull Locale locale, @Nullable UpdateDescription description) {
+      this.locale      = locale;
+      this.description = description;
+    }
+  }
+
+  private static final class Gv2DescriptionKey {
+    private final byte[] payloadDigest;
+    private final Locale locale;
+    private final ACI    selfAci;
+    private final PNI    selfPni;
+
+    private Gv2DescriptionKey(@NonNull byte[] payloadDigest, @NonNull Locale locale, @Nullable ACI selfAci, @Nullable PNI selfPni) {
+      this.payloadDigest = payloadDigest;
+      this.locale        = locale;
+      this.selfAci       = selfAci;
+      this.selfPni       = selfPni;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Gv2DescriptionKey that = (Gv2DescriptionKey) o;
+      return Arrays.equals(payloadDigest, that.payloadDigest) &&
+             locale.equals(that.locale) &&
+             Objects.equals(selfAci, that.selfAci) &&
+             Objects.equals(selfPni, that.selfPni);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(Arrays.hashCode(payloadDigest), locale, selfAci, selfPni);
+    }
+  }
 }
@@ -29,7 +29,7 @@ public abstract class MmsMessageRecord extends MessageRecord {
 
   private final boolean viewOnce;
 
-  MmsMessageRecord(long id, String body, Recipient fromRecipient, int fromDeviceId, Recipient toRecipient, long dateSent,
+  MmsMessageRecord(long id, String body, @Nullable byte[] updatePayload, Recipient fromRecipient, int fromDeviceId, Recipient toRecipient, long dateSent,
                    long dateReceived, long dateServer, long threadId, int deliveryStatus, int deliveryReceiptCount,
                    long type, Set<IdentityKeyMismatch> mismatches,
                    Set<NetworkFailure> networkFailures, int subscriptionId, long expiresIn,
@@ -42,7 +42,7 @@ public abstract class MmsMessageRecord extends MessageRecord {
                    @Nullable ParentStoryId parentStoryId, @Nullable GiftBadge giftBadge, @Nullable MessageId originalMessageId,
                    int revisionNumber)
   {
-    super(id, body, fromRecipient, fromDeviceId, toRecipient,
+    super(id, body, updatePayload, fromRecipient, fromDeviceId, toRecipient,
           dateSent, dateReceived, dateServer, threadId, deliveryStatus, deliveryReceiptCount,
           type, mismatches, networkFailures, subscriptionId, expiresIn, expireStarted, readReceiptCount,
           unidentified, reactions, remoteDelete, notifiedTimestamp, viewedReceiptCount, receiptTimestamp, originalMessageId, revisionNumber);
@@ -56,7 +56,7 @@ public class NotificationMmsMessageRecord extends MmsMessageRecord {
                                       int viewedReceiptCount, long receiptTimestamp, @NonNull StoryType storyType,
                                       @Nullable ParentStoryId parentStoryId, @Nullable GiftBadge giftBadge)
   {
-    super(id, "", fromRecipient, fromDeviceId, toRecipient,
+    super(id, "", null, fromRecipient, fromDeviceId, toRecipient,
           dateSent, dateReceived, -1, threadId, Status.STATUS_NONE, deliveryReceiptCount, mailbox,
           new HashSet<>(), new HashSet<>(), subscriptionId,
           0, 0, false, slideDeck, readReceiptCount, null, Collections.emptyList(), Collections.emptyList(), false,
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database.model
+
+import org.thoughtcrime.securesms.recipients.RecipientId
+
+/**
+ * A lightweight summary of a single story, with just enough to group stories by sender and count the ones that are sending or failed
+ * without reading the full message record.
+ *
+ * [isSending] is also set for incoming stories whose attachments haven't finished downloading. The read state and receipt counts are
+ * only here so that a change to them shows up as a change to the entry, since the landing page displays them from the full record.
+ */
+data class StoryIndexEntry(
+  val recipientId: RecipientId,
+  val messageId: Long,
+  val messageSentTimestamp: Long,
+  val isOutgoing: Boolean,
+  val isSending: Boolean,
+  val isFailed: Boolean,
+  val isRead: Boolean,
+  val deliveryReceiptCount: Int,
+  val readReceiptCount: Int,
+  val viewedReceiptCount: Int
+)
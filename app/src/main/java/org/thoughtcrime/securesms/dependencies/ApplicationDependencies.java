@@ -21,6 +21,7 @@ import org.thoughtcrime.securesms.groups.GroupsV2AuthorizationMemoryValueCache;
 import org.thoughtcrime.securesms.groups.v2.processing.GroupsV2StateProcessor;
 import org.thoughtcrime.securesms.jobmanager.JobManager;
 import org.thoughtcrime.securesms.keyvalue.SignalStore;
+import org.thoughtcrime.securesms.linkpreview.LinkPreviewCache;
 import org.thoughtcrime.securesms.megaphone.MegaphoneRepository;
 import org.thoughtcrime.securesms.messages.BackgroundMessageRetriever;
 import org.thoughtcrime.securesms.messages.IncomingMessageObserver;
@@ -126,6 +127,7 @@ public class ApplicationDependencies {
   private static volatile MessageNotifier              messageNotifier;
   private static volatile SignalServiceDataStoreImpl   protocolStore;
   private static volatile GiphyMp4Cache                giphyMp4Cache;
+  private static volatile LinkPreviewCache             linkPreviewCache;
   private static volatile SimpleExoPlayerPool          exoPlayerPool;
   private static volatile AudioManagerCompat           audioManagerCompat;
   private static volatile DonationsService             donationsService;
@@ -621,6 +623,17 @@ public class ApplicationDependencies {
     return giphyMp4Cache;
   }
 
+  public static @NonNull LinkPreviewCache getLinkPreviewCache() {
+    if (linkPreviewCache == null) {
+      synchronized (LOCK) {
+        if (linkPreviewCache == null) {
+          linkPreviewCache = provider.provideLinkPreviewCache();
+        }
+      }
+    }
+    return linkPreviewCache;
+  }
+
   public static @NonNull SimpleExoPlayerPool getExoPlayerPool() {
     if (exoPlayerPool == null) {
       synchronized (LOCK) {
@@ -731,6 +744,7 @@ public class ApplicationDependencies {
     @NonNull SignalWebSocket provideSignalWebSocket(@NonNull Supplier<SignalServiceConfiguration> signalServiceConfigurationSupplier);
     @NonNull SignalServiceDataStoreImpl provideProtocolStore();
     @NonNull GiphyMp4Cache provideGiphyMp4Cache();
+    @NonNull LinkPreviewCache provideLinkPreviewCache();
     @NonNull SimpleExoPlayerPool provideExoPlayerPool();
     @NonNull AudioManagerCompat provideAndroidCallAudioManager();
     @NonNull DonationsService provideDonationsService(@NonNull SignalServiceConfiguration signalServiceConfiguration, @NonNull GroupsV2Operations groupsV2Operations);
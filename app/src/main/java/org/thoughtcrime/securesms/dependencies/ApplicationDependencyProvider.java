@@ -33,6 +33,7 @@ import org.thoughtcrime.securesms.database.PendingRetryReceiptCache;
 import org.thoughtcrime.securesms.jobmanager.JobManager;
 import org.thoughtcrime.securesms.jobmanager.JobMigrator;
 import org.thoughtcrime.securesms.jobmanager.impl.FactoryJobPredicate;
+import org.thoughtcrime.securesms.jobs.AttachmentCompressionJob;
 import org.thoughtcrime.securesms.jobs.FastJobStorage;
 import org.thoughtcrime.securesms.jobs.GroupCallUpdateSendJob;
 import org.thoughtcrime.securesms.jobs.JobManagerFactories;
@@ -46,6 +47,7 @@ import org.thoughtcrime.securesms.jobs.PushProcessMessageJobV2;
 import org.thoughtcrime.securesms.jobs.ReactionSendJob;
 import org.thoughtcrime.securesms.jobs.TypingSendJob;
 import org.thoughtcrime.securesms.keyvalue.SignalStore;
+import org.thoughtcrime.securesms.linkpreview.LinkPreviewCache;
 import org.thoughtcrime.securesms.megaphone.MegaphoneRepository;
 import org.thoughtcrime.securesms.messages.BackgroundMessageRetriever;
 import org.thoughtcrime.securesms.messages.IncomingMessageObserver;
@@ -180,6 +182,7 @@ public class ApplicationDependencyProvider implements ApplicationDependencies.Pr
                                                                   .setJobMigrator(new JobMigrator(TextSecurePreferences.getJobManagerVersion(context), JobManager.CURRENT_VERSION, JobManagerFactories.getJobMigrations(context)))
                                                                   .addReservedJobRunner(new FactoryJobPredicate(PushDecryptMessageJob.KEY, PushProcessMessageJob.KEY, PushProcessMessageJobV2.KEY, MarkerJob.KEY))
                                                                   .addReservedJobRunner(new FactoryJobPredicate(IndividualSendJob.KEY, PushGroupSendJob.KEY, ReactionSendJob.KEY, TypingSendJob.KEY, GroupCallUpdateSendJob.KEY))
+                                                                  .addReservedJobRunner(new FactoryJobPredicate(AttachmentCompressionJob.KEY))
                                                                   .build();
     return new JobManager(context, config);
   }
@@ -354,6 +357,11 @@ public class ApplicationDependencyProvider implements ApplicationDependencies.Pr
     return new GiphyMp4Cache(ByteUnit.MEGABYTES.toBytes(16));
   }
 
+  @Override
+  public @NonNull LinkPreviewCache provideLinkPreviewCache() {
+    return new LinkPreviewCache(ByteUnit.MEGABYTES.toBytes(8), TimeUnit.DAYS.toMillis(1));
+  }
+
   @Override
   public @NonNull SimpleExoPlayerPool provideExoPlayerPool() {
     return new SimpleExoPlayerPool(context);
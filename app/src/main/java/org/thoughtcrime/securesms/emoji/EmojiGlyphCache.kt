@@ -0,0 +1,290 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.emoji
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.BitmapRegionDecoder
+import android.graphics.Rect
+import android.util.LruCache
+import androidx.annotation.WorkerThread
+import org.signal.core.util.ThreadUtil
+import org.signal.core.util.concurrent.SignalExecutors
+import org.signal.core.util.logging.Log
+import org.thoughtcrime.securesms.components.emoji.parsing.EmojiDrawInfo
+import org.thoughtcrime.securesms.mms.PartAuthority
+import org.thoughtcrime.securesms.util.concurrent.ListenableFuture
+import org.thoughtcrime.securesms.util.concurrent.SettableFuture
+import java.io.IOException
+import java.io.InputStream
+import java.util.concurrent.Executor
+
+/**
+ * Caches individual emoji glyphs, decoded straight out of their sprite pages with a [BitmapRegionDecoder], so we never have to hold a
+ * whole page in memory just to draw a few emoji from it. Glyphs are kept in an LRU that's bounded by their size in bytes.
+ *
+ * Decodes are batched by page. Every glyph that's requested from a page while a decode for that page is waiting to run is decoded as
+ * part of one region covering all of them, which is then cut up into glyphs.
+ */
+object EmojiGlyphCache {
+
+  private val TAG = Log.tag(EmojiGlyphCache::class.java)
+
+  private const val MAX_CACHE_BYTES = 8 * 1024 * 1024
+
+  /** Decoders hold on to the compressed page, so only keep a few of them open. */
+  private const val MAX_OPEN_PAGES = 3
+
+  private val maxCacheBytes: Int = minOf(MAX_CACHE_BYTES.toLong(), Runtime.getRuntime().maxMemory() / 32).toInt()
+
+  private val glyphs: LruCache<GlyphRequest, Bitmap> = object : LruCache<GlyphRequest, Bitmap>(maxCacheBytes) {
+    override fun sizeOf(key: GlyphRequest, value: Bitmap): Int = value.allocationByteCount
+  }
+
+  /** Only accessed on [executor]. */
+  private val decoders: LruCache<EmojiPage, BitmapRegionDecoder> = object : LruCache<EmojiPage, BitmapRegionDecoder>(MAX_OPEN_PAGES) {
+    override fun entryRemoved(evicted: Boolean, key: EmojiPage, oldValue: BitmapRegionDecoder, newValue: BitmapRegionDecoder?) {
+      oldValue.recycle()
+    }
+  }
+
+  private val executor: Executor = SignalExecutors.newCachedSingleThreadExecutor("signal-emoji-glyphs", ThreadUtil.PRIORITY_BACKGROUND_THREAD)
+
+  private val lock = Any()
+  private val pending: MutableMap<PageRequest, MutableMap<GlyphRequest, SettableFuture<Bitmap>>> = hashMapOf()
+
+  private var hits: Long = 0
+  private var misses: Long = 0
+  private var prefetches: Long = 0
+  private var regionDecodes: Long = 0
+  private var glyphDecodes: Long = 0
+
+  fun load(context: Context, source: EmojiSource, drawInfo: EmojiDrawInfo, inSampleSize: Int): LoadResult {
+    val request = GlyphRequest(PageRequest.create(source, drawInfo.page, inSampleSize), drawInfo.index)
+    val bitmap: Bitmap? = glyphs[request]
+
+    synchronized(lock) {
+      if (bitmap != null) hits++ else misses++
+    }
+
+    return if (bitmap != null) {
+      LoadResult.Immediate(bitmap)
+    } else {
+      LoadResult.Async(enqueue(context.applicationContext, request))
+    }
+  }
+
+  /**
+   * Starts decoding any of the given glyphs that aren't already cached, without waiting for them.
+   */
+  fun prefetch(context: Context, source: EmojiSource, drawInfos: Collection<EmojiDrawInfo>, inSampleSize: Int) {
+    val applicationContext = context.applicationContext
+
+    for (drawInfo in drawInfos) {
+      val request = GlyphRequest(PageRequest.create(source, drawInfo.page, inSampleSize), drawInfo.index)
+
+      if (glyphs[request] == null) {
+        synchronized(lock) { prefetches++ }
+        enqueue(applicationContext, request)
+      }
+    }
+  }
+
+  fun clear() {
+    glyphs.evictAll()
+    executor.execute { decoders.evictAll() }
+  }
+
+  fun getStats(): Stats {
+    synchronized(lock) {
+      return Stats(
+        glyphs = glyphs.snapshot().size,
+        sizeBytes = glyphs.size().toLong(),
+        maxSizeBytes = glyphs.maxSize().toLong(),
+        hits = hits,
+        misses = misses,
+        prefetches = prefetches,
+        regionDecodes = regionDecodes,
+        glyphDecodes = glyphDecodes,
+        evictions = glyphs.evictionCount().toLong()
+      )
+    }
+  }
+
+  private fun enqueue(context: Context, request: GlyphRequest): ListenableFuture<Bitmap> {
+    synchronized(lock) {
+      val batch = pending[request.page]
+
+      batch?.get(request)?.let { return it }
+
+      val future = SettableFuture<Bitmap>()
+
+      if (batch != null) {
+        batch[request] = future
+      } else {
+        pending[request.page] = hashMapOf(request to future)
+        executor.execute { decodeBatch(context, request.page) }
+      }
+
+      return future
+    }
+  }
+
+  @WorkerThread
+  private fun decodeBatch(context: Context, page: PageRequest) {
+    val batch: Map<GlyphRequest, SettableFuture<Bitmap>> = synchronized(lock) { pending.remove(page) } ?: return
+    val toDecode: MutableMap<GlyphRequest, SettableFuture<Bitmap>> = HashMap(batch.size)
+
+    for ((request, future) in batch) {
+      val cached = glyphs[request]
+      if (cached != null) {
+        future.set(cached)
+      } else {
+        toDecode[request] = future
+      }
+    }
+
+    if (toDecode.isEmpty()) {
+      return
+    }
+
+    val decoded: Map<GlyphRequest, Bitmap> = try {
+      decodeGlyphs(context, page, toDecode.keys)
+    } catch (e: IOException) {
+      Log.w(TAG, "Failed to decode ${toDecode.size} glyphs from ${page.page.uri}", e)
+      toDecode.values.forEach { it.setException(e) }
+      return
+    }
+
+    for ((request, future) in toDecode) {
+      val bitmap = decoded[request]
+      if (bitmap != null) {
+        glyphs.put(request, bitmap)
+        future.set(bitmap)
+      } else {
+        future.setException(IOException("Glyph ${request.index} is outside of ${page.page.uri}"))
+      }
+    }
+  }
+
+  /**
+   * Decodes the smallest region of the page that covers all of [requests] in one go, and cuts each glyph out of it.
+   */
+  @WorkerThread
+  @Throws(IOException::class)
+  private fun decodeGlyphs(context: Context, page: PageRequest, requests: Collection<GlyphRequest>): Map<GlyphRequest, Bitmap> {
+    val decoder = getDecoder(context, page.page)
+    val pageBounds = Rect(0, 0, decoder.width, decoder.height)
+
+    val glyphBounds: Map<GlyphRequest, Rect> = requests
+      .associateWith { page.getGlyphBounds(it.index) }
+      .filterValues { it.intersect(pageBounds) }
+
+    if (glyphBounds.isEmpty()) {
+      return emptyMap()
+    }
+
+    val region = Rect(glyphBounds.values.first())
+    glyphBounds.values.forEach { region.union(it) }
+
+    val options = BitmapFactory.Options().apply { inSampleSize = page.inSampleSize }
+    val regionBitmap: Bitmap = decoder.decodeRegion(region, options) ?: throw IOException("Failed to decode region $region")
+
+    val results: MutableMap<GlyphRequest, Bitmap> = HashMap(glyphBounds.size)
+
+    for ((request, bounds) in glyphBounds) {
+      val x = (bounds.left - region.left) / page.inSampleSize
+      val y = (bounds.top - region.top) / page.inSampleSize
+      val width = minOf(bounds.width() / page.inSampleSize, regionBitmap.width - x)
+      val height = minOf(bounds.height() / page.inSampleSize, regionBitmap.height - y)
+
+      if (width > 0 && height > 0) {
+        results[request] = Bitmap.createBitmap(regionBitmap, x, y, width, height)
+      }
+    }
+
+    if (results.values.none { it === regionBitmap }) {
+      regionBitmap.recycle()
+    }
+
+    synchronized(lock) {
+      regionDecodes++
+      glyphDecodes += results.size
+    }
+
+    return results
+  }
+
+  @WorkerThread
+  @Throws(IOException::class)
+  private fun getDecoder(context: Context, emojiPage: EmojiPage): BitmapRegionDecoder {
+    decoders[emojiPage]?.let { return it }
+
+    Log.i(TAG, "Opening page ${emojiPage.uri}")
+
+    val inputStream: InputStream = when (emojiPage) {
+      is EmojiPage.Asset -> context.assets.open(emojiPage.uri.toString().replace("file:///android_asset/", ""))
+      is EmojiPage.Disk -> EmojiFiles.openForReading(context, PartAuthority.getEmojiFilename(emojiPage.uri))
+    }
+
+    @Suppress("DEPRECATION")
+    val decoder: BitmapRegionDecoder = inputStream.use { BitmapRegionDecoder.newInstance(it, false) } ?: throw IOException("Failed to open ${emojiPage.uri}")
+    decoders.put(emojiPage, decoder)
+
+    return decoder
+  }
+
+  /**
+   * A page decoded at a particular sample size, along with the layout of the glyphs in it, in the page's own pixels.
+   */
+  private data class PageRequest(val page: EmojiPage, val inSampleSize: Int, val glyphWidth: Int, val glyphHeight: Int, val perRow: Int) {
+
+    /**
+     * Leaves a border of one decoded pixel on each side of the glyph, so filtering doesn't pick up any of its neighbors.
+     */
+    fun getGlyphBounds(index: Int): Rect {
+      val left = (index % perRow) * glyphWidth
+      val top = (index / perRow) * glyphHeight
+
+      return Rect(left + inSampleSize, top + inSampleSize, left + glyphWidth - inSampleSize, top + glyphHeight - inSampleSize)
+    }
+
+    companion object {
+      fun create(source: EmojiSource, page: EmojiPage, inSampleSize: Int): PageRequest {
+        return PageRequest(
+          page = page,
+          inSampleSize = inSampleSize,
+          glyphWidth = (source.metrics.rawWidth * source.decodeScale).toInt(),
+          glyphHeight = (source.metrics.rawHeight * source.decodeScale).toInt(),
+          perRow = source.metrics.perRow
+        )
+      }
+    }
+  }
+
+  private data class GlyphRequest(val page: PageRequest, val index: Int)
+
+  sealed class LoadResult {
+    data class Immediate(val bitmap: Bitmap) : LoadResult()
+    data class Async(val task: ListenableFuture<Bitmap>) : LoadResult()
+  }
+
+  data class Stats(
+    val glyphs: Int,
+    val sizeBytes: Long,
+    val maxSizeBytes: Long,
+    val hits: Long,
+    val misses: Long,
+    val prefetches: Long,
+    val regionDecodes: Long,
+    val glyphDecodes: Long,
+    val evictions: Long
+  ) {
+    val hitRate: Float
+      get() = if (hits + misses > 0) hits.toFloat() / (hits + misses) else 0f
+  }
+}
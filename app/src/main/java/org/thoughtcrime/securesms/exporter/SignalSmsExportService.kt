@@ -116,6 +116,24 @@ class SignalSmsExportService : SmsExportService() {
     SignalDatabase.messages.markMessageExported(exportableMessage.getMessageId())
   }
 
+  override fun onMessagesExportStarted(exportableMessages: List<ExportableMessage>) {
+    SignalDatabase.messages.updateMessageExportStates(exportableMessages.map { it.getMessageId() }) {
+      it.toBuilder().setProgress(MessageExportState.Progress.STARTED).build()
+    }
+  }
+
+  override fun onMessagesExportSucceeded(exportableMessages: List<ExportableMessage>) {
+    val messageIds: List<MessageId> = exportableMessages.map { it.getMessageId() }
+
+    SignalDatabase.runInTransaction {
+      SignalDatabase.messages.updateMessageExportStates(messageIds) {
+        it.toBuilder().setProgress(MessageExportState.Progress.COMPLETED).build()
+      }
+
+      SignalDatabase.messages.markMessagesExported(messageIds)
+    }
+  }
+
   override fun onMessageExportFailed(exportableMessage: ExportableMessage) {
     SignalDatabase.messages.updateMessageExportState(exportableMessage.getMessageId()) {
       it.toBuilder().setProgress(MessageExportState.Progress.INIT).build()
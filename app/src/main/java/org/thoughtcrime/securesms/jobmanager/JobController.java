@@ -26,25 +26,41 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 
 /**
  * Manages the queue of jobs. This is the only class that should write to {@link JobStorage} to
  * ensure consistency.
+ *
+ * Idle runners register themselves as waiters rather than all waiting on the controller. Whenever the
+ * state of the queues changes, we make a single pass over the head of each queue and hand each
+ * eligible job directly to one waiter that can run it, so only the runners that have work are woken up.
  */
 class JobController {
 
   private static final String TAG = Log.tag(JobController.class);
 
-  private final Application            application;
-  private final JobStorage             jobStorage;
-  private final JobInstantiator        jobInstantiator;
-  private final ConstraintInstantiator constraintInstantiator;
-  private final JobTracker             jobTracker;
-  private final Scheduler              scheduler;
-  private final Debouncer              debouncer;
-  private final Callback               callback;
-  private final Map<String, Job>       runningJobs;
+  private static final long SLOW_DISPATCH_MS = 500;
+
+  private final Application              application;
+  private final JobStorage               jobStorage;
+  private final JobInstantiator          jobInstantiator;
+  private final ConstraintInstantiator   constraintInstantiator;
+  private final JobTracker               jobTracker;
+  private final Scheduler                scheduler;
+  private final Debouncer                debouncer;
+  private final Callback                 callback;
+  private final Map<String, Job>         runningJobs;
+  private final List<Waiter>             waiters;
+  private final JobDispatchStats         dispatchStats;
+  private final ScheduledExecutorService wakeUpTimer;
+
+  private ScheduledFuture<?> pendingWakeUp;
+  private long               pendingWakeUpTime;
 
   JobController(@NonNull Application application,
                 @NonNull JobStorage jobStorage,
@@ -64,16 +80,19 @@ class JobController {
     this.debouncer              = debouncer;
     this.callback               = callback;
     this.runningJobs            = new HashMap<>();
+    this.waiters                = new LinkedList<>();
+    this.dispatchStats          = new JobDispatchStats();
+    this.wakeUpTimer            = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "signal-JobDispatchTimer"));
   }
 
   @WorkerThread
   synchronized void init() {
     jobStorage.updateAllJobsToBePending();
-    notifyAll();
+    dispatch();
   }
 
   synchronized void wakeUp() {
-    notifyAll();
+    dispatch();
   }
 
   @WorkerThread
@@ -101,7 +120,7 @@ class JobController {
     triggerOnSubmit(chain);
 
     synchronized (this) {
-      notifyAll();
+      dispatch();
     }
   }
 
@@ -149,7 +168,7 @@ class JobController {
     triggerOnSubmit(chain);
 
     synchronized (this) {
-      notifyAll();
+      dispatch();
     }
   }
 
@@ -184,7 +203,7 @@ class JobController {
     }
 
     synchronized (this) {
-      notifyAll();
+      dispatch();
     }
   }
 
@@ -234,7 +253,7 @@ class JobController {
 
     jobStorage.updateJobs(updatedJobs);
 
-    notifyAll();
+    dispatch();
   }
 
   @WorkerThread
@@ -268,7 +287,7 @@ class JobController {
     Log.i(TAG, JobLogger.format(job, "Scheduling a retry in " + delay + " ms."));
     scheduler.schedule(delay, constraints);
 
-    notifyAll();
+    dispatch();
   }
 
   synchronized void onJobFinished(@NonNull Job job) {
@@ -289,7 +308,7 @@ class JobController {
 
     jobStorage.deleteJob(job.getId());
     jobTracker.onStateChange(job, JobTracker.JobState.SUCCESS);
-    notifyAll();
+    dispatch();
   }
 
   /**
@@ -326,27 +345,18 @@ class JobController {
    * When the job returned from this method has been run, you must call {@link #onJobFinished(Job)}.
    */
   @WorkerThread
-  synchronized @NonNull Job pullNextEligibleJobForExecution(@NonNull JobPredicate predicate) {
-    try {
-      Job job;
-
-      while ((job = getNextEligibleJobForExecution(predicate)) == null) {
-        if (runningJobs.isEmpty()) {
-          debouncer.publish(callback::onEmpty);
-        }
+  @NonNull Job pullNextEligibleJobForExecution(@NonNull JobPredicate predicate) {
+    Waiter waiter = new Waiter(predicate);
 
-        wait();
-      }
+    synchronized (this) {
+      waiters.add(waiter);
+      dispatch();
+    }
 
-      jobStorage.updateJobRunningState(job.getId(), true);
-      runningJobs.put(job.getId(), job);
-      jobTracker.onStateChange(job, JobTracker.JobState.RUNNING);
+    Job job = waiter.await();
+    onDispatched(job, System.nanoTime() - waiter.assignedAt);
 
-      return job;
-    } catch (InterruptedException e) {
-      Log.e(TAG, "Interrupted.");
-      throw new AssertionError(e);
-    }
+    return job;
   }
 
   /**
@@ -381,6 +391,10 @@ class JobController {
       info.append("None\n");
     }
 
+    info.append("\n-- Dispatch\n");
+    info.append("Idle runners: ").append(waiters.size()).append('\n');
+    info.append(JobLogger.formatDispatchStats(dispatchStats.snapshot()));
+
     return info.toString();
   }
 
@@ -483,25 +497,126 @@ class JobController {
     }
   }
 
+  /**
+   * Hands out as many eligible jobs as we can to idle runners, waking only the runners that were given a job.
+   * The storage gives us the head of each queue, so this is a single pass no matter how many runners are idle.
+   * The same pass finds the earliest time that a queue head in backoff becomes runnable, for {@link #scheduleDelayedWakeUp(long)}.
+   *
+   * If runners are still idle afterwards and nothing is running, we publish {@link Callback#onEmpty()}, just as each
+   * runner used to when it woke up and found nothing to do. Must be called while holding the lock.
+   */
   @WorkerThread
-  private @Nullable Job getNextEligibleJobForExecution(@NonNull JobPredicate predicate) {
-    List<JobSpec> jobSpecs = Stream.of(jobStorage.getPendingJobsWithNoDependenciesInCreatedOrder(System.currentTimeMillis()))
-                                   .filter(predicate::shouldRun)
-                                   .toList();
+  private void dispatch() {
+    if (waiters.isEmpty()) {
+      return;
+    }
+
+    long          now                = System.currentTimeMillis();
+    long          nextRunAttemptTime = Long.MAX_VALUE;
+    List<JobSpec> jobSpecs           = jobStorage.getPendingJobsWithNoDependenciesInCreatedOrder(Long.MAX_VALUE);
 
     for (JobSpec jobSpec : jobSpecs) {
+      if (waiters.isEmpty()) {
+        break;
+      }
+
+      if (jobSpec.getNextRunAttemptTime() > now) {
+        nextRunAttemptTime = Math.min(nextRunAttemptTime, jobSpec.getNextRunAttemptTime());
+        continue;
+      }
+
+      Waiter waiter = findWaiter(jobSpec);
+      if (waiter == null) {
+        continue;
+      }
+
       List<ConstraintSpec> constraintSpecs = jobStorage.getConstraintSpecs(jobSpec.getId());
-      List<Constraint>     constraints     = Stream.of(constraintSpecs)
-                                                   .map(ConstraintSpec::getFactoryKey)
-                                                   .map(constraintInstantiator::instantiate)
-                                                   .toList();
+      if (!constraintsMet(constraintSpecs)) {
+        continue;
+      }
+
+      Job job = createJob(jobSpec, constraintSpecs);
+
+      markRunning(job);
+      waiters.remove(waiter);
+      waiter.assign(job);
+    }
+
+    if (waiters.isEmpty()) {
+      return;
+    }
+
+    if (runningJobs.isEmpty()) {
+      debouncer.publish(callback::onEmpty);
+    }
+
+    scheduleDelayedWakeUp(nextRunAttemptTime);
+  }
+
+  /**
+   * Finds an idle runner for the job. Reserved runners are preferred so that general runners stay available
+   * for jobs that only they can take.
+   */
+  private @Nullable Waiter findWaiter(@NonNull JobSpec jobSpec) {
+    Waiter general = null;
 
-      if (Stream.of(constraints).allMatch(Constraint::isMet)) {
-        return createJob(jobSpec, constraintSpecs);
+    for (Waiter waiter : waiters) {
+      if (waiter.predicate == JobPredicate.NONE) {
+        if (general == null) {
+          general = waiter;
+        }
+      } else if (waiter.predicate.shouldRun(jobSpec)) {
+        return waiter;
+      }
+    }
+
+    return general;
+  }
+
+  /**
+   * Nothing else will wake the runners up when a job's backoff elapses, so while there are idle runners, we keep
+   * a single timer for the earliest time that a queue head becomes runnable. Must be called while holding the lock.
+   */
+  private void scheduleDelayedWakeUp(long earliest) {
+    if (earliest == Long.MAX_VALUE) {
+      return;
+    }
+
+    if (pendingWakeUp != null && !pendingWakeUp.isDone()) {
+      if (pendingWakeUpTime <= earliest) {
+        return;
       }
+      pendingWakeUp.cancel(false);
     }
 
-    return null;
+    pendingWakeUpTime = earliest;
+    pendingWakeUp     = wakeUpTimer.schedule(this::wakeUp, Math.max(0, earliest - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+  }
+
+  private boolean constraintsMet(@NonNull List<ConstraintSpec> constraintSpecs) {
+    for (ConstraintSpec constraintSpec : constraintSpecs) {
+      if (!constraintInstantiator.instantiate(constraintSpec.getFactoryKey()).isMet()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void markRunning(@NonNull Job job) {
+    jobStorage.updateJobRunningState(job.getId(), true);
+    runningJobs.put(job.getId(), job);
+    jobTracker.onStateChange(job, JobTracker.JobState.RUNNING);
+  }
+
+  private void onDispatched(@NonNull Job job, long dispatchLatencyNanos) {
+    long runnableSince = Math.max(job.getParameters().getCreateTime(), job.getNextRunAttemptTime());
+    long queueWait     = Math.max(0, System.currentTimeMillis() - runnableSince);
+
+    dispatchStats.record(job.getFactoryKey(), queueWait, dispatchLatencyNanos);
+
+    if (TimeUnit.NANOSECONDS.toMillis(dispatchLatencyNanos) > SLOW_DISPATCH_MS) {
+      Log.w(TAG, JobLogger.format(job, "Slow dispatch. Runner took " + TimeUnit.NANOSECONDS.toMillis(dispatchLatencyNanos) + " ms to pick up the job."));
+    }
   }
 
   private @NonNull Job createJob(@NonNull JobSpec jobSpec, @NonNull List<ConstraintSpec> constraintSpecs) {
@@ -560,4 +675,37 @@ class JobController {
   interface Callback {
     void onEmpty();
   }
+
+  /**
+   * An idle runner waiting to be handed a job. Each waiter has its own monitor, so handing out a job wakes
+   * exactly one thread.
+   */
+  private static final class Waiter {
+    private final JobPredicate predicate;
+
+    private Job  job;
+    private long assignedAt;
+
+    private Waiter(@NonNull JobPredicate predicate) {
+      this.predicate = predicate;
+    }
+
+    synchronized void assign(@NonNull Job job) {
+      this.job        = job;
+      this.assignedAt = System.nanoTime();
+      notify();
+    }
+
+    synchronized @NonNull Job await() {
+      try {
+        while (job == null) {
+          wait();
+        }
+        return job;
+      } catch (InterruptedException e) {
+        Log.e(TAG, "Interrupted.");
+        throw new AssertionError(e);
+      }
+    }
+  }
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.jobmanager
+
+import org.signal.core.util.LatencyHistogram
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Per-factory histograms of how long jobs wait before they're dispatched to a runner.
+ *
+ * - Queue wait: time from when a job first became runnable (created, or its retry backoff elapsed) to when it was handed to a runner.
+ * - Dispatch latency: time from when a job was handed to an idle runner to when that runner actually woke up with it.
+ */
+class JobDispatchStats {
+
+  private val byFactory: MutableMap<String, Entry> = ConcurrentHashMap()
+
+  fun record(factoryKey: String, queueWaitMs: Long, dispatchLatencyNanos: Long) {
+    val entry = byFactory.getOrPut(factoryKey) { Entry() }
+    entry.queueWait.record(queueWaitMs * 1_000_000)
+    entry.dispatchLatency.record(dispatchLatencyNanos)
+  }
+
+  /**
+   * @return A snapshot of each factory's histograms, sorted by total time spent waiting in the queue, descending.
+   */
+  fun snapshot(): List<FactorySnapshot> {
+    return byFactory.entries
+      .map { FactorySnapshot(it.key, it.value.queueWait.snapshot(), it.value.dispatchLatency.snapshot()) }
+      .sortedByDescending { it.queueWait.totalNanos }
+  }
+
+  private class Entry {
+    val queueWait = LatencyHistogram()
+    val dispatchLatency = LatencyHistogram()
+  }
+
+  class FactorySnapshot(
+    val factoryKey: String,
+    val queueWait: LatencyHistogram.Snapshot,
+    val dispatchLatency: LatencyHistogram.Snapshot
+  )
+}
@@ -23,4 +23,34 @@ object JobLogger {
 
     return "[JOB::$id][${job.javaClass.simpleName}]$tag $event (Time Since Submission: $timeSinceSubmission ms, Lifespan: $lifespan, Run Attempt: $runAttempt/$maxAttempts, Queue: ${job.parameters.queue})"
   }
+
+  /**
+   * Formats dispatch stats as one line per factory, with p50/p90/p99/max for both queue wait and dispatch latency.
+   */
+  @JvmStatic
+  fun formatDispatchStats(stats: List<JobDispatchStats.FactorySnapshot>): String {
+    if (stats.isEmpty()) {
+      return "None\n"
+    }
+
+    val builder = StringBuilder()
+
+    for (stat in stats) {
+      val queueWait = stat.queueWait
+      val dispatch = stat.dispatchLatency
+
+      builder.append(stat.factoryKey)
+        .append(" (count: ").append(queueWait.count).append(")")
+        .append(" Queue Wait: p50 ").append(queueWait.percentileMicros(50.0) / 1000)
+        .append(" ms, p90 ").append(queueWait.percentileMicros(90.0) / 1000)
+        .append(" ms, p99 ").append(queueWait.percentileMicros(99.0) / 1000)
+        .append(" ms, max ").append(queueWait.maxMicros / 1000)
+        .append(" ms | Dispatch: p50 ").append(dispatch.percentileMicros(50.0))
+        .append(" us, p99 ").append(dispatch.percentileMicros(99.0))
+        .append(" us, max ").append(dispatch.maxMicros)
+        .append(" us\n")
+    }
+
+    return builder.toString()
+  }
 }
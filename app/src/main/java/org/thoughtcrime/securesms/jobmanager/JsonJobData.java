@@ -9,6 +9,10 @@ import org.signal.core.util.logging.Log;
 import org.thoughtcrime.securesms.util.Base64;
 import org.thoughtcrime.securesms.util.JsonUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -18,12 +22,36 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
+/**
+ * A bag of typed key/value pairs that jobs use to persist their state.
+ * <p>
+ * Despite the name, this is stored in a compact binary format (see {@link #serialize()}), since parsing JSON for every job showed up
+ * when restoring a large job queue. Data written as JSON by older versions is still read, and is rewritten in the binary format the
+ * next time its job is saved.
+ */
 public class JsonJobData {
 
   public static final String TAG = Log.tag(JsonJobData.class);
 
   public static final JsonJobData EMPTY = new JsonJobData.Builder().build();
 
+  /** First byte of the binary format. JSON always starts with '{' (or whitespace), so this can't be mistaken for legacy data. */
+  private static final byte BINARY_MAGIC   = 0;
+  private static final byte BINARY_VERSION = 1;
+
+  private static final byte TYPE_STRING        = 1;
+  private static final byte TYPE_STRING_ARRAY  = 2;
+  private static final byte TYPE_INT           = 3;
+  private static final byte TYPE_INT_ARRAY     = 4;
+  private static final byte TYPE_LONG          = 5;
+  private static final byte TYPE_LONG_ARRAY    = 6;
+  private static final byte TYPE_FLOAT         = 7;
+  private static final byte TYPE_FLOAT_ARRAY   = 8;
+  private static final byte TYPE_DOUBLE        = 9;
+  private static final byte TYPE_DOUBLE_ARRAY  = 10;
+  private static final byte TYPE_BOOLEAN       = 11;
+  private static final byte TYPE_BOOLEAN_ARRAY = 12;
+
   @JsonProperty private final Map<String, String>    strings;
   @JsonProperty private final Map<String, String[]>  stringArrays;
   @JsonProperty private final Map<String, Integer>   integers;
@@ -42,6 +70,15 @@ public class JsonJobData {
       return EMPTY;
     }
 
+    if (data.length > 0 && data[0] == BINARY_MAGIC) {
+      try {
+        return deserializeBinary(data);
+      } catch (IOException e) {
+        Log.e(TAG, "Failed to deserialize binary data.", e);
+        throw new AssertionError(e);
+      }
+    }
+
     try {
       return JsonUtils.fromJson(data, JsonJobData.class);
     } catch (IOException e) {
@@ -290,17 +327,249 @@ public class JsonJobData {
         booleanArrays.isEmpty();
   }
 
+  /**
+   * Serializes to a magic byte and a schema version, followed by one entry per value: a type tag, the key, and the value. Strings and
+   * arrays are length-prefixed, with a length of -1 meaning null.
+   */
   public @Nullable byte[] serialize() {
     if (isEmpty()) {
       return null;
-    } else {
-      try {
-        return JsonUtils.toJson(this).getBytes(StandardCharsets.UTF_8);
-      } catch (IOException e) {
-        Log.e(TAG, "Failed to serialize to JSON.", e);
-        throw new AssertionError(e);
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(BINARY_MAGIC);
+      out.writeByte(BINARY_VERSION);
+
+      for (Map.Entry<String, String> entry : strings.entrySet()) {
+        writeHeader(out, TYPE_STRING, entry.getKey());
+        writeString(out, entry.getValue());
+      }
+
+      for (Map.Entry<String, String[]> entry : stringArrays.entrySet()) {
+        writeHeader(out, TYPE_STRING_ARRAY, entry.getKey());
+        String[] array = entry.getValue();
+        out.writeInt(array != null ? array.length : -1);
+        if (array != null) {
+          for (String value : array) {
+            writeString(out, value);
+          }
+        }
+      }
+
+      for (Map.Entry<String, Integer> entry : integers.entrySet()) {
+        writeHeader(out, TYPE_INT, entry.getKey());
+        out.writeInt(entry.getValue());
+      }
+
+      for (Map.Entry<String, int[]> entry : integerArrays.entrySet()) {
+        writeHeader(out, TYPE_INT_ARRAY, entry.getKey());
+        int[] array = entry.getValue();
+        out.writeInt(array != null ? array.length : -1);
+        if (array != null) {
+          for (int value : array) {
+            out.writeInt(value);
+          }
+        }
+      }
+
+      for (Map.Entry<String, Long> entry : longs.entrySet()) {
+        writeHeader(out, TYPE_LONG, entry.getKey());
+        out.writeLong(entry.getValue());
+      }
+
+      for (Map.Entry<String, long[]> entry : longArrays.entrySet()) {
+        writeHeader(out, TYPE_LONG_ARRAY, entry.getKey());
+        long[] array = entry.getValue();
+        out.writeInt(array != null ? array.length : -1);
+        if (array != null) {
+          for (long value : array) {
+            out.writeLong(value);
+          }
+        }
+      }
+
+      for (Map.Entry<String, Float> entry : floats.entrySet()) {
+        writeHeader(out, TYPE_FLOAT, entry.getKey());
+        out.writeFloat(entry.getValue());
+      }
+
+      for (Map.Entry<String, float[]> entry : floatArrays.entrySet()) {
+        writeHeader(out, TYPE_FLOAT_ARRAY, entry.getKey());
+        float[] array = entry.getValue();
+        out.writeInt(array != null ? array.length : -1);
+        if (array != null) {
+          for (float value : array) {
+            out.writeFloat(value);
+          }
+        }
+      }
+
+      for (Map.Entry<String, Double> entry : doubles.entrySet()) {
+        writeHeader(out, TYPE_DOUBLE, entry.getKey());
+        out.writeDouble(entry.getValue());
       }
+
+      for (Map.Entry<String, double[]> entry : doubleArrays.entrySet()) {
+        writeHeader(out, TYPE_DOUBLE_ARRAY, entry.getKey());
+        double[] array = entry.getValue();
+        out.writeInt(array != null ? array.length : -1);
+        if (array != null) {
+          for (double value : array) {
+            out.writeDouble(value);
+          }
+        }
+      }
+
+      for (Map.Entry<String, Boolean> entry : booleans.entrySet()) {
+        writeHeader(out, TYPE_BOOLEAN, entry.getKey());
+        out.writeBoolean(entry.getValue());
+      }
+
+      for (Map.Entry<String, boolean[]> entry : booleanArrays.entrySet()) {
+        writeHeader(out, TYPE_BOOLEAN_ARRAY, entry.getKey());
+        boolean[] array = entry.getValue();
+        out.writeInt(array != null ? array.length : -1);
+        if (array != null) {
+          for (boolean value : array) {
+            out.writeBoolean(value);
+          }
+        }
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to serialize.", e);
+      throw new AssertionError(e);
     }
+
+    return bytes.toByteArray();
+  }
+
+  private static @NonNull JsonJobData deserializeBinary(@NonNull byte[] data) throws IOException {
+    DataInputStream in      = new DataInputStream(new ByteArrayInputStream(data));
+    Builder         builder = new Builder();
+
+    in.readByte();
+
+    int version = in.readByte();
+    if (version != BINARY_VERSION) {
+      throw new IOException("Unknown version: " + version);
+    }
+
+    while (in.available() > 0) {
+      byte   type = in.readByte();
+      String key  = readString(in);
+
+      if (key == null) {
+        throw new IOException("Missing key.");
+      }
+
+      switch (type) {
+        case TYPE_STRING:
+          builder.strings.put(key, readString(in));
+          break;
+        case TYPE_STRING_ARRAY: {
+          int      length = in.readInt();
+          String[] array  = length >= 0 ? new String[length] : null;
+          for (int i = 0; i < length; i++) {
+            array[i] = readString(in);
+          }
+          builder.stringArrays.put(key, array);
+          break;
+        }
+        case TYPE_INT:
+          builder.integers.put(key, in.readInt());
+          break;
+        case TYPE_INT_ARRAY: {
+          int   length = in.readInt();
+          int[] array  = length >= 0 ? new int[length] : null;
+          for (int i = 0; i < length; i++) {
+            array[i] = in.readInt();
+          }
+          builder.integerArrays.put(key, array);
+          break;
+        }
+        case TYPE_LONG:
+          builder.longs.put(key, in.readLong());
+          break;
+        case TYPE_LONG_ARRAY: {
+          int    length = in.readInt();
+          long[] array  = length >= 0 ? new long[length] : null;
+          for (int i = 0; i < length; i++) {
+            array[i] = in.readLong();
+          }
+          builder.longArrays.put(key, array);
+          break;
+        }
+        case TYPE_FLOAT:
+          builder.floats.put(key, in.readFloat());
+          break;
+        case TYPE_FLOAT_ARRAY: {
+          int     length = in.readInt();
+          float[] array  = length >= 0 ? new float[length] : null;
+          for (int i = 0; i < length; i++) {
+            array[i] = in.readFloat();
+          }
+          builder.floatArrays.put(key, array);
+          break;
+        }
+        case TYPE_DOUBLE:
+          builder.doubles.put(key, in.readDouble());
+          break;
+        case TYPE_DOUBLE_ARRAY: {
+          int      length = in.readInt();
+          double[] array  = length >= 0 ? new double[length] : null;
+          for (int i = 0; i < length; i++) {
+            array[i] = in.readDouble();
+          }
+          builder.doubleArrays.put(key, array);
+          break;
+        }
+        case TYPE_BOOLEAN:
+          builder.booleans.put(key, in.readBoolean());
+          break;
+        case TYPE_BOOLEAN_ARRAY: {
+          int       length = in.readInt();
+          boolean[] array  = length >= 0 ? new boolean[length] : null;
+          for (int i = 0; i < length; i++) {
+            array[i] = in.readBoolean();
+          }
+          builder.booleanArrays.put(key, array);
+          break;
+        }
+        default:
+          throw new IOException("Unknown type: " + type);
+      }
+    }
+
+    return builder.build();
+  }
+
+  private static void writeHeader(@NonNull DataOutputStream out, byte type, @NonNull String key) throws IOException {
+    out.writeByte(type);
+    writeString(out, key);
+  }
+
+  private static void writeString(@NonNull DataOutputStream out, @Nullable String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static @Nullable String readString(@NonNull DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+
+    return new String(bytes, StandardCharsets.UTF_8);
   }
 
 
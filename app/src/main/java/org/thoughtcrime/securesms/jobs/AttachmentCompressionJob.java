@@ -3,6 +3,7 @@ package org.thoughtcrime.securesms.jobs;
 import android.content.Context;
 import android.media.MediaDataSource;
 import android.net.Uri;
+import android.util.Pair;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -30,10 +31,12 @@ import org.thoughtcrime.securesms.mms.DecryptableStreamUriLoader;
 import org.thoughtcrime.securesms.mms.MediaConstraints;
 import org.thoughtcrime.securesms.mms.MediaStream;
 import org.thoughtcrime.securesms.mms.MmsException;
+import org.thoughtcrime.securesms.mms.PartAuthority;
 import org.thoughtcrime.securesms.mms.SentMediaQuality;
 import org.thoughtcrime.securesms.service.NotificationController;
 import org.thoughtcrime.securesms.transport.UndeliverableMessageException;
 import org.thoughtcrime.securesms.util.BitmapDecodingException;
+import org.thoughtcrime.securesms.util.BitmapUtil;
 import org.thoughtcrime.securesms.util.FeatureFlags;
 import org.thoughtcrime.securesms.util.ImageCompressionUtil;
 import org.thoughtcrime.securesms.util.MediaUtil;
@@ -49,6 +52,7 @@ import org.thoughtcrime.securesms.video.videoconverter.EncodingException;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
@@ -65,6 +69,12 @@ public final class AttachmentCompressionJob extends BaseJob {
   private static final String KEY_MMS                 = "mms";
   private static final String KEY_MMS_SUBSCRIPTION_ID = "mms_subscription_id";
 
+  /**
+   * Everything but video is spread over a few queues, so the images in an album are compressed in parallel, and each one can move on
+   * to its upload as soon as it's done. {@link ImageCompressionUtil} keeps the decodes within a memory budget.
+   */
+  private static final int GENERIC_TRANSCODE_QUEUES = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() / 2, 3));
+
   private final AttachmentId attachmentId;
   private final boolean      mms;
   private final int          mmsSubscriptionId;
@@ -73,14 +83,22 @@ public final class AttachmentCompressionJob extends BaseJob {
                                                         boolean mms,
                                                         int mmsSubscriptionId)
   {
+    boolean isVideoTranscode = MediaUtil.isVideo(databaseAttachment) && MediaConstraints.isVideoTranscodeAvailable();
+
     return new AttachmentCompressionJob(databaseAttachment.getAttachmentId(),
-                                        MediaUtil.isVideo(databaseAttachment) && MediaConstraints.isVideoTranscodeAvailable(),
+                                        isVideoTranscode ? "VIDEO_TRANSCODE" : getGenericTranscodeQueue(databaseAttachment.getAttachmentId()),
                                         mms,
                                         mmsSubscriptionId);
   }
 
+  private static @NonNull String getGenericTranscodeQueue(@NonNull AttachmentId attachmentId) {
+    int index = (int) (attachmentId.getRowId() % GENERIC_TRANSCODE_QUEUES);
+
+    return index == 0 ? "GENERIC_TRANSCODE" : "GENERIC_TRANSCODE_" + index;
+  }
+
   private AttachmentCompressionJob(@NonNull AttachmentId attachmentId,
-                                   boolean isVideoTranscode,
+                                   @NonNull String queue,
                                    boolean mms,
                                    int mmsSubscriptionId)
   {
@@ -88,7 +106,7 @@ public final class AttachmentCompressionJob extends BaseJob {
                        .addConstraint(NetworkConstraint.KEY)
                        .setLifespan(TimeUnit.DAYS.toMillis(1))
                        .setMaxAttempts(Parameters.UNLIMITED)
-                       .setQueue(isVideoTranscode ? "VIDEO_TRANSCODE" : "GENERIC_TRANSCODE")
+                       .setQueue(queue)
                        .build(),
          attachmentId,
          mms,
@@ -312,20 +330,31 @@ public final class AttachmentCompressionJob extends BaseJob {
       throw new UndeliverableMessageException("No attachment URI!");
     }
 
-    ImageCompressionUtil.Result result = null;
+    int sourceWidth  = attachment.getWidth();
+    int sourceHeight = attachment.getHeight();
 
-    try {
-      for (int size : mediaConstraints.getImageDimensionTargets(context)) {
-        result = ImageCompressionUtil.compressWithinConstraints(context,
-                                                                attachment.getContentType(),
-                                                                new DecryptableStreamUriLoader.DecryptableUri(uri),
-                                                                size,
-                                                                mediaConstraints.getImageMaxSize(context),
-                                                                mediaConstraints.getImageCompressionQualitySetting(context));
-        if (result != null) {
-          break;
-        }
+    if (sourceWidth <= 0 || sourceHeight <= 0) {
+      try (InputStream inputStream = PartAuthority.getAttachmentStream(context, uri)) {
+        Pair<Integer, Integer> dimensions = BitmapUtil.getDimensions(inputStream);
+
+        sourceWidth  = dimensions.first;
+        sourceHeight = dimensions.second;
+      } catch (IOException | BitmapDecodingException e) {
+        Log.w(TAG, "Unable to read image dimensions, the decode will reserve memory for the largest target.", e);
       }
+    }
+
+    ImageCompressionUtil.Result result;
+
+    try {
+      result = ImageCompressionUtil.compressWithinConstraints(context,
+                                                              attachment.getContentType(),
+                                                              new DecryptableStreamUriLoader.DecryptableUri(uri),
+                                                              sourceWidth,
+                                                              sourceHeight,
+                                                              mediaConstraints.getImageDimensionTargets(context),
+                                                              mediaConstraints.getImageMaxSize(context),
+                                                              mediaConstraints.getImageCompressionQualitySetting(context));
     } catch (BitmapDecodingException e) {
       throw new UndeliverableMessageException(e);
     }
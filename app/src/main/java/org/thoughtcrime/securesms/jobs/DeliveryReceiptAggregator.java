@@ -0,0 +1,262 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.jobs;
+
+import androidx.annotation.NonNull;
+
+import org.signal.core.util.logging.Log;
+import org.thoughtcrime.securesms.database.model.MessageId;
+import org.thoughtcrime.securesms.jobmanager.Job;
+import org.thoughtcrime.securesms.recipients.RecipientId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Collects delivery receipts and turns them into one {@link SendDeliveryReceiptJob} per recipient. A recipient's receipts are handed off
+ * as soon as there are enough of them to fill a receipt message, and everything else is handed off {@link #FLUSH_DELAY_MS} after the
+ * first receipt that's waiting.
+ *
+ * Every receipt is written to the {@link Store} before {@link #add} returns, so it survives the process dying while it waits. The job
+ * carrying it remembers its row, and the row is only deleted by {@link #onPersisted} once that job has been persisted. Rows left behind
+ * by a previous process are picked up by {@link #restore()}.
+ */
+final class DeliveryReceiptAggregator {
+
+  private static final String TAG = Log.tag(DeliveryReceiptAggregator.class);
+
+  static final long FLUSH_DELAY_MS = 500;
+
+  private final int                     maxBatchSize;
+  private final Store                   store;
+  private final Consumer<List<Job>>     jobSink;
+  private final Consumer<Runnable>      flushScheduler;
+  private final Map<RecipientId, Batch> pending = new LinkedHashMap<>();
+
+  /** Ids of every stored row this process knows about, whether it's still pending or being handed off. */
+  private final Set<Long> knownRowIds = new HashSet<>();
+
+  private boolean flushScheduled;
+
+  /**
+   * @param store          Where receipts are kept until they're in a job.
+   * @param jobSink        Receives the jobs for every batch that's ready to be sent. Once each one is persisted, its
+   *                       {@link SendDeliveryReceiptJob#getPendingReceiptRowIds()} must be passed to {@link #onPersisted}.
+   * @param flushScheduler Runs the given flush on a background thread after {@link #FLUSH_DELAY_MS}.
+   */
+  DeliveryReceiptAggregator(int maxBatchSize, @NonNull Store store, @NonNull Consumer<List<Job>> jobSink, @NonNull Consumer<Runnable> flushScheduler) {
+    this.maxBatchSize   = maxBatchSize;
+    this.store          = store;
+    this.jobSink        = jobSink;
+    this.flushScheduler = flushScheduler;
+  }
+
+  void add(@NonNull RecipientId recipientId, long messageSentTimestamp, @NonNull MessageId messageId) {
+    Batch   fullBatch;
+    boolean scheduleFlush;
+
+    synchronized (this) {
+      long rowId = store.insert(recipientId, messageSentTimestamp, messageId);
+      knownRowIds.add(rowId);
+
+      fullBatch     = addToBatch(rowId, recipientId, messageSentTimestamp, messageId);
+      scheduleFlush = fullBatch == null && shouldScheduleFlush();
+    }
+
+    if (fullBatch != null) {
+      handOff(Collections.singletonList(fullBatch));
+    }
+
+    if (scheduleFlush) {
+      flushScheduler.accept(this::flush);
+    }
+  }
+
+  /**
+   * Picks up receipts that were stored by a previous process but never made it into a job, and sends them with the next flush.
+   */
+  void restore() {
+    List<Batch> fullBatches = new ArrayList<>();
+    boolean     scheduleFlush;
+    int         restored    = 0;
+
+    synchronized (this) {
+      for (Store.Receipt receipt : store.getAll()) {
+        if (!knownRowIds.add(receipt.getRowId())) {
+          continue;
+        }
+
+        Batch fullBatch = addToBatch(receipt.getRowId(), receipt.getRecipientId(), receipt.getMessageSentTimestamp(), receipt.getMessageId());
+        if (fullBatch != null) {
+          fullBatches.add(fullBatch);
+        }
+        restored++;
+      }
+
+      scheduleFlush = !pending.isEmpty() && shouldScheduleFlush();
+    }
+
+    if (restored > 0) {
+      Log.i(TAG, "Restored " + restored + " delivery receipt(s) from a previous process.");
+    }
+
+    if (!fullBatches.isEmpty()) {
+      handOff(fullBatches);
+    }
+
+    if (scheduleFlush) {
+      flushScheduler.accept(this::flush);
+    }
+  }
+
+  void flush() {
+    List<Batch> batches;
+
+    synchronized (this) {
+      flushScheduled = false;
+
+      if (pending.isEmpty()) {
+        return;
+      }
+
+      batches = new ArrayList<>(pending.values());
+      pending.clear();
+    }
+
+    Log.d(TAG, "Flushing delivery receipts for " + batches.size() + " recipient(s).");
+    handOff(batches);
+  }
+
+  /**
+   * Must be called while holding the lock.
+   *
+   * @return The recipient's batch, if adding this receipt filled it. It's no longer pending and needs to be handed off.
+   */
+  private Batch addToBatch(long rowId, @NonNull RecipientId recipientId, long messageSentTimestamp, @NonNull MessageId messageId) {
+    Batch batch = pending.get(recipientId);
+
+    if (batch == null) {
+      batch = new Batch(recipientId);
+      pending.put(recipientId, batch);
+    }
+
+    batch.add(rowId, messageSentTimestamp, messageId);
+
+    if (batch.size() >= maxBatchSize) {
+      pending.remove(recipientId);
+      return batch;
+    }
+
+    return null;
+  }
+
+  /**
+   * Must be called while holding the lock.
+   */
+  private boolean shouldScheduleFlush() {
+    if (flushScheduled) {
+      return false;
+    }
+
+    flushScheduled = true;
+    return true;
+  }
+
+  /**
+   * Called once the job carrying the given receipts has been persisted, so they no longer need to be kept in the {@link Store}.
+   */
+  void onPersisted(@NonNull Collection<Long> rowIds) {
+    store.delete(rowIds);
+
+    synchronized (this) {
+      knownRowIds.removeAll(rowIds);
+    }
+  }
+
+  private void handOff(@NonNull List<Batch> batches) {
+    List<Job> jobs = new ArrayList<>(batches.size());
+
+    for (Batch batch : batches) {
+      jobs.add(batch.toJob());
+    }
+
+    jobSink.accept(jobs);
+  }
+
+  /**
+   * Persistent storage for receipts that are waiting to be batched.
+   */
+  interface Store {
+    /** @return An id for the stored receipt. */
+    long insert(@NonNull RecipientId recipientId, long messageSentTimestamp, @NonNull MessageId messageId);
+
+    @NonNull List<Receipt> getAll();
+
+    void delete(@NonNull Collection<Long> rowIds);
+
+    final class Receipt {
+      private final long        rowId;
+      private final RecipientId recipientId;
+      private final long        messageSentTimestamp;
+      private final MessageId   messageId;
+
+      Receipt(long rowId, @NonNull RecipientId recipientId, long messageSentTimestamp, @NonNull MessageId messageId) {
+        this.rowId                = rowId;
+        this.recipientId          = recipientId;
+        this.messageSentTimestamp = messageSentTimestamp;
+        this.messageId            = messageId;
+      }
+
+      long getRowId() {
+        return rowId;
+      }
+
+      @NonNull RecipientId getRecipientId() {
+        return recipientId;
+      }
+
+      long getMessageSentTimestamp() {
+        return messageSentTimestamp;
+      }
+
+      @NonNull MessageId getMessageId() {
+        return messageId;
+      }
+    }
+  }
+
+  private static final class Batch {
+    private final RecipientId     recipientId;
+    private final List<Long>      rowIds                = new ArrayList<>();
+    private final List<Long>      messageSentTimestamps = new ArrayList<>();
+    private final List<MessageId> messageIds            = new ArrayList<>();
+
+    Batch(@NonNull RecipientId recipientId) {
+      this.recipientId = recipientId;
+    }
+
+    void add(long rowId, long messageSentTimestamp, @NonNull MessageId messageId) {
+      rowIds.add(rowId);
+      messageSentTimestamps.add(messageSentTimestamp);
+      messageIds.add(messageId);
+    }
+
+    int size() {
+      return messageSentTimestamps.size();
+    }
+
+    @NonNull Job toJob() {
+      return new SendDeliveryReceiptJob(recipientId, messageSentTimestamps, messageIds, rowIds);
+    }
+  }
+}
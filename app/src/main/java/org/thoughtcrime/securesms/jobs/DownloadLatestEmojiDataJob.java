@@ -15,9 +15,9 @@ import org.thoughtcrime.securesms.dependencies.ApplicationDependencies;
 import org.thoughtcrime.securesms.emoji.EmojiData;
 import org.thoughtcrime.securesms.emoji.EmojiDownloader;
 import org.thoughtcrime.securesms.emoji.EmojiFiles;
+import org.thoughtcrime.securesms.emoji.EmojiGlyphCache;
 import org.thoughtcrime.securesms.emoji.EmojiImageRequest;
 import org.thoughtcrime.securesms.emoji.EmojiJsonRequest;
-import org.thoughtcrime.securesms.emoji.EmojiPageCache;
 import org.thoughtcrime.securesms.emoji.EmojiRemote;
 import org.thoughtcrime.securesms.emoji.EmojiSource;
 import org.thoughtcrime.securesms.emoji.JumboEmoji;
@@ -350,7 +350,7 @@ public class DownloadLatestEmojiDataJob extends BaseJob {
           .filterNot(file -> file.getName().equals(newVersionDirectoryName))
           .forEach(FileUtils::deleteDirectory);
 
-    EmojiPageCache.INSTANCE.clear();
+    EmojiGlyphCache.INSTANCE.clear();
 
     if (version != null) {
       SignalStore.emojiValues().clearJumboEmojiSheets(version.getVersion());
@@ -35,16 +35,20 @@ class PushProcessEarlyMessagesJob private constructor(parameters: Parameters) :
   }
 
   override fun onRun() {
-    val earlyIds: List<ServiceMessageId> = ApplicationDependencies.getEarlyMessageCache().allReferencedIds
+    val cache = ApplicationDependencies.getEarlyMessageCache()
+
+    val earlyIds: List<ServiceMessageId> = cache.allReferencedIds
       .filter { SignalDatabase.messages.getMessageFor(it.sentTimestamp, it.sender) != null }
       .sortedBy { it.sentTimestamp }
 
     if (earlyIds.isNotEmpty()) {
       Log.i(TAG, "There are ${earlyIds.size} items in the early message cache with matches.")
 
+      val earlyEntriesById: Map<ServiceMessageId, List<EarlyMessageCacheEntry>> = cache.retrieveAllV2(earlyIds)
+
       for (id: ServiceMessageId in earlyIds) {
-        val contents: List<SignalServiceContent>? = ApplicationDependencies.getEarlyMessageCache().retrieve(id.sender, id.sentTimestamp).orNull()
-        val earlyEntries: List<EarlyMessageCacheEntry>? = ApplicationDependencies.getEarlyMessageCache().retrieveV2(id.sender, id.sentTimestamp).orNull()
+        val contents: List<SignalServiceContent>? = cache.retrieve(id.sender, id.sentTimestamp).orNull()
+        val earlyEntries: List<EarlyMessageCacheEntry>? = earlyEntriesById[id]
 
         if (contents != null) {
           for (content: SignalServiceContent in contents) {
@@ -60,6 +64,8 @@ class PushProcessEarlyMessagesJob private constructor(parameters: Parameters) :
           Log.w(TAG, "[${id.sentTimestamp}] Saw $id in the cache, but when we went to retrieve it, it was already gone.")
         }
       }
+
+      Log.i(TAG, "Early message cache: ${cache.stats}")
     } else {
       Log.i(TAG, "There are no items in the early message cache with matches.")
     }
@@ -3,9 +3,14 @@ package org.thoughtcrime.securesms.jobs;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 
+import org.signal.core.util.ThreadUtil;
+import org.signal.core.util.concurrent.SignalExecutors;
 import org.signal.core.util.logging.Log;
 import org.thoughtcrime.securesms.crypto.UnidentifiedAccessUtil;
+import org.thoughtcrime.securesms.database.JobDatabase;
 import org.thoughtcrime.securesms.database.SignalDatabase;
 import org.thoughtcrime.securesms.database.model.MessageId;
 import org.thoughtcrime.securesms.dependencies.ApplicationDependencies;
@@ -17,6 +22,7 @@ import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.recipients.RecipientId;
 import org.thoughtcrime.securesms.recipients.RecipientUtil;
 import org.thoughtcrime.securesms.transport.UndeliverableMessageException;
+import org.thoughtcrime.securesms.util.Util;
 import org.whispersystems.signalservice.api.SignalServiceMessageSender;
 import org.whispersystems.signalservice.api.crypto.ContentHint;
 import org.whispersystems.signalservice.api.crypto.UntrustedIdentityException;
@@ -27,28 +33,59 @@ import org.whispersystems.signalservice.api.push.exceptions.PushNetworkException
 import org.whispersystems.signalservice.api.push.exceptions.ServerRejectedException;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
+/**
+ * Sends delivery receipts for one or more messages from a single recipient.
+ *
+ * Receipts should be enqueued with {@link #enqueue(RecipientId, long, MessageId)}, which holds on to them for a moment so that receipts
+ * for messages arriving together (like when draining a backlog) are sent as one receipt message, the same way read receipts are.
+ */
 public class SendDeliveryReceiptJob extends BaseJob {
 
   public static final String KEY = "SendDeliveryReceiptJob";
 
-  private static final String KEY_RECIPIENT              = "recipient";
+  private static final String KEY_RECIPIENT               = "recipient";
+  private static final String KEY_MESSAGE_SENT_TIMESTAMPS = "message_ids";
+  private static final String KEY_MESSAGE_IDS             = "message_db_ids";
+  private static final String KEY_TIMESTAMP               = "timestamp";
+
+  /** Legacy keys, from when each job only carried a single receipt. */
   private static final String KEY_MESSAGE_SENT_TIMESTAMP = "message_id";
-  private static final String KEY_TIMESTAMP              = "timestamp";
   private static final String KEY_MESSAGE_ID             = "message_db_id";
 
-  private static final String TAG = Log.tag(SendReadReceiptJob.class);
+  private static final String TAG = Log.tag(SendDeliveryReceiptJob.class);
+
+  private static final DeliveryReceiptAggregator AGGREGATOR = new DeliveryReceiptAggregator(
+      SendReadReceiptJob.MAX_TIMESTAMPS,
+      new JobDatabaseReceiptStore(),
+      jobs -> ApplicationDependencies.getJobManager().addAll(jobs),
+      flush -> ThreadUtil.runOnMainDelayed(() -> SignalExecutors.BOUNDED.execute(flush), DeliveryReceiptAggregator.FLUSH_DELAY_MS)
+  );
+
+  private static final AtomicLong RECEIPTS_SENT = new AtomicLong();
+  private static final AtomicLong REQUESTS_SENT = new AtomicLong();
 
-  private final RecipientId recipientId;
-  private final long        messageSentTimestamp;
-  private final long        timestamp;
+  private final RecipientId     recipientId;
+  private final List<Long>      messageSentTimestamps;
+  private final List<MessageId> messageIds;
+  private final long            timestamp;
 
-  @Nullable
-  private final MessageId messageId;
+  /** Rows in the pending receipt store that this job replaces. Only set on a newly created job, never serialized. */
+  private final List<Long> pendingReceiptRowIds;
 
-  public SendDeliveryReceiptJob(@NonNull RecipientId recipientId, long messageSentTimestamp, @NonNull MessageId messageId) {
+  SendDeliveryReceiptJob(@NonNull RecipientId recipientId,
+                         @NonNull List<Long> messageSentTimestamps,
+                         @NonNull List<MessageId> messageIds,
+                         @NonNull List<Long> pendingReceiptRowIds)
+  {
     this(new Job.Parameters.Builder()
                            .addConstraint(NetworkConstraint.KEY)
                            .setLifespan(TimeUnit.DAYS.toMillis(1))
@@ -56,36 +93,80 @@ public class SendDeliveryReceiptJob extends BaseJob {
                            .setQueue(recipientId.toQueueKey())
                            .build(),
          recipientId,
-         messageSentTimestamp,
-         messageId,
-         System.currentTimeMillis());
+         SendReadReceiptJob.ensureSize(messageSentTimestamps, SendReadReceiptJob.MAX_TIMESTAMPS),
+         SendReadReceiptJob.ensureSize(messageIds, SendReadReceiptJob.MAX_TIMESTAMPS),
+         System.currentTimeMillis(),
+         pendingReceiptRowIds);
   }
 
   private SendDeliveryReceiptJob(@NonNull Job.Parameters parameters,
                                  @NonNull RecipientId recipientId,
-                                 long messageSentTimestamp,
-                                 @Nullable MessageId messageId,
-                                 long timestamp)
+                                 @NonNull List<Long> messageSentTimestamps,
+                                 @NonNull List<MessageId> messageIds,
+                                 long timestamp,
+                                 @NonNull List<Long> pendingReceiptRowIds)
   {
     super(parameters);
 
-    this.recipientId          = recipientId;
-    this.messageSentTimestamp = messageSentTimestamp;
-    this.messageId            = messageId;
-    this.timestamp            = timestamp;
+    this.recipientId           = recipientId;
+    this.messageSentTimestamps = messageSentTimestamps;
+    this.messageIds            = messageIds;
+    this.timestamp             = timestamp;
+    this.pendingReceiptRowIds  = pendingReceiptRowIds;
+  }
+
+  /**
+   * Queues up a delivery receipt. It'll be sent along with any others for the same recipient that come in shortly after it.
+   *
+   * The receipt is persisted by the time this returns, so it's safe to acknowledge the message it's for.
+   */
+  @WorkerThread
+  public static void enqueue(@NonNull RecipientId recipientId, long messageSentTimestamp, @NonNull MessageId messageId) {
+    AGGREGATOR.add(recipientId, messageSentTimestamp, messageId);
+  }
+
+  /**
+   * Sends any receipts that were queued up by a previous process but never made it into a job.
+   */
+  @WorkerThread
+  public static void restorePendingReceipts() {
+    AGGREGATOR.restore();
+  }
+
+  /**
+   * @return A summary of how many receipts have been sent per request since the app started, for the debug log.
+   */
+  public static @NonNull String getDebugInfo() {
+    long  receipts   = RECEIPTS_SENT.get();
+    long  requests   = REQUESTS_SENT.get();
+    float perRequest = requests > 0 ? receipts / (float) requests : 0f;
+
+    return String.format(Locale.US, "Delivery receipts: %d sent in %d requests (%.1f per request)", receipts, requests, perRequest);
+  }
+
+  @VisibleForTesting
+  @NonNull List<Long> getMessageSentTimestamps() {
+    return messageSentTimestamps;
+  }
+
+  @NonNull List<Long> getPendingReceiptRowIds() {
+    return pendingReceiptRowIds;
   }
 
   @Override
   public @Nullable byte[] serialize() {
-    JsonJobData.Builder builder = new JsonJobData.Builder().putString(KEY_RECIPIENT, recipientId.serialize())
-                                                           .putLong(KEY_MESSAGE_SENT_TIMESTAMP, messageSentTimestamp)
-                                                           .putLong(KEY_TIMESTAMP, timestamp);
-
-    if (messageId != null) {
-      builder.putString(KEY_MESSAGE_ID, messageId.serialize());
+    long[] sentTimestamps = new long[messageSentTimestamps.size()];
+    for (int i = 0; i < sentTimestamps.length; i++) {
+      sentTimestamps[i] = messageSentTimestamps.get(i);
     }
 
-    return builder.serialize();
+    List<String> serializedMessageIds = messageIds.stream().map(MessageId::serialize).collect(Collectors.toList());
+
+    return new JsonJobData.Builder().putString(KEY_RECIPIENT, recipientId.serialize())
+                                    .putLongArray(KEY_MESSAGE_SENT_TIMESTAMPS, sentTimestamps)
+                                    .putStringListAsArray(KEY_MESSAGE_IDS, serializedMessageIds)
+                                    .putLong(KEY_TIMESTAMP, timestamp)
+                                    .serialize();
   }
 
   @Override
@@ -93,12 +174,23 @@ public class SendDeliveryReceiptJob extends BaseJob {
     return KEY;
   }
 
+  @Override
+  public void onAdded() {
+    if (!pendingReceiptRowIds.isEmpty()) {
+      AGGREGATOR.onPersisted(pendingReceiptRowIds);
+    }
+  }
+
   @Override
   public void onRun() throws IOException, UntrustedIdentityException, UndeliverableMessageException {
     if (!Recipient.self().isRegistered()) {
       throw new NotPushRegisteredException();
     }
 
+    if (messageSentTimestamps.isEmpty()) {
+      return;
+    }
+
     SignalServiceMessageSender  messageSender  = ApplicationDependencies.getSignalServiceMessageSender();
     Recipient                   recipient      = Recipient.resolved(recipientId);
 
@@ -119,7 +211,7 @@ public class SendDeliveryReceiptJob extends BaseJob {
 
     SignalServiceAddress        remoteAddress  = RecipientUtil.toSignalServiceAddress(context, recipient);
     SignalServiceReceiptMessage receiptMessage = new SignalServiceReceiptMessage(SignalServiceReceiptMessage.Type.DELIVERY,
-                                                                                 Collections.singletonList(messageSentTimestamp),
+                                                                                 messageSentTimestamps,
                                                                                  timestamp);
 
     SendMessageResult result = messageSender.sendReceipt(remoteAddress,
@@ -127,8 +219,15 @@ public class SendDeliveryReceiptJob extends BaseJob {
                                                          receiptMessage,
                                                          recipient.needsPniSignature());
 
-    if (messageId != null) {
-      SignalDatabase.messageLog().insertIfPossible(recipientId, timestamp, result, ContentHint.IMPLICIT, messageId, false);
+    RECEIPTS_SENT.addAndGet(messageSentTimestamps.size());
+    REQUESTS_SENT.incrementAndGet();
+
+    if (messageSentTimestamps.size() > 1) {
+      Log.i(TAG, "Sent " + messageSentTimestamps.size() + " delivery receipts to " + recipientId + " in one request.");
+    }
+
+    if (Util.hasItems(messageIds)) {
+      SignalDatabase.messageLog().insertIfPossible(recipientId, timestamp, result, ContentHint.IMPLICIT, messageIds, false);
     }
   }
 
@@ -141,25 +240,60 @@ public class SendDeliveryReceiptJob extends BaseJob {
 
   @Override
   public void onFailure() {
-    Log.w(TAG, "Failed to send delivery receipt to: " + recipientId);
+    Log.w(TAG, "Failed to send delivery receipts to: " + recipientId);
+  }
+
+  private static final class JobDatabaseReceiptStore implements DeliveryReceiptAggregator.Store {
+    @Override
+    public long insert(@NonNull RecipientId recipientId, long messageSentTimestamp, @NonNull MessageId messageId) {
+      return getDatabase().insertPendingDeliveryReceipt(recipientId, messageSentTimestamp, messageId);
+    }
+
+    @Override
+    public @NonNull List<Receipt> getAll() {
+      return getDatabase().getPendingDeliveryReceipts()
+                          .stream()
+                          .map(r -> new Receipt(r.getId(), r.getRecipientId(), r.getMessageSentTimestamp(), r.getMessageId()))
+                          .collect(Collectors.toList());
+    }
+
+    @Override
+    public void delete(@NonNull Collection<Long> rowIds) {
+      getDatabase().deletePendingDeliveryReceipts(rowIds);
+    }
+
+    private static @NonNull JobDatabase getDatabase() {
+      return JobDatabase.getInstance(ApplicationDependencies.getApplication());
+    }
   }
 
   public static final class Factory implements Job.Factory<SendDeliveryReceiptJob> {
     @Override
     public @NonNull SendDeliveryReceiptJob create(@NonNull Parameters parameters, @Nullable byte[] serializedData) {
-      JsonJobData data = JsonJobData.deserialize(serializedData);
+      JsonJobData     data           = JsonJobData.deserialize(serializedData);
+      List<Long>      sentTimestamps = new ArrayList<>();
+      List<MessageId> messageIds     = new ArrayList<>();
 
-      MessageId messageId = null;
+      if (data.hasLongArray(KEY_MESSAGE_SENT_TIMESTAMPS)) {
+        for (long sentTimestamp : data.getLongArray(KEY_MESSAGE_SENT_TIMESTAMPS)) {
+          sentTimestamps.add(sentTimestamp);
+        }
+      } else {
+        sentTimestamps.add(data.getLong(KEY_MESSAGE_SENT_TIMESTAMP));
+      }
 
-      if (data.hasString(KEY_MESSAGE_ID)) {
-        messageId = MessageId.deserialize(data.getString(KEY_MESSAGE_ID));
+      if (data.hasStringArray(KEY_MESSAGE_IDS)) {
+        messageIds = data.getStringArrayAsList(KEY_MESSAGE_IDS).stream().map(MessageId::deserialize).collect(Collectors.toList());
+      } else if (data.hasString(KEY_MESSAGE_ID)) {
+        messageIds.add(MessageId.deserialize(data.getString(KEY_MESSAGE_ID)));
       }
 
       return new SendDeliveryReceiptJob(parameters,
                                         RecipientId.from(data.getString(KEY_RECIPIENT)),
-                                        data.getLong(KEY_MESSAGE_SENT_TIMESTAMP),
-                                        messageId,
-                                        data.getLong(KEY_TIMESTAMP));
+                                        sentTimestamps,
+                                        messageIds,
+                                        data.getLong(KEY_TIMESTAMP),
+                                        Collections.emptyList());
     }
   }
 }
@@ -31,6 +31,7 @@ public final class InternalValues extends SignalStoreValues {
   public static final String LAST_SCROLL_POSITION                 = "internal.last_scroll_position";
   public static final String CONVERSATION_FRAGMENT_V2             = "internal.conversation_fragment_v2";
   public static final String CONVERSATION_ITEM_V2                 = "internal.conversation_item_v2";
+  public static final String RECORD_QUERY_LATENCY                 = "internal.record_query_latency";
 
   InternalValues(KeyValueStore store) {
     super(store);
@@ -115,6 +116,13 @@ public final class InternalValues extends SignalStoreValues {
     return FeatureFlags.internalUser() && getBoolean(SHAKE_TO_REPORT, true);
   }
 
+  /**
+   * Whether or not per-query database latencies should be recorded for the debug log. Off by default, as it adds work to every query.
+   */
+  public synchronized boolean recordQueryLatency() {
+    return FeatureFlags.internalUser() && getBoolean(RECORD_QUERY_LATENCY, false);
+  }
+
   /**
    * Whether or not storage service is manually disabled.
    */
@@ -10,8 +10,13 @@ import org.signal.core.util.concurrent.SignalExecutors;
 import org.signal.core.util.logging.Log;
 import org.thoughtcrime.securesms.util.SignalUncaughtExceptionHandler;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -25,6 +30,10 @@ import java.util.concurrent.ExecutorService;
  * Writes are enqueued on a separate executor, but writes are finished up in
  * {@link SignalUncaughtExceptionHandler}, meaning all write should finish barring a native crash
  * or the system killing us unexpectedly (i.e. a force-stop).
+ *
+ * Reads are served from an immutable snapshot that is swapped out on every write, so they never
+ * need to take a lock. Writes that happen while a previous write is still pending are coalesced
+ * into a single database transaction.
  */
 public final class KeyValueStore implements KeyValueReader {
 
@@ -33,7 +42,16 @@ public final class KeyValueStore implements KeyValueReader {
   private final ExecutorService           executor;
   private final KeyValuePersistentStorage storage;
 
-  private KeyValueDataSet dataSet;
+  /** The current state of the store. Never modified after it's published, so it can be read without holding a lock. */
+  private volatile KeyValueDataSet dataSet;
+
+  private final Map<String, long[]> writeCounts = new HashMap<>();
+
+  private KeyValueDataSet pendingWrites  = new KeyValueDataSet();
+  private Set<String>     pendingRemoves = new HashSet<>();
+  private boolean         flushScheduled;
+  private long            applies;
+  private long            transactions;
 
   public KeyValueStore(@NonNull KeyValuePersistentStorage storage) {
     this.executor = SignalExecutors.newCachedSingleThreadExecutor("signal-KeyValueStore", ThreadUtil.PRIORITY_BACKGROUND_THREAD);
@@ -42,51 +60,44 @@ public final class KeyValueStore implements KeyValueReader {
 
   @AnyThread
   @Override
-  public synchronized byte[] getBlob(@NonNull String key, byte[] defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getBlob(key, defaultValue);
+  public byte[] getBlob(@NonNull String key, byte[] defaultValue) {
+    return getSnapshot().getBlob(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized boolean getBoolean(@NonNull String key, boolean defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getBoolean(key, defaultValue);
+  public boolean getBoolean(@NonNull String key, boolean defaultValue) {
+    return getSnapshot().getBoolean(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized float getFloat(@NonNull String key, float defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getFloat(key, defaultValue);
+  public float getFloat(@NonNull String key, float defaultValue) {
+    return getSnapshot().getFloat(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized int getInteger(@NonNull String key, int defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getInteger(key, defaultValue);
+  public int getInteger(@NonNull String key, int defaultValue) {
+    return getSnapshot().getInteger(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized long getLong(@NonNull String key, long defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getLong(key, defaultValue);
+  public long getLong(@NonNull String key, long defaultValue) {
+    return getSnapshot().getLong(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized String getString(@NonNull String key, String defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getString(key, defaultValue);
+  public String getString(@NonNull String key, String defaultValue) {
+    return getSnapshot().getString(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized boolean containsKey(@NonNull String key) {
-    initializeIfNecessary();
-    return dataSet.containsKey(key);
+  public boolean containsKey(@NonNull String key) {
+    return getSnapshot().containsKey(key);
   }
 
   /**
@@ -104,20 +115,15 @@ public final class KeyValueStore implements KeyValueReader {
    *         efficient to use the various get* methods instead.
    */
   @AnyThread
-  synchronized @NonNull KeyValueReader beginRead() {
-    initializeIfNecessary();
-
-    KeyValueDataSet copy = new KeyValueDataSet();
-    copy.putAll(dataSet);
-
-    return copy;
+  @NonNull KeyValueReader beginRead() {
+    return getSnapshot();
   }
 
   /**
    * Ensures that any pending writes (such as those made via {@link Writer#apply()}) are finished.
    */
   @AnyThread
-  synchronized void blockUntilAllWritesFinished() {
+  void blockUntilAllWritesFinished() {
     CountDownLatch latch = new CountDownLatch(1);
 
     executor.execute(latch::countDown);
@@ -133,17 +139,93 @@ public final class KeyValueStore implements KeyValueReader {
    * Forces the store to re-fetch all of it's data from the database.
    */
   synchronized void resetCache() {
-    dataSet = null;
-    initializeIfNecessary();
+    dataSet = storage.getDataSet();
+  }
+
+  /**
+   * @return Write counts for the keys that have been written most often since the process started, along with how many
+   *         database transactions those writes ended up taking.
+   */
+  @AnyThread
+  synchronized @NonNull WriteStats getWriteStats(int maxKeys) {
+    List<Map.Entry<String, long[]>> entries = new ArrayList<>(writeCounts.entrySet());
+    Collections.sort(entries, (lhs, rhs) -> Long.compare(rhs.getValue()[0], lhs.getValue()[0]));
+
+    List<KeyWriteCount> topKeys = new ArrayList<>(Math.min(maxKeys, entries.size()));
+    for (int i = 0; i < entries.size() && i < maxKeys; i++) {
+      topKeys.add(new KeyWriteCount(entries.get(i).getKey(), entries.get(i).getValue()[0]));
+    }
+
+    return new WriteStats(applies, transactions, topKeys);
   }
 
   private synchronized void write(@NonNull KeyValueDataSet newDataSet, @NonNull Collection<String> removes) {
     initializeIfNecessary();
 
-    dataSet.putAll(newDataSet);
-    dataSet.removeAll(removes);
+    KeyValueDataSet updated = new KeyValueDataSet();
+    updated.putAll(dataSet);
+    updated.putAll(newDataSet);
+    updated.removeAll(removes);
+
+    dataSet = updated;
+
+    pendingWrites.removeAll(removes);
+    pendingWrites.putAll(newDataSet);
+    pendingRemoves.removeAll(newDataSet.getValues().keySet());
+    pendingRemoves.addAll(removes);
+
+    applies++;
+    incrementWriteCounts(newDataSet.getValues().keySet());
+    incrementWriteCounts(removes);
 
-    executor.execute(() -> storage.writeDataSet(newDataSet, removes));
+    if (!flushScheduled) {
+      flushScheduled = true;
+      executor.execute(this::flushPendingWrites);
+    }
+  }
+
+  /**
+   * Writes everything that has been applied since the last flush in a single transaction. Anything applied while this
+   * is running will be picked up by the next flush.
+   */
+  private void flushPendingWrites() {
+    KeyValueDataSet writes;
+    Set<String>     removes;
+
+    synchronized (this) {
+      writes         = pendingWrites;
+      removes        = pendingRemoves;
+      pendingWrites  = new KeyValueDataSet();
+      pendingRemoves = new HashSet<>();
+      flushScheduled = false;
+      transactions++;
+    }
+
+    storage.writeDataSet(writes, removes);
+  }
+
+  private void incrementWriteCounts(@NonNull Collection<String> keys) {
+    for (String key : keys) {
+      long[] count = writeCounts.get(key);
+      if (count == null) {
+        count = new long[1];
+        writeCounts.put(key, count);
+      }
+      count[0]++;
+    }
+  }
+
+  private @NonNull KeyValueDataSet getSnapshot() {
+    KeyValueDataSet snapshot = dataSet;
+
+    if (snapshot == null) {
+      synchronized (this) {
+        initializeIfNecessary();
+        snapshot = dataSet;
+      }
+    }
+
+    return snapshot;
   }
 
   private void initializeIfNecessary() {
@@ -151,6 +233,28 @@ public final class KeyValueStore implements KeyValueReader {
     this.dataSet = storage.getDataSet();
   }
 
+  static final class WriteStats {
+    final long                applies;
+    final long                transactions;
+    final List<KeyWriteCount> topKeys;
+
+    private WriteStats(long applies, long transactions, @NonNull List<KeyWriteCount> topKeys) {
+      this.applies      = applies;
+      this.transactions = transactions;
+      this.topKeys      = topKeys;
+    }
+  }
+
+  static final class KeyWriteCount {
+    final String key;
+    final long   count;
+
+    private KeyWriteCount(@NonNull String key, long count) {
+      this.key   = key;
+      this.count = count;
+    }
+  }
+
   class Writer {
     private final KeyValueDataSet dataSet = new KeyValueDataSet();
     private final Set<String>     removes = new HashSet<>();
@@ -284,6 +284,22 @@ public final class SignalStore {
     getStore().blockUntilAllWritesFinished();
   }
 
+  /**
+   * @return A summary of how often the store has been written to and which keys are written the most, for debugging.
+   */
+  public static @NonNull String getWriteStatsSummary(int maxKeys) {
+    KeyValueStore.WriteStats stats = getStore().getWriteStats(maxKeys);
+    StringBuilder            out   = new StringBuilder();
+
+    out.append(stats.applies).append(" writes in ").append(stats.transactions).append(" transactions");
+
+    for (KeyValueStore.KeyWriteCount keyCount : stats.topKeys) {
+      out.append("\n  ").append(keyCount.key).append(": ").append(keyCount.count);
+    }
+
+    return out.toString();
+  }
+
   private static @NonNull KeyValueStore getStore() {
     return getInstance().store;
   }
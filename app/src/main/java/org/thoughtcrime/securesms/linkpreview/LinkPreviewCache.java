@@ -0,0 +1,382 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.linkpreview;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.signal.core.util.Hex;
+import org.signal.core.util.logging.Log;
+import org.thoughtcrime.securesms.crypto.AttachmentSecretProvider;
+import org.thoughtcrime.securesms.util.storage.FileStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * An encrypted disk cache of resolved link previews, so pasting the same link again (in another chat, or while editing a draft) doesn't
+ * have to fetch the page and its image again. Entries are keyed by URL and expire after a fixed time-to-live. Once the cache is over
+ * its size limit, the least recently used entries are evicted.
+ *
+ * Each entry is its own file, encrypted like any other file we write. File names are a keyed hash of the URL, so they don't reveal
+ * which links were previewed.
+ */
+public final class LinkPreviewCache {
+
+  private static final String TAG = Log.tag(LinkPreviewCache.class);
+
+  private static final String DIRECTORY = "link_preview_cache";
+  private static final String PREFIX    = "entry_";
+  private static final String EXTENSION = "preview";
+  private static final String TMP       = "tmp_";
+  private static final int    VERSION   = 1;
+
+  private final long maxSize;
+  private final long timeToLive;
+
+  /** File name to size, in access order. */
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private boolean loaded;
+  private long    totalSize;
+  private long    hits;
+  private long    misses;
+  private long    expirations;
+  private long    evictions;
+
+  public LinkPreviewCache(long maxSize, long timeToLive) {
+    this.maxSize    = maxSize;
+    this.timeToLive = timeToLive;
+  }
+
+  @WorkerThread
+  public @Nullable Entry get(@NonNull Context context, @NonNull String url) {
+    String filename = getFilename(context, url);
+
+    synchronized (this) {
+      ensureLoaded(context);
+
+      if (!entries.containsKey(filename)) {
+        misses++;
+        return null;
+      }
+    }
+
+    Entry entry;
+    try (InputStream inputStream = FileStorage.read(context, DIRECTORY, filename)) {
+      entry = Entry.deserialize(inputStream);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read cache entry, dropping it.", e);
+      entry = null;
+    }
+
+    synchronized (this) {
+      if (entry == null || !entry.url.equals(url)) {
+        misses++;
+        remove(context, filename);
+        return null;
+      }
+
+      if (System.currentTimeMillis() - entry.createdAt > timeToLive) {
+        misses++;
+        expirations++;
+        remove(context, filename);
+        return null;
+      }
+
+      hits++;
+      entries.get(filename);
+      FileStorage.getFile(context, DIRECTORY, filename).setLastModified(System.currentTimeMillis());
+
+      return entry;
+    }
+  }
+
+  @WorkerThread
+  public void put(@NonNull Context context, @NonNull Entry entry) {
+    String filename = getFilename(context, entry.url);
+
+    synchronized (this) {
+      ensureLoaded(context);
+    }
+
+    File file;
+    try {
+      String tmpName = FileStorage.save(context, new ByteArrayInputStream(entry.serialize()), DIRECTORY, TMP, EXTENSION);
+
+      file = FileStorage.getFile(context, DIRECTORY, filename);
+
+      if (!FileStorage.getFile(context, DIRECTORY, tmpName).renameTo(file)) {
+        throw new IOException("Failed to rename cache entry.");
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write cache entry.", e);
+      return;
+    }
+
+    synchronized (this) {
+      Long previous = entries.put(filename, file.length());
+
+      totalSize += file.length() - (previous != null ? previous : 0);
+      trimToSize(context);
+    }
+  }
+
+  public synchronized @NonNull Stats getStats() {
+    return new Stats(entries.size(), totalSize, maxSize, hits, misses, expirations, evictions);
+  }
+
+  private void remove(@NonNull Context context, @NonNull String filename) {
+    Long size = entries.remove(filename);
+
+    if (size != null) {
+      totalSize -= size;
+    }
+
+    FileStorage.getFile(context, DIRECTORY, filename).delete();
+  }
+
+  private void trimToSize(@NonNull Context context) {
+    List<String> toRemove = new ArrayList<>();
+    long         size     = totalSize;
+
+    for (Map.Entry<String, Long> entry : entries.entrySet()) {
+      if (size <= maxSize) {
+        break;
+      }
+
+      toRemove.add(entry.getKey());
+      size -= entry.getValue();
+    }
+
+    for (String filename : toRemove) {
+      remove(context, filename);
+      evictions++;
+    }
+  }
+
+  /**
+   * Builds the index from the files on disk, oldest first, and sweeps up anything left behind by an interrupted write.
+   */
+  private void ensureLoaded(@NonNull Context context) {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+
+    for (File file : FileStorage.getAllFiles(context, DIRECTORY, TMP)) {
+      file.delete();
+    }
+
+    List<File> files = new ArrayList<>(FileStorage.getAllFiles(context, DIRECTORY, PREFIX));
+    files.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+
+    for (File file : files) {
+      entries.put(file.getName(), file.length());
+      totalSize += file.length();
+    }
+
+    trimToSize(context);
+  }
+
+  private static @NonNull String getFilename(@NonNull Context context, @NonNull String url) {
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(AttachmentSecretProvider.getInstance(context).getOrCreateAttachmentSecret().getModernKey(), "HmacSHA256"));
+
+      return PREFIX + Hex.toStringCondensed(mac.doFinal(url.getBytes(StandardCharsets.UTF_8))) + "." + EXTENSION;
+    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  public static final class Entry {
+    private final           String url;
+    private final           long   createdAt;
+    private final           String title;
+    private final           String description;
+    private final           long   date;
+    private final @Nullable byte[] thumbnail;
+    private final           String thumbnailContentType;
+    private final           int    thumbnailWidth;
+    private final           int    thumbnailHeight;
+
+    public Entry(@NonNull String url,
+                 long createdAt,
+                 @NonNull String title,
+                 @NonNull String description,
+                 long date,
+                 @Nullable byte[] thumbnail,
+                 @NonNull String thumbnailContentType,
+                 int thumbnailWidth,
+                 int thumbnailHeight)
+    {
+      this.url                  = url;
+      this.createdAt            = createdAt;
+      this.title                = title;
+      this.description          = description;
+      this.date                 = date;
+      this.thumbnail            = thumbnail;
+      this.thumbnailContentType = thumbnailContentType;
+      this.thumbnailWidth       = thumbnailWidth;
+      this.thumbnailHeight      = thumbnailHeight;
+    }
+
+    public @NonNull String getUrl() {
+      return url;
+    }
+
+    public @NonNull String getTitle() {
+      return title;
+    }
+
+    public @NonNull String getDescription() {
+      return description;
+    }
+
+    public long getDate() {
+      return date;
+    }
+
+    public @NonNull Optional<byte[]> getThumbnail() {
+      return Optional.ofNullable(thumbnail);
+    }
+
+    public @NonNull String getThumbnailContentType() {
+      return thumbnailContentType;
+    }
+
+    public int getThumbnailWidth() {
+      return thumbnailWidth;
+    }
+
+    public int getThumbnailHeight() {
+      return thumbnailHeight;
+    }
+
+    @NonNull byte[] serialize() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+      try (DataOutputStream out = new DataOutputStream(bytes)) {
+        out.writeInt(VERSION);
+        out.writeUTF(url);
+        out.writeLong(createdAt);
+        out.writeUTF(title);
+        out.writeUTF(description);
+        out.writeLong(date);
+        out.writeUTF(thumbnailContentType);
+        out.writeInt(thumbnailWidth);
+        out.writeInt(thumbnailHeight);
+
+        if (thumbnail != null) {
+          out.writeInt(thumbnail.length);
+          out.write(thumbnail);
+        } else {
+          out.writeInt(-1);
+        }
+      }
+
+      return bytes.toByteArray();
+    }
+
+    static @NonNull Entry deserialize(@NonNull InputStream inputStream) throws IOException {
+      DataInputStream in = new DataInputStream(inputStream);
+
+      if (in.readInt() != VERSION) {
+        throw new IOException("Unknown cache entry version.");
+      }
+
+      String url                  = in.readUTF();
+      long   createdAt            = in.readLong();
+      String title                = in.readUTF();
+      String description          = in.readUTF();
+      long   date                 = in.readLong();
+      String thumbnailContentType = in.readUTF();
+      int    thumbnailWidth       = in.readInt();
+      int    thumbnailHeight      = in.readInt();
+      int    thumbnailLength      = in.readInt();
+      byte[] thumbnail            = null;
+
+      if (thumbnailLength >= 0) {
+        thumbnail = new byte[thumbnailLength];
+        in.readFully(thumbnail);
+      }
+
+      return new Entry(url, createdAt, title, description, date, thumbnail, thumbnailContentType, thumbnailWidth, thumbnailHeight);
+    }
+  }
+
+  public static final class Stats {
+    private final int  entries;
+    private final long totalSize;
+    private final long maxSize;
+    private final long hits;
+    private final long misses;
+    private final long expirations;
+    private final long evictions;
+
+    private Stats(int entries, long totalSize, long maxSize, long hits, long misses, long expirations, long evictions) {
+      this.entries     = entries;
+      this.totalSize   = totalSize;
+      this.maxSize     = maxSize;
+      this.hits        = hits;
+      this.misses      = misses;
+      this.expirations = expirations;
+      this.evictions   = evictions;
+    }
+
+    public int getEntries() {
+      return entries;
+    }
+
+    public long getTotalSize() {
+      return totalSize;
+    }
+
+    public long getMaxSize() {
+      return maxSize;
+    }
+
+    public long getHits() {
+      return hits;
+    }
+
+    public long getMisses() {
+      return misses;
+    }
+
+    public long getExpirations() {
+      return expirations;
+    }
+
+    public long getEvictions() {
+      return evictions;
+    }
+
+    public float getHitRate() {
+      return hits + misses > 0 ? (float) hits / (hits + misses) : 0f;
+    }
+  }
+}
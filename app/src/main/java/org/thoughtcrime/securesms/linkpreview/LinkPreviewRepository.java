@@ -141,33 +141,89 @@ public class LinkPreviewRepository {
     } else if (CallLinks.isCallLink(url)) {
       metadataController = fetchCallLinkPreview(context, url, callback);
     } else {
-      metadataController = fetchMetadata(url, metadata -> {
-        if (metadata.isEmpty()) {
-          callback.onError(Error.PREVIEW_NOT_AVAILABLE);
-          return;
-        }
+      metadataController = fetchCachedOrWebLinkPreview(context, url, callback);
+    }
 
-        if (!metadata.getImageUrl().isPresent()) {
-          callback.onSuccess(new LinkPreview(url, metadata.getTitle().orElse(""), metadata.getDescription().orElse(""), metadata.getDate(), Optional.empty()));
-          return;
-        }
+    compositeController.addController(metadataController);
+    return compositeController;
+  }
 
-        RequestController imageController = fetchThumbnail(metadata.getImageUrl().get(), attachment -> {
-          if (!metadata.getTitle().isPresent() && !attachment.isPresent()) {
-            callback.onError(Error.PREVIEW_NOT_AVAILABLE);
-          } else {
-            callback.onSuccess(new LinkPreview(url, metadata.getTitle().orElse(""), metadata.getDescription().orElse(""), metadata.getDate(), attachment));
-          }
-        });
+  /**
+   * Serves the preview from {@link LinkPreviewCache} if we've resolved this link recently, otherwise fetches it and caches the result.
+   */
+  private @NonNull RequestController fetchCachedOrWebLinkPreview(@NonNull Context context, @NonNull String url, @NonNull Callback callback) {
+    CompositeRequestController controller = new CompositeRequestController();
+
+    SignalExecutors.UNBOUNDED.execute(() -> {
+      LinkPreviewCache.Entry cached = ApplicationDependencies.getLinkPreviewCache().get(context, url);
+
+      if (cached != null) {
+        Log.i(TAG, "Using cached link preview.");
+
+        Optional<Attachment> thumbnail = cached.getThumbnail()
+                                               .map(bytes -> bytesToAttachment(bytes, cached.getThumbnailWidth(), cached.getThumbnailHeight(), cached.getThumbnailContentType()));
+
+        callback.onSuccess(new LinkPreview(url, cached.getTitle(), cached.getDescription(), cached.getDate(), thumbnail));
+      } else {
+        controller.addController(fetchWebLinkPreview(context, url, callback));
+      }
+    });
+
+    return controller;
+  }
+
+  private @NonNull RequestController fetchWebLinkPreview(@NonNull Context context, @NonNull String url, @NonNull Callback callback) {
+    CompositeRequestController compositeController = new CompositeRequestController();
 
-        compositeController.addController(imageController);
+    RequestController metadataController = fetchMetadata(url, metadata -> {
+      if (metadata.isEmpty()) {
+        callback.onError(Error.PREVIEW_NOT_AVAILABLE);
+        return;
+      }
+
+      String title       = metadata.getTitle().orElse("");
+      String description = metadata.getDescription().orElse("");
+
+      if (!metadata.getImageUrl().isPresent()) {
+        callback.onSuccess(new LinkPreview(url, title, description, metadata.getDate(), Optional.empty()));
+        cacheLinkPreview(context, url, title, description, metadata.getDate(), Optional.empty());
+        return;
+      }
+
+      RequestController imageController = fetchThumbnail(metadata.getImageUrl().get(), thumbnail -> {
+        if (!metadata.getTitle().isPresent() && !thumbnail.isPresent()) {
+          callback.onError(Error.PREVIEW_NOT_AVAILABLE);
+        } else {
+          callback.onSuccess(new LinkPreview(url, title, description, metadata.getDate(), thumbnail.map(Thumbnail::toAttachment)));
+          cacheLinkPreview(context, url, title, description, metadata.getDate(), thumbnail);
+        }
       });
-    }
+
+      compositeController.addController(imageController);
+    });
 
     compositeController.addController(metadataController);
     return compositeController;
   }
 
+  private static void cacheLinkPreview(@NonNull Context context,
+                                       @NonNull String url,
+                                       @NonNull String title,
+                                       @NonNull String description,
+                                       long date,
+                                       @NonNull Optional<Thumbnail> thumbnail)
+  {
+    ApplicationDependencies.getLinkPreviewCache().put(context, new LinkPreviewCache.Entry(url,
+                                                                                          System.currentTimeMillis(),
+                                                                                          title,
+                                                                                          description,
+                                                                                          date,
+                                                                                          thumbnail.map(t -> t.data).orElse(null),
+                                                                                          thumbnail.map(t -> t.contentType).orElse(""),
+                                                                                          thumbnail.map(t -> t.width).orElse(0),
+                                                                                          thumbnail.map(t -> t.height).orElse(0)));
+  }
+
   private @NonNull RequestController fetchMetadata(@NonNull String url, Consumer<Metadata> callback) {
     Call call = client.newCall(new Request.Builder().url(url).cacheControl(NO_CACHE).build());
 
@@ -182,15 +238,21 @@ public class LinkPreviewRepository {
       public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
         if (!response.isSuccessful()) {
           Log.w(TAG, "Non-successful response. Code: " + response.code());
+          response.close();
           callback.accept(Metadata.empty());
           return;
         } else if (response.body() == null) {
           Log.w(TAG, "No response body.");
+          response.close();
           callback.accept(Metadata.empty());
           return;
         }
 
-        String           body        = OkHttpUtil.readAsString(response.body(), FAILSAFE_MAX_TEXT_SIZE);
+        String body;
+        try (Response ignored = response) {
+          body = OkHttpUtil.readHtmlHeadAsString(response.body(), FAILSAFE_MAX_TEXT_SIZE);
+        }
+
         OpenGraph        openGraph   = LinkPreviewUtil.parseOpenGraphFields(body);
         Optional<String> title       = openGraph.getTitle();
         Optional<String> description = openGraph.getDescription();
@@ -209,7 +271,7 @@ public class LinkPreviewRepository {
     return new CallRequestController(call);
   }
 
-  private @NonNull RequestController fetchThumbnail(@NonNull String imageUrl, @NonNull Consumer<Optional<Attachment>> callback) {
+  private @NonNull RequestController fetchThumbnail(@NonNull String imageUrl, @NonNull Consumer<Optional<Thumbnail>> callback) {
     Call                  call       = client.newCall(new Request.Builder().url(imageUrl).build());
     CallRequestController controller = new CallRequestController(call);
 
@@ -225,7 +287,7 @@ public class LinkPreviewRepository {
 
         byte[]                           data        = OkHttpUtil.readAsBytes(bodyStream, FAILSAFE_MAX_IMAGE_SIZE);
         Bitmap                           bitmap      = BitmapFactory.decodeByteArray(data, 0, data.length);
-        Optional<Attachment>             thumbnail   = Optional.empty();
+        Optional<Thumbnail>              thumbnail   = Optional.empty();
         PushMediaConstraints.MediaConfig mediaConfig = PushMediaConstraints.MediaConfig.getDefault(ApplicationDependencies.getApplication());
 
         if (bitmap != null) {
@@ -240,7 +302,7 @@ public class LinkPreviewRepository {
             );
 
             if (result != null) {
-              thumbnail = Optional.of(bytesToAttachment(result.getData(), result.getWidth(), result.getHeight(), result.getMimeType()));
+              thumbnail = Optional.of(new Thumbnail(result.getData(), result.getWidth(), result.getHeight(), result.getMimeType()));
               break;
             }
           }
@@ -465,6 +527,24 @@ public class LinkPreviewRepository {
                              null);
   }
 
+  private static class Thumbnail {
+    private final byte[] data;
+    private final int    width;
+    private final int    height;
+    private final String contentType;
+
+    Thumbnail(@NonNull byte[] data, int width, int height, @NonNull String contentType) {
+      this.data        = data;
+      this.width       = width;
+      this.height      = height;
+      this.contentType = contentType;
+    }
+
+    @NonNull Attachment toAttachment() {
+      return bytesToAttachment(data, width, height, contentType);
+    }
+  }
+
   private static class Metadata {
     private final Optional<String> title;
     private final Optional<String> description;
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.logsubmit
+
+import android.content.Context
+import org.thoughtcrime.securesms.database.DatabaseMonitor
+import org.thoughtcrime.securesms.database.ProtocolRecordCache
+import org.thoughtcrime.securesms.database.SignalDatabase
+import java.util.Locale
+
+/**
+ * Prints the main database's connection settings, checkpoint and protocol record cache stats, and the queries that have taken the most
+ * total time.
+ */
+class LogSectionDatabase : LogSection {
+
+  companion object {
+    private const val MAX_QUERIES = 25
+    private const val MAX_QUERY_LENGTH = 200
+  }
+
+  override fun getTitle(): String = "DATABASE"
+
+  override fun getContent(context: Context): CharSequence {
+    val database = SignalDatabase.instance ?: return "Database not initialized."
+    val config = database.config
+    val checkpoints = database.checkpointScheduler.getStats()
+    val output = StringBuilder()
+
+    output.append("Statement cache size : ${config.statementCacheSize}\n")
+    output.append("Page cache size      : ${config.pageCacheSizeKb} KiB\n")
+    output.append("WAL auto checkpoint  : ${config.walAutoCheckpointPages} pages\n")
+    output.append("Checkpoint interval  : ${config.checkpointIntervalMs} ms\n")
+    output.append("Checkpoints          : ${checkpoints.checkpoints} (${checkpoints.busyCheckpoints} busy, ${checkpoints.totalCheckpointTimeMs} ms total)\n")
+    output.append("Last checkpoint      : ${checkpoints.lastResult ?: "None"}\n")
+    output.append("Session cache        : ${formatCacheStats(SignalDatabase.sessions.getCacheStats())}\n")
+    output.append("Sender key cache     : ${formatCacheStats(SignalDatabase.senderKeys.getCacheStats())}\n\n")
+
+    val queries = DatabaseMonitor.getSlowestQueries(MAX_QUERIES)
+    if (queries.isEmpty()) {
+      output.append("No query latencies recorded.")
+      return output
+    }
+
+    output.append("Slowest queries by total time (count, total ms, avg/p50/p90/p99/max µs):\n")
+    for ((query, stats) in queries) {
+      output.append("  ${stats.count}, ${stats.totalNanos / 1_000_000}, ")
+        .append("${stats.averageMicros}/${stats.percentileMicros(50.0)}/${stats.percentileMicros(90.0)}/${stats.percentileMicros(99.0)}/${stats.maxMicros}")
+        .append(" | ${query.replace('\n', ' ').take(MAX_QUERY_LENGTH)}\n")
+    }
+
+    return output
+  }
+
+  private fun formatCacheStats(stats: ProtocolRecordCache.Stats): String {
+    return "${stats.size}/${stats.maxSize} entries, ${stats.hits} hits, ${stats.misses} misses (${String.format(Locale.US, "%.1f", stats.hitRate * 100)}% hit rate)"
+  }
+}
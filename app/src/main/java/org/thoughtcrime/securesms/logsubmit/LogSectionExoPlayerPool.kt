@@ -3,9 +3,10 @@ package org.thoughtcrime.securesms.logsubmit
 import android.content.Context
 import org.thoughtcrime.securesms.dependencies.ApplicationDependencies
 import org.thoughtcrime.securesms.video.exo.ExoPlayerPool
+import java.util.Locale
 
 /**
- * Prints off the current exoplayer pool stats, including ownership info.
+ * Prints off the current exoplayer pool stats, including ownership info, along with the stats of the GIF cache that feeds them.
  */
 class LogSectionExoPlayerPool : LogSection {
   override fun getTitle(): String = "EXOPLAYER POOL"
@@ -34,6 +35,15 @@ class LogSectionExoPlayerPool : LogSection {
       }
     }
 
+    val cacheStats = ApplicationDependencies.getGiphyMp4Cache().getStats()
+
+    output.append("\n\nGIF cache:\n")
+    output.append("  entries: ${cacheStats.entries} (${cacheStats.locked} in use)\n")
+    output.append("  size: ${cacheStats.totalSize} / ${cacheStats.maxSize} bytes\n")
+    output.append("  hit rate: ${String.format(Locale.US, "%.1f", cacheStats.hitRate * 100)}% (${cacheStats.hits} hits, ${cacheStats.misses} misses)\n")
+    output.append("  written: ${cacheStats.bytesWritten} bytes\n")
+    output.append("  evicted: ${cacheStats.bytesEvicted} bytes in ${cacheStats.evictions} evictions")
+
     return output
   }
 }
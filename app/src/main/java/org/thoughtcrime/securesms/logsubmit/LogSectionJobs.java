@@ -5,6 +5,7 @@ import android.content.Context;
 import androidx.annotation.NonNull;
 
 import org.thoughtcrime.securesms.dependencies.ApplicationDependencies;
+import org.thoughtcrime.securesms.jobs.SendDeliveryReceiptJob;
 
 public class LogSectionJobs implements LogSection {
 
@@ -15,6 +16,6 @@ public class LogSectionJobs implements LogSection {
 
   @Override
   public @NonNull CharSequence getContent(@NonNull Context context) {
-    return ApplicationDependencies.getJobManager().getDebugInfo();
+    return ApplicationDependencies.getJobManager().getDebugInfo() + "\n\n" + SendDeliveryReceiptJob.getDebugInfo();
   }
 }
@@ -34,7 +34,8 @@ final class LogSectionKeyPreferences implements LogSection {
                               .append("Network Reachable    : ").append(SignalStore.misc().isServiceReachableWithoutCircumvention()).append(", last checked: ").append(SignalStore.misc().getLastCensorshipServiceReachabilityCheckTime()).append("\n")
                               .append("Wifi Download        : ").append(Util.join(TextSecurePreferences.getWifiMediaDownloadAllowed(context), ",")).append("\n")
                               .append("Roaming Download     : ").append(Util.join(TextSecurePreferences.getRoamingMediaDownloadAllowed(context), ",")).append("\n")
-                              .append("Mobile Download      : ").append(Util.join(TextSecurePreferences.getMobileMediaDownloadAllowed(context), ",")).append("\n");
+                              .append("Mobile Download      : ").append(Util.join(TextSecurePreferences.getMobileMediaDownloadAllowed(context), ",")).append("\n")
+                              .append("Store Writes         : ").append(SignalStore.getWriteStatsSummary(10)).append("\n");
   }
 
   private static String getThreadTrimmingString() {
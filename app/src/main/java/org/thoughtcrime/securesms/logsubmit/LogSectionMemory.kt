@@ -6,6 +6,9 @@ import org.signal.core.util.MemoryTracker
 import org.signal.core.util.bytes
 import org.signal.core.util.kibiBytes
 import org.signal.core.util.roundedString
+import org.thoughtcrime.securesms.dependencies.ApplicationDependencies
+import org.thoughtcrime.securesms.emoji.EmojiGlyphCache
+import java.util.Locale
 
 class LogSectionMemory : LogSection {
   override fun getTitle(): String = "MEMORY"
@@ -43,6 +46,33 @@ class LogSectionMemory : LogSection {
       """.trimIndent()
     }
 
+    val emojiStats = EmojiGlyphCache.getStats()
+
+    base += "\n\n"
+    base += """
+      -- Emoji Glyph Cache
+      Glyphs        : ${emojiStats.glyphs}
+      Size          : ${emojiStats.sizeBytes.byteDisplay()}
+      Max Size      : ${emojiStats.maxSizeBytes.byteDisplay()}
+      Hit Rate      : ${String.format(Locale.US, "%.1f", emojiStats.hitRate * 100)}% (${emojiStats.hits} hits, ${emojiStats.misses} misses)
+      Prefetched    : ${emojiStats.prefetches}
+      Region Decodes: ${emojiStats.regionDecodes} (${emojiStats.glyphDecodes} glyphs)
+      Evictions     : ${emojiStats.evictions}
+    """.trimIndent()
+
+    val linkPreviewStats = ApplicationDependencies.getLinkPreviewCache().stats
+
+    base += "\n\n"
+    base += """
+      -- Link Preview Cache (disk)
+      Entries       : ${linkPreviewStats.entries}
+      Size          : ${linkPreviewStats.totalSize.byteDisplay()}
+      Max Size      : ${linkPreviewStats.maxSize.byteDisplay()}
+      Hit Rate      : ${String.format(Locale.US, "%.1f", linkPreviewStats.hitRate * 100)}% (${linkPreviewStats.hits} hits, ${linkPreviewStats.misses} misses)
+      Expirations   : ${linkPreviewStats.expirations}
+      Evictions     : ${linkPreviewStats.evictions}
+    """.trimIndent()
+
     return base
   }
 
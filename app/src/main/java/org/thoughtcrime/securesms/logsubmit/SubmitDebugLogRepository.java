@@ -77,6 +77,7 @@ public class SubmitDebugLogRepository {
     add(new LogSectionCapabilities());
     add(new LogSectionMemory());
     add(new LogSectionLocalMetrics());
+    add(new LogSectionDatabase());
     add(new LogSectionFeatureFlags());
     add(new LogSectionPin());
     if (Build.VERSION.SDK_INT >= 28) {
@@ -1,7 +1,6 @@
 package org.thoughtcrime.securesms.messages
 
 import android.content.Context
-import org.signal.core.util.concurrent.SignalExecutors
 import org.signal.core.util.orNull
 import org.thoughtcrime.securesms.database.MessageTable.InsertResult
 import org.thoughtcrime.securesms.database.SignalDatabase
@@ -94,9 +93,7 @@ object EditMessageProcessor {
     }
 
     if (insertResult != null) {
-      SignalExecutors.BOUNDED.execute {
-        ApplicationDependencies.getJobManager().add(SendDeliveryReceiptJob(senderRecipient.id, message.timestamp, MessageId(insertResult.messageId)))
-      }
+      SendDeliveryReceiptJob.enqueue(senderRecipient.id, message.timestamp, MessageId(insertResult.messageId))
 
       if (targetMessage.expireStarted > 0) {
         ApplicationDependencies.getExpiringMessageManager()
@@ -62,6 +62,9 @@ class BufferedSenderKeyStore : SignalServiceSenderKeyStore {
 
     persistentStore.clearSenderKeySharedWith(clearSharedWith)
 
+    // The stored records now belong to the sender key cache, so they have to be loaded again before they can be changed
+    store.keys.removeAll(updatedKeys.keys)
+
     updatedKeys.clear()
     clearSharedWith.clear()
   }
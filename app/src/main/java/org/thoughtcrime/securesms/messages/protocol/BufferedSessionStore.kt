@@ -113,6 +113,9 @@ class BufferedSessionStore(private val selfServiceId: ServiceId) : SignalService
       persistentStore.deleteSession(address)
     }
 
+    // The stored records now belong to the session cache, so they have to be loaded again before they can be changed
+    store.keys.removeAll(updatedSessions.keys)
+
     updatedSessions.clear()
     deletedSessions.clear()
   }
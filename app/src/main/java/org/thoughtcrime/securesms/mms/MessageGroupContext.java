@@ -154,6 +154,10 @@ public final class MessageGroupContext {
       }
     }
 
+    public @NonNull DecryptedGroupV2Context getDecryptedGroupV2Context() {
+      return decryptedGroupV2Context;
+    }
+
     public @NonNull GroupContextV2 getGroupContext() {
       return groupContext;
     }
@@ -15,6 +15,7 @@ import org.thoughtcrime.securesms.keyvalue.SignalStore;
 import org.thoughtcrime.securesms.payments.Direction;
 import org.thoughtcrime.securesms.payments.MobileCoinLedgerWrapper;
 import org.thoughtcrime.securesms.payments.Payment;
+import org.thoughtcrime.securesms.payments.reconciliation.IncrementalLedgerReconcile;
 import org.thoughtcrime.securesms.payments.reconciliation.LedgerReconcile;
 import org.thoughtcrime.securesms.util.livedata.LiveDataUtil;
 
@@ -29,6 +30,9 @@ public class PaymentsRepository {
 
   private static final String TAG = Log.tag(PaymentsRepository.class);
 
+  /** Shared between instances so each screen doesn't have to reconcile the whole ledger again. */
+  private static final IncrementalLedgerReconcile LEDGER_RECONCILE = new IncrementalLedgerReconcile();
+
   private final PaymentTable            paymentDatabase;
   private final LiveData<List<Payment>> recentPayments;
   private final LiveData<List<Payment>> recentSentPayments;
@@ -48,7 +52,7 @@ public class PaymentsRepository {
 
   @WorkerThread
   private @NonNull List<Payment> reconcile(@NonNull Collection<PaymentTable.PaymentTransaction> paymentTransactions, @NonNull MobileCoinLedgerWrapper ledger) {
-    List<Payment> reconcile = LedgerReconcile.reconcile(paymentTransactions, ledger);
+    List<Payment> reconcile = LEDGER_RECONCILE.reconcile(paymentTransactions, ledger);
 
     updateDatabaseWithNewBlockInformation(reconcile);
 
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.payments.reconciliation;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.annimon.stream.Stream;
+import com.google.protobuf.ByteString;
+
+import org.signal.core.util.logging.Log;
+import org.thoughtcrime.securesms.payments.MobileCoinLedgerWrapper;
+import org.thoughtcrime.securesms.payments.Payment;
+import org.thoughtcrime.securesms.payments.State;
+import org.thoughtcrime.securesms.payments.proto.PaymentMetaData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Produces the same output as {@link LedgerReconcile#reconcile(Collection, MobileCoinLedgerWrapper)}, but keeps what it derived from
+ * the previous ledger so that a refresh only has to reconstruct the blocks that changed.
+ * <p>
+ * Each block is reconstructed on its own, so we remember the reconstructed payments per block along with the highest block we've
+ * reconciled. On the next call, every block above that mark is new. Below it, a block is only redone if one of its TXOs changed (for
+ * example, its timestamp arrived late) or a local payment that claims one of its TXOs was added or removed. If any TXO we had below
+ * the mark is missing from the new ledger, the wallet has been reset or restored, and we start over.
+ */
+public final class IncrementalLedgerReconcile {
+
+  private static final String TAG = Log.tag(IncrementalLedgerReconcile.class);
+
+  private static final long NOTHING_RECONCILED = -1;
+
+  private final Map<ByteString, MobileCoinLedgerWrapper.OwnedTxo> txosByPublicKey      = new HashMap<>();
+  private final Map<ByteString, MobileCoinLedgerWrapper.OwnedTxo> txosByKeyImage       = new HashMap<>();
+  private final TreeMap<Long, List<Payment>>                      reconstructedByBlock = new TreeMap<>(Collections.reverseOrder());
+
+  private Set<ByteString> knownPublicKeys = Collections.emptySet();
+  private Set<ByteString> knownKeyImages  = Collections.emptySet();
+  private long            highWaterMark   = NOTHING_RECONCILED;
+
+  @WorkerThread
+  public synchronized @NonNull List<Payment> reconcile(@NonNull Collection<? extends Payment> localPaymentTransactions,
+                                                       @NonNull MobileCoinLedgerWrapper ledgerWrapper)
+  {
+    long                                   start   = System.currentTimeMillis();
+    List<MobileCoinLedgerWrapper.OwnedTxo> allTxos = ledgerWrapper.getAllTxos();
+
+    int blocksReconstructed = updateReconstructedBlocks(localPaymentTransactions, allTxos);
+
+    List<Payment> result;
+    if (reconstructedByBlock.isEmpty()) {
+      result = Stream.of(localPaymentTransactions).map(t -> (Payment) t).toList();
+    } else {
+      List<Payment> blockDecoratedLocalPayments = new ArrayList<>(localPaymentTransactions.size());
+      for (Payment local : localPaymentTransactions) {
+        blockDecoratedLocalPayments.add(LedgerReconcile.findBlock(local, txosByPublicKey, txosByKeyImage));
+      }
+
+      List<Payment> reconstructedPayments = new ArrayList<>();
+      for (List<Payment> blockPayments : reconstructedByBlock.values()) {
+        reconstructedPayments.addAll(blockPayments);
+      }
+
+      result = ZipList.zipList(blockDecoratedLocalPayments, reconstructedPayments, Payment.DESCENDING_BLOCK_INDEX_UNKNOWN_FIRST);
+    }
+
+    Log.d(TAG, String.format(Locale.US, "Took %d ms - Ledger %d, Local %d, Reconstructed %d blocks, Reconciled up to block %d",
+                             System.currentTimeMillis() - start,
+                             allTxos.size(),
+                             localPaymentTransactions.size(),
+                             blocksReconstructed,
+                             highWaterMark));
+
+    return result;
+  }
+
+  /**
+   * Brings {@link #reconstructedByBlock} and the TXO indexes up to date with the given ledger.
+   *
+   * @return The number of blocks that had to be reconstructed.
+   */
+  private int updateReconstructedBlocks(@NonNull Collection<? extends Payment> localPaymentTransactions,
+                                        @NonNull List<MobileCoinLedgerWrapper.OwnedTxo> allTxos)
+  {
+    Set<ByteString> currentPublicKeys = new HashSet<>();
+    Set<ByteString> currentKeyImages  = new HashSet<>();
+
+    for (Payment payment : localPaymentTransactions) {
+      if (payment.getState() != State.FAILED) {
+        PaymentMetaData.MobileCoinTxoIdentification txoIdentification = payment.getPaymentMetaData().getMobileCoinTxoIdentification();
+
+        currentPublicKeys.addAll(txoIdentification.getPublicKeyList());
+        currentKeyImages.addAll(txoIdentification.getKeyImagesList());
+      }
+    }
+
+    Set<Long> dirtyBlocks = new HashSet<>();
+
+    for (ByteString publicKey : symmetricDifference(knownPublicKeys, currentPublicKeys)) {
+      MobileCoinLedgerWrapper.OwnedTxo txo = txosByPublicKey.get(publicKey);
+      if (txo != null) {
+        markDirty(dirtyBlocks, txo.getReceivedInBlock());
+      }
+    }
+
+    for (ByteString keyImage : symmetricDifference(knownKeyImages, currentKeyImages)) {
+      MobileCoinLedgerWrapper.OwnedTxo txo = txosByKeyImage.get(keyImage);
+      if (txo != null) {
+        markDirty(dirtyBlocks, txo.getSpentInBlock());
+      }
+    }
+
+    int  previousTxoCount = txosByPublicKey.size();
+    int  matchedTxoCount  = 0;
+    long newHighWaterMark = highWaterMark;
+
+    for (MobileCoinLedgerWrapper.OwnedTxo txo : allTxos) {
+      MobileCoinLedgerWrapper.OwnedTxo previous = txosByPublicKey.get(txo.getPublicKey());
+
+      boolean changed = false;
+
+      if (previous == null) {
+        markDirty(dirtyBlocks, txo.getReceivedInBlock());
+        markDirty(dirtyBlocks, txo.getSpentInBlock());
+        changed = true;
+      } else {
+        matchedTxoCount++;
+
+        if (!hasSameReceipt(previous, txo)) {
+          markDirty(dirtyBlocks, previous.getReceivedInBlock());
+          markDirty(dirtyBlocks, txo.getReceivedInBlock());
+          changed = true;
+        }
+
+        if (!hasSameSpend(previous, txo)) {
+          markDirty(dirtyBlocks, previous.getSpentInBlock());
+          markDirty(dirtyBlocks, txo.getSpentInBlock());
+          txosByKeyImage.remove(previous.getKeyImage());
+          changed = true;
+        }
+      }
+
+      if (changed) {
+        txosByPublicKey.put(txo.getPublicKey(), txo);
+        txosByKeyImage.put(txo.getKeyImage(), txo);
+      }
+
+      newHighWaterMark = Math.max(newHighWaterMark, txo.getReceivedInBlock());
+      if (txo.getSpentInBlock() != null) {
+        newHighWaterMark = Math.max(newHighWaterMark, txo.getSpentInBlock());
+      }
+    }
+
+    if (matchedTxoCount < previousTxoCount) {
+      Log.i(TAG, "TXOs have disappeared from the ledger, reconciling from scratch.");
+      reset();
+      return updateReconstructedBlocks(localPaymentTransactions, allTxos);
+    }
+
+    Map<Long, List<MobileCoinLedgerWrapper.OwnedTxo>> unknownReceivedByBlock = new HashMap<>();
+    Map<Long, List<MobileCoinLedgerWrapper.OwnedTxo>> unknownSpentByBlock    = new HashMap<>();
+
+    for (MobileCoinLedgerWrapper.OwnedTxo txo : allTxos) {
+      long receivedInBlock = txo.getReceivedInBlock();
+      if (needsReconstruction(dirtyBlocks, receivedInBlock) && !currentPublicKeys.contains(txo.getPublicKey())) {
+        getOrCreate(unknownReceivedByBlock, receivedInBlock).add(txo);
+      }
+
+      Long spentInBlock = txo.getSpentInBlock();
+      if (spentInBlock != null && needsReconstruction(dirtyBlocks, spentInBlock) && !currentKeyImages.contains(txo.getKeyImage())) {
+        getOrCreate(unknownSpentByBlock, spentInBlock).add(txo);
+      }
+    }
+
+    Set<Long> blocksToReconstruct = new HashSet<>(unknownReceivedByBlock.keySet());
+    blocksToReconstruct.addAll(unknownSpentByBlock.keySet());
+
+    reconstructedByBlock.keySet().removeAll(dirtyBlocks);
+
+    for (long blockIndex : blocksToReconstruct) {
+      List<LedgerReconcile.DetailedTransaction> detailedTransactions = new ArrayList<>(LedgerReconcile.reconstructBlock(blockIndex,
+                                                                                                                       getOrEmpty(unknownSpentByBlock, blockIndex),
+                                                                                                                       getOrEmpty(unknownReceivedByBlock, blockIndex)));
+      Collections.sort(detailedTransactions, LedgerReconcile.DetailedTransaction.DESCENDING);
+
+      reconstructedByBlock.put(blockIndex, Stream.of(detailedTransactions).map(LedgerReconcile::toPayment).toList());
+    }
+
+    knownPublicKeys = currentPublicKeys;
+    knownKeyImages  = currentKeyImages;
+    highWaterMark   = newHighWaterMark;
+
+    return blocksToReconstruct.size();
+  }
+
+  private void reset() {
+    txosByPublicKey.clear();
+    txosByKeyImage.clear();
+    reconstructedByBlock.clear();
+
+    knownPublicKeys = Collections.emptySet();
+    knownKeyImages  = Collections.emptySet();
+    highWaterMark   = NOTHING_RECONCILED;
+  }
+
+  /**
+   * Blocks above the high-water mark are always reconstructed, so only the ones below it need to be tracked.
+   */
+  private void markDirty(@NonNull Set<Long> dirtyBlocks, @Nullable Long blockIndex) {
+    if (blockIndex != null && blockIndex <= highWaterMark) {
+      dirtyBlocks.add(blockIndex);
+    }
+  }
+
+  private boolean needsReconstruction(@NonNull Set<Long> dirtyBlocks, long blockIndex) {
+    return blockIndex > highWaterMark || dirtyBlocks.contains(blockIndex);
+  }
+
+  private static boolean hasSameReceipt(@NonNull MobileCoinLedgerWrapper.OwnedTxo a, @NonNull MobileCoinLedgerWrapper.OwnedTxo b) {
+    return a.getReceivedInBlock() == b.getReceivedInBlock()                                &&
+           Objects.equals(a.getReceivedInBlockTimestamp(), b.getReceivedInBlockTimestamp()) &&
+           a.getValue().equals(b.getValue());
+  }
+
+  private static boolean hasSameSpend(@NonNull MobileCoinLedgerWrapper.OwnedTxo a, @NonNull MobileCoinLedgerWrapper.OwnedTxo b) {
+    return Objects.equals(a.getSpentInBlock(), b.getSpentInBlock())                 &&
+           Objects.equals(a.getSpentInBlockTimestamp(), b.getSpentInBlockTimestamp()) &&
+           a.getKeyImage().equals(b.getKeyImage())                                  &&
+           a.getValue().equals(b.getValue());
+  }
+
+  private static @NonNull Set<ByteString> symmetricDifference(@NonNull Set<ByteString> a, @NonNull Set<ByteString> b) {
+    Set<ByteString> difference = new HashSet<>();
+
+    for (ByteString item : a) {
+      if (!b.contains(item)) {
+        difference.add(item);
+      }
+    }
+
+    for (ByteString item : b) {
+      if (!a.contains(item)) {
+        difference.add(item);
+      }
+    }
+
+    return difference;
+  }
+
+  private static @NonNull List<MobileCoinLedgerWrapper.OwnedTxo> getOrCreate(@NonNull Map<Long, List<MobileCoinLedgerWrapper.OwnedTxo>> map, long key) {
+    List<MobileCoinLedgerWrapper.OwnedTxo> list = map.get(key);
+    if (list == null) {
+      list = new ArrayList<>();
+      map.put(key, list);
+    }
+    return list;
+  }
+
+  private static @NonNull List<MobileCoinLedgerWrapper.OwnedTxo> getOrEmpty(@NonNull Map<Long, List<MobileCoinLedgerWrapper.OwnedTxo>> map, long key) {
+    List<MobileCoinLedgerWrapper.OwnedTxo> list = map.get(key);
+    return list != null ? list : Collections.emptyList();
+  }
+}
@@ -90,10 +90,7 @@ public final class LedgerReconcile {
     List<Payment> blockDecoratedLocalPayments = decoratePaymentsWithBlockIndexes(allLocalPaymentTransactions, allTxOuts);
 
     for (DetailedTransaction detailedTransaction : detailedTransactions) {
-      reconstructedPayments.add(new ReconstructedPayment(detailedTransaction.blockDetail.getBlockIndex(),
-                                                         detailedTransaction.blockDetail.getBlockTimestampOrZero(),
-                                                         detailedTransaction.transaction.getDirection(),
-                                                         detailedTransaction.transaction.getValue()));
+      reconstructedPayments.add(toPayment(detailedTransaction));
     }
 
     Collections.sort(reconstructedPayments, Payment.DESCENDING_BLOCK_INDEX);
@@ -104,24 +101,28 @@ public final class LedgerReconcile {
   private static List<Payment> decoratePaymentsWithBlockIndexes(@NonNull Collection<? extends Payment> localPaymentTransactions,
                                                                 @NonNull List<MobileCoinLedgerWrapper.OwnedTxo> allTxOuts)
   {
-    List<Payment>                                     result         = new ArrayList<>(localPaymentTransactions.size());
-    Map<ByteString, MobileCoinLedgerWrapper.OwnedTxo> blockDetailMap = new HashMap<>(allTxOuts.size() * 2);
+    List<Payment>                                     result          = new ArrayList<>(localPaymentTransactions.size());
+    Map<ByteString, MobileCoinLedgerWrapper.OwnedTxo> txosByPublicKey = new HashMap<>(allTxOuts.size());
+    Map<ByteString, MobileCoinLedgerWrapper.OwnedTxo> txosByKeyImage  = new HashMap<>(allTxOuts.size());
 
     for (MobileCoinLedgerWrapper.OwnedTxo txo : allTxOuts) {
-      blockDetailMap.put(txo.getPublicKey(), txo);
-      blockDetailMap.put(txo.getKeyImage(), txo);
+      txosByPublicKey.put(txo.getPublicKey(), txo);
+      txosByKeyImage.put(txo.getKeyImage(), txo);
     }
 
     for (Payment local : localPaymentTransactions) {
-      result.add(findBlock(local, blockDetailMap));
+      result.add(findBlock(local, txosByPublicKey, txosByKeyImage));
     }
     return result;
   }
 
-  private static @NonNull Payment findBlock(@NonNull Payment local, @NonNull Map<ByteString, MobileCoinLedgerWrapper.OwnedTxo> allTxOuts) {
+  static @NonNull Payment findBlock(@NonNull Payment local,
+                                    @NonNull Map<ByteString, MobileCoinLedgerWrapper.OwnedTxo> txosByPublicKey,
+                                    @NonNull Map<ByteString, MobileCoinLedgerWrapper.OwnedTxo> txosByKeyImage)
+  {
     if (local.getDirection().isReceived()) {
       for (ByteString publicKey : local.getPaymentMetaData().getMobileCoinTxoIdentification().getPublicKeyList()) {
-        MobileCoinLedgerWrapper.OwnedTxo ownedTxo = allTxOuts.get(publicKey);
+        MobileCoinLedgerWrapper.OwnedTxo ownedTxo = txosByPublicKey.get(publicKey);
 
         if (ownedTxo != null) {
           long receivedInBlock          = ownedTxo.getReceivedInBlock();
@@ -132,7 +133,7 @@ public final class LedgerReconcile {
       }
     } else {
       for (ByteString keyImage : local.getPaymentMetaData().getMobileCoinTxoIdentification().getKeyImagesList()) {
-        MobileCoinLedgerWrapper.OwnedTxo ownedTxo = allTxOuts.get(keyImage);
+        MobileCoinLedgerWrapper.OwnedTxo ownedTxo = txosByKeyImage.get(keyImage);
 
         if (ownedTxo != null && ownedTxo.getSpentInBlock() != null) {
           long spentInBlock          = ownedTxo.getSpentInBlock();
@@ -203,32 +204,48 @@ public final class LedgerReconcile {
 
     return Stream.of(allBlocksWithActivity)
                  .sorted((a, b) -> b.compareTo(a))
-                 .flatMap(blockIndex -> {
-                   List<MobileCoinLedgerWrapper.OwnedTxo> unspent = MapUtil.getOrDefault(receivedInBlock, blockIndex, Collections.emptyList());
-                   List<MobileCoinLedgerWrapper.OwnedTxo> spent   = MapUtil.getOrDefault(spentInBlock, blockIndex, Collections.emptyList());
-
-                   if (spent.size() + unspent.size() == 0) {
-                     throw new AssertionError();
-                   }
-
-                   Long timeStamp = null;
-                   if (spent.size() > 0) {
-                     timeStamp = spent.get(0).getSpentInBlockTimestamp();
-                   }
-                   if (timeStamp == null && unspent.size() > 0) {
-                     timeStamp = unspent.get(0).getReceivedInBlockTimestamp();
-                   }
-
-                   TransactionReconstruction transactionReconstruction = TransactionReconstruction.estimateBlockLevelActivity(toMobileCoinList(spent), toMobileCoinList(unspent));
-
-                   BlockDetail blockDetail = new BlockDetail(blockIndex, timeStamp);
-                   return Stream.of(transactionReconstruction.getAllTransactions())
-                                .map(t -> new DetailedTransaction(blockDetail, t));
-                 })
+                 .flatMap(blockIndex -> Stream.of(reconstructBlock(blockIndex,
+                                                                   MapUtil.getOrDefault(spentInBlock, blockIndex, Collections.emptyList()),
+                                                                   MapUtil.getOrDefault(receivedInBlock, blockIndex, Collections.emptyList()))))
                  .sorted(DetailedTransaction.DESCENDING)
                  .toList();
   }
 
+  /**
+   * Estimates the transactions in a single block from the unknown TXOs spent and received in it. Blocks are independent of each
+   * other, which is what lets {@link IncrementalLedgerReconcile} redo only the blocks that changed.
+   */
+  static @NonNull List<DetailedTransaction> reconstructBlock(long blockIndex,
+                                                             @NonNull List<MobileCoinLedgerWrapper.OwnedTxo> spent,
+                                                             @NonNull List<MobileCoinLedgerWrapper.OwnedTxo> unspent)
+  {
+    if (spent.size() + unspent.size() == 0) {
+      throw new AssertionError();
+    }
+
+    Long timeStamp = null;
+    if (spent.size() > 0) {
+      timeStamp = spent.get(0).getSpentInBlockTimestamp();
+    }
+    if (timeStamp == null && unspent.size() > 0) {
+      timeStamp = unspent.get(0).getReceivedInBlockTimestamp();
+    }
+
+    TransactionReconstruction transactionReconstruction = TransactionReconstruction.estimateBlockLevelActivity(toMobileCoinList(spent), toMobileCoinList(unspent));
+
+    BlockDetail blockDetail = new BlockDetail(blockIndex, timeStamp);
+    return Stream.of(transactionReconstruction.getAllTransactions())
+                 .map(t -> new DetailedTransaction(blockDetail, t))
+                 .toList();
+  }
+
+  static @NonNull Payment toPayment(@NonNull DetailedTransaction detailedTransaction) {
+    return new ReconstructedPayment(detailedTransaction.blockDetail.getBlockIndex(),
+                                    detailedTransaction.blockDetail.getBlockTimestampOrZero(),
+                                    detailedTransaction.transaction.getDirection(),
+                                    detailedTransaction.transaction.getValue());
+  }
+
   private static @NonNull List<Money.MobileCoin> toMobileCoinList(@NonNull List<MobileCoinLedgerWrapper.OwnedTxo> spent) {
     return Stream.of(spent)
                  .map(MobileCoinLedgerWrapper.OwnedTxo::getValue)
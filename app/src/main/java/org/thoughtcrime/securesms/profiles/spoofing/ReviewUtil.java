@@ -16,7 +16,6 @@ import org.thoughtcrime.securesms.dependencies.ApplicationDependencies;
 import org.thoughtcrime.securesms.groups.GroupId;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.recipients.RecipientId;
-import org.thoughtcrime.securesms.util.Base64;
 
 import java.io.IOException;
 import java.util.Collections;
@@ -112,8 +111,13 @@ public final class ReviewUtil {
   }
 
   private static @NonNull ProfileChangeDetails getProfileChangeDetails(@NonNull MessageRecord messageRecord) {
+    byte[] payload = messageRecord.getUpdatePayload();
+    if (payload == null) {
+      throw new IllegalArgumentException("Profile change has no details");
+    }
+
     try {
-      return ProfileChangeDetails.parseFrom(Base64.decode(messageRecord.getBody()));
+      return ProfileChangeDetails.parseFrom(payload);
     } catch (IOException e) {
       throw new IllegalArgumentException(e);
     }
@@ -156,6 +156,22 @@ public final class LiveRecipient {
     return updated;
   }
 
+  /**
+   * Same as {@link #resolve()}, but uses a record that has already been read from disk, e.g. as part of a batch.
+   */
+  @WorkerThread
+  @NonNull Recipient resolve(@NonNull RecipientRecord record) {
+    Recipient current = recipient.get();
+
+    if (!current.isResolving() || current.getId().isUnknown()) {
+      return current;
+    }
+
+    Recipient updated = buildAndCacheRecipient(record);
+    set(updated);
+    return updated;
+  }
+
   @WorkerThread
   public void refresh() {
     refresh(getId());
@@ -190,7 +206,10 @@ public final class LiveRecipient {
   }
 
   private @NonNull Recipient fetchAndCacheRecipientFromDisk(@NonNull RecipientId id) {
-    RecipientRecord  record  = recipientTable.getRecord(id);
+    return buildAndCacheRecipient(recipientTable.getRecord(id));
+  }
+
+  private @NonNull Recipient buildAndCacheRecipient(@NonNull RecipientRecord record) {
     RecipientDetails details;
     if (record.getGroupId() != null) {
       details = getGroupRecipientDetails(record);
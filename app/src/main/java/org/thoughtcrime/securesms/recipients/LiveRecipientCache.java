@@ -7,6 +7,7 @@ import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 
 import org.signal.core.util.ThreadUtil;
 import org.signal.core.util.concurrent.SignalExecutors;
@@ -15,6 +16,7 @@ import org.thoughtcrime.securesms.database.RecipientTable;
 import org.thoughtcrime.securesms.database.RecipientTable.MissingRecipientException;
 import org.thoughtcrime.securesms.database.SignalDatabase;
 import org.thoughtcrime.securesms.database.ThreadTable;
+import org.thoughtcrime.securesms.database.model.RecipientRecord;
 import org.thoughtcrime.securesms.database.model.ThreadRecord;
 import org.thoughtcrime.securesms.keyvalue.SignalStore;
 import org.signal.core.util.CursorUtil;
@@ -25,8 +27,11 @@ import org.whispersystems.signalservice.api.push.ACI;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -65,6 +70,15 @@ public final class LiveRecipientCache {
 
   @AnyThread
   @NonNull LiveRecipient getLive(@NonNull RecipientId id) {
+    return getLive(id, true);
+  }
+
+  /**
+   * @param resolveInBackground Whether a newly-created entry should be resolved on the resolve executor. Callers that are about to
+   *                            resolve it themselves can skip this to avoid reading it twice.
+   */
+  @AnyThread
+  private @NonNull LiveRecipient getLive(@NonNull RecipientId id, boolean resolveInBackground) {
     if (id.isUnknown()) return unknown;
 
     LiveRecipient live;
@@ -82,13 +96,47 @@ public final class LiveRecipientCache {
       }
     }
 
-    if (needsResolve) {
+    if (needsResolve && resolveInBackground) {
       resolveExecutor.execute(live::resolve);
     }
 
     return live;
   }
 
+  /**
+   * Returns fully-resolved recipients for all of the provided ids, in the same order. Anything that isn't already resolved in the
+   * cache is read from disk with a single query, rather than one query per recipient.
+   */
+  @WorkerThread
+  @NonNull List<Recipient> getResolved(@NonNull Collection<RecipientId> ids) {
+    List<LiveRecipient> lives      = new ArrayList<>(ids.size());
+    Set<RecipientId>    unresolved = new HashSet<>();
+
+    for (RecipientId id : ids) {
+      LiveRecipient live = getLive(id, false);
+      lives.add(live);
+
+      if (live.get().isResolving() && !id.isUnknown()) {
+        unresolved.add(id);
+      }
+    }
+
+    Map<RecipientId, RecipientRecord> records = unresolved.size() > 1 ? recipientTable.getRecords(unresolved) : Collections.emptyMap();
+    List<Recipient>                   resolved = new ArrayList<>(lives.size());
+
+    for (LiveRecipient live : lives) {
+      RecipientRecord record = records.get(live.getId());
+
+      if (record != null) {
+        resolved.add(live.resolve(record));
+      } else {
+        resolved.add(live.resolve());
+      }
+    }
+
+    return resolved;
+  }
+
   /**
    * Handles remapping cache entries when recipients are merged.
    */
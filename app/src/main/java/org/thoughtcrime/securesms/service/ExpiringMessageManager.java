@@ -1,32 +1,37 @@
 package org.thoughtcrime.securesms.service;
 
 import android.content.Context;
+import android.database.Cursor;
 
 import org.signal.core.util.logging.Log;
 import org.thoughtcrime.securesms.database.MessageTable;
 import org.thoughtcrime.securesms.database.SignalDatabase;
-import org.thoughtcrime.securesms.database.model.MessageRecord;
 
-import java.util.Comparator;
-import java.util.TreeSet;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
+/**
+ * Deletes disappearing messages once their timers run out. Only the id and expiration time of each pending message is kept in memory,
+ * and messages that expire together are deleted together in batches.
+ */
 public class ExpiringMessageManager {
 
   private static final String TAG = Log.tag(ExpiringMessageManager.class);
 
-  private final TreeSet<ExpiringMessageReference> expiringMessageReferences = new TreeSet<>(new ExpiringMessageComparator());
-  private final Executor                          executor                  = Executors.newSingleThreadExecutor();
+  /** The most messages we'll delete in a single transaction, so a big backlog doesn't hold the database for too long. */
+  private static final int MAX_BATCH_SIZE = 500;
 
-  private final MessageTable smsDatabase;
-  private final MessageTable mmsDatabase;
+  private final ExpiringMessageQueue expiringMessages = new ExpiringMessageQueue();
+  private final Executor             executor         = Executors.newSingleThreadExecutor();
+
+  private final MessageTable messageTable;
   private final Context      context;
 
   public ExpiringMessageManager(Context context) {
-    this.context     = context.getApplicationContext();
-    this.smsDatabase = SignalDatabase.messages();
-    this.mmsDatabase = SignalDatabase.messages();
+    this.context      = context.getApplicationContext();
+    this.messageTable = SignalDatabase.messages();
 
     executor.execute(new LoadTask());
     executor.execute(new ProcessTask());
@@ -36,34 +41,40 @@ public class ExpiringMessageManager {
     scheduleDeletion(id, mms, System.currentTimeMillis(), expiresInMillis);
   }
 
+  /**
+   * @param mms Unused, since all messages live in the same table now. Kept for existing callers.
+   */
   public void scheduleDeletion(long id, boolean mms, long startedAtTimestamp, long expiresInMillis) {
     long expiresAtMillis = startedAtTimestamp + expiresInMillis;
 
-    synchronized (expiringMessageReferences) {
-      expiringMessageReferences.add(new ExpiringMessageReference(id, mms, expiresAtMillis));
-      expiringMessageReferences.notifyAll();
+    synchronized (expiringMessages) {
+      expiringMessages.add(id, expiresAtMillis);
+      expiringMessages.notifyAll();
     }
   }
 
   public void checkSchedule() {
-    synchronized (expiringMessageReferences) {
-      expiringMessageReferences.notifyAll();
+    synchronized (expiringMessages) {
+      expiringMessages.notifyAll();
     }
   }
 
   private class LoadTask implements Runnable {
     public void run() {
-      MessageTable.MmsReader mmsReader = MessageTable.mmsReaderFor(mmsDatabase.getExpirationStartedMessages());
-
-      MessageRecord messageRecord;
-
-      while ((messageRecord = mmsReader.getNext()) != null) {
-        expiringMessageReferences.add(new ExpiringMessageReference(messageRecord.getId(),
-                                                                   messageRecord.isMms(),
-                                                                   messageRecord.getExpireStarted() + messageRecord.getExpiresIn()));
+      long startTime = System.currentTimeMillis();
+      int  count     = 0;
+
+      try (Cursor cursor = messageTable.getExpirationStartedMessageSchedule()) {
+        synchronized (expiringMessages) {
+          while (cursor.moveToNext()) {
+            expiringMessages.add(cursor.getLong(0), cursor.getLong(1));
+            count++;
+          }
+          expiringMessages.notifyAll();
+        }
       }
 
-      mmsReader.close();
+      Log.i(TAG, "Loaded " + count + " expiring messages in " + (System.currentTimeMillis() - startTime) + " ms");
     }
   }
 
@@ -71,21 +82,20 @@ public class ExpiringMessageManager {
   private class ProcessTask implements Runnable {
     public void run() {
       while (true) {
-        ExpiringMessageReference expiredMessage = null;
+        long[] expiredMessages = null;
 
-        synchronized (expiringMessageReferences) {
+        synchronized (expiringMessages) {
           try {
-            while (expiringMessageReferences.isEmpty()) expiringMessageReferences.wait();
+            while (expiringMessages.isEmpty()) expiringMessages.wait();
 
-            ExpiringMessageReference nextReference = expiringMessageReferences.first();
-            long                     waitTime      = nextReference.expiresAtMillis - System.currentTimeMillis();
+            long now      = System.currentTimeMillis();
+            long waitTime = expiringMessages.peekExpiresAt() - now;
 
             if (waitTime > 0) {
               ExpirationListener.setAlarm(context, waitTime);
-              expiringMessageReferences.wait(waitTime);
+              expiringMessages.wait(waitTime);
             } else {
-              expiredMessage = nextReference;
-              expiringMessageReferences.remove(nextReference);
+              expiredMessages = expiringMessages.pollExpired(now, MAX_BATCH_SIZE);
             }
 
           } catch (InterruptedException e) {
@@ -93,51 +103,15 @@ public class ExpiringMessageManager {
           }
         }
 
-        if (expiredMessage != null) {
-          if (expiredMessage.mms) mmsDatabase.deleteMessage(expiredMessage.id);
-          else                    smsDatabase.deleteMessage(expiredMessage.id);
+        if (expiredMessages != null) {
+          List<Long> ids = new ArrayList<>(expiredMessages.length);
+          for (long id : expiredMessages) {
+            ids.add(id);
+          }
+
+          messageTable.deleteExpiredMessages(ids);
         }
       }
     }
   }
-
-  private static class ExpiringMessageReference {
-    private final long    id;
-    private final boolean mms;
-    private final long    expiresAtMillis;
-
-    private ExpiringMessageReference(long id, boolean mms, long expiresAtMillis) {
-      this.id = id;
-      this.mms = mms;
-      this.expiresAtMillis = expiresAtMillis;
-    }
-
-    @Override
-    public boolean equals(Object other) {
-      if (other == null) return false;
-      if (!(other instanceof ExpiringMessageReference)) return false;
-
-      ExpiringMessageReference that = (ExpiringMessageReference)other;
-      return this.id == that.id && this.mms == that.mms && this.expiresAtMillis == that.expiresAtMillis;
-    }
-
-    @Override
-    public int hashCode() {
-      return (int)this.id ^ (mms ? 1 : 0) ^ (int)expiresAtMillis;
-    }
-  }
-
-  private static class ExpiringMessageComparator implements Comparator<ExpiringMessageReference> {
-    @Override
-    public int compare(ExpiringMessageReference lhs, ExpiringMessageReference rhs) {
-      if      (lhs.expiresAtMillis < rhs.expiresAtMillis) return -1;
-      else if (lhs.expiresAtMillis > rhs.expiresAtMillis) return 1;
-      else if (lhs.id < rhs.id)                           return -1;
-      else if (lhs.id > rhs.id)                           return 1;
-      else if (!lhs.mms && rhs.mms)                       return -1;
-      else if (lhs.mms && !rhs.mms)                       return 1;
-      else                                                return 0;
-    }
-  }
-
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.service;
+
+import java.util.Arrays;
+
+/**
+ * A min-heap of (message id, expires at) pairs, ordered by expiration time and then id. It's backed by a pair of primitive arrays so
+ * that tracking every disappearing message doesn't mean keeping an object around for each of them.
+ *
+ * Not thread safe.
+ */
+final class ExpiringMessageQueue {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private long[] ids        = new long[INITIAL_CAPACITY];
+  private long[] expiresAts = new long[INITIAL_CAPACITY];
+  private int    size;
+
+  void add(long id, long expiresAtMillis) {
+    if (size == ids.length) {
+      int capacity = ids.length * 2;
+      ids        = Arrays.copyOf(ids, capacity);
+      expiresAts = Arrays.copyOf(expiresAts, capacity);
+    }
+
+    ids[size]        = id;
+    expiresAts[size] = expiresAtMillis;
+    siftUp(size);
+    size++;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * @return The earliest expiration time in the queue. Only valid if the queue isn't empty.
+   */
+  long peekExpiresAt() {
+    return expiresAts[0];
+  }
+
+  /**
+   * Removes the message that expires first, and returns its id. Only valid if the queue isn't empty.
+   */
+  long poll() {
+    long id = ids[0];
+
+    size--;
+    ids[0]        = ids[size];
+    expiresAts[0] = expiresAts[size];
+
+    if (size > 0) {
+      siftDown(0);
+    }
+
+    return id;
+  }
+
+  /**
+   * Removes up to {@code limit} messages that expire at or before {@code nowMillis}, and returns their ids in expiration order.
+   */
+  long[] pollExpired(long nowMillis, int limit) {
+    long[] expired = new long[Math.min(limit, size)];
+    int    count   = 0;
+
+    while (count < expired.length && expiresAts[0] <= nowMillis) {
+      expired[count++] = poll();
+    }
+
+    return count == expired.length ? expired : Arrays.copyOf(expired, count);
+  }
+
+  private void siftUp(int index) {
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+
+      if (!isBefore(index, parent)) {
+        break;
+      }
+
+      swap(index, parent);
+      index = parent;
+    }
+  }
+
+  private void siftDown(int index) {
+    while (true) {
+      int left     = (index << 1) + 1;
+      int right    = left + 1;
+      int smallest = index;
+
+      if (left < size && isBefore(left, smallest))   smallest = left;
+      if (right < size && isBefore(right, smallest)) smallest = right;
+
+      if (smallest == index) {
+        break;
+      }
+
+      swap(index, smallest);
+      index = smallest;
+    }
+  }
+
+  private boolean isBefore(int a, int b) {
+    if (expiresAts[a] != expiresAts[b]) {
+      return expiresAts[a] < expiresAts[b];
+    }
+    return ids[a] < ids[b];
+  }
+
+  private void swap(int a, int b) {
+    long id        = ids[a];
+    long expiresAt = expiresAts[a];
+
+    ids[a]        = ids[b];
+    expiresAts[a] = expiresAts[b];
+    ids[b]        = id;
+    expiresAts[b] = expiresAt;
+  }
+}
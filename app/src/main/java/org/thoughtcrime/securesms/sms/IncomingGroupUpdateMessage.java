@@ -22,6 +22,10 @@ public final class IncomingGroupUpdateMessage extends IncomingTextMessage {
     this.groupContext = groupContext;
   }
 
+  public MessageGroupContext getGroupContext() {
+    return groupContext;
+  }
+
   @Override
   public boolean isGroup() {
     return true;
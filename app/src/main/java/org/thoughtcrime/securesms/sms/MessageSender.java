@@ -643,17 +643,11 @@ public class MessageSender {
                                .map(Contact.Avatar::getAttachment).withoutNulls()
                                .toList());
 
-      List<AttachmentCompressionJob> compressionJobs = Stream.of(attachments)
-                                                             .map(a -> AttachmentCompressionJob.fromAttachment((DatabaseAttachment) a, false, -1))
-                                                             .toList();
-
-      List<AttachmentMarkUploadedJob> fakeUploadJobs = Stream.of(attachments)
-                                                             .map(a -> new AttachmentMarkUploadedJob(messageId, ((DatabaseAttachment) a).getAttachmentId()))
-                                                             .toList();
-
-      ApplicationDependencies.getJobManager().startChain(compressionJobs)
-                                             .then(fakeUploadJobs)
-                                             .enqueue();
+      for (Attachment attachment : attachments) {
+        ApplicationDependencies.getJobManager().startChain(AttachmentCompressionJob.fromAttachment((DatabaseAttachment) attachment, false, -1))
+                                               .then(new AttachmentMarkUploadedJob(messageId, ((DatabaseAttachment) attachment).getAttachmentId()))
+                                               .enqueue();
+      }
 
       mmsDatabase.markAsSent(messageId, true);
       mmsDatabase.markUnidentified(messageId, true);
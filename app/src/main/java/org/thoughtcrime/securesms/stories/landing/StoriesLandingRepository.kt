@@ -3,6 +3,8 @@ package org.thoughtcrime.securesms.stories.landing
 import android.content.Context
 import io.reactivex.rxjava3.core.Completable
 import io.reactivex.rxjava3.core.Observable
+import io.reactivex.rxjava3.core.ObservableEmitter
+import io.reactivex.rxjava3.disposables.Disposable
 import io.reactivex.rxjava3.schedulers.Schedulers
 import org.signal.core.util.concurrent.SignalExecutors
 import org.thoughtcrime.securesms.conversation.ConversationMessage
@@ -12,7 +14,6 @@ import org.thoughtcrime.securesms.database.RxDatabaseObserver
 import org.thoughtcrime.securesms.database.SignalDatabase
 import org.thoughtcrime.securesms.database.model.DistributionListId
 import org.thoughtcrime.securesms.database.model.MessageRecord
-import org.thoughtcrime.securesms.database.model.StoryResult
 import org.thoughtcrime.securesms.database.model.StoryViewState
 import org.thoughtcrime.securesms.dependencies.ApplicationDependencies
 import org.thoughtcrime.securesms.jobs.MultiDeviceReadUpdateJob
@@ -33,75 +34,43 @@ class StoriesLandingRepository(context: Context) {
     }.subscribeOn(Schedulers.io())
   }
 
-  @Suppress("UsePropertyAccessSyntax")
+  /**
+   * Emits the landing page's items whenever the conversation list changes. Each change only reads the story index, and only the senders
+   * whose [StorySenderSummary] changed have their items rebuilt, with freshly read records. Everyone else keeps their existing item and
+   * subscriptions.
+   */
   fun getStories(): Observable<List<StoriesLandingItemData>> {
-    val storyRecipients: Observable<Map<Recipient, List<StoryResult>>> = RxDatabaseObserver
-      .conversationList
-      .toObservable()
-      .map {
-        val myStoriesId = SignalDatabase.recipients.getOrInsertFromDistributionListId(DistributionListId.MY_STORY)
-        val myStories = Recipient.resolved(myStoriesId)
-
-        val stories = SignalDatabase.messages.getOrderedStoryRecipientsAndIds(false)
-        val mapping: MutableMap<Recipient, List<StoryResult>> = mutableMapOf()
-
-        stories.forEach {
-          val recipient = Recipient.resolved(it.recipientId)
-          if (recipient.isDistributionList || (it.isOutgoing && !recipient.isInactiveGroup())) {
-            val list = mapping[myStories] ?: emptyList()
-            mapping[myStories] = list + it
-          }
-
-          if (!recipient.isDistributionList && !recipient.isBlocked && !recipient.isInactiveGroup()) {
-            val list = mapping[recipient] ?: emptyList()
-            mapping[recipient] = list + it
-          }
-        }
-
-        mapping
-      }
-
-    return storyRecipients.switchMap { map ->
-      val observables = map.map { (recipient, results) ->
-        val messages = results
-          .sortedBy { it.messageSentTimestamp }
-          .reversed()
-          .take(if (recipient.isMyStory) 2 else 1)
-          .map {
-            SignalDatabase.messages.getMessageRecord(it.messageId)
-          }
-
-        var sendingCount: Long = 0
-        var failureCount: Long = 0
-
-        if (recipient.isMyStory) {
-          SignalDatabase.messages.getMessages(results.map { it.messageId }).use { reader ->
-            var messageRecord: MessageRecord? = reader.getNext()
-            while (messageRecord != null) {
-              if (messageRecord.isOutgoing && (messageRecord.isPending || messageRecord.isMediaPending)) {
-                sendingCount++
-              } else if (messageRecord.isFailed) {
-                failureCount++
-              }
-
-              messageRecord = reader.getNext()
-            }
-          }
-        }
+    return Observable.create<List<StoriesLandingItemData>> { emitter ->
+      val model = LandingModel(emitter.serialize())
 
-        createStoriesLandingItemData(recipient, messages, sendingCount, failureCount)
-      }
+      val disposable = RxDatabaseObserver
+        .conversationList
+        .toObservable()
+        .map { getStorySenderSummaries() }
+        .subscribe(model::update, emitter::onError)
 
-      if (observables.isEmpty()) {
-        Observable.just(emptyList())
-      } else {
-        Observable.combineLatest(observables) {
-          it.filterIsInstance<StoriesLandingItemData>()
-        }
+      emitter.setCancellable {
+        disposable.dispose()
+        model.clear()
       }
     }.subscribeOn(Schedulers.io())
   }
 
+  private fun getStorySenderSummaries(): Map<RecipientId, StorySenderSummary> {
+    val myStoriesId = SignalDatabase.recipients.getOrInsertFromDistributionListId(DistributionListId.MY_STORY)
+    val stories = SignalDatabase.messages.getStoryIndex()
+    val recipients = Recipient.resolvedList(stories.map { it.recipientId }.toSet()).associateBy { it.id }
+
+    return StorySenderSummary.fromIndex(stories, recipients, myStoriesId)
+  }
+
+  private fun createStoriesLandingItemData(summary: StorySenderSummary): Observable<StoriesLandingItemData> {
+    val recipient = Recipient.resolved(summary.recipientId)
+    val messages = summary.latestStories.map { SignalDatabase.messages.getMessageRecord(it.messageId) }
+
+    return createStoriesLandingItemData(recipient, messages, summary.sendingCount, summary.failureCount)
+  }
+
   private fun createStoriesLandingItemData(sender: Recipient, messageRecords: List<MessageRecord>, sendingCount: Long, failureCount: Long): Observable<StoriesLandingItemData> {
     val itemDataObservable = Observable.create<StoriesLandingItemData> { emitter ->
       fun refresh(sender: Recipient) {
@@ -154,6 +123,66 @@ class StoriesLandingRepository(context: Context) {
     }
   }
 
+  /**
+   * The current item for each sender, each backed by its own subscription. Like combineLatest, nothing is emitted until every sender has
+   * an item.
+   */
+  private inner class LandingModel(private val emitter: ObservableEmitter<List<StoriesLandingItemData>>) {
+
+    private val entries: MutableMap<RecipientId, Entry> = LinkedHashMap()
+    private var hasEmitted = false
+
+    @Synchronized
+    fun update(summaries: Map<RecipientId, StorySenderSummary>) {
+      val removed = entries.keys - summaries.keys
+      removed.forEach { entries.remove(it)?.disposable?.dispose() }
+
+      val changed = summaries.values.filter { entries[it.recipientId]?.summary != it }
+
+      for (summary in changed) {
+        entries.remove(summary.recipientId)?.disposable?.dispose()
+
+        val entry = Entry(summary)
+        entries[summary.recipientId] = entry
+        entry.disposable = createStoriesLandingItemData(summary).subscribe({ onItemChanged(entry, it) }, emitter::onError)
+      }
+
+      if (removed.isNotEmpty() || changed.isNotEmpty() || !hasEmitted) {
+        emitIfReady()
+      }
+    }
+
+    @Synchronized
+    fun clear() {
+      entries.values.forEach { it.disposable?.dispose() }
+      entries.clear()
+    }
+
+    @Synchronized
+    private fun onItemChanged(entry: Entry, item: StoriesLandingItemData) {
+      if (entries[entry.summary.recipientId] !== entry) {
+        return
+      }
+
+      entry.item = item
+      emitIfReady()
+    }
+
+    private fun emitIfReady() {
+      val items = entries.values.mapNotNull { it.item }
+
+      if (items.size == entries.size) {
+        hasEmitted = true
+        emitter.onNext(items)
+      }
+    }
+  }
+
+  private class Entry(val summary: StorySenderSummary) {
+    var disposable: Disposable? = null
+    var item: StoriesLandingItemData? = null
+  }
+
   fun setHideStory(recipientId: RecipientId, hideStory: Boolean): Completable {
     return Completable.fromAction {
       SignalDatabase.recipients.setHideStory(recipientId, hideStory)
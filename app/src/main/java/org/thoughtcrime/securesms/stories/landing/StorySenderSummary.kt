@@ -0,0 +1,60 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.stories.landing
+
+import org.thoughtcrime.securesms.database.model.StoryIndexEntry
+import org.thoughtcrime.securesms.recipients.Recipient
+import org.thoughtcrime.securesms.recipients.RecipientId
+
+/**
+ * Everything the stories landing page derives from the story index for a single sender: their latest stories (two for My Story, one
+ * for everyone else) along with their state, and for My Story, how many are still sending or have failed. A sender's item only needs to be rebuilt when this
+ * changes, which includes its latest stories being read or receiving receipts.
+ */
+data class StorySenderSummary(
+  val recipientId: RecipientId,
+  val latestStories: List<StoryIndexEntry>,
+  val sendingCount: Long,
+  val failureCount: Long
+) {
+  companion object {
+    /**
+     * Groups [stories] by the sender they're shown under. Outgoing stories and stories sent to distribution lists are shown under My
+     * Story, and everything else is shown under the conversation it was posted to, as long as that conversation isn't blocked or an
+     * inactive group.
+     *
+     * @param recipients The resolved recipient for every [StoryIndexEntry.recipientId] in [stories].
+     */
+    fun fromIndex(stories: List<StoryIndexEntry>, recipients: Map<RecipientId, Recipient>, myStoriesId: RecipientId): Map<RecipientId, StorySenderSummary> {
+      val storiesBySender: MutableMap<RecipientId, MutableList<StoryIndexEntry>> = LinkedHashMap()
+
+      for (story in stories) {
+        val recipient = recipients[story.recipientId] ?: continue
+
+        if (recipient.isDistributionList || (story.isOutgoing && !recipient.isInactiveGroup)) {
+          storiesBySender.getOrPut(myStoriesId) { ArrayList() } += story
+        }
+
+        if (!recipient.isDistributionList && !recipient.isBlocked && !recipient.isInactiveGroup) {
+          storiesBySender.getOrPut(story.recipientId) { ArrayList() } += story
+        }
+      }
+
+      return storiesBySender.mapValues { (recipientId, senderStories) ->
+        val isMyStory = recipientId == myStoriesId
+
+        StorySenderSummary(
+          recipientId = recipientId,
+          latestStories = senderStories
+            .sortedByDescending { it.messageSentTimestamp }
+            .take(if (isMyStory) 2 else 1),
+          sendingCount = if (isMyStory) senderStories.count { it.isOutgoing && it.isSending }.toLong() else 0,
+          failureCount = if (isMyStory) senderStories.count { !(it.isOutgoing && it.isSending) && it.isFailed }.toLong() else 0
+        )
+      }
+    }
+  }
+}
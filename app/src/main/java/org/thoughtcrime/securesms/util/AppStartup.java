@@ -6,13 +6,20 @@ import android.os.Looper;
 
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import org.signal.core.util.Stopwatch;
 import org.signal.core.util.concurrent.SignalExecutors;
 import org.signal.core.util.logging.Log;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Manages our app startup flow.
@@ -29,10 +36,11 @@ public final class AppStartup {
 
   private static final AppStartup INSTANCE = new AppStartup();
 
-  private final List<Task> blocking;
-  private final List<Task> nonBlocking;
-  private final List<Task> postRender;
-  private final Handler    postRenderHandler;
+  private final List<Task>        blocking;
+  private final Map<String, Task> blockingByName;
+  private final List<Task>        nonBlocking;
+  private final List<Task>        postRender;
+  private final Handler           postRenderHandler;
 
   private int outstandingCriticalRenderEvents;
 
@@ -46,6 +54,7 @@ public final class AppStartup {
 
   private AppStartup() {
     this.blocking          = new LinkedList<>();
+    this.blockingByName    = new HashMap<>();
     this.nonBlocking       = new LinkedList<>();
     this.postRender        = new LinkedList<>();
     this.postRenderHandler = new Handler(Looper.getMainLooper());
@@ -56,11 +65,56 @@ public final class AppStartup {
   }
 
   /**
-   * Schedules a task that must happen during app startup in a blocking fashion.
+   * Schedules a task that must happen during app startup in a blocking fashion. It will run on the main
+   * thread after every blocking task that was added before it.
    */
   @MainThread
   public @NonNull AppStartup addBlocking(@NonNull String name, @NonNull Runnable task) {
-    blocking.add(new Task(name, task));
+    List<String> dependencies = new ArrayList<>(blocking.size());
+    for (Task previous : blocking) {
+      dependencies.add(previous.getName());
+    }
+    return addBlockingTask(name, true, dependencies, task);
+  }
+
+  /**
+   * Schedules a task that must happen during app startup in a blocking fashion. It will run on the main
+   * thread once all of the named blocking tasks have finished, which must have already been added.
+   */
+  @MainThread
+  public @NonNull AppStartup addBlocking(@NonNull String name, @NonNull List<String> dependencies, @NonNull Runnable task) {
+    return addBlockingTask(name, true, dependencies, task);
+  }
+
+  /**
+   * Schedules a task that must finish before app startup continues, but that doesn't need to happen on
+   * the main thread. It will run on a background thread once all of the named blocking tasks have
+   * finished, in parallel with anything that doesn't depend on it.
+   */
+  @MainThread
+  public @NonNull AppStartup addBlockingInBackground(@NonNull String name, @NonNull List<String> dependencies, @NonNull Runnable task) {
+    return addBlockingTask(name, false, dependencies, task);
+  }
+
+  private @NonNull AppStartup addBlockingTask(@NonNull String name, boolean mainThread, @NonNull List<String> dependencyNames, @NonNull Runnable runnable) {
+    if (blockingByName.containsKey(name)) {
+      throw new IllegalArgumentException("Duplicate startup task: " + name);
+    }
+
+    List<Task> dependencies = new ArrayList<>(dependencyNames.size());
+    for (String dependencyName : dependencyNames) {
+      Task dependency = blockingByName.get(dependencyName);
+      if (dependency == null) {
+        throw new IllegalArgumentException("Startup task " + name + " depends on " + dependencyName + ", which hasn't been added yet.");
+      }
+      dependencies.add(dependency);
+    }
+
+    Task task = new Task(name, runnable, mainThread, dependencies);
+
+    blocking.add(task);
+    blockingByName.put(name, task);
+
     return this;
   }
 
@@ -139,28 +193,114 @@ public final class AppStartup {
    */
   @MainThread
   public void execute() {
-    Stopwatch stopwatch = new Stopwatch("init");
-
-    for (Task task : blocking) {
-      task.getRunnable().run();
-      stopwatch.split(task.getName());
-    }
-    blocking.clear();
+    SignalTrace.beginSection("AppStartup#blocking");
+    executeBlocking();
+    SignalTrace.endSection();
 
     for (Task task : nonBlocking) {
       SignalExecutors.BOUNDED.execute(task.getRunnable());
     }
     nonBlocking.clear();
 
-    stopwatch.split("schedule-non-blocking");
-    stopwatch.stop(TAG);
-
     postRenderHandler.postDelayed(() -> {
       Log.i(TAG, "Assuming the application has started in the background. Running post-render tasks.");
       executePostRender();
     }, UI_WAIT_TIME);
   }
 
+  /**
+   * Runs the blocking tasks as a dependency graph. Tasks are only ever allowed to depend on tasks that were
+   * added before them, so running the main thread tasks in the order they were added can never deadlock.
+   * Background tasks are handed to the startup pool up front and each one waits for its own dependencies.
+   */
+  @MainThread
+  private void executeBlocking() {
+    long start = System.nanoTime();
+
+    for (Task task : blocking) {
+      if (!task.isMainThread()) {
+        SignalExecutors.UNBOUNDED.execute(() -> {
+          try {
+            task.run(start);
+          } catch (RuntimeException | Error e) {
+            Log.w(TAG, "Startup task " + task.getName() + " failed in the background.", e);
+          }
+        });
+      }
+    }
+
+    Task previousOnMainThread = null;
+    for (Task task : blocking) {
+      if (task.isMainThread()) {
+        task.setPreviousOnMainThread(previousOnMainThread);
+        task.run(start);
+        previousOnMainThread = task;
+      }
+    }
+
+    for (Task task : blocking) {
+      task.await();
+    }
+
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    List<Task>   criticalPath = getCriticalPath(blocking);
+    List<String> pathNames    = new ArrayList<>(criticalPath.size());
+    for (Task task : criticalPath) {
+      pathNames.add(task.getName());
+    }
+
+    StringBuilder timings = new StringBuilder();
+    for (Task task : blocking) {
+      timings.append(task.getName()).append(task.isMainThread() ? "" : "*").append(": ").append(task.getDurationMs()).append(", ");
+    }
+    Log.d(TAG, "[init] " + timings + "total: " + elapsed + " (* = background)");
+    Log.d(TAG, "[init] Critical path: " + Util.join(pathNames, " -> "));
+
+    Map<String, Long> taskDurations         = new LinkedHashMap<>();
+    Map<String, Long> criticalPathDurations = new LinkedHashMap<>();
+    for (Task task : blocking) {
+      taskDurations.put(task.getName(), task.getDurationMs());
+    }
+    for (Task task : criticalPath) {
+      criticalPathDurations.put(task.getName(), task.getDurationMs());
+    }
+    SignalLocalMetrics.StartupTasks.onBlockingTasksFinished(taskDurations, criticalPathDurations);
+
+    blocking.clear();
+    blockingByName.clear();
+  }
+
+  /**
+   * Walks back from the task that finished last, always following the dependency that finished last, which
+   * gives us the chain of tasks that actually determined how long startup blocked. Main thread tasks also
+   * implicitly wait on whatever ran on the main thread before them, so that counts as a dependency here.
+   */
+  private static @NonNull List<Task> getCriticalPath(@NonNull List<Task> tasks) {
+    Task current = null;
+    for (Task task : tasks) {
+      if (current == null || task.getEndTime() > current.getEndTime()) {
+        current = task;
+      }
+    }
+
+    List<Task> path = new ArrayList<>();
+    while (current != null) {
+      path.add(current);
+
+      Task latest = current.getPreviousOnMainThread();
+      for (Task dependency : current.getDependencies()) {
+        if (latest == null || dependency.getEndTime() > latest.getEndTime()) {
+          latest = dependency;
+        }
+      }
+      current = latest;
+    }
+
+    Collections.reverse(path);
+    return path;
+  }
+
   private void executePostRender() {
     for (Task task : postRender) {
       SignalExecutors.BOUNDED.execute(task.getRunnable());
@@ -168,13 +308,29 @@ public final class AppStartup {
     postRender.clear();
   }
 
-  private class Task {
-    private final String   name;
-    private final Runnable runnable;
+  private static class Task {
+    private final String         name;
+    private final Runnable       runnable;
+    private final boolean        mainThread;
+    private final List<Task>     dependencies;
+    private final CountDownLatch done;
+
+    private volatile long      startTime;
+    private volatile long      endTime;
+    private volatile Throwable error;
+
+    private Task previousOnMainThread;
 
     protected Task(@NonNull String name, @NonNull Runnable runnable) {
-      this.name = name;
-      this.runnable = runnable;
+      this(name, runnable, true, Collections.emptyList());
+    }
+
+    protected Task(@NonNull String name, @NonNull Runnable runnable, boolean mainThread, @NonNull List<Task> dependencies) {
+      this.name         = name;
+      this.runnable     = runnable;
+      this.mainThread   = mainThread;
+      this.dependencies = dependencies;
+      this.done         = new CountDownLatch(1);
     }
 
     @NonNull String getName() {
@@ -184,5 +340,63 @@ public final class AppStartup {
     public @NonNull Runnable getRunnable() {
       return runnable;
     }
+
+    boolean isMainThread() {
+      return mainThread;
+    }
+
+    @NonNull List<Task> getDependencies() {
+      return dependencies;
+    }
+
+    @Nullable Task getPreviousOnMainThread() {
+      return previousOnMainThread;
+    }
+
+    void setPreviousOnMainThread(@Nullable Task previousOnMainThread) {
+      this.previousOnMainThread = previousOnMainThread;
+    }
+
+    /** Relative to the start of {@link #executeBlocking()}, in nanoseconds. */
+    long getEndTime() {
+      return endTime;
+    }
+
+    long getDurationMs() {
+      return TimeUnit.NANOSECONDS.toMillis(endTime - startTime);
+    }
+
+    void run(long executionStart) {
+      try {
+        for (Task dependency : dependencies) {
+          dependency.await();
+        }
+
+        startTime = System.nanoTime() - executionStart;
+        runnable.run();
+      } catch (RuntimeException | Error e) {
+        error = e;
+        throw e;
+      } finally {
+        endTime = System.nanoTime() - executionStart;
+        done.countDown();
+      }
+    }
+
+    /**
+     * Blocks until the task has finished. If it failed, the failure is rethrown here, so that a task that
+     * failed in the background still takes down startup just like it would have on the main thread.
+     */
+    void await() {
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+
+      if (error != null) {
+        throw new IllegalStateException("Startup task " + name + " failed!", error);
+      }
+    }
   }
 }
@@ -1,27 +1,86 @@
 package org.thoughtcrime.securesms.util;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 
+import org.signal.core.util.logging.Log;
+import org.thoughtcrime.securesms.database.EarlyMessageTable;
+import org.thoughtcrime.securesms.database.SignalDatabase;
 import org.thoughtcrime.securesms.database.model.ServiceMessageId;
 import org.thoughtcrime.securesms.recipients.RecipientId;
 import org.whispersystems.signalservice.api.messages.SignalServiceContent;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import kotlin.Pair;
 
 /**
  * Sometimes a message that is referencing another message can arrive out of order. In these cases,
- * we want to temporarily hold on (i.e. keep a memory cache) to these messages and apply them after
- * we receive the referenced message.
+ * we want to temporarily hold on to these messages and apply them after we receive the referenced message.
+ *
+ * Entries are kept in a bounded memory cache. When that fills up, the oldest entries are spilled to the
+ * {@link EarlyMessageTable}, where they are kept until they are retrieved or expire.
  */
 public final class EarlyMessageCache {
 
-  private final LRUCache<ServiceMessageId, List<SignalServiceContent>>   cache   = new LRUCache<>(100);
-  private final LRUCache<ServiceMessageId, List<EarlyMessageCacheEntry>> cacheV2 = new LRUCache<>(100);
+  private static final String TAG = Log.tag(EarlyMessageCache.class);
+
+  private static final int  MEMORY_CACHE_SIZE = 100;
+  private static final int  MAX_PERSISTED     = 5000;
+  private static final long MAX_AGE           = TimeUnit.DAYS.toMillis(1);
+  private static final long TRIM_INTERVAL     = TimeUnit.MINUTES.toMillis(5);
+
+  private final LRUCache<ServiceMessageId, List<SignalServiceContent>> cache = new LRUCache<ServiceMessageId, List<SignalServiceContent>>(MEMORY_CACHE_SIZE) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<ServiceMessageId, List<SignalServiceContent>> eldest) {
+      boolean remove = super.removeEldestEntry(eldest);
+      if (remove) {
+        drops += eldest.getValue().size();
+      }
+      return remove;
+    }
+  };
+
+  /**
+   * Insertion-ordered, like the {@link LRUCache} it replaced (which never enabled access order), so the entries spilled first are the
+   * ones stored first. Storing another entry for an id already in the cache doesn't move it.
+   */
+  private final LinkedHashMap<ServiceMessageId, List<TimestampedEntry>> cacheV2 = new LinkedHashMap<>();
+
+  private final LongSupplier clock;
+
+  /** Lazily loaded index of everything in the persisted tier, so that we only hit disk when we know there's something there. */
+  private Set<ServiceMessageId> persistedIds;
+  private long                  lastTrimTime;
+
+  private long hits;
+  private long drops;
+  private long spilled;
+  private long drained;
+  private long drainedAgeTotal;
+  private long drainedAgeMax;
+
+  public EarlyMessageCache() {
+    this(System::currentTimeMillis);
+  }
+
+  @VisibleForTesting
+  EarlyMessageCache(@NonNull LongSupplier clock) {
+    this.clock = clock;
+  }
 
   /**
    * @param targetSender        The sender of the message this message depends on.
@@ -44,16 +103,20 @@ public final class EarlyMessageCache {
                                  long targetSentTimestamp,
                                  @NonNull EarlyMessageCacheEntry cacheEntry)
   {
-    ServiceMessageId             messageId    = new ServiceMessageId(targetSender, targetSentTimestamp);
-    List<EarlyMessageCacheEntry> envelopeList = cacheV2.get(messageId);
+    ServiceMessageId       messageId    = new ServiceMessageId(targetSender, targetSentTimestamp);
+    List<TimestampedEntry> envelopeList = cacheV2.get(messageId);
 
     if (envelopeList == null) {
       envelopeList = new LinkedList<>();
     }
 
-    envelopeList.add(cacheEntry);
+    envelopeList.add(new TimestampedEntry(cacheEntry, clock.getAsLong()));
 
     cacheV2.put(messageId, envelopeList);
+
+    if (cacheV2.size() > MEMORY_CACHE_SIZE) {
+      spillEldest();
+    }
   }
 
   /**
@@ -63,11 +126,76 @@ public final class EarlyMessageCache {
    * @param sentTimestamp The sent timestamp of the message in question.
    */
   public synchronized Optional<List<SignalServiceContent>> retrieve(@NonNull RecipientId sender, long sentTimestamp) {
-    return Optional.ofNullable(cache.remove(new ServiceMessageId(sender, sentTimestamp)));
+    List<SignalServiceContent> contents = cache.remove(new ServiceMessageId(sender, sentTimestamp));
+
+    if (contents != null) {
+      hits++;
+    }
+
+    return Optional.ofNullable(contents);
   }
 
   public synchronized Optional<List<EarlyMessageCacheEntry>> retrieveV2(@NonNull RecipientId sender, long sentTimestamp) {
-    return Optional.ofNullable(cacheV2.remove(new ServiceMessageId(sender, sentTimestamp)));
+    ServiceMessageId messageId = new ServiceMessageId(sender, sentTimestamp);
+    return Optional.ofNullable(retrieveAllV2(Collections.singleton(messageId)).get(messageId));
+  }
+
+  /**
+   * Returns and removes any content that is dependent on any of the provided message ids, reading from both the memory and disk tiers
+   * in a single pass. Entries for each id are returned in the order they were stored. Entries older than {@link #MAX_AGE} are dropped
+   * rather than returned.
+   */
+  public synchronized @NonNull Map<ServiceMessageId, List<EarlyMessageCacheEntry>> retrieveAllV2(@NonNull Collection<ServiceMessageId> messageIds) {
+    Map<ServiceMessageId, List<EarlyMessageCacheEntry>> results = new HashMap<>();
+    long                                                now     = clock.getAsLong();
+
+    Set<ServiceMessageId> onDisk = new HashSet<>();
+    for (ServiceMessageId id : messageIds) {
+      if (getPersistedIds().contains(id)) {
+        onDisk.add(id);
+      }
+    }
+
+    if (!onDisk.isEmpty()) {
+      Map<ServiceMessageId, List<Pair<Long, EarlyMessageCacheEntry>>> persisted = SignalDatabase.earlyMessages().removeAll(onDisk, now - MAX_AGE);
+      persistedIds.removeAll(onDisk);
+
+      for (Map.Entry<ServiceMessageId, List<Pair<Long, EarlyMessageCacheEntry>>> entry : persisted.entrySet()) {
+        List<EarlyMessageCacheEntry> list = new ArrayList<>(entry.getValue().size());
+        for (Pair<Long, EarlyMessageCacheEntry> pair : entry.getValue()) {
+          list.add(pair.getSecond());
+          onDrained(now - pair.getFirst());
+        }
+        results.put(entry.getKey(), list);
+      }
+    }
+
+    for (ServiceMessageId id : messageIds) {
+      List<TimestampedEntry> inMemory = cacheV2.remove(id);
+      if (inMemory == null) {
+        continue;
+      }
+
+      for (TimestampedEntry entry : inMemory) {
+        if (now - entry.insertedAt > MAX_AGE) {
+          drops++;
+          continue;
+        }
+
+        List<EarlyMessageCacheEntry> list = results.get(id);
+        if (list == null) {
+          list = new ArrayList<>(inMemory.size());
+          results.put(id, list);
+        }
+
+        list.add(entry.entry);
+        onDrained(now - entry.insertedAt);
+      }
+    }
+
+    hits += results.size();
+
+    return results;
   }
 
   /**
@@ -77,6 +205,95 @@ public final class EarlyMessageCache {
   public synchronized @NonNull Collection<ServiceMessageId> getAllReferencedIds() {
     Set<ServiceMessageId> allIds = new HashSet<>(cache.keySet());
     allIds.addAll(cacheV2.keySet());
+    allIds.addAll(getPersistedIds());
     return allIds;
   }
+
+  public synchronized @NonNull Stats getStats() {
+    return new Stats(hits, drops, spilled, drained, drained > 0 ? drainedAgeTotal / drained : 0, drainedAgeMax);
+  }
+
+  private void spillEldest() {
+    long                                                          now      = clock.getAsLong();
+    Iterator<Map.Entry<ServiceMessageId, List<TimestampedEntry>>> iterator = cacheV2.entrySet().iterator();
+    Map.Entry<ServiceMessageId, List<TimestampedEntry>>           eldest   = iterator.next();
+
+    iterator.remove();
+
+    EarlyMessageTable                        table   = SignalDatabase.earlyMessages();
+    List<Pair<EarlyMessageCacheEntry, Long>> toSpill = new ArrayList<>(eldest.getValue().size());
+
+    for (TimestampedEntry entry : eldest.getValue()) {
+      if (now - entry.insertedAt > MAX_AGE) {
+        drops++;
+      } else {
+        toSpill.add(new Pair<>(entry.entry, entry.insertedAt));
+      }
+    }
+
+    if (!toSpill.isEmpty()) {
+      table.insert(eldest.getKey(), toSpill);
+      getPersistedIds().add(eldest.getKey());
+      spilled += toSpill.size();
+    }
+
+    if (now - lastTrimTime > TRIM_INTERVAL) {
+      lastTrimTime = now;
+
+      int dropped = table.trim(now - MAX_AGE, MAX_PERSISTED);
+      if (dropped > 0) {
+        drops       += dropped;
+        persistedIds = null;
+      }
+    }
+  }
+
+  private @NonNull Set<ServiceMessageId> getPersistedIds() {
+    if (persistedIds == null) {
+      persistedIds = new HashSet<>(SignalDatabase.earlyMessages().getAllReferencedIds(clock.getAsLong() - MAX_AGE));
+      if (persistedIds.size() > 0) {
+        Log.i(TAG, "Loaded " + persistedIds.size() + " persisted early message id(s).");
+      }
+    }
+    return persistedIds;
+  }
+
+  private void onDrained(long age) {
+    drained++;
+    drainedAgeTotal += age;
+    drainedAgeMax    = Math.max(drainedAgeMax, age);
+  }
+
+  private static final class TimestampedEntry {
+    private final EarlyMessageCacheEntry entry;
+    private final long                   insertedAt;
+
+    private TimestampedEntry(@NonNull EarlyMessageCacheEntry entry, long insertedAt) {
+      this.entry      = entry;
+      this.insertedAt = insertedAt;
+    }
+  }
+
+  public static final class Stats {
+    public final long hits;
+    public final long drops;
+    public final long spilled;
+    public final long drained;
+    public final long averageDrainedAge;
+    public final long maxDrainedAge;
+
+    private Stats(long hits, long drops, long spilled, long drained, long averageDrainedAge, long maxDrainedAge) {
+      this.hits              = hits;
+      this.drops             = drops;
+      this.spilled           = spilled;
+      this.drained           = drained;
+      this.averageDrainedAge = averageDrainedAge;
+      this.maxDrainedAge     = maxDrainedAge;
+    }
+
+    @Override
+    public @NonNull String toString() {
+      return "Stats{hits=" + hits + ", drops=" + drops + ", spilled=" + spilled + ", drained=" + drained + ", averageDrainedAge=" + averageDrainedAge + " ms, maxDrainedAge=" + maxDrainedAge + " ms}";
+    }
+  }
 }
@@ -24,6 +24,7 @@ import java.util.concurrent.ExecutionException;
 public final class ImageCompressionUtil {
 
   private static final String                  TAG                   = Log.tag(ImageCompressionUtil.class);
+  private static final MemoryBudget            DECODE_BUDGET         = new MemoryBudget(Runtime.getRuntime().maxMemory() / 4);
   private static final RequestListener<Bitmap> bitmapRequestListener = new RequestListener<>() {
     @Override
     public boolean onLoadFailed(@Nullable GlideException e, Object model, Target<Bitmap> target, boolean isFirstResource) {
@@ -67,6 +68,68 @@ public final class ImageCompressionUtil {
     }
   }
 
+  /**
+   * A result satisfying the provided constraints at the largest of {@param dimensionTargets} that fits in {@param maxBytes}, or null if
+   * none of them do. Targets should be largest first.
+   * <p>
+   * The image is only decoded once, subsampled to the first target, and smaller targets are scaled down from that. Decodes share a
+   * memory budget, so any number of these can run at once without holding too many full size bitmaps.
+   *
+   * @param sourceWidth  The width of the image, or 0 if unknown. Only used to estimate how much memory the decode will need.
+   * @param sourceHeight The height of the image, or 0 if unknown.
+   */
+  @WorkerThread
+  public static @Nullable Result compressWithinConstraints(@NonNull Context context,
+                                                           @NonNull String mimeType,
+                                                           @NonNull Object glideModel,
+                                                           int sourceWidth,
+                                                           int sourceHeight,
+                                                           @NonNull int[] dimensionTargets,
+                                                           int maxBytes,
+                                                           @IntRange(from = 0, to = 100) int quality)
+      throws BitmapDecodingException
+  {
+    if (dimensionTargets.length == 0) {
+      return null;
+    }
+
+    long reservedBytes = estimateDecodedBytes(sourceWidth, sourceHeight, dimensionTargets[0]) + 2L * maxBytes;
+    if (dimensionTargets.length > 1) {
+      reservedBytes += estimateDecodedBytes(sourceWidth, sourceHeight, dimensionTargets[1]);
+    }
+
+    try (MemoryBudget.Reservation ignored = DECODE_BUDGET.reserve(reservedBytes)) {
+      Bitmap                decoded = decode(context, glideModel, dimensionTargets[0]);
+      Bitmap.CompressFormat format  = mimeTypeToCompressFormat(mimeType);
+
+      try {
+        for (int target : dimensionTargets) {
+          Bitmap scaled = BitmapUtil.createScaledBitmap(decoded, target, target);
+
+          try {
+            byte[] data = compress(scaled, format, quality);
+
+            if (data.length <= maxBytes) {
+              return new Result(data, compressFormatToMimeType(format), scaled.getWidth(), scaled.getHeight());
+            }
+
+            Log.d(TAG, "Compressed to " + data.length + " bytes at " + target + "px, which is over the limit of " + maxBytes + " bytes.");
+          } finally {
+            if (scaled != decoded) {
+              scaled.recycle();
+            }
+          }
+        }
+      } finally {
+        decoded.recycle();
+      }
+
+      return null;
+    } catch (InterruptedException e) {
+      throw new BitmapDecodingException(e);
+    }
+  }
+
   /**
    * Compresses the image to match the requested parameters.
    */
@@ -78,6 +141,18 @@ public final class ImageCompressionUtil {
                                           @IntRange(from = 0, to = 100) int quality)
       throws BitmapDecodingException
   {
+    Bitmap                scaledBitmap = decode(context, glideModel, maxDimension);
+    Bitmap.CompressFormat format       = mimeTypeToCompressFormat(mimeType);
+    byte[]                data         = compress(scaledBitmap, format, quality);
+
+    return new Result(data, compressFormatToMimeType(format), scaledBitmap.getWidth(), scaledBitmap.getHeight());
+  }
+
+  /**
+   * Decodes the image to fit within {@param maxDimension}. Glide subsamples while decoding, so we never hold the full size image.
+   */
+  @WorkerThread
+  private static @NonNull Bitmap decode(@NonNull Context context, @NonNull Object glideModel, int maxDimension) throws BitmapDecodingException {
     Bitmap scaledBitmap;
 
     try {
@@ -101,13 +176,28 @@ public final class ImageCompressionUtil {
       throw new BitmapDecodingException("Unable to decode image");
     }
 
+    return scaledBitmap;
+  }
+
+  private static @NonNull byte[] compress(@NonNull Bitmap bitmap, @NonNull Bitmap.CompressFormat format, int quality) {
     ByteArrayOutputStream output = new ByteArrayOutputStream();
-    Bitmap.CompressFormat format = mimeTypeToCompressFormat(mimeType);
-    scaledBitmap.compress(format, quality, output);
+    bitmap.compress(format, quality, output);
 
-    byte[] data = output.toByteArray();
+    return output.toByteArray();
+  }
 
-    return new Result(data, compressFormatToMimeType(format), scaledBitmap.getWidth(), scaledBitmap.getHeight());
+  /**
+   * How many bytes an ARGB_8888 decode of the image will take once it's been fit within {@param maxDimension}. If we don't know the
+   * size of the image, assume it fills the whole square.
+   */
+  private static long estimateDecodedBytes(int sourceWidth, int sourceHeight, int maxDimension) {
+    if (sourceWidth <= 0 || sourceHeight <= 0) {
+      return 4L * maxDimension * maxDimension;
+    }
+
+    double scale = Math.min(1, maxDimension / (double) Math.max(sourceWidth, sourceHeight));
+
+    return 4L * Math.round(sourceWidth * scale) * Math.round(sourceHeight * scale);
   }
 
   private static @NonNull Bitmap.CompressFormat mimeTypeToCompressFormat(@NonNull String mimeType) {
@@ -464,8 +464,13 @@ public class MediaUtil {
 
     MediaMetadataRetriever mediaMetadataRetriever = new MediaMetadataRetriever();
 
-    MediaMetadataRetrieverUtil.setDataSource(mediaMetadataRetriever, dataSource);
-    return mediaMetadataRetriever.getFrameAtTime(timeUs);
+    try {
+      MediaMetadataRetrieverUtil.setDataSource(mediaMetadataRetriever, dataSource);
+      return mediaMetadataRetriever.getFrameAtTime(timeUs);
+    } finally {
+      mediaMetadataRetriever.release();
+      dataSource.close();
+    }
   }
 
   public static @Nullable String getDiscreteMimeType(@NonNull String mimeType) {
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Caps how many bytes of something expensive, like decoded bitmaps, can be held at once across threads. A caller that needs more than
+ * is left waits until enough is released. A request larger than the whole budget is let through once nothing else is held, so it
+ * can't wait forever.
+ */
+public final class MemoryBudget {
+
+  private final long limit;
+
+  private long inUse;
+
+  public MemoryBudget(long limit) {
+    this.limit = limit;
+  }
+
+  /**
+   * Blocks until {@param bytes} are available, and holds them until the returned reservation is closed.
+   */
+  @WorkerThread
+  public @NonNull Reservation reserve(long bytes) throws InterruptedException {
+    synchronized (this) {
+      while (inUse > 0 && inUse + bytes > limit) {
+        wait();
+      }
+      inUse += bytes;
+    }
+
+    return new Reservation(bytes);
+  }
+
+  public long getLimit() {
+    return limit;
+  }
+
+  public synchronized long getInUse() {
+    return inUse;
+  }
+
+  private synchronized void release(long bytes) {
+    inUse -= bytes;
+    notifyAll();
+  }
+
+  public final class Reservation implements AutoCloseable {
+    private final long bytes;
+
+    private boolean released;
+
+    private Reservation(long bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    public void close() {
+      synchronized (this) {
+        if (released) {
+          return;
+        }
+        released = true;
+      }
+
+      release(bytes);
+    }
+  }
+}
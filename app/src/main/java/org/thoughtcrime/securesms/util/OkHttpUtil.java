@@ -1,6 +1,7 @@
 package org.thoughtcrime.securesms.util;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 import androidx.core.text.HtmlCompat;
 
 import java.io.ByteArrayOutputStream;
@@ -8,6 +9,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -19,6 +21,9 @@ public final class OkHttpUtil {
 
   private static final Pattern CHARSET_PATTERN = Pattern.compile("charset=[\"']?([a-zA-Z0-9\\\\-]+)[\"']?");
 
+  private static final byte[][] HEAD_END_MARKERS           = { "</head".getBytes(StandardCharsets.US_ASCII), "<body".getBytes(StandardCharsets.US_ASCII) };
+  private static final int      HEAD_END_MARKER_MAX_LENGTH = 6;
+
   private OkHttpUtil() {}
 
   public static byte[] readAsBytes(@NonNull InputStream bodyStream, long sizeLimit) throws IOException {
@@ -53,6 +58,73 @@ public final class OkHttpUtil {
     return new String(data, Objects.requireNonNull(charset));
   }
 
+  /**
+   * Like {@link #readAsString(ResponseBody, long)}, but for HTML pages we only want metadata from. Stops reading as soon as the document
+   * head has ended, and rather than failing on large pages, gives up after {@code sizeLimit} bytes with whatever it's read so far.
+   */
+  public static String readHtmlHeadAsString(@NonNull ResponseBody body, long sizeLimit) throws IOException {
+    InputStream bodyStream = body.byteStream();
+    byte[]      data       = new byte[(int) Math.min(ByteUnit.KILOBYTES.toBytes(16), sizeLimit)];
+    int         length     = 0;
+
+    while (length < sizeLimit) {
+      if (length == data.length) {
+        data = Arrays.copyOf(data, (int) Math.min(data.length * 2L, sizeLimit));
+      }
+
+      int readLength = bodyStream.read(data, length, data.length - length);
+      if (readLength < 0) {
+        break;
+      }
+
+      int searchFrom = Math.max(0, length - HEAD_END_MARKER_MAX_LENGTH + 1);
+      length += readLength;
+
+      int headEnd = findHeadEnd(data, searchFrom, length);
+      if (headEnd >= 0) {
+        length = headEnd;
+        break;
+      }
+    }
+
+    MediaType contentType = body.contentType();
+    Charset   charset     = contentType != null ? contentType.charset(null) : null;
+
+    charset = charset == null ? getHtmlCharset(new String(data, 0, length)) : charset;
+
+    return new String(data, 0, length, Objects.requireNonNull(charset));
+  }
+
+  /**
+   * @return The index just past the first closing head tag or opening body tag in {@code data[from, to)}, ignoring case, or -1 if there
+   *         isn't one. Only looks at ASCII bytes, so it works for any charset that's a superset of ASCII.
+   */
+  @VisibleForTesting
+  static int findHeadEnd(@NonNull byte[] data, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (data[i] != '<') {
+        continue;
+      }
+
+      for (byte[] marker : HEAD_END_MARKERS) {
+        if (i + marker.length <= to && regionMatchesIgnoreCase(data, i, marker)) {
+          return i + marker.length;
+        }
+      }
+    }
+
+    return -1;
+  }
+
+  private static boolean regionMatchesIgnoreCase(@NonNull byte[] data, int offset, @NonNull byte[] marker) {
+    for (int i = 0; i < marker.length; i++) {
+      if (Character.toLowerCase((char) data[offset + i]) != marker[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private static @NonNull Charset getHtmlCharset(String html) {
     Matcher charsetMatcher = CHARSET_PATTERN.matcher(html);
     if (charsetMatcher.find() && charsetMatcher.groupCount() > 0) {
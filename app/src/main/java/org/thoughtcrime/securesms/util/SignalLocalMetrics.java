@@ -71,6 +71,30 @@ public final class SignalLocalMetrics {
     }
   }
 
+  /**
+   * Timings for the blocking tasks run by {@link AppStartup}. One event has every task, and a second has just the
+   * tasks on the critical path, so that we can see which tasks are actually worth making faster.
+   */
+  public static final class StartupTasks {
+    private static final String NAME_ALL           = "startup-tasks";
+    private static final String NAME_CRITICAL_PATH = "startup-critical-path";
+
+    public static void onBlockingTasksFinished(@NonNull Map<String, Long> taskDurations, @NonNull Map<String, Long> criticalPathDurations) {
+      report(NAME_ALL, taskDurations);
+      report(NAME_CRITICAL_PATH, criticalPathDurations);
+    }
+
+    private static void report(@NonNull String name, @NonNull Map<String, Long> durations) {
+      String id = name + "-" + System.currentTimeMillis();
+
+      LocalMetrics.getInstance().start(id, name);
+      for (Map.Entry<String, Long> entry : durations.entrySet()) {
+        LocalMetrics.getInstance().splitWithDuration(id, entry.getKey(), entry.getValue());
+      }
+      LocalMetrics.getInstance().end(id);
+    }
+  }
+
   public static final class ConversationOpen {
     private static final String NAME = "conversation-open";
 
@@ -7,11 +7,10 @@ import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import org.thoughtcrime.securesms.crypto.AttachmentSecret;
-import org.thoughtcrime.securesms.crypto.ModernDecryptingPartInputStream;
+import org.thoughtcrime.securesms.crypto.ModernDecryptingPartRandomAccessReader;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 
 /**
  * Create via {@link EncryptedMediaDataSource}.
@@ -20,6 +19,9 @@ import java.io.InputStream;
  * <p>
  * It is "modern" compared to the {@link ClassicEncryptedMediaDataSource}. And "modern" refers to
  * the presence of a random part of the key supplied in the constructor.
+ * <p>
+ * Reads go through a single {@link ModernDecryptingPartRandomAccessReader} that is opened on first use and kept until
+ * {@link #close()}, since extractors tend to make a very large number of small reads.
  */
 @RequiresApi(23)
 final class ModernEncryptedMediaDataSource extends MediaDataSource {
@@ -29,6 +31,8 @@ final class ModernEncryptedMediaDataSource extends MediaDataSource {
   private final byte[]           random;
   private final long             length;
 
+  private ModernDecryptingPartRandomAccessReader reader;
+
   ModernEncryptedMediaDataSource(@NonNull AttachmentSecret attachmentSecret, @NonNull File mediaFile, @Nullable byte[] random, long length) {
     this.attachmentSecret = attachmentSecret;
     this.mediaFile        = mediaFile;
@@ -37,32 +41,12 @@ final class ModernEncryptedMediaDataSource extends MediaDataSource {
   }
 
   @Override
-  public int readAt(long position, byte[] bytes, int offset, int length) throws IOException {
+  public synchronized int readAt(long position, byte[] bytes, int offset, int length) throws IOException {
     if (position >= this.length) {
       return -1;
     }
 
-    try (InputStream inputStream = createInputStream(position)) {
-      int totalRead = 0;
-
-      while (length > 0) {
-        int read = inputStream.read(bytes, offset, length);
-
-        if (read == -1) {
-          if (totalRead == 0) {
-            return -1;
-          } else {
-            return totalRead;
-          }
-        }
-
-        length    -= read;
-        offset    += read;
-        totalRead += read;
-      }
-
-      return totalRead;
-    }
+    return getReader().read(position, bytes, offset, (int) Math.min(length, this.length - position));
   }
 
   @Override
@@ -71,14 +55,17 @@ final class ModernEncryptedMediaDataSource extends MediaDataSource {
   }
 
   @Override
-  public void close() {
+  public synchronized void close() throws IOException {
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
   }
 
-  private InputStream createInputStream(long position) throws IOException {
-    if (random == null) {
-      return ModernDecryptingPartInputStream.createFor(attachmentSecret, mediaFile, position);
-    } else {
-      return ModernDecryptingPartInputStream.createFor(attachmentSecret, random, mediaFile, position);
+  private @NonNull ModernDecryptingPartRandomAccessReader getReader() throws IOException {
+    if (reader == null) {
+      reader = new ModernDecryptingPartRandomAccessReader(attachmentSecret, random, mediaFile);
     }
+    return reader;
   }
 }
@@ -2,21 +2,39 @@ package org.thoughtcrime.securesms.video.exo
 
 import android.content.Context
 import android.net.Uri
+import androidx.annotation.VisibleForTesting
 import androidx.annotation.WorkerThread
+import org.signal.core.util.Hex
 import org.signal.core.util.StreamUtil
 import org.signal.core.util.logging.Log
+import org.thoughtcrime.securesms.crypto.AttachmentSecretProvider
 import org.thoughtcrime.securesms.util.storage.FileStorage
+import java.io.BufferedWriter
+import java.io.File
+import java.io.FileOutputStream
 import java.io.IOException
 import java.io.InputStream
+import java.io.OutputStreamWriter
+import java.io.Writer
+import java.security.InvalidKeyException
+import java.security.NoSuchAlgorithmException
+import javax.crypto.Mac
+import javax.crypto.spec.SecretKeySpec
 
 /**
- * A simple disk cache for MP4 GIFS. While entries are stored on disk, the data has lifecycle of a single application session and will be cleared every app
- * start. This lets us keep stuff simple and maintain all of our metadata and state in memory.
+ * A disk cache for MP4 GIFS. Entries are stored encrypted on disk and survive app restarts.
  *
  * Features
  * - Write entire files into the cache
  * - Keep entries that are actively being read in the cache by maintaining locks on entries
  * - When the cache is over the size limit, inactive entries will be evicted in LRU order.
+ *
+ * The index is an access-ordered map with a running byte total, so lookups and evictions don't need to look at every entry. Every change
+ * to the index is appended to a journal file, which is replayed the first time the cache is used in a session, instead of scanning and
+ * wiping the cache directory. Files that aren't in the journal (e.g. from a write that was interrupted) are deleted at that point.
+ *
+ * Entries are keyed by an HMAC of the URI under the attachment secret, so neither the journal nor the file names reveal which GIFs were
+ * viewed. Reads are only buffered into the journal; losing them just means a slightly stale LRU order after a crash.
  */
 class GiphyMp4Cache(private val maxSize: Long) {
 
@@ -26,105 +44,368 @@ class GiphyMp4Cache(private val maxSize: Long) {
     private const val DIRECTORY = "mp4gif_cache"
     private const val PREFIX = "entry_"
     private const val EXTENSION = "mp4"
+
+    private const val JOURNAL = "journal"
+    private const val JOURNAL_TMP = "journal.tmp"
+    private const val JOURNAL_HEADER = "giphy-mp4-cache 2"
+    private const val JOURNAL_ADD = "ADD"
+    private const val JOURNAL_READ = "READ"
+    private const val JOURNAL_REMOVE = "REMOVE"
+
+    /** The journal is rewritten once it has this many more lines than there are entries. */
+    @VisibleForTesting
+    const val JOURNAL_COMPACT_THRESHOLD = 1000
   }
 
-  private val lockedUris: MutableSet<Uri> = mutableSetOf()
-  private val uriToEntry: MutableMap<Uri, Entry> = mutableMapOf()
+  private val keyToEntry: LinkedHashMap<String, Entry> = LinkedHashMap(16, 0.75f, true)
+  private val lockCounts: MutableMap<String, Int> = mutableMapOf()
 
+  private var loaded = false
+  private var totalSize: Long = 0
+  private var journalWriter: Writer? = null
+  private var journalLines = 0
+  private var lastJournaledRead: String? = null
+
+  private var hits: Long = 0
+  private var misses: Long = 0
+  private var bytesWritten: Long = 0
+  private var bytesEvicted: Long = 0
+  private var evictions: Long = 0
+
+  /**
+   * Loads the index ahead of time, so the first GIF doesn't have to wait on it.
+   */
   @WorkerThread
   fun onAppStart(context: Context) {
     synchronized(DATA_LOCK) {
-      lockedUris.clear()
-      for (file in FileStorage.getAllFiles(context, DIRECTORY, PREFIX)) {
-        if (!file.delete()) {
-          Log.w(TAG, "Failed to delete: " + file.name)
-        }
-      }
+      ensureLoaded(context)
     }
   }
 
   @Throws(IOException::class)
   fun write(context: Context, uri: Uri, inputStream: InputStream): ReadData {
+    // Loading sweeps up files that aren't in the journal, so it has to happen before we start writing ours
     synchronized(DATA_LOCK) {
-      lockedUris.add(uri)
+      ensureLoaded(context)
     }
 
+    val key: String = getKey(context, uri)
     val filename: String = FileStorage.save(context, inputStream, DIRECTORY, PREFIX, EXTENSION)
     val size = FileStorage.getFile(context, DIRECTORY, filename).length()
 
-    synchronized(DATA_LOCK) {
-      uriToEntry[uri] = Entry(
-        uri = uri,
-        filename = filename,
-        size = size,
-        lastAccessed = System.currentTimeMillis()
-      )
+    val entry: Entry = synchronized(DATA_LOCK) {
+      val previous: Entry? = keyToEntry.remove(key)
+      if (previous != null) {
+        totalSize -= previous.size
+        if (!isLocked(key)) {
+          deleteFile(context, previous.filename)
+        }
+      }
+
+      val entry = Entry(key = key, filename = filename, size = size)
+      keyToEntry[key] = entry
+      totalSize += size
+      bytesWritten += size
+
+      appendToJournal(context, "$JOURNAL_ADD $filename $size $key", flush = true)
+
+      // Lock it before trimming, so that an entry bigger than the cache (or the least recently used one) isn't evicted before we read it
+      lock(key)
+      trimToSize(context)
+      entry
     }
 
-    return readFromStorage(context, uri) ?: throw IOException("Could not find file immediately after writing!")
+    return openLocked(context, entry)
   }
 
   fun read(context: Context, uri: Uri): ReadData? {
-    synchronized(DATA_LOCK) {
-      lockedUris.add(uri)
+    val key: String = getKey(context, uri)
+
+    val hit = synchronized(DATA_LOCK) {
+      ensureLoaded(context)
+
+      if (keyToEntry.containsKey(key)) {
+        hits++
+        // A GIF that's looping gets read over and over, only the first read changes the LRU order
+        if (key != lastJournaledRead) {
+          appendToJournal(context, "$JOURNAL_READ $key", flush = false)
+          lastJournaledRead = key
+        }
+        true
+      } else {
+        misses++
+        false
+      }
+    }
+
+    if (!hit) {
+      return null
     }
 
     return try {
-      readFromStorage(context, uri)
+      readFromStorage(context, key)
     } catch (e: IOException) {
       null
     }
   }
 
+  fun getStats(): Stats {
+    synchronized(DATA_LOCK) {
+      return Stats(
+        entries = keyToEntry.size,
+        locked = lockCounts.size,
+        totalSize = totalSize,
+        maxSize = maxSize,
+        hits = hits,
+        misses = misses,
+        bytesWritten = bytesWritten,
+        bytesEvicted = bytesEvicted,
+        evictions = evictions
+      )
+    }
+  }
+
   @Throws(IOException::class)
-  fun readFromStorage(context: Context, uri: Uri): ReadData? {
+  private fun readFromStorage(context: Context, key: String): ReadData? {
     val entry: Entry = synchronized(DATA_LOCK) {
-      uriToEntry[uri]
+      keyToEntry[key]?.also { lock(key) }
     } ?: return null
 
-    val length: Long = FileStorage.getFile(context, DIRECTORY, entry.filename).length()
-    val inputStream: InputStream = FileStorage.read(context, DIRECTORY, entry.filename)
-    return ReadData(inputStream, length) { onEntryReleased(context, uri) }
+    return openLocked(context, entry)
   }
 
-  private fun onEntryReleased(context: Context, uri: Uri) {
+  /**
+   * Opens an [entry] that the caller has already locked. The lock is handed over to the returned [ReadData], or released on failure.
+   */
+  @Throws(IOException::class)
+  private fun openLocked(context: Context, entry: Entry): ReadData {
+    return try {
+      val length: Long = FileStorage.getFile(context, DIRECTORY, entry.filename).length()
+      val inputStream: InputStream = FileStorage.read(context, DIRECTORY, entry.filename)
+      ReadData(inputStream, length) { onEntryReleased(context, entry.key) }
+    } catch (e: IOException) {
+      onEntryReleased(context, entry.key)
+      throw e
+    }
+  }
+
+  private fun lock(key: String) {
+    lockCounts[key] = (lockCounts[key] ?: 0) + 1
+  }
+
+  private fun onEntryReleased(context: Context, key: String) {
     synchronized(DATA_LOCK) {
-      lockedUris.remove(uri)
+      val count = lockCounts[key] ?: 0
+      if (count <= 1) {
+        lockCounts.remove(key)
+      } else {
+        lockCounts[key] = count - 1
+      }
 
-      var totalSize: Long = calculateTotalSize(uriToEntry)
+      trimToSize(context)
+    }
+  }
+
+  private fun isLocked(key: String): Boolean {
+    return lockCounts.containsKey(key)
+  }
+
+  /**
+   * Evicts unlocked entries, least recently used first, until we're within the size limit. Only locked entries are ever skipped.
+   */
+  private fun trimToSize(context: Context) {
+    if (totalSize <= maxSize) {
+      return
+    }
 
-      if (totalSize > maxSize) {
-        val evictCandidatesInLruOrder: MutableList<Entry> = ArrayList(
-          uriToEntry.entries
-            .filter { e -> !lockedUris.contains(e.key) }
-            .map { e -> e.value }
-            .sortedBy { e -> e.lastAccessed }
-        )
+    val iterator = keyToEntry.values.iterator()
 
-        while (totalSize > maxSize && evictCandidatesInLruOrder.isNotEmpty()) {
-          val toEvict: Entry = evictCandidatesInLruOrder.removeAt(0)
+    while (totalSize > maxSize && iterator.hasNext()) {
+      val entry = iterator.next()
 
-          if (!FileStorage.getFile(context, DIRECTORY, toEvict.filename).delete()) {
-            Log.w(TAG, "Failed to delete ${toEvict.filename}")
+      if (isLocked(entry.key)) {
+        continue
+      }
+
+      iterator.remove()
+      deleteFile(context, entry.filename)
+
+      totalSize -= entry.size
+      bytesEvicted += entry.size
+      evictions++
+
+      appendToJournal(context, "$JOURNAL_REMOVE ${entry.key}", flush = true)
+    }
+  }
+
+  private fun deleteFile(context: Context, filename: String) {
+    if (!FileStorage.getFile(context, DIRECTORY, filename).delete()) {
+      Log.w(TAG, "Failed to delete $filename")
+    }
+  }
+
+  /**
+   * Replays the journal into the index the first time it's needed, then writes out a compacted journal. Anything we can't trust (a missing
+   * or unreadable journal, files whose size doesn't match) is dropped rather than recovered.
+   */
+  private fun ensureLoaded(context: Context) {
+    if (loaded) {
+      return
+    }
+    loaded = true
+
+    val startTime = System.currentTimeMillis()
+    val restored: LinkedHashMap<String, Entry> = readJournal(context)
+
+    for ((key, entry) in restored) {
+      val file = FileStorage.getFile(context, DIRECTORY, entry.filename)
+      if (file.exists() && file.length() == entry.size) {
+        keyToEntry[key] = entry
+        totalSize += entry.size
+      }
+    }
+
+    val filenames: Set<String> = keyToEntry.values.map { it.filename }.toSet()
+    var orphans = 0
+    for (file in FileStorage.getAllFiles(context, DIRECTORY, PREFIX)) {
+      if (!filenames.contains(file.name)) {
+        orphans++
+        if (!file.delete()) {
+          Log.w(TAG, "Failed to delete: " + file.name)
+        }
+      }
+    }
+
+    rewriteJournal(context)
+    trimToSize(context)
+
+    Log.i(TAG, "Restored ${keyToEntry.size} entries ($totalSize bytes), deleted $orphans orphaned files in ${System.currentTimeMillis() - startTime} ms")
+  }
+
+  private fun readJournal(context: Context): LinkedHashMap<String, Entry> {
+    val entries: LinkedHashMap<String, Entry> = LinkedHashMap(16, 0.75f, true)
+    val journal = getJournalFile(context, JOURNAL)
+
+    if (!journal.exists()) {
+      return entries
+    }
+
+    try {
+      journal.bufferedReader().use { reader ->
+        if (reader.readLine() != JOURNAL_HEADER) {
+          Log.w(TAG, "Unrecognized journal header, starting fresh.")
+          return entries
+        }
+
+        while (true) {
+          val line = reader.readLine() ?: break
+          val command = line.substringBefore(' ')
+          val rest = line.substringAfter(' ', "")
+
+          when (command) {
+            JOURNAL_ADD -> {
+              val parts = rest.split(' ', limit = 3)
+              if (parts.size == 3) {
+                entries[parts[2]] = Entry(key = parts[2], filename = parts[0], size = parts[1].toLong())
+              } else {
+                Log.w(TAG, "Skipping malformed journal line.")
+              }
+            }
+            JOURNAL_READ -> entries[rest]
+            JOURNAL_REMOVE -> entries.remove(rest)
+            else -> Log.w(TAG, "Skipping malformed journal line.")
           }
+        }
+      }
+    } catch (e: IOException) {
+      Log.w(TAG, "Failed to read the journal, keeping what we have so far.", e)
+    } catch (e: NumberFormatException) {
+      Log.w(TAG, "Corrupt journal, keeping what we have so far.", e)
+    }
+
+    return entries
+  }
+
+  /**
+   * Writes a journal containing only the current entries, in access order, and swaps it in for the old one.
+   */
+  private fun rewriteJournal(context: Context) {
+    StreamUtil.close(journalWriter)
+    journalWriter = null
 
-          uriToEntry.remove(toEvict.uri)
+    val tmp = getJournalFile(context, JOURNAL_TMP)
+    val journal = getJournalFile(context, JOURNAL)
 
-          totalSize = calculateTotalSize(uriToEntry)
+    try {
+      BufferedWriter(OutputStreamWriter(FileOutputStream(tmp), Charsets.UTF_8)).use { writer ->
+        writer.write(JOURNAL_HEADER)
+        writer.write("\n")
+        for (entry in keyToEntry.values) {
+          writer.write("$JOURNAL_ADD ${entry.filename} ${entry.size} ${entry.key}\n")
         }
       }
+
+      if (!tmp.renameTo(journal)) {
+        throw IOException("Failed to rename journal")
+      }
+
+      journalWriter = BufferedWriter(OutputStreamWriter(FileOutputStream(journal, true), Charsets.UTF_8))
+      journalLines = keyToEntry.size
+      lastJournaledRead = null
+    } catch (e: IOException) {
+      Log.w(TAG, "Failed to write the journal. Entries won't be kept past this session.", e)
+      journal.delete()
     }
   }
 
-  private fun calculateTotalSize(data: Map<Uri, Entry>): Long {
-    return data.values.map { e -> e.size }.reduceOrNull { sum, size -> sum + size } ?: 0
+  /**
+   * Adds a line to the journal. Only changes to the set of entries need to be [flush]ed right away, reads can sit in the buffer until then.
+   */
+  private fun appendToJournal(context: Context, line: String, flush: Boolean) {
+    val writer = journalWriter ?: return
+
+    try {
+      writer.write(line)
+      writer.write("\n")
+      if (flush) {
+        writer.flush()
+      }
+      journalLines++
+    } catch (e: IOException) {
+      Log.w(TAG, "Failed to append to the journal. Entries won't be kept past this session.", e)
+      StreamUtil.close(writer)
+      journalWriter = null
+      getJournalFile(context, JOURNAL).delete()
+      return
+    }
+
+    if (journalLines - keyToEntry.size > JOURNAL_COMPACT_THRESHOLD) {
+      rewriteJournal(context)
+    }
+  }
+
+  private fun getJournalFile(context: Context, name: String): File {
+    return File(context.getDir(DIRECTORY, Context.MODE_PRIVATE), name)
+  }
+
+  private fun getKey(context: Context, uri: Uri): String {
+    try {
+      val mac = Mac.getInstance("HmacSHA256")
+      mac.init(SecretKeySpec(AttachmentSecretProvider.getInstance(context).getOrCreateAttachmentSecret().modernKey, "HmacSHA256"))
+
+      return Hex.toStringCondensed(mac.doFinal(uri.toString().toByteArray(Charsets.UTF_8)))
+    } catch (e: NoSuchAlgorithmException) {
+      throw AssertionError(e)
+    } catch (e: InvalidKeyException) {
+      throw AssertionError(e)
+    }
   }
 
   fun interface Lease {
     fun release()
   }
 
-  private data class Entry(val uri: Uri, val filename: String, val size: Long, val lastAccessed: Long)
+  private data class Entry(val key: String, val filename: String, val size: Long)
 
   data class ReadData(val inputStream: InputStream, val length: Long, val lease: Lease) {
     fun release() {
@@ -132,4 +413,19 @@ class GiphyMp4Cache(private val maxSize: Long) {
       lease.release()
     }
   }
+
+  data class Stats(
+    val entries: Int,
+    val locked: Int,
+    val totalSize: Long,
+    val maxSize: Long,
+    val hits: Long,
+    val misses: Long,
+    val bytesWritten: Long,
+    val bytesEvicted: Long,
+    val evictions: Long
+  ) {
+    val hitRate: Float
+      get() = if (hits + misses > 0) hits.toFloat() / (hits + misses) else 0f
+  }
 }
@@ -0,0 +1,76 @@
+package org.thoughtcrime.securesms.blurhash;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A rough JVM benchmark of {@link BlurHashCodec} against the original implementation. Ignored by default since
+ * it's slow and only prints timings. Remove the annotation to run it locally.
+ */
+@Ignore("Benchmark. Run manually.")
+public final class BlurHashCodecBenchmark {
+
+  private static final String[] HASHES = {
+      "LEHV6nWB2yk8pyo0adR*.7kCMdnj",
+      "LGF5]+Yk^6#M@-5c,1J5@[or[Q6.",
+      "L6PZfSi_.AyE_3t7t7R**0o#DgR4",
+      "LKO2?U%2Tw=w]~RBVZRi};RPxuwH"
+  };
+
+  private static final int WARMUP     = 2_000;
+  private static final int ITERATIONS = 20_000;
+
+  @Test
+  public void decode_20x20() {
+    int[] pixels = new int[20 * 20];
+
+    run("decode 20x20", ITERATIONS,
+        i -> BlurHashCodecTest.Reference.decode(HASHES[i % HASHES.length], 20, 20, 1),
+        i -> BlurHashCodec.decode(HASHES[i % HASHES.length], 20, 20, 1f, pixels));
+  }
+
+  @Test
+  public void encode_thumbnail() {
+    int    width  = 250;
+    int    height = 187;
+    int[]  pixels = new int[width * height];
+    Random random = new Random(1);
+
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = 0xff000000 | random.nextInt(0xffffff);
+    }
+
+    run("encode 250x187", ITERATIONS / 100,
+        i -> BlurHashCodecTest.Reference.encode(pixels, width, height, 4, 3),
+        i -> BlurHashCodec.encode(pixels, width, height, 4, 3));
+  }
+
+  private static void run(String name, int iterations, Operation reference, Operation codec) {
+    time(reference, WARMUP / 10);
+    time(codec, WARMUP / 10);
+
+    long referenceNanos = time(reference, iterations);
+    long codecNanos     = time(codec, iterations);
+
+    System.out.println(String.format(Locale.US, "%s: reference %.1f us/op, codec %.1f us/op (%.1fx)",
+                                     name,
+                                     referenceNanos / 1000.0 / iterations,
+                                     codecNanos / 1000.0 / iterations,
+                                     referenceNanos / (double) codecNanos));
+  }
+
+  private static long time(Operation operation, int iterations) {
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      operation.run(i);
+    }
+    return System.nanoTime() - start;
+  }
+
+  private interface Operation {
+    void run(int iteration);
+  }
+}
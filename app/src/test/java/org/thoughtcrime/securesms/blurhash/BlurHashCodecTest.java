@@ -0,0 +1,214 @@
+package org.thoughtcrime.securesms.blurhash;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Golden tests that compare {@link BlurHashCodec} against the original per-pixel implementation, which is kept
+ * here as {@link Reference}.
+ */
+public final class BlurHashCodecTest {
+
+  private static final String[] HASHES = {
+      "LEHV6nWB2yk8pyo0adR*.7kCMdnj",
+      "LGF5]+Yk^6#M@-5c,1J5@[or[Q6.",
+      "L6PZfSi_.AyE_3t7t7R**0o#DgR4",
+      "LKO2?U%2Tw=w]~RBVZRi};RPxuwH",
+      "00R3Uf"
+  };
+
+  private static final int[][] SIZES = {
+      { 20, 20 }, { 20, 13 }, { 9, 20 }, { 32, 32 }, { 1, 1 }
+  };
+
+  @Test
+  public void decode_matchesReference() {
+    for (String hash : HASHES) {
+      for (int[] size : SIZES) {
+        int   width    = size[0];
+        int   height   = size[1];
+        int[] expected = Reference.decode(hash, width, height, 1);
+        int[] actual   = new int[width * height];
+
+        assertTrue(BlurHashCodec.decode(hash, width, height, 1f, actual));
+        assertPixelsClose(hash + " @ " + width + "x" + height, expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void decode_withPunch_matchesReference() {
+    int[] expected = Reference.decode(HASHES[0], 20, 20, 1.5);
+    int[] actual   = new int[20 * 20];
+
+    assertTrue(BlurHashCodec.decode(HASHES[0], 20, 20, 1.5f, actual));
+    assertPixelsClose("punch", expected, actual);
+  }
+
+  @Test
+  public void decode_invalidHashes_returnFalse() {
+    int[] pixels = new int[4];
+
+    assertFalse(BlurHashCodec.decode(null, 2, 2, 1f, pixels));
+    assertFalse(BlurHashCodec.decode("LEHV6", 2, 2, 1f, pixels));
+    assertFalse(BlurHashCodec.decode("LEHV6nWB2yk8pyo0adR*.7kCMdn", 2, 2, 1f, pixels));
+    assertFalse(BlurHashCodec.decode("LEHV6nWB2yk8pyo0adR*.7kCMd\"j", 2, 2, 1f, pixels));
+    assertArrayEquals(new int[4], pixels);
+  }
+
+  @Test
+  public void encode_matchesReference() {
+    Random random = new Random(42);
+
+    for (int[] size : new int[][] { { 32, 32 }, { 63, 17 }, { 17, 63 }, { 250, 187 }, { 1, 1 } }) {
+      int[] pixels = generateImage(random, size[0], size[1]);
+
+      for (int[] components : new int[][] { { 4, 3 }, { 1, 1 }, { 9, 9 }, { 3, 5 } }) {
+        String expected = Reference.encode(pixels, size[0], size[1], components[0], components[1]);
+        String actual   = BlurHashCodec.encode(pixels, size[0], size[1], components[0], components[1]);
+
+        assertEquals(size[0] + "x" + size[1] + " " + components[0] + "x" + components[1], expected, actual);
+      }
+    }
+  }
+
+  private static void assertPixelsClose(String message, int[] expected, int[] actual) {
+    for (int i = 0; i < expected.length; i++) {
+      for (int shift = 0; shift <= 24; shift += 8) {
+        int e = (expected[i] >> shift) & 0xff;
+        int a = (actual[i] >> shift) & 0xff;
+
+        if (Math.abs(e - a) > 1) {
+          assertEquals(message + ", pixel " + i, Integer.toHexString(expected[i]), Integer.toHexString(actual[i]));
+        }
+      }
+    }
+  }
+
+  /**
+   * Smooth gradients with some noise and a hard edge, which is closer to a real photo than pure noise is.
+   */
+  private static int[] generateImage(Random random, int width, int height) {
+    int[] pixels = new int[width * height];
+
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int r = (x * 255 / Math.max(1, width - 1) + random.nextInt(24)) & 0xff;
+        int g = (y * 255 / Math.max(1, height - 1) + random.nextInt(24)) & 0xff;
+        int b = x > width / 2 ? 200 + random.nextInt(40) : random.nextInt(40);
+
+        pixels[y * width + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+      }
+    }
+
+    return pixels;
+  }
+
+  /**
+   * The original implementation from {@link BlurHashDecoder} and {@link BlurHashEncoder}, minus the Bitmap.
+   */
+  static final class Reference {
+
+    static int[] decode(String blurHash, int width, int height, double punch) {
+      int numCompEnc = Base83.decode(blurHash, 0, 1);
+      int numCompX   = (numCompEnc % 9) + 1;
+      int numCompY   = (numCompEnc / 9) + 1;
+
+      int        maxAcEnc = Base83.decode(blurHash, 1, 2);
+      double     maxAc    = (maxAcEnc + 1) / 166f;
+      double[][] colors   = new double[numCompX * numCompY][];
+      for (int i = 0; i < colors.length; i++) {
+        if (i == 0) {
+          int colorEnc = Base83.decode(blurHash, 2, 6);
+          colors[i] = new double[] { BlurHashUtil.sRGBToLinear(colorEnc >> 16), BlurHashUtil.sRGBToLinear((colorEnc >> 8) & 255), BlurHashUtil.sRGBToLinear(colorEnc & 255) };
+        } else {
+          int from     = 4 + i * 2;
+          int colorEnc = Base83.decode(blurHash, from, from + 2);
+          int r        = colorEnc / (19 * 19);
+          int g        = (colorEnc / 19) % 19;
+          int b        = colorEnc % 19;
+          colors[i] = new double[] { BlurHashUtil.signPow((r - 9) / 9.0f, 2f) * maxAc * punch,
+                                     BlurHashUtil.signPow((g - 9) / 9.0f, 2f) * maxAc * punch,
+                                     BlurHashUtil.signPow((b - 9) / 9.0f, 2f) * maxAc * punch };
+        }
+      }
+
+      int[] pixels = new int[width * height];
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          double r = 0f;
+          double g = 0f;
+          double b = 0f;
+
+          for (int j = 0; j < numCompY; j++) {
+            for (int i = 0; i < numCompX; i++) {
+              double   basis = (Math.cos(Math.PI * x * i / width) * Math.cos(Math.PI * y * j / height));
+              double[] color = colors[j * numCompX + i];
+              r += color[0] * basis;
+              g += color[1] * basis;
+              b += color[2] * basis;
+            }
+          }
+
+          pixels[y * width + x] = 0xff000000 | ((int) BlurHashUtil.linearTosRGB(r) << 16) | ((int) BlurHashUtil.linearTosRGB(g) << 8) | (int) BlurHashUtil.linearTosRGB(b);
+        }
+      }
+
+      return pixels;
+    }
+
+    static String encode(int[] pixels, int width, int height, int componentX, int componentY) {
+      double[][] factors = new double[componentX * componentY][3];
+      for (int j = 0; j < componentY; j++) {
+        for (int i = 0; i < componentX; i++) {
+          double normalisation = i == 0 && j == 0 ? 1 : 2;
+          double r = 0, g = 0, b = 0;
+          for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+              double basis = normalisation * Math.cos((Math.PI * i * x) / width) * Math.cos((Math.PI * j * y) / height);
+              int    pixel = pixels[y * width + x];
+              r += basis * BlurHashUtil.sRGBToLinear((pixel >> 16) & 0xff);
+              g += basis * BlurHashUtil.sRGBToLinear((pixel >> 8) & 0xff);
+              b += basis * BlurHashUtil.sRGBToLinear(pixel & 0xff);
+            }
+          }
+          double scale = 1.0 / (width * height);
+          factors[j * componentX + i] = new double[] { r * scale, g * scale, b * scale };
+        }
+      }
+
+      char[] hash = new char[1 + 1 + 4 + 2 * (factors.length - 1)];
+      Base83.encode(componentX - 1 + (componentY - 1) * 9, 1, hash, 0);
+
+      double maximumValue;
+      if (factors.length > 1) {
+        double actualMaximumValue    = BlurHashUtil.max(factors, 1, factors.length);
+        double quantisedMaximumValue = Math.floor(Math.max(0, Math.min(82, Math.floor(actualMaximumValue * 166 - 0.5))));
+        maximumValue = (quantisedMaximumValue + 1) / 166;
+        Base83.encode(Math.round(quantisedMaximumValue), 1, hash, 1);
+      } else {
+        maximumValue = 1;
+        Base83.encode(0, 1, hash, 1);
+      }
+
+      double[] dc = factors[0];
+      Base83.encode((BlurHashUtil.linearTosRGB(dc[0]) << 16) + (BlurHashUtil.linearTosRGB(dc[1]) << 8) + BlurHashUtil.linearTosRGB(dc[2]), 4, hash, 2);
+
+      for (int i = 1; i < factors.length; i++) {
+        double[] value  = factors[i];
+        double   quantR = Math.floor(Math.max(0, Math.min(18, Math.floor(BlurHashUtil.signPow(value[0] / maximumValue, 0.5) * 9 + 9.5))));
+        double   quantG = Math.floor(Math.max(0, Math.min(18, Math.floor(BlurHashUtil.signPow(value[1] / maximumValue, 0.5) * 9 + 9.5))));
+        double   quantB = Math.floor(Math.max(0, Math.min(18, Math.floor(BlurHashUtil.signPow(value[2] / maximumValue, 0.5) * 9 + 9.5))));
+        Base83.encode(Math.round(quantR * 19 * 19 + quantG * 19 + quantB), 2, hash, 6 + 2 * (i - 1));
+      }
+
+      return new String(hash);
+    }
+  }
+}
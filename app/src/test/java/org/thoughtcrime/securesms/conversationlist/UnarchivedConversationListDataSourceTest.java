@@ -2,6 +2,7 @@ package org.thoughtcrime.securesms.conversationlist;
 
 import android.app.Application;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -27,6 +28,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -242,6 +244,50 @@ public class UnarchivedConversationListDataSourceTest {
     assertEquals(100, cursor.getCount());
   }
 
+  @Test
+  public void givenFirstPageLoaded_whenIGetNextPage_thenIExpectToSeekFromLastThread() {
+    // GIVEN
+    MatrixCursor firstPage = new MatrixCursor(new String[] { ThreadTable.ID, ThreadTable.DATE });
+    firstPage.addRow(new Object[] { 7L, 2000L });
+    firstPage.addRow(new Object[] { 3L, 1000L });
+
+    setupThreadDatabaseCursors(0, 0);
+    when(threadTable.getUnarchivedConversationList(any(), eq(false), eq(0L), anyLong())).thenReturn(firstPage);
+    when(threadTable.getUnarchivedConversationListAfter(any(), anyLong(), anyLong(), anyLong())).thenReturn(mock(Cursor.class));
+    when(threadTable.getUnarchivedConversationListCount(ConversationFilter.OFF)).thenReturn(4);
+    testSubject.getTotalCount();
+    testSubject.getCursor(0, 2);
+
+    // WHEN
+    testSubject.getCursor(2, 2);
+
+    // THEN
+    verify(threadTable).getUnarchivedConversationListAfter(ConversationFilter.OFF, 1000L, 3L, 2);
+    verify(threadTable, never()).getUnarchivedConversationList(ConversationFilter.OFF, false, 2, 2);
+  }
+
+  @Test
+  public void givenFirstPageLoadedAndInvalidated_whenIGetNextPage_thenIExpectOffset() {
+    // GIVEN
+    MatrixCursor firstPage = new MatrixCursor(new String[] { ThreadTable.ID, ThreadTable.DATE });
+    firstPage.addRow(new Object[] { 7L, 2000L });
+    firstPage.addRow(new Object[] { 3L, 1000L });
+
+    setupThreadDatabaseCursors(0, 0);
+    when(threadTable.getUnarchivedConversationList(any(), eq(false), eq(0L), anyLong())).thenReturn(firstPage);
+    when(threadTable.getUnarchivedConversationListCount(ConversationFilter.OFF)).thenReturn(4);
+    testSubject.getTotalCount();
+    testSubject.getCursor(0, 2);
+    testSubject.getTotalCount();
+
+    // WHEN
+    testSubject.getCursor(2, 2);
+
+    // THEN
+    verify(threadTable).getUnarchivedConversationList(ConversationFilter.OFF, false, 2, 2);
+    verify(threadTable, never()).getUnarchivedConversationListAfter(any(), anyLong(), anyLong(), anyLong());
+  }
+
   @Test
   public void givenHasArchivedAndLoadingLastPage_whenIGetCursor_thenIExpectProperOffsetAndCursorCount() {
     // GIVEN
@@ -0,0 +1,123 @@
+package org.thoughtcrime.securesms.crypto
+
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.io.InputStream
+import javax.crypto.Cipher
+import javax.crypto.Mac
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
+import kotlin.random.Random
+
+class ModernDecryptingPartRandomAccessReaderTest {
+
+  private val attachmentSecret = AttachmentSecret(ByteArray(32), ByteArray(32), Random(1).nextBytes(32))
+  private val plaintext = Random(2).nextBytes(100_003)
+
+  private lateinit var file: File
+
+  @Before
+  fun setUp() {
+    file = File.createTempFile("encrypted", ".mms")
+  }
+
+  @After
+  fun tearDown() {
+    file.delete()
+  }
+
+  @Test
+  fun `given an inline random, when I read at random positions, then I get the same data as the stream`() {
+    encrypt(inline = true)
+
+    ModernDecryptingPartRandomAccessReader(attachmentSecret, null, file, 1024, 2).use { reader ->
+      assertEquals(plaintext.size.toLong(), reader.length)
+      assertReadsMatch(reader) { position -> ModernDecryptingPartInputStream.createFor(attachmentSecret, file, position) }
+    }
+  }
+
+  @Test
+  fun `given a separate random, when I read at random positions, then I get the same data as the stream`() {
+    val random = encrypt(inline = false)
+
+    ModernDecryptingPartRandomAccessReader(attachmentSecret, random, file, 1024, 2).use { reader ->
+      assertReadsMatch(reader) { position -> ModernDecryptingPartInputStream.createFor(attachmentSecret, random, file, position) }
+    }
+  }
+
+  @Test
+  fun `when I read past the end, then I get a short read and then -1`() {
+    val random = encrypt(inline = false)
+
+    ModernDecryptingPartRandomAccessReader(attachmentSecret, random, file).use { reader ->
+      val buffer = ByteArray(100)
+
+      assertEquals(3, reader.read(plaintext.size - 3L, buffer, 0, buffer.size))
+      assertArrayEquals(plaintext.copyOfRange(plaintext.size - 3, plaintext.size), buffer.copyOf(3))
+      assertEquals(-1, reader.read(plaintext.size.toLong(), buffer, 0, buffer.size))
+    }
+  }
+
+  @Test
+  fun `when I read the same region twice, then the second read is served from the cache`() {
+    val random = encrypt(inline = false)
+
+    ModernDecryptingPartRandomAccessReader(attachmentSecret, random, file).use { reader ->
+      val buffer = ByteArray(8)
+
+      reader.read(50, buffer, 0, buffer.size)
+      reader.read(60, buffer, 0, buffer.size)
+
+      assertEquals(1, reader.cacheMisses)
+      assertEquals(1, reader.cacheHits)
+    }
+  }
+
+  private fun assertReadsMatch(reader: ModernDecryptingPartRandomAccessReader, streamFactory: (Long) -> InputStream) {
+    val random = Random(3)
+
+    repeat(200) {
+      val position = random.nextLong(plaintext.size.toLong())
+      val length = random.nextInt(1, 5000).coerceAtMost(plaintext.size - position.toInt())
+
+      val actual = ByteArray(length)
+      var read = 0
+      while (read < length) {
+        read += reader.read(position + read, actual, read, length - read)
+      }
+
+      val expected = ByteArray(length)
+      streamFactory(position).use { stream ->
+        var streamRead = 0
+        while (streamRead < length) {
+          streamRead += stream.read(expected, streamRead, length - streamRead)
+        }
+      }
+
+      assertArrayEquals(expected, actual)
+      assertArrayEquals(plaintext.copyOfRange(position.toInt(), position.toInt() + length), actual)
+    }
+  }
+
+  /**
+   * Mirrors [ModernEncryptingPartOutputStream], which can't be used directly here since it returns an android.util.Pair.
+   */
+  private fun encrypt(inline: Boolean): ByteArray {
+    val random = Random(4).nextBytes(32)
+    val mac = Mac.getInstance("HmacSHA256").apply { init(SecretKeySpec(attachmentSecret.modernKey, "HmacSHA256")) }
+    val cipher = Cipher.getInstance("AES/CTR/NoPadding").apply { init(Cipher.ENCRYPT_MODE, SecretKeySpec(mac.doFinal(random), "AES"), IvParameterSpec(ByteArray(16))) }
+
+    file.outputStream().use { output ->
+      if (inline) {
+        output.write(random)
+      }
+      output.write(cipher.doFinal(plaintext))
+    }
+
+    return random
+  }
+}
@@ -0,0 +1,180 @@
+package org.thoughtcrime.securesms.database
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Before
+import org.junit.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.whenever
+
+class ProtocolRecordCacheTest {
+
+  private val db: SQLiteDatabase = mock()
+
+  private var transaction: Any? = null
+  private val onSuccess: MutableList<Runnable> = mutableListOf()
+  private val onFailure: MutableList<Runnable> = mutableListOf()
+
+  private val disk: MutableMap<String, Int> = mutableMapOf()
+  private var loads: Int = 0
+  private lateinit var testSubject: ProtocolRecordCache<String, Record>
+
+  @Before
+  fun setUp() {
+    whenever(db.inTransaction()).thenAnswer { transaction != null }
+    whenever(db.currentTransaction()).thenAnswer { transaction }
+    doAnswer { onSuccess += it.getArgument<Runnable>(0) }.whenever(db).runPostSuccessfulTransaction(any<Runnable>())
+    doAnswer { onFailure += it.getArgument<Runnable>(0) }.whenever(db).runPostFailedTransaction(any())
+
+    testSubject = ProtocolRecordCache(10)
+  }
+
+  @Test
+  fun `Given a stored record, when I take it, then I expect the same instance without reading the table`() {
+    // GIVEN
+    val record = Record(1)
+    testSubject.put(db, "a", record)
+
+    // WHEN
+    val result = testSubject.take(db, "a", ::load)
+
+    // THEN
+    assertSame(record, result)
+    assertEquals(0, loads)
+  }
+
+  @Test
+  fun `Given a taken record, when I take it again without storing it, then I expect it to be read from the table`() {
+    // GIVEN
+    disk["a"] = 1
+    testSubject.put(db, "a", Record(1))
+    testSubject.take(db, "a", ::load)!!.value = 5
+
+    // WHEN
+    val result = testSubject.take(db, "a", ::load)
+
+    // THEN
+    assertEquals(1, result!!.value)
+    assertEquals(1, loads)
+  }
+
+  @Test
+  fun `Given a borrowed record, when I borrow it again, then I expect the same instance without reading the table again`() {
+    // GIVEN
+    disk["a"] = 1
+    val first = testSubject.borrow(db, "a", ::load)
+
+    // WHEN
+    val second = testSubject.borrow(db, "a", ::load)
+
+    // THEN
+    assertSame(first, second)
+    assertEquals(1, loads)
+  }
+
+  @Test
+  fun `Given a borrowed record, when I take it, then I expect the cached instance`() {
+    // GIVEN
+    disk["a"] = 1
+    val borrowed = testSubject.borrowAll(db, listOf("a")) { keys -> keys.mapNotNull { key -> load(key)?.let { key to it } }.toMap() }["a"]
+
+    // WHEN
+    val taken = testSubject.take(db, "a", ::load)
+
+    // THEN
+    assertSame(borrowed, taken)
+    assertEquals(1, loads)
+  }
+
+  @Test
+  fun `Given a write in a transaction, when it commits, then I expect the write to be visible`() {
+    // GIVEN
+    val record = Record(2)
+    beginTransaction()
+    testSubject.put(db, "a", record)
+
+    // WHEN
+    endTransaction(successful = true)
+
+    // THEN
+    assertSame(record, testSubject.take(db, "a", ::load))
+  }
+
+  @Test
+  fun `Given a write in a transaction, when it rolls back, then I expect the record to be reloaded`() {
+    // GIVEN
+    disk["a"] = 1
+    testSubject.borrow(db, "a", ::load)
+
+    beginTransaction()
+    testSubject.put(db, "a", Record(2))
+
+    // WHEN
+    endTransaction(successful = false)
+
+    // THEN
+    assertEquals(1, testSubject.take(db, "a", ::load)!!.value)
+  }
+
+  @Test
+  fun `Given a write in a transaction that was taken again, when it commits without being stored, then I expect the old record to be gone`() {
+    // GIVEN
+    disk["a"] = 1
+    testSubject.borrow(db, "a", ::load)
+
+    beginTransaction()
+    testSubject.put(db, "a", Record(2))
+    testSubject.take(db, "a", ::load)
+    disk["a"] = 2
+
+    // WHEN
+    endTransaction(successful = true)
+
+    // THEN
+    assertEquals(2, testSubject.take(db, "a", ::load)!!.value)
+  }
+
+  @Test
+  fun `Given a transaction whose end failed, when a new transaction reads, then I expect it not to see the old overlay`() {
+    // GIVEN
+    disk["a"] = 1
+    beginTransaction()
+    testSubject.put(db, "a", Record(2))
+
+    // The transaction ends without either of its callbacks running
+    transaction = null
+    onSuccess.clear()
+    onFailure.clear()
+
+    // WHEN
+    beginTransaction()
+    val result = testSubject.take(db, "a", ::load)
+
+    // THEN
+    assertEquals(1, result!!.value)
+    assertEquals(1, onSuccess.size)
+    assertEquals(1, onFailure.size)
+  }
+
+  private fun load(key: String): Record? {
+    loads++
+    return disk[key]?.let { Record(it) }
+  }
+
+  private fun beginTransaction() {
+    transaction = Any()
+  }
+
+  private fun endTransaction(successful: Boolean) {
+    transaction = null
+
+    val tasks = if (successful) onSuccess.toList() else onFailure.toList()
+    onSuccess.clear()
+    onFailure.clear()
+    tasks.forEach { it.run() }
+  }
+
+  private class Record(var value: Int)
+}
@@ -0,0 +1,60 @@
+package org.thoughtcrime.securesms.database
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class QueryLatencyStatsTest {
+
+  @Test
+  fun `given a query with inlined literals, when I normalize it, then the literals are replaced with placeholders`() {
+    val normalized = QueryLatencyStats.normalize("SELECT * FROM message WHERE _id = 42 AND body = 'it''s a secret' AND data = X'CAFE'")
+
+    assertEquals("SELECT * FROM message WHERE _id = ? AND body = ? AND data = ?", normalized)
+  }
+
+  @Test
+  fun `given queries with differently sized IN lists, when I normalize them, then they are the same`() {
+    val small = QueryLatencyStats.normalize("SELECT * FROM message WHERE _id IN (1, 2)")
+    val large = QueryLatencyStats.normalize("SELECT * FROM message WHERE _id IN (?, ?, ?,\n ?)")
+
+    assertEquals("SELECT * FROM message WHERE _id IN (?)", small)
+    assertEquals(small, large)
+  }
+
+  @Test
+  fun `given a query with digits in identifiers, when I normalize it, then the identifiers are untouched`() {
+    val normalized = QueryLatencyStats.normalize("SELECT v2_column FROM table_3 WHERE a = ?")
+
+    assertEquals("SELECT v2_column FROM table_3 WHERE a = ?", normalized)
+  }
+
+  @Test
+  fun `given queries differing only in literals, when I record them, then they share a histogram`() {
+    val stats = QueryLatencyStats()
+
+    stats.record("SELECT * FROM thread WHERE _id = 1", 1_000)
+    stats.record("SELECT * FROM thread WHERE _id = 2", 1_000)
+
+    val slowest = stats.getSlowest(10)
+    assertEquals(1, slowest.size)
+    assertEquals("SELECT * FROM thread WHERE _id = ?", slowest[0].first)
+    assertEquals(2, slowest[0].second.count)
+  }
+
+  @Test
+  fun `given more distinct queries than allowed, when I record, then extras are grouped together`() {
+    val stats = QueryLatencyStats(maxQueries = 2)
+
+    stats.record("a", 1000)
+    stats.record("b", 1000)
+    stats.record("c", 1000)
+    stats.record("d", 1000)
+    stats.record("a", 1000)
+
+    val slowest = stats.getSlowest(10).toMap()
+
+    assertEquals(setOf("a", "b", QueryLatencyStats.OTHER), slowest.keys)
+    assertEquals(2, slowest["a"]!!.count)
+    assertEquals(2, slowest[QueryLatencyStats.OTHER]!!.count)
+  }
+}
@@ -0,0 +1,122 @@
+package org.thoughtcrime.securesms.database.model
+
+import android.app.Application
+import androidx.test.core.app.ApplicationProvider
+import com.google.protobuf.ByteString
+import org.junit.Ignore
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mock
+import org.mockito.MockedStatic
+import org.mockito.Mockito
+import org.mockito.junit.MockitoJUnit
+import org.mockito.junit.MockitoRule
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.storageservice.protos.groups.local.DecryptedGroup
+import org.signal.storageservice.protos.groups.local.DecryptedMember
+import org.thoughtcrime.securesms.database.FakeMessageRecords
+import org.thoughtcrime.securesms.database.MessageTypes
+import org.thoughtcrime.securesms.database.model.databaseprotos.DecryptedGroupV2Context
+import org.thoughtcrime.securesms.groups.v2.ChangeBuilder
+import org.thoughtcrime.securesms.keyvalue.AccountValues
+import org.thoughtcrime.securesms.keyvalue.SignalStore
+import org.whispersystems.signalservice.api.push.ACI
+import org.whispersystems.signalservice.api.push.PNI
+import org.whispersystems.signalservice.api.push.ServiceIds
+import org.whispersystems.signalservice.api.util.UuidUtil
+import java.util.Locale
+import java.util.UUID
+
+/**
+ * A rough JVM benchmark of loading a page of group update messages the way the conversation data source does, with fresh records per
+ * load, with and without the shared description cache. Ignored by default since it's slow and only prints timings. Remove the
+ * annotation to run it locally.
+ */
+@Ignore("Benchmark. Run manually.")
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class GroupUpdateDescriptionBenchmark {
+
+  @get:Rule
+  val rule: MockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  lateinit var signalStore: MockedStatic<SignalStore>
+
+  private val context: Application = ApplicationProvider.getApplicationContext()
+  private val you = UUID.randomUUID()
+
+  @Test
+  fun load_page_of_100_members_group_updates() {
+    val accountValues = Mockito.mock(AccountValues::class.java)
+    Mockito.`when`(accountValues.getServiceIds()).thenReturn(ServiceIds(ACI.from(you), PNI.from(UUID.randomUUID())))
+    signalStore.`when`<AccountValues> { SignalStore.account() }.thenReturn(accountValues)
+
+    val payloads = (0 until PAGE_SIZE).map { updatePayload(it) }
+
+    repeat(5) {
+      loadPage(payloads, cold = true)
+      loadPage(payloads, cold = false)
+    }
+
+    var coldNanos = 0L
+    var warmNanos = 0L
+
+    repeat(LOADS) {
+      var start = System.nanoTime()
+      loadPage(payloads, cold = true)
+      coldNanos += System.nanoTime() - start
+
+      start = System.nanoTime()
+      loadPage(payloads, cold = false)
+      warmNanos += System.nanoTime() - start
+    }
+
+    println(
+      String.format(
+        Locale.US,
+        "%d updates: uncached %.2f ms/load, cached %.2f ms/load (%.1fx)",
+        PAGE_SIZE,
+        coldNanos / 1_000_000.0 / LOADS,
+        warmNanos / 1_000_000.0 / LOADS,
+        coldNanos / warmNanos.toDouble()
+      )
+    )
+  }
+
+  /**
+   * Mirrors ConversationDataSource.load, which asks for the update description while reading and again when building the display body.
+   */
+  private fun loadPage(payloads: List<ByteArray>, cold: Boolean) {
+    if (cold) {
+      MessageRecord.clearGv2DescriptionCache()
+    }
+
+    payloads.forEachIndexed { i, payload ->
+      val record = FakeMessageRecords.buildMediaMmsMessageRecord(id = i.toLong(), body = "", updatePayload = payload, mailbox = GROUP_V2_UPDATE_TYPE)
+
+      record.getUpdateDisplayBody(context, null)
+      record.getDisplayBody(context)
+    }
+  }
+
+  private fun updatePayload(index: Int): ByteArray {
+    val members = (0 until 100).map { DecryptedMember.newBuilder().setUuid(UuidUtil.toByteString(UUID.randomUUID())).setProfileKey(ByteString.copyFrom(ByteArray(32))).build() }
+
+    val groupContext = DecryptedGroupV2Context.newBuilder()
+      .setChange(ChangeBuilder.changeBy(you).title("Title $index").build())
+      .setGroupState(DecryptedGroup.newBuilder().setRevision(index + 1).addAllMembers(members))
+      .setPreviousGroupState(DecryptedGroup.newBuilder().setRevision(index).addAllMembers(members))
+      .build()
+
+    return groupContext.toByteArray()
+  }
+
+  companion object {
+    private const val PAGE_SIZE = 100
+    private const val LOADS = 50
+    private const val GROUP_V2_UPDATE_TYPE = MessageTypes.BASE_INBOX_TYPE or MessageTypes.SECURE_MESSAGE_BIT or MessageTypes.GROUP_UPDATE_BIT or MessageTypes.GROUP_V2_BIT
+  }
+}
@@ -8,7 +8,6 @@ import org.mockito.kotlin.doReturn
 import org.mockito.kotlin.mock
 import org.thoughtcrime.securesms.database.model.databaseprotos.DecryptedGroupV2Context
 import org.thoughtcrime.securesms.groups.v2.ChangeBuilder
-import org.thoughtcrime.securesms.util.Base64
 import org.whispersystems.signalservice.api.util.UuidUtil
 import org.whispersystems.signalservice.internal.push.SignalServiceProtos
 import java.util.Random
@@ -66,9 +65,9 @@ class MessageRecordTest_createNewContextWithAppendedDeleteJoinRequest {
       on { decryptedGroupV2Context } doReturn context
     }
 
-    val newEncodedBody = MessageRecord.createNewContextWithAppendedDeleteJoinRequest(messageRecord, 10, aliceByteString)
+    val newPayload = MessageRecord.createNewContextWithAppendedDeleteJoinRequest(messageRecord, 10, aliceByteString)
 
-    val newContext = DecryptedGroupV2Context.parseFrom(Base64.decode(newEncodedBody))
+    val newContext = DecryptedGroupV2Context.parseFrom(newPayload)
 
     assertThat("revision updated to 10", newContext.change.revision, `is`(10))
     assertThat("change should retain join request", newContext.change.newRequestingMembersList[0].uuid, `is`(aliceByteString))
@@ -0,0 +1,145 @@
+package org.thoughtcrime.securesms.database.model
+
+import android.app.Application
+import androidx.test.core.app.ApplicationProvider
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mock
+import org.mockito.MockedStatic
+import org.mockito.Mockito
+import org.mockito.junit.MockitoJUnit
+import org.mockito.junit.MockitoRule
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.storageservice.protos.groups.local.DecryptedGroup
+import org.thoughtcrime.securesms.R
+import org.thoughtcrime.securesms.database.FakeMessageRecords
+import org.thoughtcrime.securesms.database.MessageTypes
+import org.thoughtcrime.securesms.database.model.databaseprotos.DecryptedGroupV2Context
+import org.thoughtcrime.securesms.groups.v2.ChangeBuilder
+import org.thoughtcrime.securesms.keyvalue.AccountValues
+import org.thoughtcrime.securesms.keyvalue.SignalStore
+import org.thoughtcrime.securesms.util.Base64
+import org.whispersystems.signalservice.api.push.ACI
+import org.whispersystems.signalservice.api.push.PNI
+import org.whispersystems.signalservice.api.push.ServiceIds
+import java.util.Locale
+import java.util.UUID
+
+@Suppress("ClassName")
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class MessageRecordTest_getGv2ChangeDescription {
+
+  @get:Rule
+  val rule: MockitoRule = MockitoJUnit.rule()
+
+  @Mock
+  lateinit var signalStore: MockedStatic<SignalStore>
+
+  private val context: Application = ApplicationProvider.getApplicationContext()
+  private val you = UUID.randomUUID()
+  private val defaultLocale = Locale.getDefault()
+
+  @Before
+  fun setUp() {
+    val accountValues = Mockito.mock(AccountValues::class.java)
+    Mockito.`when`(accountValues.getServiceIds()).thenReturn(ServiceIds(ACI.from(you), PNI.from(UUID.randomUUID())))
+    signalStore.`when`<AccountValues> { SignalStore.account() }.thenReturn(accountValues)
+
+    MessageRecord.clearGv2DescriptionCache()
+  }
+
+  @After
+  fun tearDown() {
+    Locale.setDefault(defaultLocale)
+  }
+
+  /**
+   * Given a group update body, when I describe it twice, then I expect the same description.
+   */
+  @Test
+  fun sameBodyIsMemoized() {
+    val body = updateBody()
+
+    val first = MessageRecord.getGv2ChangeDescription(context, body, null)
+    val second = MessageRecord.getGv2ChangeDescription(context, body, null)
+
+    assertSame(first, second)
+    assertEquals("You updated the group.", second.spannable.toString())
+  }
+
+  /**
+   * Given a described group update, when the locale changes, then I expect a new description.
+   */
+  @Test
+  fun localeChangeIsNotMemoized() {
+    val body = updateBody()
+
+    val first = MessageRecord.getGv2ChangeDescription(context, body, null)
+    Locale.setDefault(Locale.GERMANY)
+    val second = MessageRecord.getGv2ChangeDescription(context, body, null)
+
+    assertNotSame(first, second)
+  }
+
+  /**
+   * Given a described group update, when I describe it with a click handler, then I expect a new description.
+   */
+  @Test
+  fun clickHandlerIsNotMemoized() {
+    val body = updateBody()
+
+    val first = MessageRecord.getGv2ChangeDescription(context, body, null)
+    val second = MessageRecord.getGv2ChangeDescription(context, body) { }
+
+    assertNotSame(first, second)
+    assertEquals(first.spannable.toString(), second.spannable.toString())
+  }
+
+  /**
+   * Given a group update record, when I describe it and its thread snippet, then I expect the same description.
+   */
+  @Test
+  fun recordAndSnippetShareDescription() {
+    val payload = updatePayload()
+    val record = FakeMessageRecords.buildMediaMmsMessageRecord(
+      body = "",
+      updatePayload = payload,
+      mailbox = MessageTypes.BASE_INBOX_TYPE or MessageTypes.GROUP_V2_BIT or MessageTypes.GROUP_UPDATE_BIT
+    )
+
+    val fromRecord = record.getUpdateDisplayBody(context, null)
+    val fromSnippet = MessageRecord.getGv2ChangeDescription(context, Base64.encodeBytes(payload), null)
+
+    assertSame(fromRecord, fromSnippet)
+  }
+
+  /**
+   * Given a body that isn't a group update, when I describe it, then I expect the generic description.
+   */
+  @Test
+  fun unreadableBodyFallsBack() {
+    val description = MessageRecord.getGv2ChangeDescription(context, "not base64!", null)
+
+    assertEquals(context.getString(R.string.MessageRecord_group_updated), description.spannable.toString())
+  }
+
+  private fun updateBody(): String {
+    return Base64.encodeBytes(updatePayload())
+  }
+
+  private fun updatePayload(): ByteArray {
+    return DecryptedGroupV2Context.newBuilder()
+      .setChange(ChangeBuilder.changeBy(you).build())
+      .setGroupState(DecryptedGroup.newBuilder().setRevision(5))
+      .build()
+      .toByteArray()
+  }
+}
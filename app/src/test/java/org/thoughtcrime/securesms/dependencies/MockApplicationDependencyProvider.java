@@ -12,6 +12,7 @@ import org.thoughtcrime.securesms.crypto.storage.SignalServiceDataStoreImpl;
 import org.thoughtcrime.securesms.database.DatabaseObserver;
 import org.thoughtcrime.securesms.database.PendingRetryReceiptCache;
 import org.thoughtcrime.securesms.jobmanager.JobManager;
+import org.thoughtcrime.securesms.linkpreview.LinkPreviewCache;
 import org.thoughtcrime.securesms.megaphone.MegaphoneRepository;
 import org.thoughtcrime.securesms.messages.BackgroundMessageRetriever;
 import org.thoughtcrime.securesms.messages.IncomingMessageObserver;
@@ -203,6 +204,11 @@ public class MockApplicationDependencyProvider implements ApplicationDependencie
     return null;
   }
 
+  @Override
+  public @NonNull LinkPreviewCache provideLinkPreviewCache() {
+    return null;
+  }
+
   @Override
   public @NonNull SimpleExoPlayerPool provideExoPlayerPool() {
     return null;
@@ -0,0 +1,265 @@
+package org.thoughtcrime.securesms.jobmanager;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.signal.core.util.logging.Log;
+import org.thoughtcrime.securesms.jobmanager.persistence.ConstraintSpec;
+import org.thoughtcrime.securesms.jobmanager.persistence.JobSpec;
+import org.thoughtcrime.securesms.jobmanager.persistence.JobStorage;
+import org.thoughtcrime.securesms.util.Debouncer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JobControllerTest {
+
+  private static final String UNMET_CONSTRAINT = "UnmetConstraint";
+
+  private JobStorage                        jobStorage;
+  private JobTracker                        jobTracker;
+  private Debouncer                         debouncer;
+  private JobController.Callback            callback;
+  private List<JobSpec>                     pendingJobs;
+  private Map<String, List<ConstraintSpec>> constraints;
+  private JobController                     subject;
+
+  @BeforeClass
+  public static void init() {
+    Log.initialize(mock(Log.Logger.class));
+  }
+
+  @Before
+  public void setUp() {
+    jobStorage  = mock(JobStorage.class);
+    jobTracker  = mock(JobTracker.class);
+    debouncer   = mock(Debouncer.class);
+    callback    = mock(JobController.Callback.class);
+    pendingJobs = new ArrayList<>();
+    constraints = new HashMap<>();
+
+    when(jobStorage.getPendingJobsWithNoDependenciesInCreatedOrder(anyLong())).thenAnswer(invocation -> {
+      long time = invocation.getArgument(0);
+      List<JobSpec> result = new ArrayList<>();
+      for (JobSpec jobSpec : pendingJobs) {
+        if (jobSpec.getNextRunAttemptTime() <= time) {
+          result.add(jobSpec);
+        }
+      }
+      return result;
+    });
+    when(jobStorage.getConstraintSpecs(anyString())).thenAnswer(invocation -> constraints.getOrDefault(invocation.<String>getArgument(0), Collections.emptyList()));
+    when(jobStorage.getJobSpec(anyString())).thenAnswer(invocation -> findPending(invocation.getArgument(0)));
+
+    doAnswer(invocation -> {
+      invocation.<Runnable>getArgument(0).run();
+      return null;
+    }).when(debouncer).publish(any());
+
+    Constraint unmet = mock(Constraint.class);
+    when(unmet.isMet()).thenReturn(false);
+
+    Map<String, Job.Factory>        jobFactories        = Collections.singletonMap(TestJob.KEY, (parameters, data) -> new TestJob(parameters));
+    Map<String, Constraint.Factory> constraintFactories = Collections.singletonMap(UNMET_CONSTRAINT, () -> unmet);
+
+    subject = new JobController(mock(Application.class),
+                                jobStorage,
+                                new JobInstantiator(jobFactories),
+                                new ConstraintInstantiator(constraintFactories),
+                                jobTracker,
+                                mock(Scheduler.class),
+                                debouncer,
+                                callback);
+  }
+
+  @Test
+  public void pullNextEligibleJobForExecution_returnsOldestReadyJob() {
+    addPendingJob("a", "queue-a", 1, 0);
+    addPendingJob("b", "queue-b", 2, 0);
+
+    Job job = subject.pullNextEligibleJobForExecution(JobPredicate.NONE);
+
+    assertEquals("a", job.getId());
+    verify(jobStorage).updateJobRunningState("a", true);
+    verify(jobTracker).onStateChange(job, JobTracker.JobState.RUNNING);
+  }
+
+  @Test
+  public void pullNextEligibleJobForExecution_skipsJobsWithUnmetConstraints() {
+    addPendingJob("a", "queue-a", 1, 0);
+    addPendingJob("b", "queue-b", 2, 0);
+    constraints.put("a", Collections.singletonList(new ConstraintSpec("a", UNMET_CONSTRAINT, false)));
+
+    Job job = subject.pullNextEligibleJobForExecution(JobPredicate.NONE);
+
+    assertEquals("b", job.getId());
+  }
+
+  @Test
+  public void pullNextEligibleJobForExecution_skipsJobsInBackoff() {
+    addPendingJob("a", "queue-a", 1, System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+    addPendingJob("b", "queue-b", 2, 0);
+
+    Job job = subject.pullNextEligibleJobForExecution(JobPredicate.NONE);
+
+    assertEquals("b", job.getId());
+  }
+
+  @Test
+  public void pullNextEligibleJobForExecution_respectsPredicate() {
+    addPendingJob("a", "queue-a", 1, 0);
+    addPendingJob("b", "queue-b", 2, 0);
+
+    Job job = subject.pullNextEligibleJobForExecution(jobSpec -> "queue-b".equals(jobSpec.getQueueKey()));
+
+    assertEquals("b", job.getId());
+  }
+
+  @Test
+  public void pullNextEligibleJobForExecution_blocksUntilAJobIsSubmitted() throws Exception {
+    AtomicReference<Job> pulled = new AtomicReference<>();
+    CountDownLatch       idle   = new CountDownLatch(1);
+
+    doAnswer(invocation -> {
+      idle.countDown();
+      return null;
+    }).when(callback).onEmpty();
+
+    Thread runner = new Thread(() -> pulled.set(subject.pullNextEligibleJobForExecution(JobPredicate.NONE)));
+    runner.start();
+
+    assertTrue(idle.await(5, TimeUnit.SECONDS));
+
+    addPendingJob("a", "queue-a", 1, 0);
+    subject.wakeUp();
+
+    runner.join(TimeUnit.SECONDS.toMillis(5));
+
+    assertEquals("a", pulled.get().getId());
+  }
+
+  @Test
+  public void pullNextEligibleJobForExecution_callsOnEmptyWhenNothingIsRunning() throws Exception {
+    CountDownLatch idle = new CountDownLatch(1);
+
+    doAnswer(invocation -> {
+      idle.countDown();
+      return null;
+    }).when(callback).onEmpty();
+
+    Thread runner = new Thread(() -> subject.pullNextEligibleJobForExecution(JobPredicate.NONE));
+    runner.start();
+
+    assertTrue(idle.await(5, TimeUnit.SECONDS));
+
+    addPendingJob("a", "queue-a", 1, 0);
+    subject.wakeUp();
+    runner.join(TimeUnit.SECONDS.toMillis(5));
+  }
+
+  @Test
+  public void pullNextEligibleJobForExecution_doesNotCallOnEmptyWhileAJobIsRunning() throws Exception {
+    addPendingJob("a", "queue-a", 1, 0);
+    subject.pullNextEligibleJobForExecution(JobPredicate.NONE);
+    pendingJobs.clear();
+
+    CountDownLatch waiting = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      waiting.countDown();
+      return Collections.emptyList();
+    }).when(jobStorage).getPendingJobsWithNoDependenciesInCreatedOrder(anyLong());
+
+    Thread runner = new Thread(() -> subject.pullNextEligibleJobForExecution(JobPredicate.NONE));
+    runner.setDaemon(true);
+    runner.start();
+
+    assertTrue(waiting.await(5, TimeUnit.SECONDS));
+    synchronized (subject) {
+      verify(callback, never()).onEmpty();
+    }
+  }
+
+  @Test
+  public void cancelJob_whenInactive_failsTheJob() {
+    addPendingJob("a", "queue-a", 1, 0);
+
+    subject.cancelJob("a");
+
+    verify(jobStorage).deleteJobs(Collections.singletonList("a"));
+    verify(jobTracker).onStateChange(any(), eq(JobTracker.JobState.FAILURE));
+  }
+
+  @Test
+  public void cancelJob_whenRunning_marksTheJobCanceled() {
+    addPendingJob("a", "queue-a", 1, 0);
+    Job job = subject.pullNextEligibleJobForExecution(JobPredicate.NONE);
+
+    subject.cancelJob("a");
+
+    assertTrue(job.isCanceled());
+    verify(jobStorage, never()).deleteJobs(any());
+  }
+
+  private void addPendingJob(@NonNull String id, @NonNull String queue, long createTime, long nextRunAttemptTime) {
+    pendingJobs.add(new JobSpec(id, TestJob.KEY, queue, createTime, nextRunAttemptTime, 0, Job.Parameters.UNLIMITED, Job.Parameters.IMMORTAL, null, null, false, false));
+  }
+
+  private @Nullable JobSpec findPending(@NonNull String id) {
+    for (JobSpec jobSpec : pendingJobs) {
+      if (jobSpec.getId().equals(id)) {
+        return jobSpec;
+      }
+    }
+    return null;
+  }
+
+  private static final class TestJob extends Job {
+    private static final String KEY = "TestJob";
+
+    private TestJob(@NonNull Parameters parameters) {
+      super(parameters);
+    }
+
+    @Override
+    public @Nullable byte[] serialize() {
+      return null;
+    }
+
+    @Override
+    public @NonNull String getFactoryKey() {
+      return KEY;
+    }
+
+    @Override
+    public @NonNull Result run() {
+      return Result.success();
+    }
+
+    @Override
+    public void onFailure() {
+    }
+  }
+}
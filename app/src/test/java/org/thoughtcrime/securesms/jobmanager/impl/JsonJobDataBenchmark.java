@@ -0,0 +1,100 @@
+package org.thoughtcrime.securesms.jobmanager.impl;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.thoughtcrime.securesms.jobmanager.JsonJobData;
+import org.thoughtcrime.securesms.util.JsonUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A rough JVM benchmark of deserializing the data for 10k jobs, as happens when a large job queue is restored at startup, comparing
+ * the legacy JSON format with the binary one. Ignored by default since it's slow and only prints timings. Remove the annotation to
+ * run it locally.
+ */
+@Ignore("Benchmark. Run manually.")
+public final class JsonJobDataBenchmark {
+
+  private static final int JOBS   = 10_000;
+  private static final int ROUNDS = 20;
+
+  @Test
+  public void restore_10k_jobs() throws IOException {
+    Random       random = new Random(1);
+    List<byte[]> json   = new ArrayList<>(JOBS);
+    List<byte[]> binary = new ArrayList<>(JOBS);
+
+    for (int i = 0; i < JOBS; i++) {
+      JsonJobData data = jobData(random);
+
+      json.add(JsonUtils.toJson(data).getBytes(StandardCharsets.UTF_8));
+      binary.add(data.serialize());
+    }
+
+    for (int i = 0; i < 5; i++) {
+      deserializeAll(json);
+      deserializeAll(binary);
+    }
+
+    long jsonNanos   = 0;
+    long binaryNanos = 0;
+
+    for (int i = 0; i < ROUNDS; i++) {
+      long start = System.nanoTime();
+      deserializeAll(json);
+      jsonNanos += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      deserializeAll(binary);
+      binaryNanos += System.nanoTime() - start;
+    }
+
+    System.out.println(String.format(Locale.US, "%d jobs: json %.2f ms (%d bytes), binary %.2f ms (%d bytes) (%.1fx)",
+                                     JOBS,
+                                     jsonNanos / 1_000_000.0 / ROUNDS,
+                                     totalSize(json),
+                                     binaryNanos / 1_000_000.0 / ROUNDS,
+                                     totalSize(binary),
+                                     jsonNanos / (double) binaryNanos));
+  }
+
+  /**
+   * Roughly the shape of a send job: a few ids and timestamps, a flag or two, and sometimes a list of recipients.
+   */
+  private static JsonJobData jobData(Random random) {
+    JsonJobData.Builder builder = new JsonJobData.Builder().putLong("message_id", random.nextLong())
+                                                           .putLong("timestamp", System.currentTimeMillis())
+                                                           .putString("recipient_id", String.valueOf(random.nextInt(5000)))
+                                                           .putBoolean("is_mms", random.nextBoolean())
+                                                           .putInt("attempt", random.nextInt(5));
+
+    if (random.nextInt(4) == 0) {
+      long[] recipients = new long[1 + random.nextInt(20)];
+      for (int i = 0; i < recipients.length; i++) {
+        recipients[i] = random.nextInt(5000);
+      }
+      builder.putLongArray("recipients", recipients);
+    }
+
+    return builder.build();
+  }
+
+  private static void deserializeAll(List<byte[]> serialized) {
+    for (byte[] data : serialized) {
+      JsonJobData.deserialize(data);
+    }
+  }
+
+  private static long totalSize(List<byte[]> serialized) {
+    long size = 0;
+    for (byte[] data : serialized) {
+      size += data.length;
+    }
+    return size;
+  }
+}
@@ -9,6 +9,7 @@ import java.io.IOException;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public final class JsonJobDataTest {
@@ -47,4 +48,59 @@ public final class JsonJobDataTest {
     assertFalse(data.getBoolean("b2"));
     assertArrayEquals(new boolean[]{ false, true }, data.getBooleanArray("b_array_1"));
   }
+
+  @Test
+  public void serialize_roundTripsAllTypes() {
+    JsonJobData data = new JsonJobData.Builder().putString("s1", "s1 value")
+                                                .putString("s_null", null)
+                                                .putString("s_unicode", "\u00e9\ud83d\ude00")
+                                                .putStringArray("s_array_1", new String[]{ "a", null, "c" })
+                                                .putInt("i1", Integer.MIN_VALUE)
+                                                .putIntArray("i_array_1", new int[]{ 1, 2, 3, Integer.MAX_VALUE })
+                                                .putLong("l1", Long.MAX_VALUE)
+                                                .putLongArray("l_array_1", new long[0])
+                                                .putFloat("f1", 1.2f)
+                                                .putFloatArray("f_array_1", new float[]{ 5.6f, 7.8f })
+                                                .putDouble("d1", 10.2)
+                                                .putDoubleArray("d_array_1", new double[]{ 50.6, 70.8 })
+                                                .putBoolean("b1", true)
+                                                .putBooleanArray("b_array_1", new boolean[]{ false, true })
+                                                .build();
+
+    JsonJobData result = JsonJobData.deserialize(data.serialize());
+
+    assertEquals("s1 value", result.getString("s1"));
+    assertTrue(result.hasString("s_null"));
+    assertNull(result.getString("s_null"));
+    assertEquals("\u00e9\ud83d\ude00", result.getString("s_unicode"));
+    assertArrayEquals(new String[]{ "a", null, "c" }, result.getStringArray("s_array_1"));
+    assertEquals(Integer.MIN_VALUE, result.getInt("i1"));
+    assertArrayEquals(new int[]{ 1, 2, 3, Integer.MAX_VALUE }, result.getIntegerArray("i_array_1"));
+    assertEquals(Long.MAX_VALUE, result.getLong("l1"));
+    assertArrayEquals(new long[0], result.getLongArray("l_array_1"));
+    assertEquals(1.2f, result.getFloat("f1"), FloatDelta);
+    assertArrayEquals(new float[]{ 5.6f, 7.8f }, result.getFloatArray("f_array_1"), FloatDelta);
+    assertEquals(10.2, result.getDouble("d1"), FloatDelta);
+    assertArrayEquals(new double[]{ 50.6, 70.8 }, result.getDoubleArray("d_array_1"), FloatDelta);
+    assertTrue(result.getBoolean("b1"));
+    assertArrayEquals(new boolean[]{ false, true }, result.getBooleanArray("b_array_1"));
+  }
+
+  @Test
+  public void serialize_legacyJsonIsRewrittenAsBinary() throws IOException {
+    byte[]      json = StreamUtil.readFully(ClassLoader.getSystemClassLoader().getResourceAsStream("data/data_serialized.json"));
+    JsonJobData data = JsonJobData.deserialize(json);
+
+    byte[] binary = data.serialize();
+
+    assertEquals(0, binary[0]);
+    assertEquals(data.getString("s1"), JsonJobData.deserialize(binary).getString("s1"));
+    assertArrayEquals(data.getLongArray("l_array_1"), JsonJobData.deserialize(binary).getLongArray("l_array_1"));
+  }
+
+  @Test
+  public void serialize_emptyIsNull() {
+    assertNull(JsonJobData.EMPTY.serialize());
+    assertTrue(JsonJobData.deserialize(null).isEmpty());
+  }
 }
@@ -0,0 +1,206 @@
+package org.thoughtcrime.securesms.jobs;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.database.model.MessageId;
+import org.thoughtcrime.securesms.jobmanager.Job;
+import org.thoughtcrime.securesms.recipients.RecipientId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class DeliveryReceiptAggregatorTest {
+
+  private static final RecipientId ALICE = RecipientId.from(1);
+  private static final RecipientId BOB   = RecipientId.from(2);
+
+  private FakeStore                 store;
+  private List<Job>                 jobs;
+  private List<Runnable>            scheduledFlushes;
+  private DeliveryReceiptAggregator testSubject;
+
+  @Before
+  public void setUp() {
+    store            = new FakeStore();
+    jobs             = new ArrayList<>();
+    scheduledFlushes = new ArrayList<>();
+    testSubject      = newAggregator();
+  }
+
+  @Test
+  public void givenSeveralReceipts_whenIFlush_thenIExpectOneJobPerRecipient() {
+    testSubject.add(ALICE, 100, new MessageId(1));
+    testSubject.add(BOB, 101, new MessageId(2));
+    testSubject.add(ALICE, 102, new MessageId(3));
+
+    assertTrue(jobs.isEmpty());
+    assertEquals(1, scheduledFlushes.size());
+
+    scheduledFlushes.get(0).run();
+
+    assertEquals(2, jobs.size());
+    assertEquals(Arrays.asList(100L, 102L), ((SendDeliveryReceiptJob) jobs.get(0)).getMessageSentTimestamps());
+    assertEquals(Arrays.asList(101L), ((SendDeliveryReceiptJob) jobs.get(1)).getMessageSentTimestamps());
+  }
+
+  @Test
+  public void givenAFullBatch_whenIAddIt_thenIExpectAJobRightAway() {
+    testSubject.add(ALICE, 100, new MessageId(1));
+    testSubject.add(ALICE, 101, new MessageId(2));
+    testSubject.add(ALICE, 102, new MessageId(3));
+
+    assertEquals(1, jobs.size());
+    assertEquals(Arrays.asList(100L, 101L, 102L), ((SendDeliveryReceiptJob) jobs.get(0)).getMessageSentTimestamps());
+
+    scheduledFlushes.get(0).run();
+
+    assertEquals(1, jobs.size());
+  }
+
+  @Test
+  public void givenAFlush_whenIAddMoreReceipts_thenIExpectAnotherFlushToBeScheduled() {
+    testSubject.add(ALICE, 100, new MessageId(1));
+    scheduledFlushes.get(0).run();
+
+    testSubject.add(ALICE, 101, new MessageId(2));
+
+    assertEquals(2, scheduledFlushes.size());
+
+    scheduledFlushes.get(1).run();
+
+    assertEquals(2, jobs.size());
+    assertEquals(Arrays.asList(101L), ((SendDeliveryReceiptJob) jobs.get(1)).getMessageSentTimestamps());
+  }
+
+  @Test
+  public void givenPendingReceipts_whenIAddThem_thenIExpectThemStoredUntilTheyAreInAJob() {
+    testSubject.add(ALICE, 100, new MessageId(1));
+    testSubject.add(BOB, 101, new MessageId(2));
+
+    assertEquals(2, store.rows.size());
+
+    scheduledFlushes.get(0).run();
+
+    assertEquals(2, jobs.size());
+    assertEquals(2, store.rows.size());
+
+    persistJobs(testSubject);
+
+    assertTrue(store.rows.isEmpty());
+  }
+
+  @Test
+  public void givenAFullBatch_whenItsJobIsPersisted_thenIExpectOnlyItsReceiptsRemovedFromTheStore() {
+    testSubject.add(BOB, 99, new MessageId(4));
+    testSubject.add(ALICE, 100, new MessageId(1));
+    testSubject.add(ALICE, 101, new MessageId(2));
+    testSubject.add(ALICE, 102, new MessageId(3));
+
+    assertEquals(1, jobs.size());
+    assertEquals(4, store.rows.size());
+
+    persistJobs(testSubject);
+
+    assertEquals(1, store.rows.size());
+    assertEquals(BOB, store.rows.values().iterator().next().getRecipientId());
+  }
+
+  @Test
+  public void givenAFailingJobSink_whenIFlush_thenIExpectTheReceiptsToStayStored() {
+    testSubject = new DeliveryReceiptAggregator(3, store, batch -> { throw new IllegalStateException(); }, scheduledFlushes::add);
+    testSubject.add(ALICE, 100, new MessageId(1));
+
+    try {
+      scheduledFlushes.get(0).run();
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+
+    assertEquals(1, store.rows.size());
+  }
+
+  @Test
+  public void givenReceiptsFromAPreviousProcess_whenIRestore_thenIExpectThemToBeSent() {
+    testSubject.add(ALICE, 100, new MessageId(1));
+    testSubject.add(BOB, 101, new MessageId(2));
+
+    DeliveryReceiptAggregator restarted = newAggregator();
+    scheduledFlushes.clear();
+
+    restarted.restore();
+
+    assertEquals(1, scheduledFlushes.size());
+
+    scheduledFlushes.get(0).run();
+
+    assertEquals(2, jobs.size());
+    assertEquals(Arrays.asList(100L), ((SendDeliveryReceiptJob) jobs.get(0)).getMessageSentTimestamps());
+    assertEquals(Arrays.asList(101L), ((SendDeliveryReceiptJob) jobs.get(1)).getMessageSentTimestamps());
+
+    persistJobs(restarted);
+
+    assertTrue(store.rows.isEmpty());
+  }
+
+  @Test
+  public void givenReceiptsAddedInThisProcess_whenIRestore_thenIExpectThemNotToBeSentTwice() {
+    testSubject.add(ALICE, 100, new MessageId(1));
+    testSubject.add(ALICE, 101, new MessageId(2));
+
+    testSubject.restore();
+    scheduledFlushes.get(0).run();
+
+    assertEquals(1, jobs.size());
+    assertEquals(Arrays.asList(100L, 101L), ((SendDeliveryReceiptJob) jobs.get(0)).getMessageSentTimestamps());
+  }
+
+  @Test
+  public void givenNothingStored_whenIRestore_thenIExpectNoFlushToBeScheduled() {
+    testSubject.restore();
+
+    assertTrue(scheduledFlushes.isEmpty());
+  }
+
+  /**
+   * Does what {@link SendDeliveryReceiptJob#onAdded()} does once the job manager has stored each job.
+   */
+  private void persistJobs(DeliveryReceiptAggregator aggregator) {
+    for (Job job : jobs) {
+      aggregator.onPersisted(((SendDeliveryReceiptJob) job).getPendingReceiptRowIds());
+    }
+  }
+
+  private DeliveryReceiptAggregator newAggregator() {
+    return new DeliveryReceiptAggregator(3, store, jobs::addAll, scheduledFlushes::add);
+  }
+
+  private static final class FakeStore implements DeliveryReceiptAggregator.Store {
+    private final Map<Long, Receipt> rows = new LinkedHashMap<>();
+
+    private long nextRowId = 1;
+
+    @Override
+    public long insert(RecipientId recipientId, long messageSentTimestamp, MessageId messageId) {
+      long rowId = nextRowId++;
+      rows.put(rowId, new Receipt(rowId, recipientId, messageSentTimestamp, messageId));
+      return rowId;
+    }
+
+    @Override
+    public List<Receipt> getAll() {
+      return new ArrayList<>(rows.values());
+    }
+
+    @Override
+    public void delete(Collection<Long> rowIds) {
+      rows.keySet().removeAll(rowIds);
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package org.thoughtcrime.securesms.keyvalue
+
+import android.app.Application
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class KeyValueStoreTest {
+
+  @Test
+  fun `given a write in flight, when I apply several more, then they are coalesced into one transaction`() {
+    val storage = BlockingStorage()
+    val store = KeyValueStore(storage)
+
+    store.beginWrite().putInteger("a", 1).apply()
+    assertTrue(storage.firstWriteStarted.await(5, TimeUnit.SECONDS))
+
+    store.beginWrite().putInteger("b", 2).apply()
+    store.beginWrite().putInteger("c", 3).apply()
+    store.beginWrite().remove("a").apply()
+    store.beginWrite().putInteger("b", 4).apply()
+
+    storage.releaseFirstWrite.countDown()
+    store.blockUntilAllWritesFinished()
+
+    assertEquals(2, storage.writes.size)
+
+    val (values, removes) = storage.writes[1]
+    assertEquals(mapOf("b" to 4, "c" to 3), values)
+    assertEquals(setOf("a"), removes)
+  }
+
+  @Test
+  fun `given a remove followed by a put of the same key, when coalesced, then only the put is written`() {
+    val storage = BlockingStorage()
+    val store = KeyValueStore(storage)
+
+    store.beginWrite().putInteger("z", 0).apply()
+    assertTrue(storage.firstWriteStarted.await(5, TimeUnit.SECONDS))
+
+    store.beginWrite().remove("a").apply()
+    store.beginWrite().putString("a", "value").apply()
+
+    storage.releaseFirstWrite.countDown()
+    store.blockUntilAllWritesFinished()
+
+    val (values, removes) = storage.writes[1]
+    assertEquals(mapOf("a" to "value"), values)
+    assertTrue(removes.isEmpty())
+  }
+
+  @Test
+  fun `when I write a value, then it is immediately visible to reads and previous snapshots are unchanged`() {
+    val store = KeyValueStore(MockKeyValuePersistentStorage.withDataSet(KeyValueDataSet()))
+
+    store.beginWrite().putLong("a", 1).apply()
+    val snapshot = store.beginRead()
+
+    store.beginWrite().putLong("a", 2).remove("b").apply()
+
+    assertEquals(2, store.getLong("a", 0))
+    assertEquals(1, snapshot.getLong("a", 0))
+    assertFalse(store.containsKey("b"))
+  }
+
+  @Test
+  fun `when I write keys, then write counts are tracked per key`() {
+    val store = KeyValueStore(MockKeyValuePersistentStorage.withDataSet(KeyValueDataSet()))
+
+    repeat(3) { store.beginWrite().putBoolean("noisy", it % 2 == 0).apply() }
+    store.beginWrite().putBoolean("quiet", true).apply()
+    store.blockUntilAllWritesFinished()
+
+    val stats = store.getWriteStats(1)
+
+    assertEquals(4, stats.applies)
+    assertEquals(1, stats.topKeys.size)
+    assertEquals("noisy", stats.topKeys[0].key)
+    assertEquals(3, stats.topKeys[0].count)
+  }
+
+  private class BlockingStorage : KeyValuePersistentStorage {
+    val firstWriteStarted = CountDownLatch(1)
+    val releaseFirstWrite = CountDownLatch(1)
+    val writes: MutableList<Pair<Map<String, Any?>, Set<String>>> = mutableListOf()
+
+    override fun writeDataSet(dataSet: KeyValueDataSet, removes: Collection<String>) {
+      synchronized(this) {
+        writes += HashMap(dataSet.values) to removes.toSet()
+      }
+
+      if (firstWriteStarted.count > 0) {
+        firstWriteStarted.countDown()
+        releaseFirstWrite.await()
+      }
+    }
+
+    override fun getDataSet(): KeyValueDataSet = KeyValueDataSet()
+  }
+}
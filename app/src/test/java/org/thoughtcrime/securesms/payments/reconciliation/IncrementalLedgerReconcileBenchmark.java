@@ -0,0 +1,74 @@
+package org.thoughtcrime.securesms.payments.reconciliation;
+
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.signal.core.util.logging.Log;
+import org.thoughtcrime.securesms.payments.MobileCoinLedgerWrapper;
+import org.thoughtcrime.securesms.testutil.LogRecorder;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A rough JVM benchmark of {@link IncrementalLedgerReconcile} against a full {@link LedgerReconcile} on a synthetic ledger, timing the
+ * refresh after each new block. Ignored by default since it's slow and only prints timings. Remove the annotation to run it locally.
+ */
+@Ignore("Benchmark. Run manually.")
+public final class IncrementalLedgerReconcileBenchmark {
+
+  private static final int REFRESHES = 50;
+
+  @BeforeClass
+  public static void setup() {
+    Log.initialize(new LogRecorder());
+  }
+
+  @Test
+  public void refresh_1000_blocks() {
+    run(1_000);
+  }
+
+  @Test
+  public void refresh_5000_blocks() {
+    run(5_000);
+  }
+
+  private static void run(int blocks) {
+    IncrementalLedgerReconcileTest.SyntheticLedger ledger      = new IncrementalLedgerReconcileTest.SyntheticLedger(new Random(1));
+    IncrementalLedgerReconcile                     incremental = new IncrementalLedgerReconcile();
+
+    for (int i = 0; i < blocks; i++) {
+      ledger.addBlock();
+    }
+
+    for (int i = 0; i < 10; i++) {
+      MobileCoinLedgerWrapper wrapper = ledger.build();
+      LedgerReconcile.reconcile(ledger.getLocalPayments(), wrapper);
+      incremental.reconcile(ledger.getLocalPayments(), wrapper);
+    }
+
+    long fullNanos        = 0;
+    long incrementalNanos = 0;
+
+    for (int i = 0; i < REFRESHES; i++) {
+      ledger.addBlock();
+
+      MobileCoinLedgerWrapper wrapper = ledger.build();
+
+      long start = System.nanoTime();
+      LedgerReconcile.reconcile(ledger.getLocalPayments(), wrapper);
+      fullNanos += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      incremental.reconcile(ledger.getLocalPayments(), wrapper);
+      incrementalNanos += System.nanoTime() - start;
+    }
+
+    System.out.println(String.format(Locale.US, "%d blocks: full %.2f ms/refresh, incremental %.2f ms/refresh (%.1fx)",
+                                     blocks,
+                                     fullNanos / 1_000_000.0 / REFRESHES,
+                                     incrementalNanos / 1_000_000.0 / REFRESHES,
+                                     fullNanos / (double) incrementalNanos));
+  }
+}
@@ -0,0 +1,322 @@
+package org.thoughtcrime.securesms.payments.reconciliation;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.annimon.stream.Stream;
+import com.google.protobuf.ByteString;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.signal.core.util.logging.Log;
+import org.signal.libsignal.protocol.util.ByteUtil;
+import org.thoughtcrime.securesms.payments.Direction;
+import org.thoughtcrime.securesms.payments.FailureReason;
+import org.thoughtcrime.securesms.payments.MobileCoinLedgerWrapper;
+import org.thoughtcrime.securesms.payments.Payee;
+import org.thoughtcrime.securesms.payments.Payment;
+import org.thoughtcrime.securesms.payments.State;
+import org.thoughtcrime.securesms.payments.proto.MobileCoinLedger;
+import org.thoughtcrime.securesms.payments.proto.PaymentMetaData;
+import org.thoughtcrime.securesms.recipients.RecipientId;
+import org.thoughtcrime.securesms.testutil.LogRecorder;
+import org.whispersystems.signalservice.api.payments.Money;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+public final class IncrementalLedgerReconcileTest {
+
+  @BeforeClass
+  public static void setup() {
+    Log.initialize(new LogRecorder());
+  }
+
+  @Test
+  public void growing_ledger_matches_full_reconcile() {
+    SyntheticLedger            ledger    = new SyntheticLedger(new Random(1));
+    IncrementalLedgerReconcile reconcile = new IncrementalLedgerReconcile();
+
+    for (int i = 0; i < 100; i++) {
+      ledger.addBlock();
+      assertSameAsFullReconcile(reconcile, ledger);
+    }
+  }
+
+  @Test
+  public void local_payment_for_an_old_block_matches_full_reconcile() {
+    SyntheticLedger            ledger    = new SyntheticLedger(new Random(2));
+    IncrementalLedgerReconcile reconcile = new IncrementalLedgerReconcile();
+
+    for (int i = 0; i < 20; i++) {
+      ledger.addBlock();
+    }
+    assertSameAsFullReconcile(reconcile, ledger);
+
+    ledger.claimTxo(0);
+    assertSameAsFullReconcile(reconcile, ledger);
+
+    ledger.failLocalPayment(ledger.getLocalPayments().size() - 1);
+    assertSameAsFullReconcile(reconcile, ledger);
+  }
+
+  @Test
+  public void late_block_timestamp_matches_full_reconcile() {
+    SyntheticLedger            ledger    = new SyntheticLedger(new Random(3));
+    IncrementalLedgerReconcile reconcile = new IncrementalLedgerReconcile();
+
+    ledger.addBlock(0);
+    ledger.addBlock(0);
+    assertSameAsFullReconcile(reconcile, ledger);
+
+    ledger.setBlockTimestamps();
+    assertSameAsFullReconcile(reconcile, ledger);
+  }
+
+  @Test
+  public void ledger_reset_matches_full_reconcile() {
+    SyntheticLedger            ledger    = new SyntheticLedger(new Random(4));
+    IncrementalLedgerReconcile reconcile = new IncrementalLedgerReconcile();
+
+    for (int i = 0; i < 20; i++) {
+      ledger.addBlock();
+    }
+    assertSameAsFullReconcile(reconcile, ledger);
+
+    SyntheticLedger other = new SyntheticLedger(new Random(5));
+    for (int i = 0; i < 5; i++) {
+      other.addBlock();
+    }
+    assertSameAsFullReconcile(reconcile, other);
+  }
+
+  @Test
+  public void empty_ledger_after_reconcile() {
+    SyntheticLedger            ledger    = new SyntheticLedger(new Random(6));
+    IncrementalLedgerReconcile reconcile = new IncrementalLedgerReconcile();
+
+    for (int i = 0; i < 5; i++) {
+      ledger.addBlock();
+    }
+    assertSameAsFullReconcile(reconcile, ledger);
+
+    List<Payment> payments = reconcile.reconcile(Collections.emptyList(), new MobileCoinLedgerWrapper(MobileCoinLedger.getDefaultInstance()));
+
+    assertEquals(Collections.emptyList(), payments);
+  }
+
+  private static void assertSameAsFullReconcile(@NonNull IncrementalLedgerReconcile reconcile, @NonNull SyntheticLedger ledger) {
+    MobileCoinLedgerWrapper wrapper = ledger.build();
+
+    assertEquals(describe(LedgerReconcile.reconcile(ledger.getLocalPayments(), wrapper)), describe(reconcile.reconcile(ledger.getLocalPayments(), wrapper)));
+  }
+
+  private static @NonNull List<String> describe(@NonNull List<Payment> payments) {
+    return Stream.of(payments)
+                 .map(p -> p.getBlockIndex() + " " + p.getBlockTimestamp() + " " + p.getAmountWithDirection() + " " + p.getNote())
+                 .toList();
+  }
+
+  /**
+   * Builds a ledger one block at a time. Each block receives some new TXOs and may spend some earlier ones, and some of that activity
+   * is also recorded as local payments, the way it would be for payments sent or received through Signal.
+   */
+  static final class SyntheticLedger {
+
+    private final Random                          random;
+    private final List<MobileCoinLedger.OwnedTXO> txos          = new ArrayList<>();
+    private final List<Payment>                   localPayments = new ArrayList<>();
+
+    private long block;
+    private long nextId;
+
+    SyntheticLedger(@NonNull Random random) {
+      this.random = random;
+    }
+
+    @NonNull List<Payment> getLocalPayments() {
+      return localPayments;
+    }
+
+    void addBlock() {
+      addBlock(random.nextInt(4) == 0 ? 0 : 1000);
+    }
+
+    void addBlock(long timestampMultiplier) {
+      block += 1 + random.nextInt(3);
+
+      MobileCoinLedger.Block thisBlock = MobileCoinLedger.Block.newBuilder()
+                                                               .setBlockNumber(block)
+                                                               .setTimestamp(block * timestampMultiplier)
+                                                               .build();
+
+      List<ByteString> spentKeyImages = new ArrayList<>();
+      int              spends         = random.nextInt(3);
+
+      for (int i = 0; i < spends; i++) {
+        List<Integer> unspent = new ArrayList<>();
+        for (int j = 0; j < txos.size(); j++) {
+          if (!txos.get(j).hasSpentInBlock()) {
+            unspent.add(j);
+          }
+        }
+
+        if (unspent.isEmpty()) {
+          break;
+        }
+
+        int index = unspent.get(random.nextInt(unspent.size()));
+        txos.set(index, txos.get(index).toBuilder().setSpentInBlock(thisBlock).build());
+        spentKeyImages.add(txos.get(index).getKeyImage());
+      }
+
+      if (!spentKeyImages.isEmpty() && random.nextBoolean()) {
+        localPayments.add(payment("sent " + block, Direction.SENT, 1, Collections.emptyList(), spentKeyImages));
+      }
+
+      int receipts = 1 + random.nextInt(2);
+
+      for (int i = 0; i < receipts; i++) {
+        long                      amount = 1 + random.nextInt(100);
+        MobileCoinLedger.OwnedTXO txo    = MobileCoinLedger.OwnedTXO.newBuilder()
+                                                                    .setAmount(amount)
+                                                                    .setKeyImage(id(0x7f00000000000000L | nextId))
+                                                                    .setPublicKey(id(0x0f00000000000000L | nextId))
+                                                                    .setReceivedInBlock(thisBlock)
+                                                                    .build();
+        nextId++;
+        txos.add(txo);
+
+        if (random.nextInt(3) == 0) {
+          localPayments.add(payment("received " + block, Direction.RECEIVED, amount, Collections.singletonList(txo.getPublicKey()), Collections.emptyList()));
+        }
+      }
+    }
+
+    void claimTxo(int index) {
+      MobileCoinLedger.OwnedTXO txo = txos.get(index);
+
+      localPayments.add(payment("claimed " + index, Direction.RECEIVED, txo.getAmount(), Collections.singletonList(txo.getPublicKey()), Collections.emptyList()));
+    }
+
+    void failLocalPayment(int index) {
+      Payment payment = localPayments.get(index);
+
+      localPayments.set(index, payment(payment.getNote(),
+                                       payment.getDirection(),
+                                       payment.getAmount().requireMobileCoin().toPicoMobBigInteger().longValue(),
+                                       payment.getPaymentMetaData().getMobileCoinTxoIdentification().getPublicKeyList(),
+                                       payment.getPaymentMetaData().getMobileCoinTxoIdentification().getKeyImagesList(),
+                                       State.FAILED));
+    }
+
+    void setBlockTimestamps() {
+      for (int i = 0; i < txos.size(); i++) {
+        MobileCoinLedger.OwnedTXO.Builder builder = txos.get(i).toBuilder();
+
+        builder.setReceivedInBlock(builder.getReceivedInBlock().toBuilder().setTimestamp(builder.getReceivedInBlock().getBlockNumber() * 1000));
+        if (builder.hasSpentInBlock()) {
+          builder.setSpentInBlock(builder.getSpentInBlock().toBuilder().setTimestamp(builder.getSpentInBlock().getBlockNumber() * 1000));
+        }
+
+        txos.set(i, builder.build());
+      }
+    }
+
+    @NonNull MobileCoinLedgerWrapper build() {
+      return new MobileCoinLedgerWrapper(MobileCoinLedger.newBuilder()
+                                                         .addAllUnspentTxos(txos)
+                                                         .build());
+    }
+  }
+
+  private static Payment payment(String note, Direction direction, long picoMob, List<ByteString> publicKeys, List<ByteString> keyImages) {
+    return payment(note, direction, picoMob, publicKeys, keyImages, State.SUCCESSFUL);
+  }
+
+  private static Payment payment(String note, Direction direction, long picoMob, List<ByteString> publicKeys, List<ByteString> keyImages, State state) {
+    UUID uuid = UUID.randomUUID();
+
+    PaymentMetaData paymentMetaData = PaymentMetaData.newBuilder()
+                                                     .setMobileCoinTxoIdentification(PaymentMetaData.MobileCoinTxoIdentification.newBuilder()
+                                                                                                                                 .addAllPublicKey(publicKeys)
+                                                                                                                                 .addAllKeyImages(keyImages))
+                                                     .build();
+
+    return new Payment() {
+      @Override
+      public @NonNull UUID getUuid() {
+        return uuid;
+      }
+
+      @Override
+      public @NonNull Payee getPayee() {
+        return new Payee(RecipientId.from(1));
+      }
+
+      @Override
+      public long getBlockIndex() {
+        return 0;
+      }
+
+      @Override
+      public long getBlockTimestamp() {
+        return 0;
+      }
+
+      @Override
+      public long getTimestamp() {
+        return 0;
+      }
+
+      @Override
+      public @NonNull Direction getDirection() {
+        return direction;
+      }
+
+      @Override
+      public @NonNull State getState() {
+        return state;
+      }
+
+      @Override
+      public @Nullable FailureReason getFailureReason() {
+        return null;
+      }
+
+      @Override
+      public @NonNull String getNote() {
+        return note;
+      }
+
+      @Override
+      public @NonNull Money getAmount() {
+        return Money.picoMobileCoin(picoMob);
+      }
+
+      @Override
+      public @NonNull Money getFee() {
+        return getAmount().toZero();
+      }
+
+      @Override
+      public @NonNull PaymentMetaData getPaymentMetaData() {
+        return paymentMetaData;
+      }
+
+      @Override
+      public boolean isSeen() {
+        return true;
+      }
+    };
+  }
+
+  private static ByteString id(long id) {
+    return ByteString.copyFrom(ByteUtil.longToByteArray(id));
+  }
+}
@@ -0,0 +1,78 @@
+package org.thoughtcrime.securesms.service;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExpiringMessageQueueTest {
+
+  @Test
+  public void poll_returnsMessagesInExpirationOrder() {
+    ExpiringMessageQueue queue = new ExpiringMessageQueue();
+
+    queue.add(1, 300);
+    queue.add(2, 100);
+    queue.add(3, 200);
+    queue.add(4, 100);
+
+    assertEquals(4, queue.size());
+    assertEquals(100, queue.peekExpiresAt());
+    assertEquals(2, queue.poll());
+    assertEquals(4, queue.poll());
+    assertEquals(3, queue.poll());
+    assertEquals(1, queue.poll());
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void pollExpired_onlyReturnsExpiredMessages() {
+    ExpiringMessageQueue queue = new ExpiringMessageQueue();
+
+    queue.add(1, 100);
+    queue.add(2, 300);
+    queue.add(3, 200);
+
+    assertArrayEquals(new long[] { 1, 3 }, queue.pollExpired(200, 10));
+    assertEquals(1, queue.size());
+    assertEquals(300, queue.peekExpiresAt());
+  }
+
+  @Test
+  public void pollExpired_respectsLimit() {
+    ExpiringMessageQueue queue = new ExpiringMessageQueue();
+
+    for (int i = 0; i < 10; i++) {
+      queue.add(i, i);
+    }
+
+    assertArrayEquals(new long[] { 0, 1, 2 }, queue.pollExpired(100, 3));
+    assertEquals(7, queue.size());
+  }
+
+  @Test
+  public void pollExpired_whenEmpty_returnsNothing() {
+    assertEquals(0, new ExpiringMessageQueue().pollExpired(100, 10).length);
+  }
+
+  @Test
+  public void poll_withManyRandomMessages_returnsThemInOrder() {
+    ExpiringMessageQueue queue  = new ExpiringMessageQueue();
+    Random               random = new Random(42);
+
+    for (int i = 0; i < 1000; i++) {
+      queue.add(i, random.nextInt(100));
+    }
+
+    long previous = Long.MIN_VALUE;
+    while (!queue.isEmpty()) {
+      long expiresAt = queue.peekExpiresAt();
+      queue.poll();
+      assertTrue(expiresAt >= previous);
+      previous = expiresAt;
+    }
+  }
+}
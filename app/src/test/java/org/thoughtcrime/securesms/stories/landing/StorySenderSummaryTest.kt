@@ -0,0 +1,104 @@
+package org.thoughtcrime.securesms.stories.landing
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotEquals
+import org.junit.Test
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.mock
+import org.thoughtcrime.securesms.database.model.StoryIndexEntry
+import org.thoughtcrime.securesms.recipients.Recipient
+import org.thoughtcrime.securesms.recipients.RecipientId
+
+class StorySenderSummaryTest {
+
+  private val myStoriesId = RecipientId.from(1)
+  private val distributionListId = RecipientId.from(2)
+  private val friendId = RecipientId.from(3)
+  private val blockedId = RecipientId.from(4)
+
+  private val recipients: Map<RecipientId, Recipient> = mapOf(
+    distributionListId to mock { on { isDistributionList } doReturn true },
+    friendId to mock(),
+    blockedId to mock { on { isBlocked } doReturn true }
+  )
+
+  @Test
+  fun `Given incoming stories, when I build summaries, then I expect only the latest story for each unblocked sender`() {
+    val stories = listOf(
+      story(friendId, messageId = 10, sentTimestamp = 100),
+      story(friendId, messageId = 11, sentTimestamp = 200),
+      story(blockedId, messageId = 12, sentTimestamp = 300)
+    )
+
+    val summaries = StorySenderSummary.fromIndex(stories, recipients, myStoriesId)
+
+    assertEquals(setOf(friendId), summaries.keys)
+    assertEquals(listOf(11L), summaries[friendId]!!.latestStories.map { it.messageId })
+  }
+
+  @Test
+  fun `Given outgoing stories, when I build summaries, then I expect the latest two and the counters under my story`() {
+    val stories = listOf(
+      story(distributionListId, messageId = 10, sentTimestamp = 100, isOutgoing = true, isSending = true),
+      story(distributionListId, messageId = 11, sentTimestamp = 200, isOutgoing = true, isFailed = true),
+      story(distributionListId, messageId = 12, sentTimestamp = 300, isOutgoing = true),
+      story(friendId, messageId = 13, sentTimestamp = 400, isOutgoing = true, isFailed = true)
+    )
+
+    val summaries = StorySenderSummary.fromIndex(stories, recipients, myStoriesId)
+    val myStory = summaries[myStoriesId]!!
+
+    assertEquals(listOf(13L, 12L), myStory.latestStories.map { it.messageId })
+    assertEquals(1, myStory.sendingCount)
+    assertEquals(2, myStory.failureCount)
+    assertFalse(summaries.containsKey(distributionListId))
+    assertEquals(0, summaries[friendId]!!.failureCount)
+  }
+
+  @Test
+  fun `Given the same stories, when I build summaries twice, then I expect them to be equal`() {
+    val stories = listOf(story(friendId, messageId = 10, sentTimestamp = 100))
+
+    assertEquals(
+      StorySenderSummary.fromIndex(stories, recipients, myStoriesId),
+      StorySenderSummary.fromIndex(stories.toList(), recipients, myStoriesId)
+    )
+  }
+
+  @Test
+  fun `Given my story, when it gets a view receipt, then I expect its summary to change so its item is rebuilt`() {
+    val before = listOf(story(distributionListId, messageId = 10, sentTimestamp = 100, isOutgoing = true))
+    val after = listOf(story(distributionListId, messageId = 10, sentTimestamp = 100, isOutgoing = true, viewedReceiptCount = 1))
+
+    val beforeSummary = StorySenderSummary.fromIndex(before, recipients, myStoriesId)[myStoriesId]
+    val afterSummary = StorySenderSummary.fromIndex(after, recipients, myStoriesId)[myStoriesId]
+
+    assertNotEquals(beforeSummary, afterSummary)
+    assertEquals(1, afterSummary!!.latestStories.single().viewedReceiptCount)
+  }
+
+  @Test
+  fun `Given an incoming story, when I view it, then I expect its summary to change so its item is rebuilt`() {
+    val before = listOf(story(friendId, messageId = 10, sentTimestamp = 100))
+    val after = listOf(story(friendId, messageId = 10, sentTimestamp = 100, isRead = true, viewedReceiptCount = 1))
+
+    assertNotEquals(
+      StorySenderSummary.fromIndex(before, recipients, myStoriesId)[friendId],
+      StorySenderSummary.fromIndex(after, recipients, myStoriesId)[friendId]
+    )
+  }
+
+  private fun story(
+    recipientId: RecipientId,
+    messageId: Long,
+    sentTimestamp: Long,
+    isOutgoing: Boolean = false,
+    isSending: Boolean = false,
+    isFailed: Boolean = false,
+    isRead: Boolean = false,
+    viewedReceiptCount: Int = 0
+  ): StoryIndexEntry {
+    return StoryIndexEntry(recipientId, messageId, sentTimestamp, isOutgoing, isSending, isFailed, isRead, 0, 0, viewedReceiptCount)
+  }
+}
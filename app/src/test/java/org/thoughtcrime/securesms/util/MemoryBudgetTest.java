@@ -0,0 +1,80 @@
+package org.thoughtcrime.securesms.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryBudgetTest {
+
+  private final MemoryBudget testSubject = new MemoryBudget(100);
+
+  @Test
+  public void givenReservationsWithinTheLimit_whenIReserve_thenIDoNotWait() throws InterruptedException {
+    // WHEN
+    MemoryBudget.Reservation first  = testSubject.reserve(40);
+    MemoryBudget.Reservation second = testSubject.reserve(60);
+
+    // THEN
+    assertEquals(100, testSubject.getInUse());
+
+    first.close();
+    second.close();
+    assertEquals(0, testSubject.getInUse());
+  }
+
+  @Test
+  public void givenAnEmptyBudget_whenIReserveMoreThanTheLimit_thenIDoNotWait() throws InterruptedException {
+    // WHEN
+    try (MemoryBudget.Reservation ignored = testSubject.reserve(500)) {
+      // THEN
+      assertEquals(500, testSubject.getInUse());
+    }
+  }
+
+  @Test
+  public void givenAReservationClosedTwice_whenIClose_thenIOnlyReleaseOnce() throws InterruptedException {
+    // GIVEN
+    MemoryBudget.Reservation first  = testSubject.reserve(40);
+    MemoryBudget.Reservation second = testSubject.reserve(30);
+
+    // WHEN
+    first.close();
+    first.close();
+
+    // THEN
+    assertEquals(30, testSubject.getInUse());
+    second.close();
+  }
+
+  @Test
+  public void givenAFullBudget_whenIReserve_thenIWaitUntilItIsReleased() throws InterruptedException {
+    // GIVEN
+    MemoryBudget.Reservation held     = testSubject.reserve(80);
+    CountDownLatch           reserved = new CountDownLatch(1);
+
+    Thread thread = new Thread(() -> {
+      try (MemoryBudget.Reservation ignored = testSubject.reserve(40)) {
+        reserved.countDown();
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    });
+    thread.start();
+
+    // THEN
+    assertFalse(reserved.await(100, TimeUnit.MILLISECONDS));
+
+    // WHEN
+    held.close();
+
+    // THEN
+    assertTrue(reserved.await(5, TimeUnit.SECONDS));
+    thread.join();
+    assertEquals(0, testSubject.getInUse());
+  }
+}
@@ -0,0 +1,49 @@
+package org.thoughtcrime.securesms.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public final class OkHttpUtilTest_findHeadEnd {
+
+  @Test
+  public void givenAClosingHeadTag_whenIFindHeadEnd_thenIExpectTheIndexAfterIt() {
+    byte[] html = bytes("<html><head><title>Hi</title></head><body>Body</body></html>");
+
+    assertEquals("<html><head><title>Hi</title></head".length(), OkHttpUtil.findHeadEnd(html, 0, html.length));
+  }
+
+  @Test
+  public void givenAnUppercaseClosingHeadTag_whenIFindHeadEnd_thenIExpectItToBeFound() {
+    byte[] html = bytes("<HTML><HEAD><TITLE>Hi</TITLE></HEAD><BODY>Body</BODY></HTML>");
+
+    assertEquals("<HTML><HEAD><TITLE>Hi</TITLE></HEAD".length(), OkHttpUtil.findHeadEnd(html, 0, html.length));
+  }
+
+  @Test
+  public void givenNoClosingHeadTag_whenIFindHeadEnd_thenIExpectTheStartOfTheBody() {
+    byte[] html = bytes("<html><title>Hi</title><body>Body</body></html>");
+
+    assertEquals("<html><title>Hi</title><body".length(), OkHttpUtil.findHeadEnd(html, 0, html.length));
+  }
+
+  @Test
+  public void givenATagSplitAcrossTheEndOfTheRange_whenIFindHeadEnd_thenIExpectNothing() {
+    byte[] html = bytes("<html><head><title>Hi</title></he");
+
+    assertEquals(-1, OkHttpUtil.findHeadEnd(html, 0, html.length));
+  }
+
+  @Test
+  public void givenATagBeforeTheStartOfTheRange_whenIFindHeadEnd_thenIExpectNothing() {
+    byte[] html = bytes("</head><title>Hi</title>");
+
+    assertEquals(-1, OkHttpUtil.findHeadEnd(html, 1, html.length));
+  }
+
+  private static byte[] bytes(String html) {
+    return html.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,224 @@
+package org.thoughtcrime.securesms.video.exo
+
+import android.app.Application
+import android.content.Context
+import android.net.Uri
+import androidx.test.core.app.ApplicationProvider
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.ArgumentMatchers.any
+import org.mockito.MockedStatic
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.mockStatic
+import org.mockito.Mockito.`when`
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.thoughtcrime.securesms.crypto.AttachmentSecret
+import org.thoughtcrime.securesms.crypto.AttachmentSecretProvider
+import java.io.File
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class GiphyMp4CacheTest {
+
+  private lateinit var context: Context
+  private lateinit var attachmentSecretProviderStaticMock: MockedStatic<AttachmentSecretProvider>
+
+  @Before
+  fun setUp() {
+    context = ApplicationProvider.getApplicationContext()
+
+    val attachmentSecretProvider = mock(AttachmentSecretProvider::class.java)
+    `when`(attachmentSecretProvider.getOrCreateAttachmentSecret()).thenReturn(AttachmentSecret(null, null, ByteArray(32) { it.toByte() }))
+
+    attachmentSecretProviderStaticMock = mockStatic(AttachmentSecretProvider::class.java)
+    attachmentSecretProviderStaticMock.`when`<AttachmentSecretProvider> { AttachmentSecretProvider.getInstance(any()) }.thenReturn(attachmentSecretProvider)
+
+    getDirectory().listFiles()?.forEach { it.delete() }
+  }
+
+  @After
+  fun tearDown() {
+    attachmentSecretProviderStaticMock.close()
+  }
+
+  @Test
+  fun `Given a populated cache, when I restart, then I expect its entries to be replayed from the journal`() {
+    // GIVEN
+    val cache = GiphyMp4Cache(MAX_SIZE)
+    write(cache, GIF_A)
+    write(cache, GIF_B)
+
+    // WHEN
+    val restarted = GiphyMp4Cache(MAX_SIZE)
+    restarted.onAppStart(context)
+
+    // THEN
+    assertEquals(2, restarted.getStats().entries)
+    assertTrue(isCached(restarted, GIF_A))
+    assertTrue(isCached(restarted, GIF_B))
+    assertFalse(isCached(restarted, GIF_C))
+  }
+
+  @Test
+  fun `Given a read before a later write, when I restart with less space, then I expect the least recently used entry to be evicted`() {
+    // GIVEN
+    val cache = GiphyMp4Cache(MAX_SIZE)
+    write(cache, GIF_A)
+    write(cache, GIF_B)
+    cache.read(context, GIF_A)!!.release()
+    write(cache, GIF_C)
+
+    // WHEN
+    val restarted = GiphyMp4Cache(cache.getStats().totalSize / 3 * 2)
+    restarted.onAppStart(context)
+
+    // THEN
+    assertFalse(isCached(restarted, GIF_B))
+    assertTrue(isCached(restarted, GIF_A))
+    assertTrue(isCached(restarted, GIF_C))
+  }
+
+  @Test
+  fun `Given files that are not in the journal, when I restart, then I expect them to be deleted`() {
+    // GIVEN
+    val cache = GiphyMp4Cache(MAX_SIZE)
+    write(cache, GIF_A)
+
+    val orphan = File(getDirectory(), "entry_orphan.mp4")
+    orphan.writeBytes(ByteArray(ENTRY_SIZE))
+
+    // WHEN
+    val restarted = GiphyMp4Cache(MAX_SIZE)
+    restarted.onAppStart(context)
+
+    // THEN
+    assertFalse(orphan.exists())
+    assertEquals(1, restarted.getStats().entries)
+    assertTrue(isCached(restarted, GIF_A))
+  }
+
+  @Test
+  fun `Given an entry whose file is gone, when I restart, then I expect it to be dropped`() {
+    // GIVEN
+    val cache = GiphyMp4Cache(MAX_SIZE)
+    write(cache, GIF_A)
+    write(cache, GIF_B)
+    getDirectory().listFiles { file -> file.name.startsWith("entry_") }!!.first().delete()
+
+    // WHEN
+    val restarted = GiphyMp4Cache(MAX_SIZE)
+    restarted.onAppStart(context)
+
+    // THEN
+    assertEquals(1, restarted.getStats().entries)
+  }
+
+  @Test
+  fun `Given many reads, when the journal grows past the threshold, then I expect it to be compacted and still replay`() {
+    // GIVEN
+    val cache = GiphyMp4Cache(MAX_SIZE)
+    write(cache, GIF_A)
+    write(cache, GIF_B)
+
+    // WHEN
+    repeat(GiphyMp4Cache.JOURNAL_COMPACT_THRESHOLD + 500) {
+      cache.read(context, if (it % 2 == 0) GIF_A else GIF_B)!!.release()
+    }
+    write(cache, GIF_C)
+
+    // THEN
+    assertTrue(getJournalLines().size < GiphyMp4Cache.JOURNAL_COMPACT_THRESHOLD)
+
+    val restarted = GiphyMp4Cache(MAX_SIZE)
+    restarted.onAppStart(context)
+    assertEquals(3, restarted.getStats().entries)
+  }
+
+  @Test
+  fun `Given a looping GIF, when I read it repeatedly, then I expect only one journal line`() {
+    // GIVEN
+    val cache = GiphyMp4Cache(MAX_SIZE)
+    write(cache, GIF_A)
+    write(cache, GIF_B)
+    val before = getJournalLines().size
+
+    // WHEN
+    repeat(10) { cache.read(context, GIF_A)!!.release() }
+    write(cache, GIF_C)
+
+    // THEN
+    assertEquals(before + 2, getJournalLines().size)
+  }
+
+  @Test
+  fun `Given a populated cache, when I read the journal, then I expect it not to contain any URIs`() {
+    // GIVEN
+    val cache = GiphyMp4Cache(MAX_SIZE)
+    write(cache, GIF_A)
+    cache.read(context, GIF_A)!!.release()
+    write(cache, GIF_B)
+
+    // WHEN
+    val journal = getJournalLines().joinToString("\n")
+
+    // THEN
+    assertFalse(journal.contains("giphy"))
+    assertFalse(journal.contains("media"))
+  }
+
+  @Test
+  fun `Given a GIF bigger than the cache, when I write it, then I expect to be able to read it until I release it`() {
+    // GIVEN
+    val cache = GiphyMp4Cache(ENTRY_SIZE / 2L)
+
+    // WHEN
+    val readData = cache.write(context, GIF_A, ByteArray(ENTRY_SIZE).inputStream())
+
+    // THEN
+    assertEquals(ENTRY_SIZE.toLong(), readData.length)
+    assertEquals(ENTRY_SIZE, readData.inputStream.readBytes().size)
+    assertEquals(1, cache.getStats().locked)
+
+    readData.release()
+    assertEquals(0, cache.getStats().entries)
+    assertEquals(1L, cache.getStats().evictions)
+  }
+
+  private fun write(cache: GiphyMp4Cache, uri: Uri) {
+    val readData = cache.write(context, uri, ByteArray(ENTRY_SIZE).inputStream())
+    assertNotNull(readData)
+    readData.release()
+  }
+
+  private fun isCached(cache: GiphyMp4Cache, uri: Uri): Boolean {
+    val readData = cache.read(context, uri) ?: return false
+    readData.release()
+    return true
+  }
+
+  private fun getDirectory(): File {
+    return context.getDir("mp4gif_cache", Context.MODE_PRIVATE)
+  }
+
+  private fun getJournalLines(): List<String> {
+    val journal = File(getDirectory(), "journal")
+    assertTrue(journal.exists())
+    return journal.readLines()
+  }
+
+  companion object {
+    private val GIF_A: Uri = Uri.parse("https://media.giphy.com/media/a/giphy.mp4")
+    private val GIF_B: Uri = Uri.parse("https://media.giphy.com/media/b/giphy.mp4")
+    private val GIF_C: Uri = Uri.parse("https://media.giphy.com/media/c/giphy.mp4")
+
+    private const val MAX_SIZE = 1024L * 1024L
+    private const val ENTRY_SIZE = 1000
+  }
+}
@@ -115,6 +115,7 @@ object FakeMessageRecords {
     deliveryReceiptCount: Int = 0,
     threadId: Long = 1,
     body: String = "body",
+    updatePayload: ByteArray? = null,
     slideDeck: SlideDeck = SlideDeck(),
     partCount: Int = slideDeck.slides.count(),
     mailbox: Long = MessageTypes.BASE_INBOX_TYPE,
@@ -153,6 +154,7 @@ object FakeMessageRecords {
       deliveryReceiptCount,
       threadId,
       body,
+      updatePayload,
       slideDeck,
       mailbox,
       mismatches,
@@ -41,7 +41,7 @@ class StartupBenchmarks {
     var setup = false
     benchmarkRule.measureRepeated(
       packageName = "org.thoughtcrime.securesms",
-      metrics = listOf(StartupTimingMetric(), TraceSectionMetric("ConversationListDataSource#load")),
+      metrics = listOf(StartupTimingMetric(), TraceSectionMetric("AppStartup#blocking"), TraceSectionMetric("ConversationListDataSource#load")),
       iterations = iterations,
       startupMode = StartupMode.COLD,
       compilationMode = compilationMode,
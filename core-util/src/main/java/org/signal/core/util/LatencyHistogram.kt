@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * A lock-free histogram of durations, bucketed by powers of two in microseconds. Bucket i holds durations in
+ * [2^i, 2^(i+1)) µs, with the first bucket also holding anything under 1µs and the last holding anything over.
+ *
+ * The buckets go up to about 12 days, so that it can hold things like job queue waits as well as query times.
+ */
+class LatencyHistogram {
+
+  companion object {
+    const val BUCKET_COUNT = 40
+
+    private fun bucketFor(micros: Long): Int {
+      if (micros <= 0) {
+        return 0
+      }
+      return (63 - java.lang.Long.numberOfLeadingZeros(micros)).coerceAtMost(BUCKET_COUNT - 1)
+    }
+  }
+
+  private val buckets = AtomicLongArray(BUCKET_COUNT)
+  private val count = AtomicLong()
+  private val totalNanos = AtomicLong()
+  private val maxNanos = AtomicLong()
+
+  fun record(durationNanos: Long) {
+    buckets.incrementAndGet(bucketFor(durationNanos / 1000))
+    count.incrementAndGet()
+    totalNanos.addAndGet(durationNanos)
+
+    var max = maxNanos.get()
+    while (durationNanos > max && !maxNanos.compareAndSet(max, durationNanos)) {
+      max = maxNanos.get()
+    }
+  }
+
+  fun snapshot(): Snapshot {
+    val counts = LongArray(BUCKET_COUNT) { buckets.get(it) }
+    return Snapshot(counts, counts.sum(), totalNanos.get(), maxNanos.get())
+  }
+
+  class Snapshot(
+    val buckets: LongArray,
+    val count: Long,
+    val totalNanos: Long,
+    val maxNanos: Long
+  ) {
+    val averageMicros: Long
+      get() = if (count > 0) totalNanos / count / 1000 else 0
+
+    val maxMicros: Long
+      get() = maxNanos / 1000
+
+    /**
+     * An upper bound for the given percentile (0-100), in microseconds, based on the bucket it falls into.
+     */
+    fun percentileMicros(percentile: Double): Long {
+      if (count == 0L) {
+        return 0
+      }
+
+      val target = (count * percentile / 100.0).toLong().coerceIn(1, count)
+      var seen = 0L
+
+      for (i in buckets.indices) {
+        seen += buckets[i]
+        if (seen >= target) {
+          return (1L shl (i + 1)).coerceAtMost(maxMicros.coerceAtLeast(1))
+        }
+      }
+
+      return maxMicros
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package org.signal.core.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class LatencyHistogramTest {
+
+  @Test
+  fun `given no samples, when I get a snapshot, then everything is zero`() {
+    val snapshot = LatencyHistogram().snapshot()
+
+    assertEquals(0, snapshot.count)
+    assertEquals(0, snapshot.averageMicros)
+    assertEquals(0, snapshot.percentileMicros(99.0))
+  }
+
+  @Test
+  fun `given samples, when I get percentiles, then they are the upper bound of the matching bucket`() {
+    val histogram = LatencyHistogram()
+
+    repeat(90) { histogram.record(TimeUnit.MICROSECONDS.toNanos(100)) }
+    repeat(10) { histogram.record(TimeUnit.MILLISECONDS.toNanos(10)) }
+
+    val snapshot = histogram.snapshot()
+
+    assertEquals(100, snapshot.count)
+    assertEquals(128, snapshot.percentileMicros(50.0))
+    assertEquals(128, snapshot.percentileMicros(90.0))
+    assertEquals(10_000, snapshot.percentileMicros(99.0))
+    assertEquals(10_000, snapshot.maxMicros)
+    assertEquals(1090, snapshot.averageMicros)
+  }
+
+  @Test
+  fun `given samples of a minute, when I get percentiles, then they are not capped`() {
+    val histogram = LatencyHistogram()
+
+    repeat(10) { histogram.record(TimeUnit.MINUTES.toNanos(1)) }
+
+    val snapshot = histogram.snapshot()
+
+    assertEquals(TimeUnit.MINUTES.toMicros(1), snapshot.percentileMicros(50.0))
+    assertEquals(TimeUnit.MINUTES.toMicros(1), snapshot.maxMicros)
+  }
+}
@@ -0,0 +1,96 @@
+package org.signal.devicetransfer.app
+
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.signal.devicetransfer.QueuedOutputStream
+import java.io.OutputStream
+import java.net.InetAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.security.MessageDigest
+import kotlin.random.Random
+
+/**
+ * Compares writing a transfer directly to a socket against writing it through a [QueuedOutputStream].
+ *
+ * Each write is preceded by some hashing, standing in for the read/decrypt/encrypt work the exporter does
+ * between writes, so that the benefit of overlapping that work with the socket writes is visible.
+ */
+@RunWith(AndroidJUnit4::class)
+class DeviceTransferStreamBenchmarks {
+
+  companion object {
+    private const val TOTAL_BYTES = 4 * 1024 * 1024
+    private const val WRITE_SIZE = 8 * 1024
+  }
+
+  @get:Rule
+  val benchmarkRule = BenchmarkRule()
+
+  private lateinit var serverSocket: ServerSocket
+  private lateinit var client: Socket
+  private lateinit var drain: Thread
+
+  private val data = Random(1337).nextBytes(WRITE_SIZE)
+
+  @Before
+  fun setup() {
+    serverSocket = ServerSocket(0, 1, InetAddress.getLoopbackAddress())
+    client = Socket(InetAddress.getLoopbackAddress(), serverSocket.localPort)
+
+    val server = serverSocket.accept()
+    drain = Thread {
+      val buffer = ByteArray(64 * 1024)
+      server.getInputStream().use { input ->
+        while (input.read(buffer) != -1) {
+          // Discard
+        }
+      }
+    }
+    drain.start()
+  }
+
+  @After
+  fun tearDown() {
+    client.close()
+    drain.join()
+    serverSocket.close()
+  }
+
+  @Test
+  fun transfer_direct() {
+    val output = client.getOutputStream()
+
+    benchmarkRule.measureRepeated {
+      writeAll(output)
+      output.flush()
+    }
+  }
+
+  @Test
+  fun transfer_queued() {
+    QueuedOutputStream(client.getOutputStream()).use { output ->
+      benchmarkRule.measureRepeated {
+        writeAll(output)
+        output.flush()
+      }
+    }
+  }
+
+  private fun writeAll(output: OutputStream) {
+    val digest = MessageDigest.getInstance("SHA-256")
+    var written = 0
+
+    while (written < TOTAL_BYTES) {
+      digest.update(data)
+      output.write(data)
+      written += data.size
+    }
+  }
+}
@@ -106,7 +106,9 @@ final class NetworkClientThread extends Thread {
           }
 
           handler.sendEmptyMessage(NETWORK_CLIENT_CONNECTED);
-          clientTask.run(context, outputStream);
+          try (QueuedOutputStream queuedOutputStream = new QueuedOutputStream(outputStream)) {
+            clientTask.run(context, queuedOutputStream);
+          }
           outputStream.flush();
 
           Log.d(TAG, "Waiting for server to tell us they got everything");
@@ -0,0 +1,231 @@
+package org.signal.devicetransfer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.signal.core.util.logging.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link OutputStream} that hands off writes to a dedicated sender thread through a bounded queue of
+ * chunks. This lets the producer (reading from disk, decrypting, re-encrypting) keep working while the
+ * previous chunks are still going out over the network, and only blocks it once the queue is full.
+ *
+ * Any error hit by the sender thread is rethrown to the producer on its next write, flush, or close.
+ */
+public final class QueuedOutputStream extends OutputStream {
+
+  private static final String TAG = Log.tag(QueuedOutputStream.class);
+
+  static final int DEFAULT_CHUNK_SIZE     = 64 * 1024;
+  static final int DEFAULT_QUEUE_CAPACITY = 32;
+
+  private static final long ENQUEUE_POLL_INTERVAL_MS = 250;
+
+  private static final byte[] FLUSH = new byte[0];
+  private static final byte[] CLOSE = new byte[0];
+
+  private final OutputStream          outputStream;
+  private final BlockingQueue<byte[]> queue;
+  private final Object                flushLock;
+  private final int                   chunkSize;
+  private final Thread                sender;
+
+  private byte[] buffer;
+  private int    position;
+  private long   pendingFlushes;
+  private long   completedFlushes;
+
+  private volatile IOException error;
+  private          boolean     closed;
+
+  public QueuedOutputStream(@NonNull OutputStream outputStream) {
+    this(outputStream, DEFAULT_CHUNK_SIZE, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  QueuedOutputStream(@NonNull OutputStream outputStream, int chunkSize, int queueCapacity) {
+    this.outputStream = outputStream;
+    this.queue        = new ArrayBlockingQueue<>(queueCapacity);
+    this.flushLock    = new Object();
+    this.chunkSize    = chunkSize;
+    this.buffer       = new byte[chunkSize];
+    this.sender       = new Thread(this::runSender, "device-transfer-sender");
+
+    sender.setDaemon(true);
+    sender.start();
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    throwIfFailed();
+
+    if (position == buffer.length) {
+      enqueueBuffer();
+    }
+
+    buffer[position++] = (byte) b;
+  }
+
+  @Override
+  public void write(@NonNull byte[] data, int offset, int length) throws IOException {
+    throwIfFailed();
+
+    while (length > 0) {
+      if (position == buffer.length) {
+        enqueueBuffer();
+      }
+
+      int toCopy = Math.min(length, buffer.length - position);
+      System.arraycopy(data, offset, buffer, position, toCopy);
+
+      position += toCopy;
+      offset   += toCopy;
+      length   -= toCopy;
+    }
+  }
+
+  /**
+   * Blocks until everything written so far has been handed to, and flushed by, the underlying stream.
+   */
+  @Override
+  public void flush() throws IOException {
+    throwIfFailed();
+
+    if (position > 0) {
+      enqueueBuffer();
+    }
+
+    long target;
+    synchronized (flushLock) {
+      target = ++pendingFlushes;
+    }
+
+    enqueue(FLUSH);
+
+    synchronized (flushLock) {
+      while (completedFlushes < target && error == null) {
+        try {
+          flushLock.wait();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+      }
+    }
+
+    throwIfFailed();
+  }
+
+  /**
+   * Flushes everything that's pending and stops the sender thread. Does not close the underlying stream,
+   * which is owned by the caller.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+
+    boolean stopped = false;
+    try {
+      flush();
+      enqueue(CLOSE);
+      stopped = true;
+    } finally {
+      closed = true;
+      if (!stopped) {
+        sender.interrupt();
+      }
+    }
+  }
+
+  private void enqueueBuffer() throws IOException {
+    byte[] chunk = buffer;
+
+    if (position < chunk.length) {
+      byte[] trimmed = new byte[position];
+      System.arraycopy(chunk, 0, trimmed, 0, position);
+      chunk = trimmed;
+    }
+
+    enqueue(chunk);
+
+    buffer   = new byte[chunkSize];
+    position = 0;
+  }
+
+  private void enqueue(@NonNull byte[] chunk) throws IOException {
+    try {
+      while (!queue.offer(chunk, ENQUEUE_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+        if (error != null) {
+          throw new IOException("Sender failed", error);
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException();
+    }
+  }
+
+  private void throwIfFailed() throws IOException {
+    IOException e = error;
+    if (e != null) {
+      throw new IOException("Sender failed", e);
+    }
+
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  private void runSender() {
+    IOException failure = null;
+    boolean     stopped = false;
+
+    try {
+      while (true) {
+        byte[] chunk = queue.take();
+
+        if (chunk == CLOSE) {
+          stopped = true;
+          return;
+        } else if (chunk == FLUSH) {
+          outputStream.flush();
+          onFlushed(null);
+        } else {
+          outputStream.write(chunk);
+        }
+      }
+    } catch (IOException e) {
+      failure = e;
+    } catch (InterruptedException e) {
+      failure = new InterruptedIOException("Sender interrupted");
+    } catch (Throwable t) {
+      failure = new IOException("Unexpected failure in the sender", t);
+    } finally {
+      if (!stopped) {
+        if (failure == null) {
+          failure = new IOException("Sender stopped unexpectedly");
+        }
+
+        Log.w(TAG, "Failed to write to the underlying stream", failure);
+        onFlushed(failure);
+      }
+    }
+  }
+
+  private void onFlushed(@Nullable IOException e) {
+    synchronized (flushLock) {
+      if (e != null) {
+        error = e;
+      } else {
+        completedFlushes++;
+      }
+      flushLock.notifyAll();
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package org.signal.devicetransfer;
+
+import android.app.Application;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, application = Application.class)
+public class QueuedOutputStreamTest {
+
+  @Test
+  public void write_withMultipleChunks_writesAllDataInOrder() throws IOException {
+    byte[]                data   = randomBytes(10_000);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    try (QueuedOutputStream queued = new QueuedOutputStream(output, 128, 2)) {
+      queued.write(data, 0, 5_000);
+      queued.write(data[5_000]);
+      queued.write(data, 5_001, data.length - 5_001);
+    }
+
+    assertArrayEquals(data, output.toByteArray());
+  }
+
+  @Test
+  public void flush_waitsForDataToReachUnderlyingStream() throws IOException {
+    byte[]                data   = randomBytes(300);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    try (QueuedOutputStream queued = new QueuedOutputStream(output, 128, 2)) {
+      queued.write(data);
+      queued.flush();
+
+      assertEquals(data.length, output.size());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void write_afterUnderlyingFailure_throws() throws IOException {
+    OutputStream failing = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("boom");
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        throw new IOException("boom");
+      }
+    };
+
+    QueuedOutputStream queued = new QueuedOutputStream(failing, 16, 1);
+    byte[]             data   = randomBytes(16);
+
+    for (int i = 0; i < 100; i++) {
+      queued.write(data);
+    }
+
+    queued.flush();
+  }
+
+  @Test(timeout = 5_000, expected = IOException.class)
+  public void write_afterUnderlyingRuntimeException_throws() throws IOException {
+    OutputStream failing = new OutputStream() {
+      @Override
+      public void write(int b) {
+        throw new IllegalStateException("boom");
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        throw new IllegalStateException("boom");
+      }
+    };
+
+    QueuedOutputStream queued = new QueuedOutputStream(failing, 16, 1);
+    byte[]             data   = randomBytes(16);
+
+    for (int i = 0; i < 100; i++) {
+      queued.write(data);
+    }
+
+    queued.flush();
+  }
+
+  @Test(timeout = 5_000, expected = IOException.class)
+  public void flush_afterUnderlyingRuntimeException_throws() throws IOException {
+    OutputStream failing = new OutputStream() {
+      @Override
+      public void write(int b) {
+      }
+
+      @Override
+      public void flush() {
+        throw new IllegalStateException("boom");
+      }
+    };
+
+    QueuedOutputStream queued = new QueuedOutputStream(failing, 16, 1);
+
+    queued.write(randomBytes(8));
+    queued.flush();
+  }
+
+  private static byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    new Random(length).nextBytes(bytes);
+    return bytes;
+  }
+}
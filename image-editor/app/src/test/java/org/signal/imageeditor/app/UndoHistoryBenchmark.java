@@ -0,0 +1,97 @@
+package org.signal.imageeditor.app;
+
+import android.app.Application;
+import android.graphics.Paint;
+import android.graphics.PointF;
+import android.os.Parcel;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.signal.imageeditor.core.model.EditorElement;
+import org.signal.imageeditor.core.model.EditorModel;
+import org.signal.imageeditor.core.renderers.BezierDrawingRenderer;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A rough benchmark of the image editor undo history during a long drawing session. Prints the time taken
+ * to push and pop undo points, and the bytes retained by the history versus what keeping a full copy of the
+ * tree for each undo point would cost. Ignored by default since it only prints timings.
+ */
+@Ignore("Benchmark. Run manually.")
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, application = Application.class)
+public final class UndoHistoryBenchmark {
+
+  private static final int STROKES           = 200;
+  private static final int POINTS_PER_STROKE = 100;
+  private static final int UNDO_LIMIT        = 50;
+
+  @Test
+  public void drawing_session() {
+    EditorModel model         = EditorModel.create(0xff000000);
+    Random      random        = new Random(1);
+    boolean[]   undoAvailable = new boolean[1];
+
+    model.setUndoRedoStackListener((undo, redo) -> undoAvailable[0] = undo);
+    model.addElement(new EditorElement(null));
+
+    long   pushNanos    = 0;
+    long[] stateSizes   = new long[STROKES];
+    long   peakRetained = 0;
+
+    for (int i = 0; i < STROKES; i++) {
+      BezierDrawingRenderer renderer = new BezierDrawingRenderer(0xffff0000, 0.02f, Paint.Cap.ROUND, null);
+      EditorElement         element  = new EditorElement(renderer, EditorModel.Z_DRAWING);
+
+      long start = System.nanoTime();
+      model.addElementCentered(element, 1);
+      pushNanos += System.nanoTime() - start;
+
+      renderer.setFirstPoint(new PointF(random.nextFloat(), random.nextFloat()));
+      for (int p = 0; p < POINTS_PER_STROKE; p++) {
+        renderer.addNewPoint(new PointF(random.nextFloat(), random.nextFloat()));
+      }
+
+      stateSizes[i] = sizeOf(model.getRoot());
+      peakRetained  = Math.max(peakRetained, model.getUndoHistoryRetainedBytes());
+    }
+
+    long fullCopies = 0;
+    for (int i = Math.max(0, STROKES - UNDO_LIMIT); i < STROKES; i++) {
+      fullCopies += stateSizes[i];
+    }
+
+    long undoStart = System.nanoTime();
+    int  undos     = 0;
+    while (undoAvailable[0]) {
+      model.undo();
+      undos++;
+    }
+    long undoNanos = System.nanoTime() - undoStart;
+
+    System.out.println(String.format(Locale.US, "%d strokes: push %.2f ms/op, undo %.2f ms/op over %d undos",
+                                     STROKES,
+                                     pushNanos / 1_000_000.0 / STROKES,
+                                     undos > 0 ? undoNanos / 1_000_000.0 / undos : 0,
+                                     undos));
+    System.out.println(String.format(Locale.US, "Retained %d KiB at peak, full copies of the last %d states would be %d KiB",
+                                     peakRetained / 1024,
+                                     UNDO_LIMIT,
+                                     fullCopies / 1024));
+  }
+
+  private static long sizeOf(EditorElement root) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      parcel.writeParcelable(root, 0);
+      return parcel.dataSize();
+    } finally {
+      parcel.recycle();
+    }
+  }
+}
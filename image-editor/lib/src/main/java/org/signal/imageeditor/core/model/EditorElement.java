@@ -72,12 +72,25 @@ public final class EditorElement implements Parcelable {
   }
 
   private EditorElement(Parcel in) {
+    this(in, true);
+  }
+
+  private EditorElement(Parcel in, boolean withChildren) {
     id       = ParcelUtils.readUUID(in);
     flags    = new EditorFlags(in.readInt());
     ParcelUtils.readMatrix(localMatrix, in);
     renderer = in.readParcelable(Renderer.class.getClassLoader());
     zOrder   = in.readInt();
-    in.readTypedList(children, EditorElement.CREATOR);
+    if (withChildren) {
+      in.readTypedList(children, EditorElement.CREATOR);
+    }
+  }
+
+  /**
+   * Reads an element written by {@link #writeSelfToParcel(Parcel)}, without any children.
+   */
+  static @NonNull EditorElement readSelfFromParcel(@NonNull Parcel in) {
+    return new EditorElement(in, false);
   }
 
   UUID getId() {
@@ -202,6 +215,13 @@ public final class EditorElement implements Parcelable {
     return children.size();
   }
 
+  /**
+   * Appends a child without re-sorting, for rebuilding a tree whose children are already in z-order.
+   */
+  void addRestoredChild(@NonNull EditorElement element) {
+    children.add(element);
+  }
+
   EditorElement getChild(int i) {
     return children.get(i);
   }
@@ -393,11 +413,18 @@ public final class EditorElement implements Parcelable {
 
   @Override
   public void writeToParcel(Parcel dest, int flags) {
+    writeSelfToParcel(dest, flags);
+    dest.writeTypedList(children);
+  }
+
+  /**
+   * Writes the persisted state of this element alone, leaving out the children.
+   */
+  void writeSelfToParcel(@NonNull Parcel dest, int flags) {
     ParcelUtils.writeUUID(dest, id);
     dest.writeInt(this.flags.asInt());
     ParcelUtils.writeMatrix(dest, localMatrix);
     dest.writeParcelable(renderer, flags);
     dest.writeInt(zOrder);
-    dest.writeTypedList(children);
   }
 }
@@ -922,6 +922,13 @@ public final class EditorModel implements Parcelable, RendererContext.Ready {
     return undoRedoStacks.isChanged(editorElementHierarchy.getRoot());
   }
 
+  /**
+   * @return The approximate number of serialized bytes held by the undo and redo history, including cropping.
+   */
+  public long getUndoHistoryRetainedBytes() {
+    return undoRedoStacks.getRetainedBytes() + cropUndoRedoStacks.getRetainedBytes();
+  }
+
   public RectF findCropRelativeToRoot() {
     return findCropRelativeTo(editorElementHierarchy.getRoot());
   }
@@ -0,0 +1,233 @@
+package org.signal.imageeditor.core.model;
+
+import android.os.Parcel;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An immutable, serialized copy of an {@link EditorElement} tree, kept one node at a time.
+ * <p>
+ * Each node holds the parcelled state of its element without the children, plus the snapshots of its
+ * children. When a snapshot is created against a previous one, any node whose state and children are
+ * unchanged is reused as-is, so consecutive undo states share everything but the elements that changed.
+ * A new drawing stroke, for example, only adds the stroke and the handful of ancestors above it.
+ * <p>
+ * Sharing saves memory only. Taking a snapshot still serializes every element to compare it with the
+ * previous one, because renderers are mutated in place without telling their element, so there is no
+ * reliable way to know that a subtree is unchanged without looking at it.
+ */
+final class ElementSnapshot {
+
+  private static final ElementSnapshot[] NO_CHILDREN = new ElementSnapshot[0];
+
+  private final UUID              id;
+  private final byte[]            self;
+  private final ElementSnapshot[] children;
+
+  private ElementSnapshot(@NonNull UUID id, @NonNull byte[] self, @NonNull ElementSnapshot[] children) {
+    this.id       = id;
+    this.self     = self;
+    this.children = children;
+  }
+
+  /**
+   * @param previous An earlier snapshot, usually of the same tree, to share unchanged nodes with.
+   */
+  static @NonNull ElementSnapshot create(@NonNull EditorElement element, @Nullable ElementSnapshot previous) {
+    Map<UUID, ElementSnapshot> previousNodes = new HashMap<>();
+    if (previous != null) {
+      previous.index(previousNodes);
+    }
+    return create(element, previousNodes);
+  }
+
+  private static @NonNull ElementSnapshot create(@NonNull EditorElement element, @NonNull Map<UUID, ElementSnapshot> previousNodes) {
+    int               childCount = element.getChildCount();
+    ElementSnapshot[] children   = childCount == 0 ? NO_CHILDREN : new ElementSnapshot[childCount];
+
+    for (int i = 0; i < childCount; i++) {
+      children[i] = create(element.getChild(i), previousNodes);
+    }
+
+    return share(element.getId(), marshallSelf(element), children, previousNodes.get(element.getId()));
+  }
+
+  private static @NonNull ElementSnapshot share(@NonNull UUID id, @NonNull byte[] self, @NonNull ElementSnapshot[] children, @Nullable ElementSnapshot previous) {
+    if (previous == null || !Arrays.equals(previous.self, self)) {
+      return new ElementSnapshot(id, self, children);
+    }
+
+    if (Arrays.equals(previous.children, children)) {
+      return previous;
+    }
+
+    return new ElementSnapshot(id, previous.self, children);
+  }
+
+  private void index(@NonNull Map<UUID, ElementSnapshot> nodes) {
+    nodes.put(id, this);
+    for (ElementSnapshot child : children) {
+      child.index(nodes);
+    }
+  }
+
+  @VisibleForTesting
+  int getChildCount() {
+    return children.length;
+  }
+
+  @VisibleForTesting
+  @NonNull ElementSnapshot getChild(int i) {
+    return children[i];
+  }
+
+  /**
+   * @return A new, mutable element tree with this state.
+   */
+  @NonNull EditorElement restore() {
+    EditorElement element = unmarshallSelf(self);
+    for (ElementSnapshot child : children) {
+      element.addRestoredChild(child.restore());
+    }
+    return element;
+  }
+
+  /**
+   * Compares the serialized state of the two trees. Shared nodes compare by reference, so this only
+   * does real work on the parts of the trees that differ.
+   */
+  boolean contentEquals(@NonNull ElementSnapshot other) {
+    if (this == other) {
+      return true;
+    }
+
+    if (!id.equals(other.id) || children.length != other.children.length) {
+      return false;
+    }
+
+    if (self != other.self && !Arrays.equals(self, other.self)) {
+      return false;
+    }
+
+    for (int i = 0; i < children.length; i++) {
+      if (!children[i].contentEquals(other.children[i])) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  void writeToParcel(@NonNull Parcel dest) {
+    ParcelUtils.writeUUID(dest, id);
+    dest.writeByteArray(self);
+    dest.writeInt(children.length);
+    for (ElementSnapshot child : children) {
+      child.writeToParcel(dest);
+    }
+  }
+
+  /**
+   * Reads a snapshot written by {@link #writeToParcel(Parcel)}, sharing any unchanged nodes with the
+   * previous snapshot as {@link #create(EditorElement, ElementSnapshot)} would have.
+   */
+  static @NonNull ElementSnapshot readFromParcel(@NonNull Parcel in, @Nullable ElementSnapshot previous) {
+    Map<UUID, ElementSnapshot> previousNodes = new HashMap<>();
+    if (previous != null) {
+      previous.index(previousNodes);
+    }
+    return readFromParcel(in, previousNodes);
+  }
+
+  private static @NonNull ElementSnapshot readFromParcel(@NonNull Parcel in, @NonNull Map<UUID, ElementSnapshot> previousNodes) {
+    UUID              id       = ParcelUtils.readUUID(in);
+    byte[]            self     = in.createByteArray();
+    int               count    = in.readInt();
+    ElementSnapshot[] children = count == 0 ? NO_CHILDREN : new ElementSnapshot[count];
+
+    for (int i = 0; i < count; i++) {
+      children[i] = readFromParcel(in, previousNodes);
+    }
+
+    //noinspection ConstantConditions
+    return share(id, self, children, previousNodes.get(id));
+  }
+
+  private static @NonNull byte[] marshallSelf(@NonNull EditorElement element) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      element.writeSelfToParcel(parcel, 0);
+      return parcel.marshall();
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  private static @NonNull EditorElement unmarshallSelf(@NonNull byte[] bytes) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      parcel.unmarshall(bytes, 0, bytes.length);
+      parcel.setDataPosition(0);
+      return EditorElement.readSelfFromParcel(parcel);
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  /**
+   * Tracks the distinct serialized bytes held by a set of snapshots, counting shared state only once.
+   */
+  static final class References {
+
+    private final Map<byte[], Integer> counts = new IdentityHashMap<>();
+
+    private long retainedBytes;
+
+    void retain(@NonNull ElementSnapshot snapshot) {
+      Integer count = counts.get(snapshot.self);
+      if (count == null) {
+        counts.put(snapshot.self, 1);
+        retainedBytes += snapshot.self.length;
+      } else {
+        counts.put(snapshot.self, count + 1);
+      }
+
+      for (ElementSnapshot child : snapshot.children) {
+        retain(child);
+      }
+    }
+
+    void release(@NonNull ElementSnapshot snapshot) {
+      Integer count = counts.get(snapshot.self);
+      if (count == null) {
+        throw new IllegalStateException("Releasing a snapshot that was never retained");
+      } else if (count == 1) {
+        counts.remove(snapshot.self);
+        retainedBytes -= snapshot.self.length;
+      } else {
+        counts.put(snapshot.self, count - 1);
+      }
+
+      for (ElementSnapshot child : snapshot.children) {
+        release(child);
+      }
+    }
+
+    void clear() {
+      counts.clear();
+      retainedBytes = 0;
+    }
+
+    long getRetainedBytes() {
+      return retainedBytes;
+    }
+  }
+}
@@ -6,32 +6,44 @@ import android.os.Parcelable;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.util.Arrays;
 import java.util.Stack;
 
 /**
  * Contains a stack of elements for undo and redo stacks.
  * <p>
- * Elements are mutable, so this stack serializes the element and keeps a stack of serialized data.
+ * Elements are mutable, so this stack keeps {@link ElementSnapshot}s of them. Each snapshot is taken
+ * against the one below it, so only the elements that changed between two states take up new memory.
  * <p>
- * The stack has a {@link #limit} and if it exceeds that limit during a push the second to earliest item
- * is removed so that it can always go back to the first state. Effectively collapsing the history for
- * the start of the stack.
+ * The stack has a {@link #limit} on the number of items and a {@link #byteBudget} on the serialized
+ * state they retain. If either is exceeded during a push, the second to earliest item is removed so
+ * that it can always go back to the first state. Effectively collapsing the history for the start of
+ * the stack.
  */
 final class ElementStack implements Parcelable {
 
-  private final int           limit;
-  private final Stack<byte[]> stack = new Stack<>();
+  static final long DEFAULT_BYTE_BUDGET = 4 * 1024 * 1024;
+
+  private final int                        limit;
+  private final long                       byteBudget;
+  private final Stack<ElementSnapshot>     stack      = new Stack<>();
+  private final ElementSnapshot.References references = new ElementSnapshot.References();
 
   ElementStack(int limit) {
-    this.limit = limit;
+    this(limit, DEFAULT_BYTE_BUDGET);
+  }
+
+  ElementStack(int limit, long byteBudget) {
+    this.limit      = limit;
+    this.byteBudget = byteBudget;
   }
 
   private ElementStack(@NonNull Parcel in) {
-    this(in.readInt());
+    this(in.readInt(), in.readLong());
     final int count = in.readInt();
     for (int i = 0; i < count; i++) {
-      stack.add(i, in.createByteArray());
+      ElementSnapshot snapshot = ElementSnapshot.readFromParcel(in, peekOrNull());
+      stack.add(i, snapshot);
+      references.retain(snapshot);
     }
   }
 
@@ -45,61 +57,58 @@ final class ElementStack implements Parcelable {
    * @return true iff the pushed item was different to the top item.
    */
   boolean tryPush(@NonNull EditorElement element) {
-    byte[]  bytes = getBytes(element);
-    boolean push  = stack.isEmpty() || !Arrays.equals(bytes, stack.peek());
+    ElementSnapshot top      = peekOrNull();
+    ElementSnapshot snapshot = ElementSnapshot.create(element, top);
+    boolean         push     = top == null || !snapshot.contentEquals(top);
 
     if (push) {
-      stack.push(bytes);
-      if (stack.size() > limit) {
-        stack.remove(1);
+      stack.push(snapshot);
+      references.retain(snapshot);
+
+      while (stack.size() > limit || (stack.size() > 2 && references.getRetainedBytes() > byteBudget)) {
+        references.release(stack.remove(1));
       }
     }
     return push;
   }
 
-  static byte[] getBytes(@NonNull Parcelable parcelable) {
-    Parcel parcel = Parcel.obtain();
-    byte[] bytes;
-    try {
-      parcel.writeParcelable(parcelable, 0);
-      bytes = parcel.marshall();
-    } finally {
-      parcel.recycle();
-    }
-    return bytes;
-  }
-
   /**
    * Pops the first different state from the supplied element.
    */
   @Nullable EditorElement pop(@NonNull EditorElement element) {
     if (stack.empty()) return null;
 
-    byte[] elementBytes = getBytes(element);
-    byte[] stackData    = null;
+    ElementSnapshot current   = ElementSnapshot.create(element, stack.peek());
+    ElementSnapshot stackData = null;
 
     while (!stack.empty() && stackData == null) {
-      byte[] topData = stack.pop();
+      ElementSnapshot top = stack.pop();
+      references.release(top);
 
-      if (!Arrays.equals(topData, elementBytes)) {
-        stackData = topData;
+      if (!top.contentEquals(current)) {
+        stackData = top;
       }
     }
 
     if (stackData == null) return null;
 
-    Parcel parcel = Parcel.obtain();
-    try {
-      parcel.unmarshall(stackData, 0, stackData.length);
-      parcel.setDataPosition(0);
-      return parcel.readParcelable(EditorElement.class.getClassLoader());
-    } finally {
-      parcel.recycle();
-    }
+    return stackData.restore();
   }
 
   void clear() {
     stack.clear();
+    references.clear();
+  }
+
+  /**
+   * @return The approximate number of serialized bytes held by this stack, counting shared state once.
+   */
+  long getRetainedBytes() {
+    return references.getRetainedBytes();
+  }
+
+  private @Nullable ElementSnapshot peekOrNull() {
+    return stack.isEmpty() ? null : stack.peek();
   }
 
   public static final Creator<ElementStack> CREATOR = new Creator<ElementStack>() {
@@ -122,20 +131,21 @@ final class ElementStack implements Parcelable {
   @Override
   public void writeToParcel(Parcel dest, int flags) {
     dest.writeInt(limit);
+    dest.writeLong(byteBudget);
     final int count = stack.size();
     dest.writeInt(count);
     for (int i = 0; i < count; i++) {
-      dest.writeByteArray(stack.get(i));
+      stack.get(i).writeToParcel(dest);
     }
   }
 
   boolean stackContainsStateDifferentFrom(@NonNull EditorElement element) {
     if (stack.isEmpty()) return false;
 
-    byte[] currentStateBytes = getBytes(element);
+    ElementSnapshot currentState = ElementSnapshot.create(element, stack.peek());
 
-    for (byte[] item : stack) {
-      if (!Arrays.equals(item, currentStateBytes)) {
+    for (ElementSnapshot item : stack) {
+      if (!item.contentEquals(currentState)) {
         return true;
       }
     }
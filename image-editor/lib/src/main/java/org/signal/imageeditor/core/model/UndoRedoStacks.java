@@ -6,24 +6,22 @@ import android.os.Parcelable;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.util.Arrays;
-
 final class UndoRedoStacks implements Parcelable {
 
   private final ElementStack undoStack;
   private final ElementStack redoStack;
 
-  @NonNull
-  private byte[] unchangedState;
+  @Nullable
+  private ElementSnapshot unchangedState;
 
   UndoRedoStacks(int limit) {
     this(new ElementStack(limit), new ElementStack(limit), null);
   }
 
-  private UndoRedoStacks(ElementStack undoStack, ElementStack redoStack, @Nullable byte[] unchangedState) {
+  private UndoRedoStacks(ElementStack undoStack, ElementStack redoStack, @Nullable ElementSnapshot unchangedState) {
     this.undoStack = undoStack;
     this.redoStack = redoStack;
-    this.unchangedState = unchangedState != null ? unchangedState : new byte[0];
+    this.unchangedState = unchangedState;
   }
 
   public static final Creator<UndoRedoStacks> CREATOR = new Creator<UndoRedoStacks>() {
@@ -32,7 +30,7 @@ final class UndoRedoStacks implements Parcelable {
       return new UndoRedoStacks(
       in.readParcelable(ElementStack.class.getClassLoader()),
       in.readParcelable(ElementStack.class.getClassLoader()),
-      in.createByteArray()
+      in.readInt() != 0 ? ElementSnapshot.readFromParcel(in, null) : null
       );
     }
 
@@ -46,7 +44,12 @@ final class UndoRedoStacks implements Parcelable {
   public void writeToParcel(Parcel dest, int flags) {
     dest.writeParcelable(undoStack, flags);
     dest.writeParcelable(redoStack, flags);
-    dest.writeByteArray(unchangedState);
+    if (unchangedState != null) {
+      dest.writeInt(1);
+      unchangedState.writeToParcel(dest);
+    } else {
+      dest.writeInt(0);
+    }
   }
 
   @Override
@@ -71,11 +74,18 @@ final class UndoRedoStacks implements Parcelable {
   void clear(@NonNull EditorElement element) {
     undoStack.clear();
     redoStack.clear();
-    unchangedState = ElementStack.getBytes(element);
+    unchangedState = ElementSnapshot.create(element, null);
   }
 
   boolean isChanged(@NonNull EditorElement element) {
-    return !Arrays.equals(ElementStack.getBytes(element), unchangedState);
+    return unchangedState == null || !unchangedState.contentEquals(ElementSnapshot.create(element, unchangedState));
+  }
+
+  /**
+   * @return The approximate number of serialized bytes held by the undo and redo history.
+   */
+  long getRetainedBytes() {
+    return undoStack.getRetainedBytes() + redoStack.getRetainedBytes();
   }
 
   /**
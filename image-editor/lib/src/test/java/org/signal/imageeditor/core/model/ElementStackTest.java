@@ -0,0 +1,246 @@
+package org.signal.imageeditor.core.model;
+
+import android.app.Application;
+import android.os.Parcel;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, application = Application.class)
+public final class ElementStackTest {
+
+  @Test
+  public void pop_restoresPushedState() {
+    EditorElement root     = createTree(3);
+    byte[]        original = bytes(root);
+    ElementStack  stack    = new ElementStack(10);
+
+    assertTrue(stack.tryPush(root));
+    root.getChild(1).getLocalMatrix().postTranslate(10, 20);
+
+    EditorElement restored = stack.pop(root);
+
+    assertNotNull(restored);
+    assertArrayEquals(original, bytes(restored));
+  }
+
+  @Test
+  public void pop_skipsStatesEqualToCurrent() {
+    EditorElement root   = createTree(2);
+    ElementStack  stack  = new ElementStack(10);
+    byte[]        first  = bytes(root);
+
+    stack.tryPush(root);
+    root.getChild(0).getLocalMatrix().postTranslate(1, 0);
+    stack.tryPush(root);
+
+    EditorElement restored = stack.pop(root);
+
+    assertNotNull(restored);
+    assertArrayEquals(first, bytes(restored));
+    assertNull(stack.pop(restored));
+  }
+
+  @Test
+  public void tryPush_ignoresUnchangedState() {
+    EditorElement root  = createTree(2);
+    ElementStack  stack = new ElementStack(10);
+
+    assertTrue(stack.tryPush(root));
+    assertFalse(stack.tryPush(root));
+    assertFalse(stack.stackContainsStateDifferentFrom(root));
+  }
+
+  @Test
+  public void undoThenRedo_returnsToLatestState() {
+    EditorElement  root   = createTree(2);
+    UndoRedoStacks stacks = new UndoRedoStacks(10);
+    byte[]         before = bytes(root);
+
+    stacks.pushState(root);
+    root.getChild(1).getLocalMatrix().postTranslate(5, 5);
+    byte[] after = bytes(root);
+
+    EditorElement undone = undoRedo(stacks.getUndoStack(), stacks.getRedoStack(), root);
+    assertNotNull(undone);
+    assertArrayEquals(before, bytes(undone));
+    assertTrue(stacks.canRedo(undone));
+
+    EditorElement redone = undoRedo(stacks.getRedoStack(), stacks.getUndoStack(), undone);
+    assertNotNull(redone);
+    assertArrayEquals(after, bytes(redone));
+    assertTrue(stacks.canUndo(redone));
+  }
+
+  @Test
+  public void pushState_clearsRedo() {
+    EditorElement  root   = createTree(2);
+    UndoRedoStacks stacks = new UndoRedoStacks(10);
+
+    stacks.pushState(root);
+    root.getChild(0).getLocalMatrix().postTranslate(5, 5);
+
+    EditorElement undone = undoRedo(stacks.getUndoStack(), stacks.getRedoStack(), root);
+    assertNotNull(undone);
+
+    undone.getChild(1).getLocalMatrix().postTranslate(1, 1);
+    stacks.pushState(undone);
+
+    assertFalse(stacks.canRedo(undone));
+  }
+
+  @Test
+  public void tryPush_overLimit_keepsFirstAndLatestStates() {
+    EditorElement root   = createTree(1);
+    ElementStack  stack  = new ElementStack(3);
+    byte[][]      states = new byte[5][];
+
+    for (int i = 0; i < states.length; i++) {
+      root.getChild(0).getLocalMatrix().setTranslate(i, 0);
+      states[i] = bytes(root);
+      stack.tryPush(root);
+    }
+
+    root.getChild(0).getLocalMatrix().setTranslate(100, 0);
+
+    EditorElement restored = stack.pop(root);
+    assertArrayEquals(states[4], bytes(restored));
+
+    restored = stack.pop(restored);
+    assertArrayEquals(states[3], bytes(restored));
+
+    restored = stack.pop(restored);
+    assertArrayEquals(states[0], bytes(restored));
+
+    assertNull(stack.pop(restored));
+  }
+
+  @Test
+  public void tryPush_overByteBudget_collapsesOldestHistory() {
+    EditorElement root   = createTree(1);
+    ElementStack  stack  = new ElementStack(50, 1);
+    byte[]        first  = bytes(root);
+
+    stack.tryPush(root);
+    for (int i = 1; i <= 5; i++) {
+      root.getChild(0).getLocalMatrix().setTranslate(i, 0);
+      stack.tryPush(root);
+    }
+
+    root.getChild(0).getLocalMatrix().setTranslate(100, 0);
+
+    EditorElement restored = stack.pop(root);
+    assertNotNull(restored);
+
+    restored = stack.pop(restored);
+    assertArrayEquals(first, bytes(restored));
+    assertNull(stack.pop(restored));
+  }
+
+  @Test
+  public void snapshot_sharesUnchangedSubtrees() {
+    EditorElement   root     = createTree(3);
+    ElementSnapshot previous = ElementSnapshot.create(root, null);
+
+    root.getChild(1).getLocalMatrix().postTranslate(10, 0);
+
+    ElementSnapshot next = ElementSnapshot.create(root, previous);
+
+    assertNotSame(previous, next);
+    assertSame(previous.getChild(0), next.getChild(0));
+    assertNotSame(previous.getChild(1), next.getChild(1));
+    assertSame(previous.getChild(2), next.getChild(2));
+    assertFalse(previous.contentEquals(next));
+  }
+
+  @Test
+  public void snapshot_ofUnchangedTree_isTheSameInstance() {
+    EditorElement   root     = createTree(3);
+    ElementSnapshot previous = ElementSnapshot.create(root, null);
+
+    assertSame(previous, ElementSnapshot.create(root, previous));
+  }
+
+  @Test
+  public void retainedBytes_countSharedStateOnce() {
+    EditorElement root  = createTree(10);
+    ElementStack  stack = new ElementStack(10);
+
+    stack.tryPush(root);
+    long single = stack.getRetainedBytes();
+
+    root.getChild(0).getLocalMatrix().postTranslate(1, 0);
+    stack.tryPush(root);
+    long afterSmallChange = stack.getRetainedBytes();
+
+    assertTrue(afterSmallChange > single);
+    assertTrue(afterSmallChange < single * 2);
+  }
+
+  @Test
+  public void parcel_roundTrip_preservesHistory() {
+    EditorElement root  = createTree(2);
+    ElementStack  stack = new ElementStack(10);
+    byte[]        first = bytes(root);
+
+    stack.tryPush(root);
+    root.getChild(0).getLocalMatrix().postTranslate(3, 0);
+    stack.tryPush(root);
+    root.getChild(0).getLocalMatrix().postTranslate(3, 0);
+
+    Parcel parcel = Parcel.obtain();
+    ElementStack copy;
+    try {
+      stack.writeToParcel(parcel, 0);
+      parcel.setDataPosition(0);
+      copy = ElementStack.CREATOR.createFromParcel(parcel);
+    } finally {
+      parcel.recycle();
+    }
+
+    EditorElement restored = copy.pop(root);
+    assertNotNull(restored);
+    restored = copy.pop(restored);
+    assertArrayEquals(first, bytes(restored));
+  }
+
+  private static @Nullable EditorElement undoRedo(@NonNull ElementStack from, @NonNull ElementStack to, @NonNull EditorElement current) {
+    EditorElement popped = from.pop(current);
+    if (popped != null) {
+      to.tryPush(current);
+    }
+    return popped;
+  }
+
+  private static @NonNull EditorElement createTree(int childCount) {
+    EditorElement root = new EditorElement(null);
+    for (int i = 0; i < childCount; i++) {
+      root.addElement(new EditorElement(null, i));
+    }
+    return root;
+  }
+
+  private static @NonNull byte[] bytes(@NonNull EditorElement element) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      element.writeToParcel(parcel, 0);
+      return parcel.marshall();
+    } finally {
+      parcel.recycle();
+    }
+  }
+}
@@ -15,12 +15,13 @@ sealed class SmsExportProgress {
   object Starting : SmsExportProgress()
 
   /**
-   * Processing messages
+   * Processing messages. [messagesPerSecond] is the average rate since the export started.
    */
   data class InProgress(
     val progress: Int,
     val errorCount: Int,
-    val total: Int
+    val total: Int,
+    val messagesPerSecond: Float = 0f
   ) : SmsExportProgress()
 
   /**
@@ -18,8 +18,13 @@ import org.signal.smsexporter.internal.sms.ExportSmsMessagesUseCase
 import java.io.EOFException
 import java.io.FileNotFoundException
 import java.io.InputStream
+import java.util.Locale
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
 import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
+import java.util.concurrent.Future
 
 /**
  * Exports SMS and MMS messages to the system database.
@@ -30,6 +35,12 @@ abstract class SmsExportService : Service() {
     private val TAG = Log.tag(SmsExportService::class.java)
     const val CLEAR_PREVIOUS_EXPORT_STATE_EXTRA = "clear_previous_export_state"
 
+    /** How many messages are exported, and have their export state checkpointed, at a time. */
+    private const val BATCH_SIZE = 500
+
+    /** How many attachments are copied into the system database at once. */
+    private const val ATTACHMENT_WRITE_PARALLELISM = 4
+
     /**
      * Progress state which can be listened to by interested components, such as fragments.
      */
@@ -68,8 +79,6 @@ abstract class SmsExportService : Service() {
     updateNotification(-1, -1)
     progressState.onNext(SmsExportProgress.Starting)
 
-    var progress = 0
-    var errorCount = 0
     executor.execute {
       if (clearExportState) {
         clearPreviousExportState()
@@ -77,29 +86,28 @@ abstract class SmsExportService : Service() {
 
       prepareForExport()
       val totalCount = getUnexportedMessageCount()
-      getUnexportedMessages().forEach { message ->
-        val exportState = message.exportState
-        if (exportState.progress != SmsExportState.Progress.COMPLETED) {
-          val successful = when (message) {
-            is ExportableMessage.Sms<*> -> exportSms(exportState, message)
-            is ExportableMessage.Mms<*> -> exportMms(exportState, message)
-            is ExportableMessage.Skip<*> -> {
-              onMessageExportSucceeded(message)
-              true
-            }
-          }
+      val attachmentExecutor: ExecutorService = Executors.newFixedThreadPool(ATTACHMENT_WRITE_PARALLELISM)
+      val startTime = System.currentTimeMillis()
 
-          if (!successful) {
-            errorCount++
-          }
+      var progress = 0
+      var errorCount = 0
 
-          progress++
-          if (progress == 1 || progress.mod(100) == 0) {
-            updateNotification(progress, totalCount)
-          }
-          progressState.onNext(SmsExportProgress.InProgress(progress, errorCount, totalCount))
+      getUnexportedMessages()
+        .asSequence()
+        .filter { it.exportState.progress != SmsExportState.Progress.COMPLETED }
+        .chunked(BATCH_SIZE)
+        .forEach { batch ->
+          errorCount += exportBatch(batch, attachmentExecutor)
+          progress += batch.size
+
+          val messagesPerSecond = progress * 1000f / (System.currentTimeMillis() - startTime).coerceAtLeast(1)
+          Log.d(TAG, "Exported $progress of $totalCount messages, ${"%.1f".format(Locale.US, messagesPerSecond)} messages/second")
+
+          updateNotification(progress, totalCount)
+          progressState.onNext(SmsExportProgress.InProgress(progress, errorCount, totalCount, messagesPerSecond))
         }
-      }
+
+      attachmentExecutor.shutdown()
 
       onExportPassCompleted()
       progressState.onNext(SmsExportProgress.Done(errorCount, progress))
@@ -162,6 +170,22 @@ abstract class SmsExportService : Service() {
    */
   protected abstract fun onMessageExportStarted(exportableMessage: ExportableMessage)
 
+  /**
+   * We're about to start exporting a batch of messages. Implementations that persist their export state
+   * can override this to checkpoint the whole batch at once.
+   */
+  protected open fun onMessagesExportStarted(exportableMessages: List<ExportableMessage>) {
+    exportableMessages.forEach { onMessageExportStarted(it) }
+  }
+
+  /**
+   * Every message in the batch has been completely exported. Implementations that persist their export
+   * state can override this to checkpoint the whole batch at once.
+   */
+  protected open fun onMessagesExportSucceeded(exportableMessages: List<ExportableMessage>) {
+    exportableMessages.forEach { onMessageExportSucceeded(it) }
+  }
+
   /**
    * We've completely succeeded exporting a given MMS / SMS message. This is only
    * called when all parts of the message (including recipients and attachments) have
@@ -228,38 +252,98 @@ abstract class SmsExportService : Service() {
     startForeground(exportNotification.id, exportNotification.notification)
   }
 
-  private fun exportSms(smsExportState: SmsExportState, sms: ExportableMessage.Sms<*>): Boolean {
-    onMessageExportStarted(sms)
-    val mayAlreadyExist = smsExportState.progress == SmsExportState.Progress.STARTED
-    return ExportSmsMessagesUseCase.execute(this, sms, mayAlreadyExist).either(onSuccess = {
-      onMessageExportSucceeded(sms)
-      true
-    }, onFailure = {
-      onMessageExportFailed(sms)
-      false
-    })
+  /**
+   * Exports a batch of messages, checkpointing their export state once before and once after.
+   *
+   * @return The number of messages that failed to export.
+   */
+  private fun exportBatch(batch: List<ExportableMessage>, attachmentExecutor: ExecutorService): Int {
+    onMessagesExportStarted(batch.filterNot { it is ExportableMessage.Skip<*> })
+
+    val failed: Set<ExportableMessage> = exportSmsBatch(batch.filterIsInstance<ExportableMessage.Sms<*>>()) +
+      exportMmsBatch(batch.filterIsInstance<ExportableMessage.Mms<*>>(), attachmentExecutor)
+
+    onMessagesExportSucceeded(batch.filterNot { it in failed })
+    failed.forEach { onMessageExportFailed(it) }
+
+    return failed.size
   }
 
-  private fun exportMms(smsExportState: SmsExportState, mms: ExportableMessage.Mms<*>): Boolean {
-    onMessageExportStarted(mms)
-    val threadIdOutput: GetOrCreateMmsThreadIdsUseCase.Output? = getThreadId(mms)
-    val exportMmsOutput: ExportMmsMessagesUseCase.Output? = threadIdOutput?.let { exportMms(smsExportState, it) }
-    val exportMmsPartsOutput: List<ExportMmsPartsUseCase.Output?>? = exportMmsOutput?.let { exportMmsParts(smsExportState, it) }
-    val writeMmsPartsOutput: List<Result<Unit, Throwable>>? = exportMmsPartsOutput?.filterNotNull()?.map { writeAttachmentToDisk(smsExportState, it) }
-    val exportMmsRecipients: List<Unit?>? = exportMmsOutput?.let { exportMmsRecipients(smsExportState, it) }
-
-    return if (threadIdOutput != null &&
-      exportMmsOutput != null &&
-      exportMmsPartsOutput != null && !exportMmsPartsOutput.contains(null) &&
-      writeMmsPartsOutput != null && writeMmsPartsOutput.all { it is Result.Success || (it is Result.Failure && (it.failure.cause ?: it.failure) is FileNotFoundException) } &&
-      exportMmsRecipients != null && !exportMmsRecipients.contains(null)
-    ) {
-      onMessageExportSucceeded(mms)
-      true
-    } else {
-      onMessageExportFailed(mms)
-      false
+  /**
+   * Inserts every message in one go. If that fails, falls back to inserting them one at a time, checking for
+   * existence since some of the batch may have made it in.
+   *
+   * @return The messages that failed to export.
+   */
+  private fun exportSmsBatch(messages: List<ExportableMessage.Sms<*>>): Set<ExportableMessage> {
+    if (messages.isEmpty()) {
+      return emptySet()
     }
+
+    val mayAlreadyExist: Set<ExportableMessage.Sms<*>> = messages.filter { it.exportState.progress == SmsExportState.Progress.STARTED }.toSet()
+
+    return ExportSmsMessagesUseCase.execute(this, messages, mayAlreadyExist).either(
+      onSuccess = {
+        emptySet()
+      },
+      onFailure = {
+        Log.w(TAG, "Failed to bulk insert ${messages.size} SMS messages, falling back to inserting them one at a time.", it)
+        messages.filterNot { sms -> ExportSmsMessagesUseCase.execute(this, sms, true) is Result.Success }.toSet()
+      }
+    )
+  }
+
+  /**
+   * Writes the message, part and address rows for each message, then copies all of the attachments in the
+   * batch in parallel. Only the copying is done off of this thread, so export state callbacks are never run
+   * concurrently.
+   *
+   * @return The messages that failed to export.
+   */
+  private fun exportMmsBatch(messages: List<ExportableMessage.Mms<*>>, attachmentExecutor: ExecutorService): Set<ExportableMessage> {
+    val pending: List<PendingMms> = messages.map { mms ->
+      val smsExportState = mms.exportState
+      val threadIdOutput: GetOrCreateMmsThreadIdsUseCase.Output? = getThreadId(mms)
+      val exportMmsOutput: ExportMmsMessagesUseCase.Output? = threadIdOutput?.let { exportMms(smsExportState, it) }
+      val exportMmsPartsOutput: List<ExportMmsPartsUseCase.Output?>? = exportMmsOutput?.let { exportMmsParts(smsExportState, it) }
+      val exportMmsRecipients: List<Unit?>? = exportMmsOutput?.let { exportMmsRecipients(smsExportState, it) }
+
+      val attachmentWrites: List<Pair<ExportMmsPartsUseCase.Output, Future<Try<Unit>>>> = exportMmsPartsOutput
+        ?.filterNotNull()
+        ?.filterNot { it.part is ExportableMessage.Mms.Part.Text }
+        ?.map { output -> output to attachmentExecutor.submit(Callable { writeAttachmentToDisk(output) }) }
+        ?: emptyList()
+
+      PendingMms(mms, threadIdOutput != null && exportMmsOutput != null, exportMmsPartsOutput, exportMmsRecipients, attachmentWrites)
+    }
+
+    return pending.filterNot { isMmsExportSuccessful(it) }.map { it.mms }.toSet()
+  }
+
+  private fun isMmsExportSuccessful(pending: PendingMms): Boolean {
+    pending.exportMmsPartsOutput
+      ?.filterNotNull()
+      ?.filter { it.part is ExportableMessage.Mms.Part.Text }
+      ?.forEach { onAttachmentPartExportSucceeded(it.message, it.part) }
+
+    val writeMmsPartsOutput: List<Result<Unit, Throwable>> = pending.attachmentWrites.map { (output, future) ->
+      val result: Try<Unit> = try {
+        future.get()
+      } catch (e: ExecutionException) {
+        Try.failure(e.cause ?: e)
+      }
+
+      if (result is Result.Success) {
+        onAttachmentPartExportSucceeded(output.message, output.part)
+      }
+
+      result
+    }
+
+    return pending.messageExported &&
+      pending.exportMmsPartsOutput != null && !pending.exportMmsPartsOutput.contains(null) &&
+      writeMmsPartsOutput.all { it is Result.Success || (it is Result.Failure && (it.failure.cause ?: it.failure) is FileNotFoundException) } &&
+      pending.exportMmsRecipients != null && !pending.exportMmsRecipients.contains(null)
   }
 
   private fun getThreadId(mms: ExportableMessage.Mms<*>): GetOrCreateMmsThreadIdsUseCase.Output? {
@@ -329,16 +413,10 @@ abstract class SmsExportService : Service() {
     }
   }
 
-  private fun writeAttachmentToDisk(smsExportState: SmsExportState, output: ExportMmsPartsUseCase.Output): Try<Unit> {
-    if (output.part.contentId in smsExportState.completedAttachments) {
-      return Try.success(Unit)
-    }
-
-    if (output.part is ExportableMessage.Mms.Part.Text) {
-      onAttachmentPartExportSucceeded(output.message, output.part)
-      return Try.success(Unit)
-    }
-
+  /**
+   * Copies an attachment into the system database. Runs on the attachment executor, so it mustn't touch export state.
+   */
+  private fun writeAttachmentToDisk(output: ExportMmsPartsUseCase.Output): Try<Unit> {
     return try {
       contentResolver.openOutputStream(output.uri)!!.use { out ->
         getInputStream(output.part).use {
@@ -346,12 +424,10 @@ abstract class SmsExportService : Service() {
         }
       }
 
-      onAttachmentPartExportSucceeded(output.message, output.part)
       Try.success(Unit)
     } catch (e: Exception) {
       if (e is EOFException) {
         Log.d(TAG, "Unrecoverable failure to write attachment to disk, marking as successful and moving on", e)
-        onAttachmentPartExportSucceeded(output.message, output.part)
         Try.success(Unit)
       } else {
         Log.d(TAG, "Failed to write attachment to disk.", e)
@@ -360,6 +436,14 @@ abstract class SmsExportService : Service() {
     }
   }
 
+  private class PendingMms(
+    val mms: ExportableMessage.Mms<*>,
+    val messageExported: Boolean,
+    val exportMmsPartsOutput: List<ExportMmsPartsUseCase.Output?>?,
+    val exportMmsRecipients: List<Unit?>?,
+    val attachmentWrites: List<Pair<ExportMmsPartsUseCase.Output, Future<Try<Unit>>>>
+  )
+
   data class ExportNotification(
     val id: Int,
     val notification: Notification
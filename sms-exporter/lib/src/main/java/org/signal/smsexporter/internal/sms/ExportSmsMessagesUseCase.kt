@@ -1,5 +1,6 @@
 package org.signal.smsexporter.internal.sms
 
+import android.content.ContentValues
 import android.content.Context
 import android.provider.Telephony
 import androidx.core.content.contentValuesOf
@@ -14,36 +15,59 @@ import java.lang.Exception
 internal object ExportSmsMessagesUseCase {
   fun execute(context: Context, sms: ExportableMessage.Sms<*>, checkForExistence: Boolean): Try<Unit> {
     try {
-      if (checkForExistence) {
-        val exists = context.contentResolver.query(
-          Telephony.Sms.CONTENT_URI,
-          arrayOf("_id"),
-          "${Telephony.Sms.ADDRESS} = ? AND ${Telephony.Sms.DATE_SENT} = ?",
-          arrayOf(sms.address, sms.dateSent.inWholeMilliseconds.toString()),
-          null
-        )?.use {
-          it.count > 0
-        } ?: false
-
-        if (exists) {
-          return Try.success(Unit)
-        }
+      if (checkForExistence && isMessageAlreadyInDatabase(context, sms)) {
+        return Try.success(Unit)
       }
 
-      val contentValues = contentValuesOf(
-        Telephony.Sms.ADDRESS to sms.address,
-        Telephony.Sms.BODY to sms.body,
-        Telephony.Sms.DATE to sms.dateReceived.inWholeMilliseconds,
-        Telephony.Sms.DATE_SENT to sms.dateSent.inWholeMilliseconds,
-        Telephony.Sms.READ to if (sms.isRead) 1 else 0,
-        Telephony.Sms.TYPE to if (sms.isOutgoing) Telephony.Sms.MESSAGE_TYPE_SENT else Telephony.Sms.MESSAGE_TYPE_INBOX
-      )
+      context.contentResolver.insert(Telephony.Sms.CONTENT_URI, getContentValues(sms))
 
-      context.contentResolver.insert(Telephony.Sms.CONTENT_URI, contentValues)
+      return Try.success(Unit)
+    } catch (e: Exception) {
+      return Try.failure(e)
+    }
+  }
+
+  /**
+   * Exports a batch of messages with a single bulk insert. Messages in [mayAlreadyExist] are only inserted if
+   * they aren't already in the system database. Either the whole batch succeeds, or none of it is known to have.
+   */
+  fun execute(context: Context, messages: List<ExportableMessage.Sms<*>>, mayAlreadyExist: Set<ExportableMessage.Sms<*>>): Try<Unit> {
+    try {
+      val toInsert: Array<ContentValues> = messages
+        .filterNot { it in mayAlreadyExist && isMessageAlreadyInDatabase(context, it) }
+        .map { getContentValues(it) }
+        .toTypedArray()
+
+      if (toInsert.isNotEmpty()) {
+        context.contentResolver.bulkInsert(Telephony.Sms.CONTENT_URI, toInsert)
+      }
 
       return Try.success(Unit)
     } catch (e: Exception) {
       return Try.failure(e)
     }
   }
+
+  private fun isMessageAlreadyInDatabase(context: Context, sms: ExportableMessage.Sms<*>): Boolean {
+    return context.contentResolver.query(
+      Telephony.Sms.CONTENT_URI,
+      arrayOf("_id"),
+      "${Telephony.Sms.ADDRESS} = ? AND ${Telephony.Sms.DATE_SENT} = ?",
+      arrayOf(sms.address, sms.dateSent.inWholeMilliseconds.toString()),
+      null
+    )?.use {
+      it.count > 0
+    } ?: false
+  }
+
+  private fun getContentValues(sms: ExportableMessage.Sms<*>): ContentValues {
+    return contentValuesOf(
+      Telephony.Sms.ADDRESS to sms.address,
+      Telephony.Sms.BODY to sms.body,
+      Telephony.Sms.DATE to sms.dateReceived.inWholeMilliseconds,
+      Telephony.Sms.DATE_SENT to sms.dateSent.inWholeMilliseconds,
+      Telephony.Sms.READ to if (sms.isRead) 1 else 0,
+      Telephony.Sms.TYPE to if (sms.isOutgoing) Telephony.Sms.MESSAGE_TYPE_SENT else Telephony.Sms.MESSAGE_TYPE_INBOX
+    )
+  }
 }
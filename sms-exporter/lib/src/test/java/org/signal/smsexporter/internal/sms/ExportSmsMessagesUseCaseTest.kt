@@ -13,6 +13,7 @@ import org.robolectric.RobolectricTestRunner
 import org.signal.core.util.CursorUtil
 import org.signal.smsexporter.ExportableMessage
 import org.signal.smsexporter.TestUtils
+import kotlin.time.Duration.Companion.seconds
 
 @RunWith(RobolectricTestRunner::class)
 class ExportSmsMessagesUseCaseTest {
@@ -101,6 +102,57 @@ class ExportSmsMessagesUseCaseTest {
     )
   }
 
+  @Test
+  fun `Given several SMS messages, when I execute as a batch, then I expect a record to be inserted for each`() {
+    // GIVEN
+    val messages = (1..3).map { TestUtils.generateSmsMessage(dateSent = it.seconds) }
+
+    // WHEN
+    val result = ExportSmsMessagesUseCase.execute(
+      context = ApplicationProvider.getApplicationContext(),
+      messages = messages,
+      mayAlreadyExist = emptySet()
+    )
+
+    // THEN
+    result.either(
+      onSuccess = {
+        messages.forEach { validateExportedMessage(it) }
+      },
+      onFailure = {
+        throw it
+      }
+    )
+  }
+
+  @Test
+  fun `Given a batch where one SMS message already exists, when I execute and it may already exist, then I expect only a single record for it`() {
+    // GIVEN
+    val messages = (1..3).map { TestUtils.generateSmsMessage(dateSent = it.seconds) }
+    ExportSmsMessagesUseCase.execute(
+      context = ApplicationProvider.getApplicationContext(),
+      sms = messages[0],
+      checkForExistence = false
+    )
+
+    // WHEN
+    val result = ExportSmsMessagesUseCase.execute(
+      context = ApplicationProvider.getApplicationContext(),
+      messages = messages,
+      mayAlreadyExist = setOf(messages[0])
+    )
+
+    // THEN
+    result.either(
+      onSuccess = {
+        messages.forEach { validateExportedMessage(it) }
+      },
+      onFailure = {
+        throw it
+      }
+    )
+  }
+
   private fun validateExportedMessage(sms: ExportableMessage.Sms<*>, expectedRowCount: Int = 1) {
     // 1. Grab the SMS record from the content resolver
     val context: Context = ApplicationProvider.getApplicationContext()